@@ -0,0 +1,737 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.sbml.optimization.problem.EstimationProblemPool;
+import org.simulator.math.odes.MultiTable;
+
+import de.zbit.io.csv.CSVWriter;
+import de.zbit.util.ResourceManager;
+import eva2.optimization.individuals.InterfaceDataTypeDouble;
+import eva2.optimization.modules.OptimizationParameters;
+import eva2.optimization.operator.terminators.EvaluationTerminator;
+import eva2.optimization.strategies.DifferentialEvolution;
+import eva2.optimization.strategies.InterfaceOptimizer;
+import eva2.tools.math.RNG;
+
+/**
+ * Computes bootstrap confidence intervals of the estimated quantities. Each
+ * replicate perturbs the reference data and fits all quantities again. By
+ * default, the replicates are refitted by a {@link LevenbergMarquardt} search
+ * that starts from the original estimate ({@link Refit#LOCAL}); the resulting
+ * intervals therefore describe the uncertainty within the basin of attraction
+ * of the estimate only. If a budget for a global search is set, each replicate
+ * is first fitted by differential evolution and afterwards refined by the
+ * local search ({@link Refit#GLOBAL}). The reference data are perturbed either by resampling the residuals of the
+ * original estimate within each measured column, or, if a noise level is set,
+ * by multiplicative Gaussian noise as in an artificial error introduction.
+ * <p>
+ * The replicates are fitted concurrently on independent copies of the
+ * {@link EstimationProblem}. Every fitted parameter vector is appended to a
+ * file as soon as it is available, and only a few replicates are kept in
+ * memory at any time. Since the perturbation of each replicate only depends
+ * on its number and the seed, an interrupted run can be resumed from the
+ * file: replicates already contained in the file are skipped. The percentile
+ * intervals are finally computed from the file, one quantity at a time.
+ * <p>
+ * The differential evolution of EvA2 draws from the process-wide generator
+ * {@link RNG}, which is not thread-safe. The global searches therefore run one
+ * at a time, each after reseeding {@link RNG} with the seed plus the number of
+ * its replicate, while the local refinements of other replicates continue
+ * concurrently. A global search is only reproducible if no other estimation
+ * uses {@link RNG} in the same process at the same time.
+ *
+ * @since 2.1
+ */
+public class Bootstrap {
+
+	/**
+	 * How the replicates are fitted.
+	 */
+	public static enum Refit {
+		/**
+		 * Each replicate is fitted by differential evolution with a fixed
+		 * budget, followed by a local refinement.
+		 */
+		GLOBAL,
+		/**
+		 * Each replicate is fitted by a local search that starts from the
+		 * original estimate (local bootstrap).
+		 */
+		LOCAL;
+	}
+
+	/**
+	 * The percentile confidence interval of a single quantity.
+	 */
+	public static class Interval {
+
+		/**
+		 *
+		 */
+		private QuantityRange range;
+
+		/**
+		 *
+		 */
+		private double lower, median, upper;
+
+		/**
+		 * The number of successful replicates.
+		 */
+		private int replicates;
+
+		/**
+		 *
+		 */
+		private Refit refit;
+
+		/**
+		 *
+		 * @return the quantity.
+		 */
+		public QuantityRange getQuantityRange() {
+			return range;
+		}
+
+		/**
+		 *
+		 * @return the lower bound of the confidence interval.
+		 */
+		public double getLowerBound() {
+			return lower;
+		}
+
+		/**
+		 *
+		 * @return the median of all replicates.
+		 */
+		public double getMedian() {
+			return median;
+		}
+
+		/**
+		 *
+		 * @return the upper bound of the confidence interval.
+		 */
+		public double getUpperBound() {
+			return upper;
+		}
+
+		/**
+		 *
+		 * @return the number of replicates the interval is based on.
+		 */
+		public int getReplicateCount() {
+			return replicates;
+		}
+
+		/**
+		 *
+		 * @return how the replicates the interval is based on have been fitted.
+		 */
+		public Refit getRefit() {
+			return refit;
+		}
+
+	}
+
+	/**
+	 * The first two columns of the replicate file, followed by one column per
+	 * quantity.
+	 */
+	private static final String REPLICATE = "replicate", SUM_OF_SQUARES = "sumOfSquares";
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(Bootstrap.class.getName());
+
+	/**
+	 * Serializes the global searches of all instances, which share {@link RNG}.
+	 */
+	private static final Object GLOBAL_SEARCH_LOCK = new Object();
+
+	/**
+	 * The problem whose quantities are to be analyzed.
+	 */
+	private EstimationProblem problem;
+
+	/**
+	 * The number of concurrently fitted replicates.
+	 */
+	private int numberOfThreads;
+
+	/**
+	 *
+	 */
+	private int numberOfReplicates;
+
+	/**
+	 * The maximal number of iterations of each fit.
+	 */
+	private int maxIterations;
+
+	/**
+	 * The number of evaluations of the global search for each replicate; zero
+	 * for a local search only.
+	 */
+	private int globalEvaluations;
+
+	/**
+	 * The probability covered by the confidence intervals.
+	 */
+	private double confidenceLevel;
+
+	/**
+	 * The relative standard deviation of the noise; zero for resampling the
+	 * residuals.
+	 */
+	private double noise;
+
+	/**
+	 *
+	 */
+	private long seed;
+
+	/**
+	 *
+	 * @param problem
+	 * @param numberOfThreads
+	 */
+	public Bootstrap(EstimationProblem problem, int numberOfThreads) {
+		this.problem = problem;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		this.numberOfReplicates = 200;
+		this.maxIterations = 20;
+		this.globalEvaluations = 0;
+		this.confidenceLevel = 0.95d;
+		this.noise = 0d;
+		this.seed = 0L;
+	}
+
+	/**
+	 * @param numberOfReplicates
+	 *        the total number of replicates, including those of a previous run
+	 *        that is resumed.
+	 */
+	public void setNumberOfReplicates(int numberOfReplicates) {
+		this.numberOfReplicates = Math.max(1, numberOfReplicates);
+	}
+
+	/**
+	 * @param maxIterations
+	 *        the maximal number of iterations of each fit.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * @param globalEvaluations
+	 *        the number of fitness evaluations of the differential evolution
+	 *        that fits each replicate before the local refinement or zero to
+	 *        refit the replicates by a local search from the estimate only.
+	 */
+	public void setGlobalEvaluations(int globalEvaluations) {
+		this.globalEvaluations = Math.max(0, globalEvaluations);
+	}
+
+	/**
+	 *
+	 * @return how the replicates are fitted.
+	 */
+	public Refit getRefit() {
+		return (globalEvaluations > 0) ? Refit.GLOBAL : Refit.LOCAL;
+	}
+
+	/**
+	 * @param confidenceLevel
+	 *        the probability covered by the confidence intervals, e.g., 0.95.
+	 */
+	public void setConfidenceLevel(double confidenceLevel) {
+		this.confidenceLevel = confidenceLevel;
+	}
+
+	/**
+	 * @param noise
+	 *        the relative standard deviation of the Gaussian noise that is
+	 *        added to the reference data or zero for resampling the residuals
+	 *        of the estimate.
+	 */
+	public void setNoise(double noise) {
+		this.noise = Math.max(0d, noise);
+	}
+
+	/**
+	 * @param seed
+	 *        the seed of the perturbations. A run can only be resumed with the
+	 *        same seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Fits all replicates that are not yet contained in the given file, appends
+	 * them to the file and computes the confidence intervals.
+	 *
+	 * @param estimate
+	 *        the best solution found by a previous estimation.
+	 * @param file
+	 *        the file that receives one line per replicate.
+	 * @return one {@link Interval} per {@link QuantityRange} of the problem.
+	 * @throws IOException
+	 *         if the file cannot be written or belongs to another problem.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public Interval[] compute(final double estimate[], File file)
+		throws IOException, SBMLException, ModelOverdeterminedException,
+		InterruptedException, ExecutionException {
+		String header = createHeader();
+		BitSet completed = readCompleted(file, header);
+		final MultiTable original[] = problem.getReferenceData();
+		final double fitted[][][] = (noise > 0d) ? null : simulate(estimate, original);
+
+		EstimationProblemPool pool = new EstimationProblemPool(problem, numberOfThreads);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+		try {
+			if (completed == null) {
+				writer.write(header);
+				writer.write('\n');
+				writer.flush();
+				completed = new BitSet();
+			}
+			// at most two pending replicates per thread
+			Deque<Future<double[]>> pending = new ArrayDeque<Future<double[]>>();
+			for (int i = 0; i < numberOfReplicates; i++) {
+				if (completed.get(i)) {
+					continue;
+				}
+				final int replicate = i;
+				pending.add(pool.submit(new EstimationProblemPool.Task<double[]>() {
+
+					/* (non-Javadoc)
+					 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+					 */
+					@Override
+					public double[] call(EstimationProblem copy) throws Exception {
+						return fit(copy, replicate, estimate, original, fitted);
+					}
+				}));
+				if (pending.size() >= 2 * pool.getSize()) {
+					write(writer, pending.poll().get());
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(writer, pending.poll().get());
+			}
+		} finally {
+			writer.close();
+			pool.shutdown();
+		}
+		return computeIntervals(file);
+	}
+
+	/**
+	 * Fits one replicate on a copy of the problem.
+	 *
+	 * @param copy
+	 *        a copy of the problem that is exclusively used by this task.
+	 * @param replicate
+	 * @param estimate
+	 * @param original
+	 * @param fitted
+	 * @return the number of the replicate, the sum of squared residuals and the
+	 *         fitted values.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private double[] fit(final EstimationProblem copy, int replicate,
+		double estimate[], MultiTable original[], double fitted[][][])
+		throws InterruptedException, ExecutionException {
+		copy.setReferenceData(perturb(original, fitted, new Random(seed + replicate)));
+		try {
+			double start[] = (globalEvaluations > 0) ? optimizeGlobally(copy, replicate) : estimate.clone();
+			LevenbergMarquardt optimizer = new LevenbergMarquardt(copy, maxIterations, 1);
+			double x[] = optimizer.minimize(new LevenbergMarquardt.Residuals() {
+
+				/* (non-Javadoc)
+				 * @see org.sbml.optimization.LevenbergMarquardt.Residuals#compute(double[][])
+				 */
+				@Override
+				public double[][] compute(double[]... x) {
+					double residuals[][] = new double[x.length][];
+					for (int i = 0; i < x.length; i++) {
+						residuals[i] = copy.computeResiduals(x[i]);
+					}
+					return residuals;
+				}
+			}, start, new boolean[estimate.length]);
+			double row[] = new double[x.length + 2];
+			row[0] = replicate;
+			row[1] = optimizer.getSumOfSquares();
+			System.arraycopy(x, 0, row, 2, x.length);
+			if (Double.isNaN(row[1])) {
+				// failed fits are recorded, so that they are not repeated when resuming
+				Arrays.fill(row, 2, row.length, Double.NaN);
+			}
+			return row;
+		} finally {
+			copy.setReferenceData(original);
+		}
+	}
+
+	/**
+	 * Fits the perturbed data by differential evolution with the budget of
+	 * {@link #globalEvaluations}. The search holds {@link #GLOBAL_SEARCH_LOCK}
+	 * and starts from {@link RNG} reseeded for the replicate, so that it only
+	 * depends on the number of the replicate and the seed.
+	 *
+	 * @param copy
+	 * @param replicate
+	 * @return the best solution found.
+	 */
+	private double[] optimizeGlobally(EstimationProblem copy, int replicate) {
+		synchronized (GLOBAL_SEARCH_LOCK) {
+			RNG.setRandomSeed(seed + replicate);
+			OptimizationParameters goParams = new OptimizationParameters();
+			goParams.setProblem(copy);
+			goParams.setOptimizer(new DifferentialEvolution());
+			goParams.setTerminator(new EvaluationTerminator(globalEvaluations));
+			InterfaceOptimizer optimizer = goParams.getOptimizer();
+			optimizer.initialize();
+			while (!goParams.getTerminator().isTerminated(optimizer.getPopulation())) {
+				optimizer.optimize();
+			}
+			return ((InterfaceDataTypeDouble) optimizer.getPopulation().getBestEAIndividual()).getDoubleData().clone();
+		}
+	}
+
+	/**
+	 * Creates perturbed copies of the reference data.
+	 *
+	 * @param original
+	 * @param fitted
+	 *        the simulated values at all measured points or {@code null} for
+	 *        Gaussian noise.
+	 * @param random
+	 * @return
+	 */
+	private MultiTable[] perturb(MultiTable original[], double fitted[][][],
+		Random random) {
+		MultiTable perturbed[] = new MultiTable[original.length];
+		for (int k = 0; k < original.length; k++) {
+			MultiTable.Block block = original[k].getBlock(0);
+			int rows = block.getRowCount(), cols = block.getColumnCount();
+			double data[][] = new double[rows][cols];
+			double residuals[] = new double[rows];
+			for (int col = 0; col < cols; col++) {
+				int count = 0;
+				if (fitted != null) {
+					for (int row = 0; row < rows; row++) {
+						double r = block.getColumn(col).getValue(row) - fitted[k][row][col];
+						if (!Double.isNaN(r)) {
+							residuals[count++] = r;
+						}
+					}
+				}
+				for (int row = 0; row < rows; row++) {
+					double value = block.getColumn(col).getValue(row);
+					if (Double.isNaN(value)) {
+						data[row][col] = value;
+					} else if (fitted == null) {
+						data[row][col] = Math.max(0d, value * (1d + noise * random.nextGaussian()));
+					} else if ((count > 0) && !Double.isNaN(fitted[k][row][col])) {
+						data[row][col] = fitted[k][row][col] + residuals[random.nextInt(count)];
+					} else {
+						data[row][col] = value;
+					}
+				}
+			}
+			perturbed[k] = new MultiTable(original[k].getTimePoints().clone(), data,
+				block.getIdentifiers());
+			perturbed[k].setName(original[k].getName());
+			perturbed[k].setTimeName(original[k].getTimeName());
+		}
+		return perturbed;
+	}
+
+	/**
+	 * Simulates the model with the estimate and looks up the simulated values
+	 * at all measured points.
+	 *
+	 * @param estimate
+	 * @param original
+	 * @return the simulated value for each data set, row and column or
+	 *         {@link Double#NaN} if the value is not simulated.
+	 */
+	private double[][][] simulate(double estimate[], MultiTable original[]) {
+		problem.evaluate(estimate);
+		if (problem.getCurrentSimulationData() == null) {
+			throw new IllegalArgumentException(
+				bundle.getString("BOOTSTRAP_INVALID_ESTIMATE"));
+		}
+		double fitted[][][] = new double[original.length][][];
+		for (int k = 0; k < original.length; k++) {
+			MultiTable solution = problem.getCurrentSimulationData(k);
+			double timePoints[] = solution.getTimePoints();
+			MultiTable.Block block = original[k].getBlock(0);
+			String identifiers[] = block.getIdentifiers();
+			fitted[k] = new double[block.getRowCount()][identifiers.length];
+			for (int col = 0; col < identifiers.length; col++) {
+				MultiTable.Block.Column column = solution.getBlock(0).getColumn(identifiers[col]);
+				for (int row = 0; row < block.getRowCount(); row++) {
+					int index = Arrays.binarySearch(timePoints, original[k].getTimePoint(row));
+					fitted[k][row][col] = ((column != null) && (index >= 0)) ? column.getValue(index) : Double.NaN;
+				}
+			}
+		}
+		return fitted;
+	}
+
+	/**
+	 * The first column names the kind of refit, so that the replicates of
+	 * different kinds are never mixed.
+	 *
+	 * @return the first line of the replicate file.
+	 */
+	private String createHeader() {
+		StringBuilder header = new StringBuilder();
+		header.append(REPLICATE);
+		header.append(" (");
+		header.append(getRefit().name().toLowerCase());
+		header.append(" refit)");
+		header.append(',');
+		header.append(SUM_OF_SQUARES);
+		for (String id : problem.getQuantityIdentifiers()) {
+			header.append(',');
+			header.append(id);
+		}
+		return header.toString();
+	}
+
+	/**
+	 * Reads the numbers of all replicates in an existing file and removes an
+	 * incomplete last line, which remains if a previous run was killed while
+	 * writing.
+	 *
+	 * @param file
+	 * @param header
+	 * @return the completed replicates or {@code null} if the file does not
+	 *         exist or is empty.
+	 * @throws IOException
+	 *         if the file belongs to a different problem.
+	 */
+	private static BitSet readCompleted(File file, String header)
+		throws IOException {
+		if (!file.exists() || (file.length() == 0L)) {
+			return null;
+		}
+		BitSet completed = new BitSet();
+		long validLength = 0L;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			StringBuilder line = new StringBuilder();
+			boolean first = true;
+			int c;
+			while ((c = reader.read()) >= 0) {
+				if (c != '\n') {
+					line.append((char) c);
+					continue;
+				}
+				if (first) {
+					if (!line.toString().equals(header)) {
+						throw new IOException(MessageFormat.format(
+							bundle.getString("BOOTSTRAP_INCOMPATIBLE_FILE"), file));
+					}
+					first = false;
+				} else {
+					completed.set(Integer.parseInt(line.substring(0, line.indexOf(","))));
+				}
+				validLength += line.length() + 1;
+				line.setLength(0);
+			}
+		} finally {
+			reader.close();
+		}
+		if (validLength < file.length()) {
+			RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+			try {
+				truncated.setLength(validLength);
+			} finally {
+				truncated.close();
+			}
+		}
+		if (validLength == 0L) {
+			return null;
+		}
+		logger.info(MessageFormat.format(bundle.getString("BOOTSTRAP_RESUMED"),
+			completed.cardinality(), file));
+		return completed;
+	}
+
+	/**
+	 * Appends one replicate to the file.
+	 *
+	 * @param writer
+	 * @param row
+	 * @throws IOException
+	 */
+	private static void write(BufferedWriter writer, double row[])
+		throws IOException {
+		writer.write(Integer.toString((int) row[0]));
+		for (int i = 1; i < row.length; i++) {
+			writer.write(',');
+			writer.write(Double.toString(row[i]));
+		}
+		writer.write('\n');
+		writer.flush();
+	}
+
+	/**
+	 * Computes the percentile intervals from the replicate file. Only the
+	 * values of one quantity are held in memory at a time.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private Interval[] computeIntervals(File file) throws IOException {
+		QuantityRange ranges[] = problem.getQuantityRanges();
+		Interval intervals[] = new Interval[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			double values[] = readColumn(file, i + 2);
+			Arrays.sort(values);
+			intervals[i] = new Interval();
+			intervals[i].range = ranges[i];
+			intervals[i].replicates = values.length;
+			intervals[i].refit = getRefit();
+			intervals[i].lower = percentile(values, (1d - confidenceLevel) / 2d);
+			intervals[i].median = percentile(values, 0.5d);
+			intervals[i].upper = percentile(values, (1d + confidenceLevel) / 2d);
+			logger.info(MessageFormat.format(bundle.getString("BOOTSTRAP_INTERVAL"),
+				EstimationProblem.getQuantityIdentifier(ranges[i].getQuantity()),
+				intervals[i].lower, intervals[i].upper, intervals[i].replicates,
+				intervals[i].refit.name().toLowerCase()));
+		}
+		return intervals;
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param column
+	 * @return all finite values in the given column of the replicate file.
+	 * @throws IOException
+	 */
+	private static double[] readColumn(File file, int column) throws IOException {
+		double values[] = new double[64];
+		int count = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			// skip the header
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				double value = Double.parseDouble(line.split(",")[column]);
+				if (Double.isNaN(value) || Double.isInfinite(value)) {
+					continue;
+				}
+				if (count == values.length) {
+					values = Arrays.copyOf(values, 2 * count);
+				}
+				values[count++] = value;
+			}
+		} finally {
+			reader.close();
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	/**
+	 *
+	 * @param sorted
+	 * @param p
+	 * @return the linearly interpolated percentile or {@link Double#NaN} if no
+	 *         values are given.
+	 */
+	private static double percentile(double sorted[], double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		double position = p * (sorted.length - 1);
+		int index = (int) Math.floor(position);
+		if (index >= sorted.length - 1) {
+			return sorted[sorted.length - 1];
+		}
+		return sorted[index] + (position - index) * (sorted[index + 1] - sorted[index]);
+	}
+
+	/**
+	 * Writes the confidence intervals into a CSV file.
+	 *
+	 * @param file
+	 * @param intervals
+	 * @throws IOException
+	 */
+	public static void saveConfidenceIntervals(File file, Interval intervals[])
+		throws IOException {
+		String comment = "Percentile bootstrap confidence intervals of the estimated quantities. A local refit starts from the estimate and only covers its basin of attraction.\n";
+		String header[] = {"id", "lowerBound", "median", "upperBound", "replicates", "refit"};
+		String data[][] = new String[intervals.length][];
+		for (int i = 0; i < intervals.length; i++) {
+			data[i] = new String[] {
+					EstimationProblem.getQuantityIdentifier(intervals[i].getQuantityRange().getQuantity()),
+					String.valueOf(intervals[i].getLowerBound()),
+					String.valueOf(intervals[i].getMedian()),
+					String.valueOf(intervals[i].getUpperBound()),
+					String.valueOf(intervals[i].getReplicateCount()),
+					intervals[i].getRefit().name().toLowerCase()};
+		}
+		CSVWriter writer = new CSVWriter();
+		writer.write(data, header, comment, file);
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+import de.zbit.util.ResourceManager;
+import eva2.optimization.population.Population;
+
+/**
+ * Decides when an estimation should stop. Besides a fixed budget of
+ * evaluations, which is always respected, up to three convergence criteria
+ * can be enabled:
+ * <ul>
+ * <li>stagnation: the best fitness has not improved by more than a relative
+ * tolerance for a number of generations,</li>
+ * <li>target: the best fitness has reached a given value,</li>
+ * <li>wall-clock time: a given number of seconds has elapsed.</li>
+ * </ul>
+ * The enabled criteria are combined either by OR, i.e., the first criterion
+ * that is met stops the estimation, or by AND, i.e., all of them must be met.
+ * {@link #isTerminated(Population)} has to be called once per generation.
+ *
+ * @since 2.1
+ */
+public class ConvergenceTerminator {
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * The maximal number of evaluations.
+	 */
+	private final int maxEvaluations;
+
+	/**
+	 * The number of generations without improvement after which the
+	 * estimation is considered stagnated; zero disables this criterion.
+	 */
+	private int stagnationGenerations = 0;
+
+	/**
+	 * The minimal relative improvement of the best fitness.
+	 */
+	private double stagnationTolerance = 1E-6d;
+
+	/**
+	 * The fitness to be reached; {@link Double#NaN} disables this criterion.
+	 */
+	private double targetFitness = Double.NaN;
+
+	/**
+	 * The maximal duration in milliseconds; zero disables this criterion.
+	 */
+	private long maxTime = 0L;
+
+	/**
+	 * Whether all enabled criteria must be met (AND) or only one of them (OR).
+	 */
+	private boolean allCriteria = false;
+
+	/**
+	 * The time of the first call of {@link #isTerminated(Population)}.
+	 */
+	private long start = -1L;
+
+	/**
+	 * The best fitness at the last improvement.
+	 */
+	private double bestFitness = Double.POSITIVE_INFINITY;
+
+	/**
+	 * The number of generations since the last improvement.
+	 */
+	private int generationsWithoutImprovement = 0;
+
+	/**
+	 * The reason for the termination or {@code null}.
+	 */
+	private String message = null;
+
+	/**
+	 *
+	 * @param maxEvaluations
+	 *        the budget of evaluations, which terminates the estimation
+	 *        regardless of all other criteria.
+	 */
+	public ConvergenceTerminator(int maxEvaluations) {
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	/**
+	 * Enables the stagnation criterion.
+	 *
+	 * @param generations
+	 *        the number of generations without improvement; zero disables the
+	 *        criterion.
+	 * @param tolerance
+	 *        the minimal relative improvement of the best fitness.
+	 */
+	public void setStagnation(int generations, double tolerance) {
+		stagnationGenerations = Math.max(0, generations);
+		stagnationTolerance = tolerance;
+	}
+
+	/**
+	 *
+	 * @param targetFitness
+	 *        the fitness at which the estimation stops; {@link Double#NaN}
+	 *        disables the criterion.
+	 */
+	public void setTargetFitness(double targetFitness) {
+		this.targetFitness = targetFitness;
+	}
+
+	/**
+	 *
+	 * @param seconds
+	 *        the maximal duration of the estimation; zero disables the
+	 *        criterion.
+	 */
+	public void setMaxTime(int seconds) {
+		maxTime = 1000L * Math.max(0, seconds);
+	}
+
+	/**
+	 *
+	 * @param allCriteria
+	 *        if {@code true}, all enabled criteria must be met (AND),
+	 *        otherwise the first criterion that is met stops the estimation
+	 *        (OR).
+	 */
+	public void setAllCriteria(boolean allCriteria) {
+		this.allCriteria = allCriteria;
+	}
+
+	/**
+	 *
+	 * @param population
+	 *        the population after the current generation.
+	 * @return {@code true} if the estimation should stop.
+	 */
+	public boolean isTerminated(Population population) {
+		long now = System.currentTimeMillis();
+		if (start < 0L) {
+			start = now;
+		}
+		double fitness = population.getBestEAIndividual().getFitness()[0];
+		if (Double.isInfinite(bestFitness)
+				|| (bestFitness - fitness > stagnationTolerance * Math.abs(bestFitness))) {
+			bestFitness = fitness;
+			generationsWithoutImprovement = 0;
+		} else {
+			generationsWithoutImprovement++;
+		}
+
+		if (population.getFunctionCalls() >= maxEvaluations) {
+			message = MessageFormat.format(bundle.getString("TERMINATION_BUDGET"),
+				population.getFunctionCalls());
+			return true;
+		}
+		StringBuilder reasons = new StringBuilder();
+		int enabled = 0, met = 0;
+		if (stagnationGenerations > 0) {
+			enabled++;
+			if (generationsWithoutImprovement >= stagnationGenerations) {
+				met++;
+				append(reasons, MessageFormat.format(
+					bundle.getString("TERMINATION_STAGNATION"),
+					generationsWithoutImprovement));
+			}
+		}
+		if (!Double.isNaN(targetFitness)) {
+			enabled++;
+			if (fitness <= targetFitness) {
+				met++;
+				append(reasons, MessageFormat.format(
+					bundle.getString("TERMINATION_TARGET"), fitness));
+			}
+		}
+		if (maxTime > 0L) {
+			enabled++;
+			if (now - start >= maxTime) {
+				met++;
+				append(reasons, MessageFormat.format(
+					bundle.getString("TERMINATION_TIME"), (now - start) / 1000L));
+			}
+		}
+		if ((met > 0) && (!allCriteria || (met == enabled))) {
+			message = reasons.toString();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param reasons
+	 * @param reason
+	 */
+	private static void append(StringBuilder reasons, String reason) {
+		if (reasons.length() > 0) {
+			reasons.append("; ");
+		}
+		reasons.append(reason);
+	}
+
+	/**
+	 *
+	 * @return the budget of evaluations.
+	 */
+	public int getMaxEvaluations() {
+		return maxEvaluations;
+	}
+
+	/**
+	 *
+	 * @return why the estimation has been terminated or {@code null} if it has
+	 *         not.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The state of an estimation run that is needed to resume it after the Java
+ * virtual machine has been terminated: the genotypes of the current
+ * population, the best solution found so far, the state of the
+ * {@link EstimationRandom} and the number of fitness evaluations performed. Only primitive
+ * data are stored, so that a checkpoint does not depend on the internal
+ * structure of the optimizer.
+ *
+ * @since 2.1
+ */
+public class EstimationCheckpoint implements Serializable {
+
+	/**
+	 * Generated serial version identifier.
+	 */
+	private static final long serialVersionUID = 4150783294512688170L;
+
+	/**
+	 * The identifiers of the estimated quantities to ensure that a checkpoint
+	 * is only applied to the same problem.
+	 */
+	private String quantityIdentifiers[];
+
+	/**
+	 * The genotypes of all individuals in the population.
+	 */
+	private double population[][];
+
+	/**
+	 * The best solution found so far; may be {@code null}.
+	 */
+	private double bestSolution[];
+
+	/**
+	 * The state of the random number generator when this checkpoint was
+	 * created.
+	 */
+	private long randomState;
+
+	/**
+	 * The pending Gaussian number of the random number generator or
+	 * {@link Double#NaN}.
+	 */
+	private double nextGaussian;
+
+	/**
+	 * The number of fitness evaluations performed so far.
+	 */
+	private int evaluations;
+
+	/**
+	 *
+	 * @param quantityIdentifiers
+	 * @param population
+	 * @param bestSolution
+	 * @param randomState
+	 * @param nextGaussian
+	 * @param evaluations
+	 */
+	public EstimationCheckpoint(String quantityIdentifiers[],
+		double population[][], double bestSolution[], long randomState,
+		double nextGaussian, int evaluations) {
+		this.quantityIdentifiers = quantityIdentifiers;
+		this.population = population;
+		this.bestSolution = bestSolution;
+		this.randomState = randomState;
+		this.nextGaussian = nextGaussian;
+		this.evaluations = evaluations;
+	}
+
+	/**
+	 * @return the best solution found before this checkpoint was created or
+	 *         {@code null}.
+	 */
+	public double[] getBestSolution() {
+		return bestSolution;
+	}
+
+	/**
+	 * @return the number of fitness evaluations performed before this
+	 *         checkpoint was created.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * @return the genotypes of all individuals.
+	 */
+	public double[][] getPopulation() {
+		return population;
+	}
+
+	/**
+	 * @return the pending Gaussian number of the random number generator.
+	 * @see EstimationRandom#getNextGaussian()
+	 */
+	public double getNextGaussian() {
+		return nextGaussian;
+	}
+
+	/**
+	 * @return the state of the random number generator.
+	 * @see EstimationRandom#getState()
+	 */
+	public long getRandomState() {
+		return randomState;
+	}
+
+	/**
+	 *
+	 * @param quantityIdentifiers
+	 * @return {@code true} if this checkpoint belongs to a problem with exactly
+	 *         the given quantities.
+	 */
+	public boolean isCompatible(String quantityIdentifiers[]) {
+		return Arrays.equals(this.quantityIdentifiers, quantityIdentifiers);
+	}
+
+	/**
+	 * Reads a checkpoint from the given file.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static EstimationCheckpoint load(File file) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+			new FileInputStream(file)));
+		try {
+			return (EstimationCheckpoint) in.readObject();
+		} catch (ClassNotFoundException exc) {
+			throw new IOException(exc);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes this checkpoint to the given file. The data are first written to
+	 * a temporary file in the same directory, which then replaces the given
+	 * file, so that an interruption while writing never destroys the previous
+	 * checkpoint.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+			new FileOutputStream(tmp)));
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.util.Random;
+
+/**
+ * A random number generator that produces the same sequence as
+ * {@link Random}, but whose complete internal state can be read and restored.
+ * This allows a checkpoint to memorize the state of the generator without
+ * reseeding it, so that creating checkpoints does not change the course of an
+ * estimation and a resumed run continues with exactly the random numbers the
+ * original run would have used.
+ *
+ * @since 2.1
+ */
+public class EstimationRandom extends Random {
+
+	/**
+	 * Generated serial version identifier.
+	 */
+	private static final long serialVersionUID = 6519170932813542466L;
+
+	/**
+	 * The multiplier of the linear congruential generator of {@link Random}.
+	 */
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+
+	/**
+	 * The increment of the linear congruential generator of {@link Random}.
+	 */
+	private static final long ADDEND = 0xBL;
+
+	/**
+	 * The generator works on 48 bits.
+	 */
+	private static final long MASK = (1L << 48) - 1;
+
+	/**
+	 * The current 48-bit state of the linear congruential generator.
+	 */
+	private long state;
+
+	/**
+	 * The second of the two Gaussian numbers created by the last call of
+	 * {@link #nextGaussian()} or {@link Double#NaN} if there is none.
+	 */
+	private double nextGaussian;
+
+	/**
+	 *
+	 * @param seed
+	 */
+	public EstimationRandom(long seed) {
+		super();
+		setSeed(seed);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Random#setSeed(long)
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		// also called by the constructor of the super class
+		state = (seed ^ MULTIPLIER) & MASK;
+		nextGaussian = Double.NaN;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Random#next(int)
+	 */
+	@Override
+	protected synchronized int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Random#nextGaussian()
+	 */
+	@Override
+	public synchronized double nextGaussian() {
+		if (!Double.isNaN(nextGaussian)) {
+			double gaussian = nextGaussian;
+			nextGaussian = Double.NaN;
+			return gaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2d * nextDouble() - 1d;
+			v2 = 2d * nextDouble() - 1d;
+			s = v1 * v1 + v2 * v2;
+		} while ((s >= 1d) || (s == 0d));
+		double multiplier = StrictMath.sqrt(-2d * StrictMath.log(s) / s);
+		nextGaussian = v2 * multiplier;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * @return the current 48-bit state of the generator.
+	 */
+	public synchronized long getState() {
+		return state;
+	}
+
+	/**
+	 * @return the pending Gaussian number or {@link Double#NaN} if the next
+	 *         call of {@link #nextGaussian()} creates a new pair.
+	 */
+	public synchronized double getNextGaussian() {
+		return nextGaussian;
+	}
+
+	/**
+	 * Restores a state previously obtained from {@link #getState()} and
+	 * {@link #getNextGaussian()}.
+	 *
+	 * @param state
+	 * @param nextGaussian
+	 */
+	public synchronized void setState(long state, double nextGaussian) {
+		this.state = state & MASK;
+		this.nextGaussian = nextGaussian;
+	}
+
+}
@@ -0,0 +1,296 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.sbml.optimization.problem.EstimationProblem;
+
+import de.zbit.util.ResourceManager;
+import eva2.optimization.individuals.AbstractEAIndividual;
+import eva2.optimization.individuals.InterfaceDataTypeDouble;
+import eva2.optimization.population.Population;
+
+/**
+ * Writes one line in JSON format per generation of an estimation, so that
+ * long runs can be watched and compared by other programs. Each line
+ * contains the number of the generation, the elapsed time, the number of
+ * evaluations and evaluations per second, the best and the median fitness,
+ * the number of failed simulations, the number of candidates answered by a
+ * {@link SurrogateModel} without simulation and the best parameter vector.
+ * The estimation has no cache of simulation results, so the field
+ * {@code screened}, i.e., the number of candidates answered by the surrogate
+ * model, takes the place of a cache-hit count. It is zero if no surrogate
+ * model is used.
+ * <p>
+ * {@link #record(Population, EstimationProblem)} only takes a snapshot of the
+ * population; the file is written by a background thread. If this thread
+ * cannot keep up, records are dropped instead of slowing down the optimizer.
+ *
+ * @since 2.1
+ */
+public class EstimationTelemetry {
+
+	/**
+	 * The state of the estimation after one generation.
+	 */
+	private static class Record {
+
+		/**
+		 * The number of the generation, of the failed simulations and of the
+		 * candidates screened out by the surrogate model so far.
+		 */
+		private int generation, failures, screened;
+
+		/**
+		 *
+		 */
+		private long evaluations;
+
+		/**
+		 *
+		 */
+		private double time, evaluationsPerSecond, bestFitness, medianFitness;
+
+		/**
+		 *
+		 */
+		private double best[];
+
+	}
+
+	/**
+	 * The maximal number of records waiting to be written.
+	 */
+	private static final int CAPACITY = 1024;
+
+	/**
+	 * Tells the writer thread to terminate.
+	 */
+	private static final Record END = new Record();
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(EstimationTelemetry.class.getName());
+
+	/**
+	 *
+	 */
+	private final BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(CAPACITY);
+
+	/**
+	 * The number of records that could not be queued.
+	 */
+	private final AtomicInteger dropped = new AtomicInteger(0);
+
+	/**
+	 * The identifiers of the estimated quantities.
+	 */
+	private final String identifiers[];
+
+	/**
+	 *
+	 */
+	private final BufferedWriter writer;
+
+	/**
+	 *
+	 */
+	private final Thread thread;
+
+	/**
+	 * The time in nanoseconds of the start and of the previous record.
+	 */
+	private long start, previousTime;
+
+	/**
+	 * The number of evaluations at the previous record.
+	 */
+	private long previousEvaluations;
+
+	/**
+	 *
+	 */
+	private int generation;
+
+	/**
+	 * Creates the file and starts the writer thread.
+	 *
+	 * @param file
+	 *        the file to be written; an existing file is overwritten.
+	 * @param identifiers
+	 *        the identifiers of the estimated quantities.
+	 * @throws IOException
+	 */
+	public EstimationTelemetry(File file, String identifiers[]) throws IOException {
+		this.identifiers = identifiers;
+		writer = new BufferedWriter(new FileWriter(file));
+		start = previousTime = System.nanoTime();
+		thread = new Thread(new Runnable() {
+
+			/* (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		}, getClass().getSimpleName());
+		// the telemetry must never keep the application alive
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Takes a snapshot of the given population and queues it for writing.
+	 *
+	 * @param population
+	 *        the population after a generation.
+	 * @param problem
+	 */
+	public void record(Population population, EstimationProblem problem) {
+		long now = System.nanoTime();
+		Record record = new Record();
+		record.generation = ++generation;
+		record.time = (now - start) / 1E9d;
+		record.evaluations = population.getFunctionCalls();
+		record.evaluationsPerSecond = (record.evaluations - previousEvaluations)
+				/ ((now - previousTime) / 1E9d);
+		previousTime = now;
+		previousEvaluations = record.evaluations;
+
+		double fitness[] = new double[population.size()];
+		for (int i = 0; i < fitness.length; i++) {
+			fitness[i] = population.getEAIndividual(i).getFitness()[0];
+		}
+		Arrays.sort(fitness);
+		record.medianFitness = (fitness.length == 0) ? Double.NaN
+				: (fitness.length % 2 == 1) ? fitness[fitness.length / 2]
+						: (fitness[fitness.length / 2 - 1] + fitness[fitness.length / 2]) / 2d;
+		AbstractEAIndividual best = population.getBestEAIndividual();
+		record.bestFitness = best.getFitness()[0];
+		record.best = ((InterfaceDataTypeDouble) best).getDoubleData().clone();
+
+		record.failures = problem.getFailedEvaluationCount();
+		SurrogateModel surrogate = problem.getSurrogateModel();
+		record.screened = (surrogate != null) ? surrogate.getScreenedCount() : 0;
+
+		if (!queue.offer(record)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Writes all queued records and closes the file.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void close() throws InterruptedException {
+		while (thread.isAlive() && !queue.offer(END, 100L, TimeUnit.MILLISECONDS)) {
+			// the writer thread is still busy
+		}
+		thread.join();
+		if (dropped.get() > 0) {
+			logger.warning(MessageFormat.format(bundle.getString("TELEMETRY_DROPPED"),
+				dropped.get()));
+		}
+	}
+
+	/**
+	 * The loop of the writer thread.
+	 */
+	private void writeRecords() {
+		try {
+			try {
+				Record record;
+				while ((record = queue.take()) != END) {
+					writer.write(toJSON(record));
+					writer.write('\n');
+					if (queue.isEmpty()) {
+						writer.flush();
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (InterruptedException exc) {
+			// terminate
+		} catch (IOException exc) {
+			logger.warning(MessageFormat.format(
+				bundle.getString("TELEMETRY_WRITE_FAILED"), exc.getLocalizedMessage()));
+		}
+	}
+
+	/**
+	 *
+	 * @param record
+	 * @return one line in JSON format.
+	 */
+	private String toJSON(Record record) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"generation\":").append(record.generation);
+		json.append(",\"time\":").append(toJSON(record.time));
+		json.append(",\"evaluations\":").append(record.evaluations);
+		json.append(",\"evaluationsPerSecond\":").append(toJSON(record.evaluationsPerSecond));
+		json.append(",\"bestFitness\":").append(toJSON(record.bestFitness));
+		json.append(",\"medianFitness\":").append(toJSON(record.medianFitness));
+		json.append(",\"failures\":").append(record.failures);
+		json.append(",\"screened\":").append(record.screened);
+		json.append(",\"best\":{");
+		for (int i = 0; i < record.best.length; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append('"');
+			json.append(identifiers[i].replace("\\", "\\\\").replace("\"", "\\\""));
+			json.append("\":");
+			json.append(toJSON(record.best[i]));
+		}
+		json.append("}}");
+		return json.toString();
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return the value or {@code null} if it is not finite, because JSON does
+	 *         not support such values.
+	 */
+	private static String toJSON(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return Double.toString(value);
+	}
+
+}
@@ -0,0 +1,411 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.sbml.optimization.problem.EstimationProblemPool;
+
+import de.zbit.util.ResourceManager;
+import eva2.tools.math.Jama.Matrix;
+
+/**
+ * Local refinement of a solution found by a global optimization procedure
+ * using the Levenberg&ndash;Marquardt algorithm. The algorithm minimizes the
+ * sum of squared residuals between simulation and reference data (see
+ * {@link EstimationProblem#computeResiduals(double[])}), where the Jacobian
+ * matrix is approximated by finite differences. Since all columns of this
+ * matrix are independent from each other, they are computed concurrently on
+ * independent copies of the {@link EstimationProblem}.
+ * <p>
+ * The refined solution is only returned if it also improves the actual
+ * fitness of the {@link EstimationProblem}, which may be based on a different
+ * {@link org.simulator.math.QualityMeasure} than the sum of squares.
+ *
+ * @since 2.1
+ */
+public class LevenbergMarquardt {
+
+	/**
+	 * Computes the residual vectors for several points in the search space.
+	 */
+	static interface Residuals {
+
+		/**
+		 *
+		 * @param x
+		 *        the points to be evaluated.
+		 * @return the residuals of each point, where an entry is {@code null} if
+		 *         the corresponding simulation failed.
+		 * @throws InterruptedException
+		 * @throws ExecutionException
+		 */
+		public double[][] compute(double[]... x) throws InterruptedException,
+			ExecutionException;
+
+	}
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(LevenbergMarquardt.class.getName());
+
+	/**
+	 * Relative step size for the finite difference approximation of the
+	 * Jacobian. This is considerably larger than the square root of the machine
+	 * precision because the residuals are only as precise as the tolerances of
+	 * the ODE solver.
+	 */
+	private static final double FINITE_DIFFERENCE_STEP = 1E-4d;
+
+	/**
+	 * The damping factor is not increased beyond this value. Reaching it means
+	 * that no step can improve the current solution any further.
+	 */
+	private static final double MAX_DAMPING = 1E10d;
+
+	/**
+	 * The problem whose solution is to be refined.
+	 */
+	private EstimationProblem problem;
+
+	/**
+	 * The maximal number of iterations, i.e., Jacobian evaluations.
+	 */
+	private int maxIterations;
+
+	/**
+	 * The number of threads that compute the Jacobian.
+	 */
+	private int numberOfThreads;
+
+	/**
+	 * The refinement stops if the relative improvement of the sum of squares
+	 * within one iteration falls below this value.
+	 */
+	private double tolerance;
+
+	/**
+	 * The number of simulations performed during the last call of
+	 * {@link #refine(double[])}.
+	 */
+	private int evaluations;
+
+	/**
+	 * The sum of squared residuals at the result of the last minimization.
+	 */
+	private double sumOfSquares;
+
+	/**
+	 *
+	 * @param problem
+	 * @param maxIterations
+	 * @param numberOfThreads
+	 */
+	public LevenbergMarquardt(EstimationProblem problem, int maxIterations,
+		int numberOfThreads) {
+		this.problem = problem;
+		this.maxIterations = maxIterations;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		this.tolerance = 1E-8d;
+	}
+
+	/**
+	 *
+	 * @return the number of simulations performed during the last refinement.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 *
+	 * @return the sum of squared residuals at the result of the last
+	 *         refinement or {@link Double#NaN} if the simulation failed.
+	 */
+	public double getSumOfSquares() {
+		return sumOfSquares;
+	}
+
+	/**
+	 * @param tolerance
+	 *        the minimal relative improvement of the sum of squares per
+	 *        iteration.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Refines the given solution.
+	 *
+	 * @param x
+	 *        the starting point, typically the best solution of a global
+	 *        optimization procedure.
+	 * @return the refined solution or the given solution if no improvement could
+	 *         be found.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 * @throws InterruptedException
+	 */
+	public double[] refine(double x[]) throws SBMLException,
+		ModelOverdeterminedException, InterruptedException {
+		evaluations = 0;
+		double current[] = x;
+		final EstimationProblemPool pool = new EstimationProblemPool(problem,
+			Math.min(numberOfThreads, x.length));
+		try {
+			current = minimize(new Residuals() {
+
+				/* (non-Javadoc)
+				 * @see org.sbml.optimization.LevenbergMarquardt.Residuals#compute(double[][])
+				 */
+				@Override
+				public double[][] compute(double[]... points)
+					throws InterruptedException, ExecutionException {
+					return pool.computeResiduals(points);
+				}
+			}, x, new boolean[x.length]);
+		} catch (ExecutionException exc) {
+			logger.warning(exc.getLocalizedMessage());
+		} finally {
+			pool.shutdown();
+		}
+		// Only accept the refined solution if it also improves the actual fitness.
+		double fitnessBefore = problem.evaluate(x)[0];
+		double fitnessAfter = problem.evaluate(current)[0];
+		evaluations += 2;
+		if (fitnessAfter < fitnessBefore) {
+			logger.info(MessageFormat.format(
+				bundle.getString("LOCAL_REFINEMENT_IMPROVED"), fitnessBefore, fitnessAfter));
+			return current;
+		}
+		problem.evaluate(x);
+		return x;
+	}
+
+	/**
+	 * Minimizes the sum of squared residuals starting from the given point,
+	 * where the values of all quantities marked as fixed are not changed.
+	 * Afterwards, {@link #getSumOfSquares()} gives the sum of squares at the
+	 * returned point.
+	 *
+	 * @param residualFunction
+	 * @param x
+	 *        the starting point.
+	 * @param fixed
+	 *        for each quantity whether its value is to be kept constant.
+	 * @return the best point found or the starting point if its simulation
+	 *         failed.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	double[] minimize(Residuals residualFunction, double x[], boolean fixed[])
+		throws InterruptedException, ExecutionException {
+		QuantityRange ranges[] = problem.getQuantityRanges();
+		double current[] = clamp(x.clone(), ranges);
+		sumOfSquares = Double.NaN;
+		double residuals[] = residualFunction.compute(current)[0];
+		evaluations++;
+		if (residuals == null) {
+			return x;
+		}
+		double cost = sumOfSquares(residuals), lambda = 1E-3d;
+		double jacobian[][], trial[], trialResiduals[], trialCost;
+		int iteration;
+		for (iteration = 0; (iteration < maxIterations) && (lambda < MAX_DAMPING); iteration++) {
+			jacobian = computeJacobian(residualFunction, current, residuals, ranges, fixed);
+			if (jacobian == null) {
+				break;
+			}
+			boolean improved = false;
+			while (!improved && (lambda < MAX_DAMPING)) {
+				trial = clamp(step(jacobian, residuals, current, lambda, fixed), ranges);
+				trialResiduals = residualFunction.compute(trial)[0];
+				evaluations++;
+				trialCost = (trialResiduals != null) ? sumOfSquares(trialResiduals) : Double.POSITIVE_INFINITY;
+				if (trialCost < cost) {
+					improved = true;
+					lambda = Math.max(lambda / 10d, 1E-12d);
+					double improvement = (cost - trialCost) / cost;
+					current = trial;
+					residuals = trialResiduals;
+					cost = trialCost;
+					if (improvement < tolerance) {
+						lambda = MAX_DAMPING;
+					}
+				} else {
+					lambda *= 10d;
+				}
+			}
+		}
+		sumOfSquares = cost;
+		logger.fine(MessageFormat.format(
+			bundle.getString("LOCAL_REFINEMENT_FINISHED"), iteration, evaluations, cost));
+		return current;
+	}
+
+	/**
+	 * Approximates the Jacobian matrix of the residuals by forward (or, at the
+	 * upper bound, backward) differences. The columns are computed concurrently
+	 * if the given residual function supports this.
+	 *
+	 * @param residualFunction
+	 * @param x
+	 * @param residuals
+	 *        the residuals at {@code x}.
+	 * @param ranges
+	 * @param fixed
+	 *        the columns of all fixed quantities remain zero.
+	 * @return the matrix with one row per residual and one column per
+	 *         quantity or {@code null} if one of the simulations failed.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private double[][] computeJacobian(Residuals residualFunction, double x[],
+		double residuals[], QuantityRange ranges[], boolean fixed[])
+		throws InterruptedException, ExecutionException {
+		int free = 0, j, k;
+		for (j = 0; j < x.length; j++) {
+			if (!fixed[j]) {
+				free++;
+			}
+		}
+		double points[][] = new double[free][];
+		double h[] = new double[x.length];
+		for (j = 0, k = 0; j < x.length; j++) {
+			if (fixed[j]) {
+				continue;
+			}
+			h[j] = FINITE_DIFFERENCE_STEP * Math.max(Math.abs(x[j]), 1d);
+			if (x[j] + h[j] > ranges[j].getMaximum()) {
+				h[j] = -h[j];
+			}
+			points[k] = x.clone();
+			points[k++][j] += h[j];
+		}
+		double columns[][] = residualFunction.compute(points);
+		evaluations += columns.length;
+		double jacobian[][] = new double[residuals.length][x.length];
+		for (j = 0, k = 0; j < x.length; j++) {
+			if (fixed[j]) {
+				continue;
+			}
+			if (columns[k] == null) {
+				return null;
+			}
+			for (int i = 0; i < residuals.length; i++) {
+				jacobian[i][j] = (columns[k][i] - residuals[i]) / h[j];
+			}
+			k++;
+		}
+		return jacobian;
+	}
+
+	/**
+	 * Solves the damped normal equations
+	 * (J<sup>T</sup>J + &lambda; diag(J<sup>T</sup>J)) &delta; = -J<sup>T</sup>r
+	 * and returns {@code x} + &delta;.
+	 *
+	 * @param jacobian
+	 * @param residuals
+	 * @param x
+	 * @param lambda
+	 * @param fixed
+	 *        the values of these quantities are not changed.
+	 * @return
+	 */
+	private double[] step(double jacobian[][], double residuals[], double x[],
+		double lambda, boolean fixed[]) {
+		int n = x.length, i, j, k;
+		double a[][] = new double[n][n];
+		double g[][] = new double[n][1];
+		for (i = 0; i < residuals.length; i++) {
+			for (j = 0; j < n; j++) {
+				g[j][0] -= jacobian[i][j] * residuals[i];
+				for (k = j; k < n; k++) {
+					a[j][k] += jacobian[i][j] * jacobian[i][k];
+				}
+			}
+		}
+		for (j = 0; j < n; j++) {
+			for (k = 0; k < j; k++) {
+				a[j][k] = a[k][j];
+			}
+			// a small constant keeps the system regular for insensitive quantities
+			a[j][j] += lambda * (a[j][j] + 1E-12d);
+		}
+		double delta[][];
+		try {
+			delta = new Matrix(a).solve(new Matrix(g)).getArray();
+		} catch (RuntimeException exc) {
+			// singular matrix: fall back to a steepest descent step
+			delta = new double[n][1];
+			for (j = 0; j < n; j++) {
+				delta[j][0] = g[j][0] / lambda;
+			}
+		}
+		double result[] = new double[n];
+		for (j = 0; j < n; j++) {
+			result[j] = fixed[j] ? x[j] : x[j] + delta[j][0];
+		}
+		return result;
+	}
+
+	/**
+	 * Ensures that all values are within the absolute ranges of their
+	 * quantities.
+	 *
+	 * @param x
+	 * @param ranges
+	 * @return the modified array {@code x}.
+	 */
+	private static double[] clamp(double x[], QuantityRange ranges[]) {
+		for (int i = 0; i < x.length; i++) {
+			if (x[i] < ranges[i].getMinimum()) {
+				x[i] = ranges[i].getMinimum();
+			} else if (x[i] > ranges[i].getMaximum()) {
+				x[i] = ranges[i].getMaximum();
+			}
+		}
+		return x;
+	}
+
+	/**
+	 *
+	 * @param residuals
+	 * @return
+	 */
+	private static double sumOfSquares(double residuals[]) {
+		double sum = 0d;
+		for (double r : residuals) {
+			sum += r * r;
+		}
+		return sum;
+	}
+
+}
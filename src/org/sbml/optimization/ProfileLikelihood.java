@@ -0,0 +1,446 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.ChiSquaredDistributionImpl;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.sbml.optimization.problem.EstimationProblemPool;
+import org.simulator.math.odes.MultiTable;
+
+import de.zbit.io.csv.CSVWriter;
+import de.zbit.util.ResourceManager;
+
+/**
+ * Practical identifiability analysis by the profile likelihood. Assuming
+ * normally distributed measurement errors, the likelihood of a parameter set
+ * is determined by the sum of squared residuals. For each estimated
+ * {@link QuantityRange}, the quantity is moved step by step from the optimum
+ * towards both bounds of its range, and at each step all other quantities are
+ * re-optimized by a {@link LevenbergMarquardt} search. The confidence interval
+ * of the quantity contains all values whose profile stays below the threshold
+ * given by the &chi;<sup>2</sup> distribution with one degree of freedom.
+ * <p>
+ * Each of the two directions of each profile is an independent task that runs
+ * on its own copy of the {@link EstimationProblem}. Within a direction, each
+ * re-optimization starts from the result of the neighboring profile point.
+ *
+ * @since 2.1
+ */
+public class ProfileLikelihood {
+
+	/**
+	 * The profile of a single quantity together with its confidence interval.
+	 */
+	public static class Profile {
+
+		/**
+		 * The profiled quantity.
+		 */
+		private QuantityRange range;
+
+		/**
+		 * The profile points in ascending order of the profiled value and the
+		 * corresponding sums of squared residuals.
+		 */
+		private double values[], sumsOfSquares[];
+
+		/**
+		 * The bounds of the confidence interval; infinite if the profile does not
+		 * exceed the threshold within the range of the quantity.
+		 */
+		private double lower, upper;
+
+		/**
+		 *
+		 * @return the profiled quantity.
+		 */
+		public QuantityRange getQuantityRange() {
+			return range;
+		}
+
+		/**
+		 *
+		 * @return the values of the profiled quantity in ascending order.
+		 */
+		public double[] getValues() {
+			return values;
+		}
+
+		/**
+		 *
+		 * @return the minimal sum of squared residuals for each of the values in
+		 *         {@link #getValues()}.
+		 */
+		public double[] getSumsOfSquares() {
+			return sumsOfSquares;
+		}
+
+		/**
+		 *
+		 * @return the lower bound of the confidence interval or
+		 *         {@link Double#NEGATIVE_INFINITY} if the quantity is not
+		 *         identifiable towards smaller values.
+		 */
+		public double getLowerBound() {
+			return lower;
+		}
+
+		/**
+		 *
+		 * @return the upper bound of the confidence interval or
+		 *         {@link Double#POSITIVE_INFINITY} if the quantity is not
+		 *         identifiable towards larger values.
+		 */
+		public double getUpperBound() {
+			return upper;
+		}
+
+		/**
+		 *
+		 * @return {@code true} if both bounds of the confidence interval are
+		 *         finite.
+		 */
+		public boolean isIdentifiable() {
+			return !Double.isInfinite(lower) && !Double.isInfinite(upper);
+		}
+
+	}
+
+	/**
+	 * One direction of one profile.
+	 */
+	private static class Branch {
+
+		/**
+		 * The profile points in the order of their computation.
+		 */
+		private List<double[]> points = new ArrayList<double[]>();
+
+		/**
+		 * The bound of the confidence interval in this direction.
+		 */
+		private double bound;
+
+	}
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(ProfileLikelihood.class.getName());
+
+	/**
+	 * The problem whose quantities are to be profiled.
+	 */
+	private EstimationProblem problem;
+
+	/**
+	 * The number of concurrently computed profile directions.
+	 */
+	private int numberOfThreads;
+
+	/**
+	 * The number of profile points between the optimum and each bound of a
+	 * quantity.
+	 */
+	private int numberOfSteps;
+
+	/**
+	 * The maximal number of iterations of each re-optimization.
+	 */
+	private int maxIterations;
+
+	/**
+	 * The probability covered by the confidence intervals.
+	 */
+	private double confidenceLevel;
+
+	/**
+	 *
+	 * @param problem
+	 * @param numberOfThreads
+	 */
+	public ProfileLikelihood(EstimationProblem problem, int numberOfThreads) {
+		this.problem = problem;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		this.numberOfSteps = 10;
+		this.maxIterations = 20;
+		this.confidenceLevel = 0.95d;
+	}
+
+	/**
+	 * @param numberOfSteps
+	 *        the number of profile points between the optimum and each bound of
+	 *        a quantity.
+	 */
+	public void setNumberOfSteps(int numberOfSteps) {
+		this.numberOfSteps = Math.max(1, numberOfSteps);
+	}
+
+	/**
+	 * @param maxIterations
+	 *        the maximal number of iterations of each re-optimization.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * @param confidenceLevel
+	 *        the probability covered by the confidence intervals, e.g., 0.95.
+	 */
+	public void setConfidenceLevel(double confidenceLevel) {
+		this.confidenceLevel = confidenceLevel;
+	}
+
+	/**
+	 * Computes the profiles of all quantities of the problem.
+	 *
+	 * @param optimum
+	 *        the best solution found by a previous estimation.
+	 * @return one {@link Profile} per {@link QuantityRange} of the problem.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @throws MathException
+	 */
+	public Profile[] compute(final double optimum[]) throws SBMLException,
+		ModelOverdeterminedException, InterruptedException, ExecutionException,
+		MathException {
+		final QuantityRange ranges[] = problem.getQuantityRanges();
+		EstimationProblemPool pool = new EstimationProblemPool(problem,
+			Math.min(numberOfThreads, 2 * optimum.length));
+		try {
+			double residuals[] = pool.computeResiduals(optimum)[0];
+			if (residuals == null) {
+				throw new IllegalArgumentException(
+					bundle.getString("PROFILE_LIKELIHOOD_INVALID_OPTIMUM"));
+			}
+			final double minimum = sumOfSquares(residuals);
+			// threshold of the likelihood ratio with the error variance estimated from the optimum
+			int degreesOfFreedom = Math.max(1, countDataPoints() - optimum.length);
+			double quantile = new ChiSquaredDistributionImpl(1d).inverseCumulativeProbability(confidenceLevel);
+			final double threshold = minimum * (1d + quantile / degreesOfFreedom);
+
+			List<EstimationProblemPool.Task<Branch>> tasks = new ArrayList<EstimationProblemPool.Task<Branch>>(2 * optimum.length);
+			for (int i = 0; i < optimum.length; i++) {
+				for (final boolean upwards : new boolean[] {false, true}) {
+					final int index = i;
+					tasks.add(new EstimationProblemPool.Task<Branch>() {
+
+						/* (non-Javadoc)
+						 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+						 */
+						@Override
+						public Branch call(EstimationProblem copy) throws Exception {
+							double bound = upwards ? ranges[index].getMaximum() : ranges[index].getMinimum();
+							return computeBranch(copy, optimum, minimum, index, bound, threshold);
+						}
+					});
+				}
+			}
+			List<Branch> branches = pool.invokeAll(tasks);
+			Profile profiles[] = new Profile[optimum.length];
+			for (int i = 0; i < optimum.length; i++) {
+				profiles[i] = createProfile(ranges[i], optimum[i], minimum,
+					branches.get(2 * i), branches.get(2 * i + 1));
+				logger.info(MessageFormat.format(
+					bundle.getString("PROFILE_LIKELIHOOD_INTERVAL"),
+					EstimationProblem.getQuantityIdentifier(ranges[i].getQuantity()),
+					profiles[i].getLowerBound(), profiles[i].getUpperBound()));
+			}
+			return profiles;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes the profile of one quantity from its optimal value towards the
+	 * given bound. The computation stops as soon as the profile exceeds the
+	 * threshold.
+	 *
+	 * @param copy
+	 *        a copy of the problem that is exclusively used by this branch.
+	 * @param optimum
+	 * @param minimum
+	 *        the sum of squares at the optimum.
+	 * @param index
+	 *        the index of the profiled quantity.
+	 * @param bound
+	 *        the bound of the quantity in the direction of this branch.
+	 * @param threshold
+	 * @return
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private Branch computeBranch(final EstimationProblem copy, double optimum[],
+		double minimum, int index, double bound, double threshold)
+		throws InterruptedException, ExecutionException {
+		Branch branch = new Branch();
+		branch.bound = (bound < optimum[index]) ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		LevenbergMarquardt optimizer = new LevenbergMarquardt(copy, maxIterations, 1);
+		LevenbergMarquardt.Residuals residualFunction = new LevenbergMarquardt.Residuals() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.optimization.LevenbergMarquardt.Residuals#compute(double[][])
+			 */
+			@Override
+			public double[][] compute(double[]... x) {
+				double residuals[][] = new double[x.length][];
+				for (int i = 0; i < x.length; i++) {
+					residuals[i] = copy.computeResiduals(x[i]);
+				}
+				return residuals;
+			}
+		};
+		boolean fixed[] = new boolean[optimum.length];
+		fixed[index] = true;
+		double x[] = optimum.clone();
+		double previousValue = optimum[index], previousCost = minimum;
+		double stepSize = (bound - optimum[index]) / numberOfSteps;
+		if (stepSize == 0d) {
+			return branch;
+		}
+		for (int step = 1; step <= numberOfSteps; step++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException();
+			}
+			// warm start from the previous profile point
+			x[index] = optimum[index] + step * stepSize;
+			x = optimizer.minimize(residualFunction, x, fixed);
+			double cost = optimizer.getSumOfSquares();
+			if (Double.isNaN(cost)) {
+				cost = Double.POSITIVE_INFINITY;
+			}
+			branch.points.add(new double[] {x[index], cost});
+			if (cost > threshold) {
+				// linear interpolation between the last two profile points
+				branch.bound = Double.isInfinite(cost) ? previousValue : previousValue
+						+ (x[index] - previousValue) * (threshold - previousCost) / (cost - previousCost);
+				break;
+			}
+			previousValue = x[index];
+			previousCost = cost;
+		}
+		return branch;
+	}
+
+	/**
+	 *
+	 * @param range
+	 * @param optimalValue
+	 * @param minimum
+	 * @param downwards
+	 * @param upwards
+	 * @return
+	 */
+	private static Profile createProfile(QuantityRange range,
+		double optimalValue, double minimum, Branch downwards, Branch upwards) {
+		Profile profile = new Profile();
+		profile.range = range;
+		profile.lower = downwards.bound;
+		profile.upper = upwards.bound;
+		int size = downwards.points.size() + upwards.points.size() + 1, i = 0;
+		profile.values = new double[size];
+		profile.sumsOfSquares = new double[size];
+		for (int j = downwards.points.size() - 1; j >= 0; j--, i++) {
+			profile.values[i] = downwards.points.get(j)[0];
+			profile.sumsOfSquares[i] = downwards.points.get(j)[1];
+		}
+		profile.values[i] = optimalValue;
+		profile.sumsOfSquares[i++] = minimum;
+		for (double point[] : upwards.points) {
+			profile.values[i] = point[0];
+			profile.sumsOfSquares[i++] = point[1];
+		}
+		return profile;
+	}
+
+	/**
+	 *
+	 * @return the number of measured values in all reference data sets.
+	 */
+	private int countDataPoints() {
+		int count = 0;
+		for (MultiTable data : problem.getReferenceData()) {
+			MultiTable.Block block = data.getBlock(0);
+			for (int col = 0; col < block.getColumnCount(); col++) {
+				for (int row = 0; row < block.getRowCount(); row++) {
+					if (!Double.isNaN(block.getColumn(col).getValue(row))) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 *
+	 * @param residuals
+	 * @return
+	 */
+	private static double sumOfSquares(double residuals[]) {
+		double sum = 0d;
+		for (double r : residuals) {
+			sum += r * r;
+		}
+		return sum;
+	}
+
+	/**
+	 * Writes the confidence intervals of the given profiles into a CSV file.
+	 *
+	 * @param file
+	 * @param profiles
+	 * @throws IOException
+	 */
+	public static void saveConfidenceIntervals(File file, Profile profiles[])
+		throws IOException {
+		String comment = "Confidence intervals of the estimated quantities based on the profile likelihood.\n"
+				+ "Infinite bounds indicate that a quantity is not identifiable in this direction.\n";
+		String header[] = {"id", "lowerBound", "upperBound", "identifiable"};
+		String data[][] = new String[profiles.length][];
+		for (int i = 0; i < profiles.length; i++) {
+			data[i] = new String[] {
+					EstimationProblem.getQuantityIdentifier(profiles[i].getQuantityRange().getQuantity()),
+					String.valueOf(profiles[i].getLowerBound()),
+					String.valueOf(profiles[i].getUpperBound()),
+					String.valueOf(profiles[i].isIdentifiable())};
+		}
+		CSVWriter writer = new CSVWriter();
+		writer.write(data, header, comment, file);
+	}
+
+}
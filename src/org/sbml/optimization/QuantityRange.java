@@ -167,6 +167,25 @@ public class QuantityRange implements Cloneable, Serializable {
 		}
 	}
 	
+	/**
+	 * Creates a copy of this {@link QuantityRange} with identical ranges that
+	 * refers to the given {@link Quantity}, e.g., the corresponding element in a
+	 * cloned {@link org.sbml.jsbml.Model}.
+	 *
+	 * @param q
+	 *        the {@link Quantity} the new range belongs to.
+	 * @return a new {@link QuantityRange} for the given {@link Quantity}.
+	 */
+	public QuantityRange copyFor(Quantity q) {
+		QuantityRange range = new QuantityRange(q, isSelected(),
+			getInitialMinimum(), getInitialMaximum(), getMinimum(), getMaximum());
+		if (gaussianInitialization) {
+			range.setInitialGaussianValue(initialGaussianValue);
+			range.setGaussianStandardDeviation(gaussianStandardDeviation);
+		}
+		return range;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
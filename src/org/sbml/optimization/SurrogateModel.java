@@ -0,0 +1,308 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eva2.tools.math.Jama.Matrix;
+
+/**
+ * A radial basis function model of the fitness landscape that is used to
+ * pre-screen candidate solutions before they are simulated. The model
+ * interpolates all (parameter, fitness) pairs evaluated so far by cubic radial
+ * basis functions with a linear polynomial tail, where all parameters are
+ * scaled to the unit interval by the ranges of their quantities.
+ * <p>
+ * A candidate is considered promising if its predicted fitness is not worse
+ * than a certain quantile of the fitness values simulated so far. Only
+ * promising candidates are simulated; all others receive their predicted
+ * fitness, which is by construction worse than this quantile, so that they
+ * can never replace good solutions. To keep the model from getting stuck in
+ * wrong predictions, every {@link #EXPLORATION_INTERVAL}-th rejected candidate
+ * is simulated anyway. Screened candidates do not count as fitness evaluations
+ * (see
+ * {@link org.sbml.optimization.problem.EstimationProblem#discountScreenedCandidates(eva2.optimization.population.Population)}).
+ *
+ * @since 2.1
+ */
+public class SurrogateModel {
+
+	/**
+	 * Every rejected candidate with this number is simulated nevertheless.
+	 */
+	public static final int EXPLORATION_INTERVAL = 10;
+
+	/**
+	 * The model is fitted again after this number of new points.
+	 */
+	private static final int REFIT_INTERVAL = 10;
+
+	/**
+	 * The maximal number of points in the archive. If more points are added,
+	 * the worst ones are removed, since the model should be precise in the
+	 * promising regions.
+	 */
+	private static final int MAX_POINTS = 300;
+
+	/**
+	 * The lower bound and the size of the range of each quantity.
+	 */
+	private final double offset[], scale[];
+
+	/**
+	 * The fraction of the simulated fitness values a promising candidate must
+	 * not exceed.
+	 */
+	private final double quantile;
+
+	/**
+	 * The scaled parameters of all simulated points.
+	 */
+	private final List<double[]> points = new ArrayList<double[]>();
+
+	/**
+	 * The fitness values of all simulated points.
+	 */
+	private final List<Double> values = new ArrayList<Double>();
+
+	/**
+	 * The centers and the coefficients of the radial basis functions followed
+	 * by the coefficients of the polynomial tail; {@code null} if the model has
+	 * not been fitted.
+	 */
+	private double centers[][], coefficients[];
+
+	/**
+	 * The fitness value a candidate must not exceed to be simulated.
+	 */
+	private double threshold;
+
+	/**
+	 *
+	 */
+	private int newPoints, rejectedSinceExploration, screened, simulated;
+
+	/**
+	 *
+	 * @param ranges
+	 *        the ranges of all quantities.
+	 * @param quantile
+	 *        the fraction (between zero and one) of the simulated fitness
+	 *        values a promising candidate must not exceed.
+	 */
+	public SurrogateModel(QuantityRange ranges[], double quantile) {
+		offset = new double[ranges.length];
+		scale = new double[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			offset[i] = ranges[i].getMinimum();
+			scale[i] = ranges[i].getMaximum() - ranges[i].getMinimum();
+			if (!(scale[i] > 0d) || Double.isInfinite(scale[i])) {
+				scale[i] = 1d;
+			}
+		}
+		this.quantile = Math.max(0d, Math.min(1d, quantile));
+	}
+
+	/**
+	 * Adds the result of a simulation to the archive.
+	 *
+	 * @param x
+	 * @param fitness
+	 */
+	public synchronized void add(double x[], double fitness) {
+		simulated++;
+		if (Double.isNaN(fitness) || Double.isInfinite(fitness)) {
+			return;
+		}
+		points.add(normalize(x));
+		values.add(Double.valueOf(fitness));
+		newPoints++;
+		if (points.size() > MAX_POINTS) {
+			int worst = 0;
+			for (int i = 1; i < values.size(); i++) {
+				if (values.get(i).doubleValue() > values.get(worst).doubleValue()) {
+					worst = i;
+				}
+			}
+			points.remove(worst);
+			values.remove(worst);
+		}
+	}
+
+	/**
+	 * Decides whether or not the given candidate should be simulated.
+	 *
+	 * @param x
+	 * @return {@link Double#NaN} if the candidate is promising and must be
+	 *         simulated, otherwise the predicted fitness to be used instead of a
+	 *         simulation.
+	 */
+	public synchronized double screen(double x[]) {
+		if (!isReady()) {
+			return Double.NaN;
+		}
+		double predicted = predict(x);
+		if (!(predicted > threshold)) {
+			return Double.NaN;
+		}
+		if (++rejectedSinceExploration >= EXPLORATION_INTERVAL) {
+			rejectedSinceExploration = 0;
+			return Double.NaN;
+		}
+		screened++;
+		return predicted;
+	}
+
+	/**
+	 * Fits the model if enough points are available and the last fit is
+	 * outdated.
+	 *
+	 * @return {@code true} if a model is available.
+	 */
+	public synchronized boolean isReady() {
+		int minPoints = Math.max(20, 2 * (offset.length + 1));
+		if ((points.size() >= minPoints)
+				&& ((coefficients == null) || (newPoints >= REFIT_INTERVAL))) {
+			fit();
+		}
+		return coefficients != null;
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @return the predicted fitness of the given point or {@link Double#NaN}
+	 *         if no model is available.
+	 */
+	public synchronized double predict(double x[]) {
+		if (coefficients == null) {
+			return Double.NaN;
+		}
+		double y[] = normalize(x);
+		int n = centers.length, d = y.length;
+		double sum = coefficients[n];
+		for (int k = 0; k < d; k++) {
+			sum += coefficients[n + 1 + k] * y[k];
+		}
+		for (int i = 0; i < n; i++) {
+			sum += coefficients[i] * kernel(distance(centers[i], y));
+		}
+		return sum;
+	}
+
+	/**
+	 *
+	 * @return the number of candidates that have not been simulated due to the
+	 *         surrogate model.
+	 */
+	public synchronized int getScreenedCount() {
+		return screened;
+	}
+
+	/**
+	 *
+	 * @return the number of simulations reported to this model.
+	 */
+	public synchronized int getSimulatedCount() {
+		return simulated;
+	}
+
+	/**
+	 * Solves the interpolation system of the radial basis functions.
+	 */
+	private void fit() {
+		int n = points.size(), d = offset.length, i, j;
+		double sorted[] = new double[n];
+		for (i = 0; i < n; i++) {
+			sorted[i] = values.get(i).doubleValue();
+		}
+		Arrays.sort(sorted);
+		threshold = sorted[(int) Math.min(n - 1, Math.floor(quantile * (n - 1)))];
+		// very bad values, e.g., of failed simulations, would dominate the interpolation
+		double cap = sorted[(int) Math.floor(0.9d * (n - 1))];
+
+		double a[][] = new double[n + d + 1][n + d + 1];
+		double b[][] = new double[n + d + 1][1];
+		double r;
+		for (i = 0; i < n; i++) {
+			for (j = i + 1; j < n; j++) {
+				r = kernel(distance(points.get(i), points.get(j)));
+				a[i][j] = r;
+				a[j][i] = r;
+			}
+			// a tiny ridge keeps the system regular for (almost) duplicate points
+			a[i][i] = 1E-10d;
+			a[i][n] = a[n][i] = 1d;
+			for (j = 0; j < d; j++) {
+				a[i][n + 1 + j] = a[n + 1 + j][i] = points.get(i)[j];
+			}
+			b[i][0] = Math.min(values.get(i).doubleValue(), cap);
+		}
+		try {
+			double solution[][] = new Matrix(a).solve(new Matrix(b)).getArray();
+			coefficients = new double[n + d + 1];
+			for (i = 0; i < coefficients.length; i++) {
+				coefficients[i] = solution[i][0];
+			}
+			centers = points.toArray(new double[n][]);
+		} catch (RuntimeException exc) {
+			// singular system, e.g., all points on a hyperplane
+			coefficients = null;
+			centers = null;
+		}
+		newPoints = 0;
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @return the point scaled to the unit hypercube.
+	 */
+	private double[] normalize(double x[]) {
+		double y[] = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			y[i] = (x[i] - offset[i]) / scale[i];
+		}
+		return y;
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @param y
+	 * @return the Euclidean distance.
+	 */
+	private static double distance(double x[], double y[]) {
+		double sum = 0d, diff;
+		for (int i = 0; i < x.length; i++) {
+			diff = x[i] - y[i];
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 *
+	 * @param r
+	 * @return the cubic radial basis function.
+	 */
+	private static double kernel(double r) {
+		return r * r * r;
+	}
+
+}
@@ -0,0 +1,339 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import org.sbml.optimization.QuantityRange;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.sbml.optimization.problem.EstimationProblemPool;
+
+import de.zbit.io.csv.CSVWriter;
+import de.zbit.util.ResourceManager;
+import eva2.optimization.modules.OptimizationParameters;
+import eva2.optimization.operator.terminators.EvaluationTerminator;
+import eva2.optimization.population.Population;
+import eva2.optimization.strategies.DifferentialEvolution;
+import eva2.optimization.strategies.InterfaceOptimizer;
+import eva2.tools.math.RNG;
+
+/**
+ * Measures the throughput of the parameter estimation on a fixed set of
+ * {@link ReferenceModel}s with synthetic data, fixed random seeds and fixed
+ * evaluation budgets, so that the results of different versions can be
+ * compared. For each model, the benchmark reports
+ * <ul>
+ * <li>the number of evaluations per second of a complete optimization run,</li>
+ * <li>the time until the optimization reaches a target fitness, which is
+ * {@link #TARGET_FACTOR} times the fitness of the true parameter values,</li>
+ * <li>the number of bytes allocated per evaluation and</li>
+ * <li>the speedup of evaluating a batch of parameter vectors with 1 to N
+ * threads.</li>
+ * </ul>
+ * Run it with the Ant target {@code benchmark} or from the command line:
+ * <pre>
+ * java -cp SBMLsimulator.jar org.sbml.optimization.benchmark.EstimationBenchmark [threads] [output.csv]
+ * </pre>
+ *
+ * @since 2.1
+ */
+public class EstimationBenchmark {
+
+	/**
+	 * The number of evaluations of each optimization run.
+	 */
+	public static final int EVALUATION_BUDGET = 5000;
+
+	/**
+	 * The seed of the synthetic data and of the optimization procedure.
+	 */
+	public static final long SEED = 42L;
+
+	/**
+	 * The relative standard deviation of the noise in the synthetic data.
+	 */
+	public static final double NOISE = 0.05d;
+
+	/**
+	 * The target fitness is this factor times the fitness of the true
+	 * parameter values.
+	 */
+	public static final double TARGET_FACTOR = 2d;
+
+	/**
+	 * The number of evaluations used to measure the allocation and the
+	 * parallel scaling.
+	 */
+	private static final int SAMPLES = 200;
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(EstimationBenchmark.class.getName());
+
+	/**
+	 *
+	 * @param args
+	 *        the maximal number of threads (default: number of processors)
+	 *        and optionally a CSV file for the results.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 0) {
+			maxThreads = Integer.parseInt(args[0]);
+		}
+		EstimationBenchmark benchmark = new EstimationBenchmark(maxThreads);
+		benchmark.run();
+		if (args.length > 1) {
+			benchmark.save(new File(args[1]));
+		}
+	}
+
+	/**
+	 *
+	 */
+	private final int maxThreads;
+
+	/**
+	 * The name of the model, the measure, the number of threads and the value
+	 * of each result.
+	 */
+	private final List<String[]> results = new ArrayList<String[]>();
+
+	/**
+	 *
+	 * @param maxThreads
+	 *        the maximal number of threads for the scaling measurement.
+	 */
+	public EstimationBenchmark(int maxThreads) {
+		this.maxThreads = Math.max(1, maxThreads);
+	}
+
+	/**
+	 * Runs all measurements on all reference models.
+	 *
+	 * @throws Exception
+	 */
+	public void run() throws Exception {
+		results.clear();
+		for (ReferenceModel reference : ReferenceModel.createAll()) {
+			EstimationProblem problem = reference.createProblem(
+				reference.createSyntheticData(SEED, NOISE));
+			measureOptimization(reference, problem);
+			measureAllocation(reference, problem);
+			measureScaling(reference, problem);
+		}
+	}
+
+	/**
+	 * Runs differential evolution with a fixed seed and budget.
+	 *
+	 * @param reference
+	 * @param problem
+	 */
+	private void measureOptimization(ReferenceModel reference,
+		EstimationProblem problem) {
+		double target = TARGET_FACTOR * problem.evaluate(reference.getTrueValues())[0];
+		RNG.setRandomSeed(SEED);
+		OptimizationParameters goParams = new OptimizationParameters();
+		goParams.setProblem(problem);
+		goParams.setOptimizer(new DifferentialEvolution());
+		goParams.setTerminator(new EvaluationTerminator(EVALUATION_BUDGET));
+		InterfaceOptimizer optimizer = goParams.getOptimizer();
+
+		long start = System.nanoTime();
+		double timeToTarget = Double.NaN;
+		optimizer.initialize();
+		while (true) {
+			Population population = optimizer.getPopulation();
+			if (Double.isNaN(timeToTarget)
+					&& (population.getBestEAIndividual().getFitness()[0] <= target)) {
+				timeToTarget = (System.nanoTime() - start) / 1E9d;
+			}
+			if (goParams.getTerminator().isTerminated(population)) {
+				break;
+			}
+			optimizer.optimize();
+		}
+		double seconds = (System.nanoTime() - start) / 1E9d;
+		Population population = optimizer.getPopulation();
+		addResult(reference, "evaluationsPerSecond", 1,
+			population.getFunctionCalls() / seconds);
+		addResult(reference, "timeToTarget", 1, timeToTarget);
+		addResult(reference, "bestFitness", 1,
+			population.getBestEAIndividual().getFitness()[0]);
+	}
+
+	/**
+	 * Measures the memory allocated by the current thread during the
+	 * evaluation of random parameter vectors.
+	 *
+	 * @param reference
+	 * @param problem
+	 */
+	private void measureAllocation(ReferenceModel reference,
+		EstimationProblem problem) {
+		double x[][] = createSamples(problem, SAMPLES);
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		double bytes = Double.NaN;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				long id = Thread.currentThread().getId();
+				// warm up
+				problem.evaluate(x[0]);
+				long before = threads.getThreadAllocatedBytes(id);
+				for (double point[] : x) {
+					problem.evaluate(point);
+				}
+				bytes = (threads.getThreadAllocatedBytes(id) - before) / (double) x.length;
+			}
+		}
+		addResult(reference, "bytesPerEvaluation", 1, bytes);
+	}
+
+	/**
+	 * Evaluates the same batch of random parameter vectors with 1, 2, 4, ...
+	 * and finally {@link #maxThreads} threads.
+	 *
+	 * @param reference
+	 * @param problem
+	 * @throws Exception
+	 */
+	private void measureScaling(ReferenceModel reference,
+		EstimationProblem problem) throws Exception {
+		final double x[][] = createSamples(problem, SAMPLES);
+		List<EstimationProblemPool.Task<Double>> tasks = new ArrayList<EstimationProblemPool.Task<Double>>(x.length);
+		for (final double point[] : x) {
+			tasks.add(new EstimationProblemPool.Task<Double>() {
+
+				/* (non-Javadoc)
+				 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+				 */
+				@Override
+				public Double call(EstimationProblem problem) {
+					return Double.valueOf(problem.evaluate(point)[0]);
+				}
+			});
+		}
+		double sequential = Double.NaN;
+		for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads)) {
+			EstimationProblemPool pool = new EstimationProblemPool(problem, threads);
+			try {
+				// warm up all copies
+				pool.invokeAll(tasks.subList(0, Math.min(threads, tasks.size())));
+				long start = System.nanoTime();
+				pool.invokeAll(tasks);
+				double rate = x.length / ((System.nanoTime() - start) / 1E9d);
+				if (threads == 1) {
+					sequential = rate;
+				}
+				addResult(reference, "evaluationsPerSecond", threads, rate);
+				addResult(reference, "speedup", threads, rate / sequential);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param threads
+	 * @return the next power of two or {@link #maxThreads}.
+	 */
+	private int nextThreadCount(int threads) {
+		if (threads == maxThreads) {
+			return threads + 1;
+		}
+		return Math.min(2 * threads, maxThreads);
+	}
+
+	/**
+	 *
+	 * @param problem
+	 * @param count
+	 * @return uniformly distributed parameter vectors within the ranges of the
+	 *         problem, always the same for the same problem.
+	 */
+	private static double[][] createSamples(EstimationProblem problem, int count) {
+		QuantityRange ranges[] = problem.getQuantityRanges();
+		Random random = new Random(SEED);
+		double x[][] = new double[count][ranges.length];
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < ranges.length; j++) {
+				x[i][j] = ranges[j].getMinimum() + random.nextDouble()
+						* (ranges[j].getMaximum() - ranges[j].getMinimum());
+			}
+		}
+		return x;
+	}
+
+	/**
+	 *
+	 * @param reference
+	 * @param measure
+	 * @param threads
+	 * @param value
+	 */
+	private void addResult(ReferenceModel reference, String measure,
+		int threads, double value) {
+		logger.info(MessageFormat.format(bundle.getString("BENCHMARK_RESULT"),
+			reference.getName(), threads, measure, value));
+		results.add(new String[] {reference.getName(), measure,
+				String.valueOf(threads), String.valueOf(value)});
+	}
+
+	/**
+	 *
+	 * @return the name of the model, the measure, the number of threads and the
+	 *         value of each result of the last run.
+	 */
+	public List<String[]> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes the results of the last run into a CSV file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		String comment = "Estimation benchmark with " + EVALUATION_BUDGET
+				+ " evaluations per run and seed " + SEED + ".\n";
+		String header[] = {"model", "measure", "threads", "value"};
+		CSVWriter writer = new CSVWriter();
+		writer.write(results.toArray(new String[results.size()][]), header,
+			comment, file);
+	}
+
+}
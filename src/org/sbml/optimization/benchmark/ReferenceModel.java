@@ -0,0 +1,317 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.JSBML;
+import org.sbml.jsbml.KineticLaw;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.text.parser.ParseException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.QuantityRange;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.simulator.math.RelativeSquaredError;
+import org.simulator.math.odes.DESSolver;
+import org.simulator.math.odes.DerivativeException;
+import org.simulator.math.odes.MultiTable;
+import org.simulator.math.odes.RosenbrockSolver;
+import org.simulator.sbml.SBMLinterpreter;
+
+/**
+ * A small kinetic model with known parameter values, from which synthetic
+ * measurements are generated. Since the models are created in memory, the
+ * benchmark does not depend on any files.
+ *
+ * @since 2.1
+ */
+class ReferenceModel {
+
+	/**
+	 * The step size of the solver.
+	 */
+	private static final double STEP_SIZE = 0.01d;
+
+	/**
+	 *
+	 */
+	private final String name;
+
+	/**
+	 *
+	 */
+	private final Model model;
+
+	/**
+	 * The parameters to be estimated and their true values.
+	 */
+	private final List<Parameter> parameters = new ArrayList<Parameter>();
+
+	/**
+	 *
+	 */
+	private final List<Double> trueValues = new ArrayList<Double>();
+
+	/**
+	 * The measured species.
+	 */
+	private final List<String> observables = new ArrayList<String>();
+
+	/**
+	 *
+	 */
+	private final double timePoints[];
+
+	/**
+	 *
+	 * @param name
+	 * @param endTime
+	 * @param numberOfTimePoints
+	 */
+	private ReferenceModel(String name, double endTime, int numberOfTimePoints) {
+		this.name = name;
+		SBMLDocument doc = new SBMLDocument(3, 1);
+		model = doc.createModel(name);
+		Compartment compartment = model.createCompartment("cell");
+		compartment.setSize(1d);
+		compartment.setSpatialDimensions(3d);
+		compartment.setConstant(true);
+		timePoints = new double[numberOfTimePoints];
+		for (int i = 0; i < numberOfTimePoints; i++) {
+			timePoints[i] = i * endTime / (numberOfTimePoints - 1);
+		}
+	}
+
+	/**
+	 * Creates all reference models of the benchmark.
+	 *
+	 * @return
+	 * @throws ParseException
+	 */
+	static ReferenceModel[] createAll() throws ParseException {
+		List<ReferenceModel> models = new ArrayList<ReferenceModel>();
+
+		// two consecutive first-order reactions
+		ReferenceModel chain = new ReferenceModel("chain", 10d, 21);
+		chain.addSpecies("A", 1d);
+		chain.addSpecies("B", 0d);
+		chain.addSpecies("C", 0d);
+		chain.addParameter("k1", 0.8d);
+		chain.addParameter("k2", 0.3d);
+		chain.addReaction("r1", "k1 * A * cell", new String[] {"A"}, new String[] {"B"});
+		chain.addReaction("r2", "k2 * B * cell", new String[] {"B"}, new String[] {"C"});
+		models.add(chain);
+
+		// enzyme kinetics with explicit complex formation
+		ReferenceModel enzyme = new ReferenceModel("enzyme", 20d, 41);
+		enzyme.addSpecies("S", 1d);
+		enzyme.addSpecies("E", 0.1d);
+		enzyme.addSpecies("ES", 0d);
+		enzyme.addSpecies("P", 0d);
+		enzyme.addParameter("kon", 10d);
+		enzyme.addParameter("koff", 1d);
+		enzyme.addParameter("kcat", 2d);
+		enzyme.addReaction("binding", "kon * S * E * cell", new String[] {"S", "E"}, new String[] {"ES"});
+		enzyme.addReaction("unbinding", "koff * ES * cell", new String[] {"ES"}, new String[] {"S", "E"});
+		enzyme.addReaction("catalysis", "kcat * ES * cell", new String[] {"ES"}, new String[] {"E", "P"});
+		models.add(enzyme);
+
+		// oscillating predator-prey system
+		ReferenceModel oscillator = new ReferenceModel("oscillator", 15d, 61);
+		oscillator.addSpecies("X", 1d);
+		oscillator.addSpecies("Y", 0.5d);
+		oscillator.addParameter("a", 1d);
+		oscillator.addParameter("b", 1d);
+		oscillator.addParameter("c", 0.5d);
+		oscillator.addReaction("birth", "a * X * cell", new String[] {"X"}, new String[] {"X", "X"});
+		oscillator.addReaction("predation", "b * X * Y * cell", new String[] {"X", "Y"}, new String[] {"Y", "Y"});
+		oscillator.addReaction("death", "c * Y * cell", new String[] {"Y"}, new String[0]);
+		models.add(oscillator);
+
+		return models.toArray(new ReferenceModel[models.size()]);
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @param initialAmount
+	 */
+	private void addSpecies(String id, double initialAmount) {
+		Species species = model.createSpecies(id, model.getCompartment(0));
+		species.setInitialAmount(initialAmount);
+		species.setHasOnlySubstanceUnits(false);
+		species.setBoundaryCondition(false);
+		species.setConstant(false);
+		observables.add(id);
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @param value
+	 *        the true value.
+	 */
+	private void addParameter(String id, double value) {
+		Parameter parameter = model.createParameter(id);
+		parameter.setValue(value);
+		parameter.setConstant(true);
+		parameters.add(parameter);
+		trueValues.add(Double.valueOf(value));
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @param formula
+	 * @param reactants
+	 *        a species that occurs several times gets the according
+	 *        stoichiometry.
+	 * @param products
+	 * @throws ParseException
+	 */
+	private void addReaction(String id, String formula, String reactants[],
+		String products[]) throws ParseException {
+		Reaction reaction = model.createReaction(id);
+		reaction.setReversible(false);
+		reaction.setFast(false);
+		for (String reactant : reactants) {
+			addParticipant(reaction.getListOfReactants(), reactant);
+		}
+		for (String product : products) {
+			addParticipant(reaction.getListOfProducts(), product);
+		}
+		KineticLaw kineticLaw = reaction.createKineticLaw();
+		kineticLaw.setMath(JSBML.parseFormula(formula));
+	}
+
+	/**
+	 *
+	 * @param participants
+	 * @param species
+	 */
+	private void addParticipant(ListOf<SpeciesReference> participants,
+		String species) {
+		for (SpeciesReference reference : participants) {
+			if (reference.getSpecies().equals(species)) {
+				reference.setStoichiometry(reference.getStoichiometry() + 1d);
+				return;
+			}
+		}
+		SpeciesReference reference = new SpeciesReference(model.getSpecies(species));
+		reference.setStoichiometry(1d);
+		reference.setConstant(true);
+		participants.add(reference);
+	}
+
+	/**
+	 * Simulates the model with the true parameter values and disturbs the
+	 * result by multiplicative Gaussian noise.
+	 *
+	 * @param seed
+	 *        the seed of the noise, so that all runs use the same data.
+	 * @param noise
+	 *        the relative standard deviation of the noise.
+	 * @return
+	 * @throws ModelOverdeterminedException
+	 * @throws SBMLException
+	 * @throws DerivativeException
+	 */
+	MultiTable createSyntheticData(long seed, double noise)
+		throws ModelOverdeterminedException, SBMLException, DerivativeException {
+		for (int i = 0; i < parameters.size(); i++) {
+			parameters.get(i).setValue(trueValues.get(i).doubleValue());
+		}
+		SBMLinterpreter interpreter = new SBMLinterpreter(model);
+		MultiTable solution = createSolver().solve(interpreter,
+			interpreter.getInitialValues(), timePoints);
+		Random random = new Random(seed);
+		double data[][] = new double[timePoints.length][observables.size()];
+		for (int col = 0; col < observables.size(); col++) {
+			MultiTable.Block.Column column = solution.getBlock(0).getColumn(observables.get(col));
+			for (int row = 0; row < timePoints.length; row++) {
+				data[row][col] = column.getValue(row) * (1d + noise * random.nextGaussian());
+			}
+		}
+		MultiTable reference = new MultiTable(timePoints.clone(), data,
+			observables.toArray(new String[observables.size()]));
+		reference.setName(name);
+		return reference;
+	}
+
+	/**
+	 * Creates the estimation problem for all parameters of the model, each of
+	 * which may vary by one order of magnitude around its true value.
+	 *
+	 * @param data
+	 * @return
+	 * @throws ModelOverdeterminedException
+	 * @throws SBMLException
+	 */
+	EstimationProblem createProblem(MultiTable data)
+		throws ModelOverdeterminedException, SBMLException {
+		QuantityRange ranges[] = new QuantityRange[parameters.size()];
+		for (int i = 0; i < ranges.length; i++) {
+			double value = trueValues.get(i).doubleValue();
+			ranges[i] = new QuantityRange(parameters.get(i), true, value / 10d,
+				value * 10d, value / 10d, value * 10d);
+		}
+		List<MultiTable> list = new ArrayList<MultiTable>(1);
+		list.add(data);
+		return new EstimationProblem(createSolver(), new RelativeSquaredError(),
+			model, list, false, ranges);
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	private static DESSolver createSolver() {
+		DESSolver solver = new RosenbrockSolver();
+		solver.setStepSize(STEP_SIZE);
+		return solver;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 *
+	 * @return the true values of all estimated parameters.
+	 */
+	double[] getTrueValues() {
+		double values[] = new double[trueValues.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = trueValues.get(i).doubleValue();
+		}
+		return values;
+	}
+
+}
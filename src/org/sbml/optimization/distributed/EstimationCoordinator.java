@@ -0,0 +1,480 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.SBMLException;
+import org.sbml.optimization.problem.EstimationProblem;
+
+import de.zbit.util.ResourceManager;
+
+/**
+ * Distributes the evaluation of parameter vectors to {@link EstimationWorker}s
+ * in other processes, possibly on other computers. The coordinator listens on
+ * a TCP port of the given address; each worker connects to it, proves that it
+ * knows the shared secret, receives the {@link EstimationJob} once, creates
+ * its own copy of the {@link EstimationProblem} and afterwards answers one
+ * {@link EvaluationRequest} after the other (see {@link WorkerProtocol}).
+ * Workers may connect and disconnect at any time. Both sides send heartbeats
+ * while they are busy or idle, so that a worker that stops responding is
+ * detected after {@link WorkerProtocol#TIMEOUT} milliseconds. If a worker dies
+ * while evaluating a parameter vector, this vector is given to another worker;
+ * a vector that makes {@link #MAX_ATTEMPTS} workers fail is reported as
+ * failed.
+ *
+ * @since 2.1
+ */
+public class EstimationCoordinator {
+
+	/**
+	 * An evaluation that has not been completed yet.
+	 */
+	private static class Pending {
+
+		/**
+		 *
+		 */
+		private final EvaluationRequest request;
+
+		/**
+		 *
+		 */
+		private final CompletableFuture<EvaluationResult> future = new CompletableFuture<EvaluationResult>();
+
+		/**
+		 * The number of workers that died while evaluating this request.
+		 */
+		private int attempts = 0;
+
+		/**
+		 *
+		 * @param request
+		 */
+		private Pending(EvaluationRequest request) {
+			this.request = request;
+		}
+
+	}
+
+	/**
+	 * The maximal number of workers that may die while evaluating the same
+	 * parameter vector.
+	 */
+	public static final int MAX_ATTEMPTS = 3;
+
+	/**
+	 * The time in milliseconds a connecting worker has to complete the
+	 * handshake, during which no other connection is accepted.
+	 */
+	private static final int AUTHENTICATION_TIMEOUT = WorkerProtocol.KEEPALIVE_INTERVAL;
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(EstimationCoordinator.class.getName());
+
+	/**
+	 * The description of the problem sent to each worker.
+	 */
+	private final EstimationJob job;
+
+	/**
+	 * The secret a worker must know to be accepted.
+	 */
+	private final byte secret[];
+
+	/**
+	 *
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Evaluations waiting for a free worker. The queue, {@link #workers} and
+	 * {@link #running} are only accessed while holding the lock of the queue,
+	 * so that no evaluation can be queued after the last worker is gone.
+	 */
+	private final Queue<Pending> queue = new LinkedList<Pending>();
+
+	/**
+	 * The threads that communicate with the connected workers.
+	 */
+	private final List<Thread> handlers = new CopyOnWriteArrayList<Thread>();
+
+	/**
+	 * The number of connected and initialized workers.
+	 */
+	private int workers = 0;
+
+	/**
+	 *
+	 */
+	private final AtomicLong nextId = new AtomicLong(0);
+
+	/**
+	 *
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Starts listening for workers on the given address and port.
+	 *
+	 * @param problem
+	 *        the problem to be evaluated by the workers.
+	 * @param address
+	 *        the local address to listen on; {@code null} for the loopback
+	 *        address, i.e., only workers on this computer can connect.
+	 * @param port
+	 *        the port to listen on, zero for any free port.
+	 * @param secret
+	 *        the shared secret the workers must know.
+	 * @throws IOException
+	 * @throws SBMLException
+	 * @throws XMLStreamException
+	 * @throws IllegalArgumentException
+	 *         if the secret is empty.
+	 */
+	public EstimationCoordinator(EstimationProblem problem, InetAddress address,
+		int port, byte secret[]) throws IOException, SBMLException,
+		XMLStreamException {
+		if ((secret == null) || (secret.length == 0)) {
+			throw new IllegalArgumentException(bundle.getString("WORKER_SECRET_MISSING"));
+		}
+		this.secret = secret.clone();
+		job = new EstimationJob(problem);
+		serverSocket = new ServerSocket(port, 0,
+			address != null ? address : InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+
+			/* (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				acceptWorkers();
+			}
+		}, getClass().getSimpleName());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Accepts connections until this coordinator is shut down. The handshake
+	 * is performed here, so that a thread is only started for workers that
+	 * know the secret.
+	 */
+	private void acceptWorkers() {
+		while (running) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException exc) {
+				if (running) {
+					logger.warning(exc.getLocalizedMessage());
+				}
+				continue;
+			}
+			final DataOutputStream out;
+			final DataInputStream in;
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(AUTHENTICATION_TIMEOUT);
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				WorkerProtocol.authenticate(in, out, secret, true);
+			} catch (IOException exc) {
+				logger.warning(MessageFormat.format(bundle.getString("WORKER_NOT_AUTHENTICATED"),
+					socket.getRemoteSocketAddress(), exc.getLocalizedMessage()));
+				close(socket);
+				continue;
+			}
+			Thread handler = new Thread(new Runnable() {
+
+				/* (non-Javadoc)
+				 * @see java.lang.Runnable#run()
+				 */
+				@Override
+				public void run() {
+					serve(socket, in, out);
+					handlers.remove(Thread.currentThread());
+				}
+			}, getClass().getSimpleName() + "-" + socket.getRemoteSocketAddress());
+			handler.setDaemon(true);
+			handlers.add(handler);
+			handler.start();
+		}
+	}
+
+	/**
+	 * Communicates with one authenticated worker until it disconnects, stops
+	 * responding or this coordinator is shut down.
+	 *
+	 * @param socket
+	 * @param in
+	 * @param out
+	 */
+	private void serve(Socket socket, DataInputStream in, DataOutputStream out) {
+		Pending current = null;
+		boolean registered = false;
+		try {
+			socket.setSoTimeout(WorkerProtocol.TIMEOUT);
+			job.write(out);
+			out.flush();
+			byte answer = in.readByte();
+			if (answer != WorkerProtocol.READY) {
+				logger.warning(MessageFormat.format(bundle.getString("WORKER_REJECTED_JOB"),
+					socket.getRemoteSocketAddress(),
+					answer == WorkerProtocol.REJECTED ? WorkerProtocol.readText(in) : answer));
+				return;
+			}
+			int count;
+			synchronized (queue) {
+				if (!running) {
+					return;
+				}
+				registered = true;
+				count = ++workers;
+			}
+			logger.info(MessageFormat.format(bundle.getString("WORKER_CONNECTED"),
+				socket.getRemoteSocketAddress(), count));
+			while (running) {
+				current = poll();
+				if (current == null) {
+					out.writeByte(WorkerProtocol.HEARTBEAT);
+					out.flush();
+					continue;
+				}
+				if (current.future.isDone()) {
+					current = null;
+					continue;
+				}
+				out.writeByte(WorkerProtocol.REQUEST);
+				current.request.write(out);
+				out.flush();
+				byte type;
+				while ((type = in.readByte()) == WorkerProtocol.HEARTBEAT) {
+					// the worker is still evaluating
+				}
+				if (type != WorkerProtocol.RESULT) {
+					throw new IOException("unexpected message " + type);
+				}
+				EvaluationResult result = EvaluationResult.read(in);
+				if (result.getId() != current.request.id) {
+					throw new IOException("unexpected result " + result.getId());
+				}
+				current.future.complete(result);
+				current = null;
+			}
+		} catch (InterruptedException exc) {
+			// shut down
+		} catch (IOException exc) {
+			if (running) {
+				logger.warning(MessageFormat.format(bundle.getString("WORKER_LOST"),
+					socket.getRemoteSocketAddress(), exc.getLocalizedMessage()));
+			}
+		} finally {
+			synchronized (queue) {
+				if (registered) {
+					workers--;
+				}
+				if (current != null) {
+					retry(current);
+				}
+				if (workers == 0) {
+					failQueued();
+				}
+			}
+			close(socket);
+		}
+	}
+
+	/**
+	 *
+	 * @param socket
+	 */
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException exc) {
+			logger.fine(exc.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Waits for the next evaluation for at most the interval between two
+	 * heartbeats.
+	 *
+	 * @return the next evaluation or {@code null} if there is none.
+	 * @throws InterruptedException
+	 */
+	private Pending poll() throws InterruptedException {
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(WorkerProtocol.KEEPALIVE_INTERVAL);
+		synchronized (queue) {
+			long remaining;
+			while (queue.isEmpty() && running
+					&& ((remaining = deadline - System.nanoTime()) > 0)) {
+				TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+			}
+			return queue.poll();
+		}
+	}
+
+	/**
+	 * Gives the evaluation of a dead worker to another one. Must be called
+	 * while holding the lock of the {@link #queue}.
+	 *
+	 * @param pending
+	 */
+	private void retry(Pending pending) {
+		pending.attempts++;
+		if (pending.attempts >= MAX_ATTEMPTS) {
+			pending.future.completeExceptionally(new IOException(MessageFormat.format(
+				bundle.getString("EVALUATION_FAILED_REPEATEDLY"), pending.attempts)));
+		} else {
+			queue.add(pending);
+			queue.notify();
+		}
+	}
+
+	/**
+	 * Completes all waiting evaluations exceptionally because no worker is
+	 * left. Must be called while holding the lock of the {@link #queue}.
+	 */
+	private void failQueued() {
+		Pending pending;
+		while ((pending = queue.poll()) != null) {
+			pending.future.completeExceptionally(new IOException(
+				bundle.getString("NO_WORKERS_AVAILABLE")));
+		}
+	}
+
+	/**
+	 * Schedules the evaluation of the given parameter vector.
+	 *
+	 * @param x
+	 *        the values for all quantities.
+	 * @param trajectory
+	 *        whether or not the simulated trajectory should be returned.
+	 * @return
+	 */
+	public Future<EvaluationResult> submit(double x[], boolean trajectory) {
+		Pending pending = new Pending(new EvaluationRequest(
+			nextId.getAndIncrement(), x, trajectory));
+		synchronized (queue) {
+			if (!running || (workers == 0)) {
+				pending.future.completeExceptionally(new IOException(
+					bundle.getString("NO_WORKERS_AVAILABLE")));
+			} else {
+				queue.add(pending);
+				queue.notify();
+			}
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Evaluates all given parameter vectors on the connected workers and waits
+	 * for the results.
+	 *
+	 * @param x
+	 * @return the fitness of each parameter vector.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *         if one of the vectors could not be evaluated, e.g., because all
+	 *         workers are gone.
+	 */
+	public double[][] evaluate(double[]... x) throws InterruptedException,
+		ExecutionException {
+		List<Future<EvaluationResult>> futures = new ArrayList<Future<EvaluationResult>>(x.length);
+		for (double point[] : x) {
+			futures.add(submit(point, false));
+		}
+		double fitness[][] = new double[x.length][];
+		for (int i = 0; i < x.length; i++) {
+			fitness[i] = futures.get(i).get().getFitness();
+		}
+		return fitness;
+	}
+
+	/**
+	 *
+	 * @return the port this coordinator listens on.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 *
+	 * @return the number of workers that are currently connected.
+	 */
+	public int getWorkerCount() {
+		synchronized (queue) {
+			return workers;
+		}
+	}
+
+	/**
+	 * Disconnects all workers and stops listening for new ones.
+	 */
+	public void shutdown() {
+		synchronized (queue) {
+			running = false;
+			failQueued();
+			queue.notifyAll();
+		}
+		try {
+			serverSocket.close();
+		} catch (SocketException exc) {
+			// already closed
+		} catch (IOException exc) {
+			logger.fine(exc.getLocalizedMessage());
+		}
+		for (Thread handler : handlers) {
+			handler.interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Quantity;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.SBMLWriter;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.QuantityRange;
+import org.sbml.optimization.problem.EstimationProblem;
+import org.simulator.math.QualityMeasure;
+import org.simulator.math.odes.AbstractDESSolver;
+import org.simulator.math.odes.AdaptiveStepsizeIntegrator;
+import org.simulator.math.odes.DESSolver;
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Everything a worker needs to create its own copy of an
+ * {@link EstimationProblem} that computes exactly the same fitness as the
+ * original one: the model as SBML, the reference data, the quantities to be
+ * estimated together with their ranges, the solver and its settings, the
+ * quality measure and all settings of the problem that influence the
+ * evaluation. A job is sent once when a worker connects, afterwards only
+ * parameter vectors are exchanged.
+ *
+ * @since 2.1
+ */
+public class EstimationJob {
+
+	/**
+	 * The model in SBML format.
+	 */
+	private String sbml;
+
+	/**
+	 * The time points, values and column identifiers of each reference data
+	 * set.
+	 */
+	private double timePoints[][], referenceData[][][];
+
+	/**
+	 *
+	 */
+	private String identifiers[][];
+
+	/**
+	 * The identifiers of the estimated quantities as given by
+	 * {@link EstimationProblem#getQuantityIdentifier(Quantity)}.
+	 */
+	private String quantityIdentifiers[];
+
+	/**
+	 * For each quantity its initial minimum, initial maximum, minimum and
+	 * maximum.
+	 */
+	private double ranges[][];
+
+	/**
+	 * The class of the solver, which is instantiated by the worker.
+	 */
+	private String solverClass;
+
+	/**
+	 * The step size and, for adaptive solvers, the absolute and relative
+	 * tolerance; {@link Double#NaN} if not applicable.
+	 */
+	private double stepSize, absTol, relTol;
+
+	/**
+	 *
+	 */
+	private boolean includeIntermediates, nonnegative;
+
+	/**
+	 *
+	 */
+	private QualityMeasure distance;
+
+	/**
+	 * The default value of the distance, which is reset by the constructor of
+	 * {@link EstimationProblem}.
+	 */
+	private double defaultDistanceValue;
+
+	/**
+	 * The fitness of parameter vectors whose simulation fails.
+	 */
+	private double defaultValue;
+
+	/**
+	 *
+	 */
+	private boolean multishoot, denseOutput, multiExperiment, negationOfDistance;
+
+	/**
+	 * For reading only.
+	 */
+	private EstimationJob() {
+	}
+
+	/**
+	 * Gathers all information from the given problem.
+	 *
+	 * @param problem
+	 * @throws SBMLException
+	 * @throws XMLStreamException
+	 */
+	public EstimationJob(EstimationProblem problem) throws SBMLException,
+		XMLStreamException {
+		sbml = new SBMLWriter().writeSBMLToString(problem.getModel().getSBMLDocument());
+		MultiTable data[] = problem.getReferenceData();
+		timePoints = new double[data.length][];
+		referenceData = new double[data.length][][];
+		identifiers = new String[data.length][];
+		for (int i = 0; i < data.length; i++) {
+			timePoints[i] = data[i].getTimePoints();
+			referenceData[i] = data[i].getBlock(0).getData();
+			identifiers[i] = data[i].getBlock(0).getIdentifiers();
+		}
+		QuantityRange quantityRanges[] = problem.getQuantityRanges();
+		quantityIdentifiers = new String[quantityRanges.length];
+		ranges = new double[quantityRanges.length][];
+		for (int i = 0; i < quantityRanges.length; i++) {
+			quantityIdentifiers[i] = EstimationProblem.getQuantityIdentifier(quantityRanges[i].getQuantity());
+			ranges[i] = new double[] {quantityRanges[i].getInitialMinimum(),
+					quantityRanges[i].getInitialMaximum(),
+					quantityRanges[i].getMinimum(), quantityRanges[i].getMaximum()};
+		}
+		DESSolver solver = problem.getSolver();
+		solverClass = solver.getClass().getName();
+		stepSize = solver.getStepSize();
+		includeIntermediates = solver.isIncludeIntermediates();
+		nonnegative = (solver instanceof AbstractDESSolver)
+				&& ((AbstractDESSolver) solver).isNonnegative();
+		absTol = relTol = Double.NaN;
+		if (solver instanceof AdaptiveStepsizeIntegrator) {
+			absTol = ((AdaptiveStepsizeIntegrator) solver).getAbsTol();
+			relTol = ((AdaptiveStepsizeIntegrator) solver).getRelTol();
+		}
+		distance = problem.getDistance();
+		defaultDistanceValue = distance.getDefaultValue();
+		defaultValue = problem.getDefaultValue();
+		multishoot = problem.isMultishoot();
+		denseOutput = problem.isDenseOutput();
+		multiExperiment = problem.isMultiExperiment();
+		negationOfDistance = problem.isNegationOfDistance();
+	}
+
+	/**
+	 * Creates the problem described by this job.
+	 *
+	 * @return
+	 * @throws XMLStreamException
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 * @throws IOException
+	 *         if the solver cannot be instantiated.
+	 */
+	public EstimationProblem createProblem() throws XMLStreamException,
+		SBMLException, ModelOverdeterminedException, IOException {
+		Model model = new SBMLReader().readSBMLFromString(sbml).getModel();
+		QuantityRange quantityRanges[] = new QuantityRange[quantityIdentifiers.length];
+		for (int i = 0; i < quantityRanges.length; i++) {
+			Quantity q = EstimationProblem.findQuantity(model, quantityIdentifiers[i]);
+			if (q == null) {
+				throw new IllegalArgumentException(quantityIdentifiers[i]);
+			}
+			quantityRanges[i] = new QuantityRange(q, true, ranges[i][0],
+				ranges[i][1], ranges[i][2], ranges[i][3]);
+		}
+		List<MultiTable> data = new ArrayList<MultiTable>(timePoints.length);
+		for (int i = 0; i < timePoints.length; i++) {
+			data.add(new MultiTable(timePoints[i], referenceData[i], identifiers[i]));
+		}
+		DESSolver solver = WorkerProtocol.newInstance(solverClass, DESSolver.class);
+		solver.setStepSize(stepSize);
+		solver.setIncludeIntermediates(includeIntermediates);
+		if (solver instanceof AbstractDESSolver) {
+			((AbstractDESSolver) solver).setNonnegative(nonnegative);
+		}
+		if ((solver instanceof AdaptiveStepsizeIntegrator) && !Double.isNaN(absTol)) {
+			((AdaptiveStepsizeIntegrator) solver).setAbsTol(absTol);
+			((AdaptiveStepsizeIntegrator) solver).setRelTol(relTol);
+		}
+		EstimationProblem problem = new EstimationProblem(solver, distance, model,
+			data, multishoot, quantityRanges);
+		distance.setDefaultValue(defaultDistanceValue);
+		problem.setDefaultValue(defaultValue);
+		problem.setNegationOfDistance(negationOfDistance);
+		problem.setDenseOutput(denseOutput);
+		problem.setMultiExperiment(multiExperiment);
+		return problem;
+	}
+
+	/**
+	 * Writes this job in the format of the {@link WorkerProtocol}.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		WorkerProtocol.writeText(out, sbml);
+		out.writeInt(timePoints.length);
+		for (int i = 0; i < timePoints.length; i++) {
+			WorkerProtocol.writeDoubles(out, timePoints[i]);
+			WorkerProtocol.writeMatrix(out, referenceData[i]);
+			WorkerProtocol.writeTexts(out, identifiers[i]);
+		}
+		WorkerProtocol.writeTexts(out, quantityIdentifiers);
+		WorkerProtocol.writeMatrix(out, ranges);
+		WorkerProtocol.writeText(out, solverClass);
+		out.writeDouble(stepSize);
+		out.writeDouble(absTol);
+		out.writeDouble(relTol);
+		out.writeBoolean(includeIntermediates);
+		out.writeBoolean(nonnegative);
+		WorkerProtocol.writeQualityMeasure(out, distance);
+		out.writeDouble(defaultDistanceValue);
+		out.writeDouble(defaultValue);
+		out.writeBoolean(multishoot);
+		out.writeBoolean(denseOutput);
+		out.writeBoolean(multiExperiment);
+		out.writeBoolean(negationOfDistance);
+	}
+
+	/**
+	 * Reads a job written by {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static EstimationJob read(DataInput in) throws IOException {
+		EstimationJob job = new EstimationJob();
+		job.sbml = WorkerProtocol.readText(in);
+		int n = WorkerProtocol.readLength(in);
+		job.timePoints = new double[n][];
+		job.referenceData = new double[n][][];
+		job.identifiers = new String[n][];
+		for (int i = 0; i < n; i++) {
+			job.timePoints[i] = WorkerProtocol.readDoubles(in);
+			job.referenceData[i] = WorkerProtocol.readMatrix(in);
+			job.identifiers[i] = WorkerProtocol.readTexts(in);
+		}
+		job.quantityIdentifiers = WorkerProtocol.readTexts(in);
+		job.ranges = WorkerProtocol.readMatrix(in);
+		job.solverClass = WorkerProtocol.readText(in);
+		job.stepSize = in.readDouble();
+		job.absTol = in.readDouble();
+		job.relTol = in.readDouble();
+		job.includeIntermediates = in.readBoolean();
+		job.nonnegative = in.readBoolean();
+		job.distance = WorkerProtocol.readQualityMeasure(in);
+		job.defaultDistanceValue = in.readDouble();
+		job.defaultValue = in.readDouble();
+		job.multishoot = in.readBoolean();
+		job.denseOutput = in.readBoolean();
+		job.multiExperiment = in.readBoolean();
+		job.negationOfDistance = in.readBoolean();
+		return job;
+	}
+
+}
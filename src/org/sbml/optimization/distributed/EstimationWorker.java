@@ -0,0 +1,199 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import org.sbml.optimization.problem.EstimationProblem;
+
+import de.zbit.util.ResourceManager;
+
+/**
+ * A worker process that connects to an {@link EstimationCoordinator}, keeps
+ * its own copy of the {@link EstimationProblem} resident and evaluates the
+ * parameter vectors it receives until the coordinator closes the connection
+ * or stops responding. The file given as third argument contains the secret
+ * shared with the coordinator. Start one worker per processor core, e.g.,
+ * with
+ * <pre>
+ * java -cp SBMLsimulator.jar org.sbml.optimization.distributed.EstimationWorker host port secret-file
+ * </pre>
+ *
+ * @since 2.1
+ */
+public class EstimationWorker {
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(EstimationWorker.class.getName());
+
+	/**
+	 *
+	 * @param args
+	 *        the host name and the port of the coordinator and the file that
+	 *        contains the shared secret.
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println(MessageFormat.format(bundle.getString("WORKER_USAGE"),
+				EstimationWorker.class.getName()));
+			System.exit(1);
+		}
+		new EstimationWorker(args[0], Integer.parseInt(args[1]),
+			readSecret(new File(args[2]))).run();
+	}
+
+	/**
+	 * Reads the secret shared by coordinator and workers from the given file.
+	 * Leading and trailing white space is ignored.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *         if the file cannot be read or contains no secret.
+	 */
+	public static byte[] readSecret(File file) throws IOException {
+		return WorkerProtocol.readSecret(file);
+	}
+
+	/**
+	 *
+	 */
+	private String host;
+
+	/**
+	 *
+	 */
+	private int port;
+
+	/**
+	 * The secret shared with the coordinator.
+	 */
+	private byte secret[];
+
+	/**
+	 *
+	 * @param host
+	 * @param port
+	 * @param secret
+	 */
+	public EstimationWorker(String host, int port, byte secret[]) {
+		this.host = host;
+		this.port = port;
+		this.secret = secret.clone();
+	}
+
+	/**
+	 * Connects to the coordinator and evaluates requests until the connection
+	 * is closed.
+	 *
+	 * @return the number of evaluated requests.
+	 * @throws IOException
+	 *         if the connection cannot be established, the coordinator does not
+	 *         know the secret or stops responding.
+	 */
+	public int run() throws IOException {
+		Socket socket = new Socket(host, port);
+		Timer heartbeat = new Timer(getClass().getSimpleName(), true);
+		int evaluations = 0;
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(WorkerProtocol.TIMEOUT);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			WorkerProtocol.authenticate(in, out, secret, false);
+			EstimationJob job = EstimationJob.read(in);
+			EstimationProblem problem;
+			try {
+				problem = job.createProblem();
+			} catch (Exception exc) {
+				out.writeByte(WorkerProtocol.REJECTED);
+				WorkerProtocol.writeText(out, exc.toString());
+				out.flush();
+				throw new IOException(exc);
+			}
+			out.writeByte(WorkerProtocol.READY);
+			out.flush();
+			logger.info(MessageFormat.format(bundle.getString("WORKER_READY"), host, port));
+			heartbeat.schedule(new TimerTask() {
+
+				/* (non-Javadoc)
+				 * @see java.util.TimerTask#run()
+				 */
+				@Override
+				public void run() {
+					synchronized (out) {
+						try {
+							out.writeByte(WorkerProtocol.HEARTBEAT);
+							out.flush();
+						} catch (IOException exc) {
+							// detected by the evaluation loop
+							cancel();
+						}
+					}
+				}
+			}, WorkerProtocol.KEEPALIVE_INTERVAL, WorkerProtocol.KEEPALIVE_INTERVAL);
+			while (true) {
+				byte type;
+				try {
+					type = in.readByte();
+				} catch (EOFException exc) {
+					break;
+				}
+				if (type == WorkerProtocol.HEARTBEAT) {
+					continue;
+				} else if (type != WorkerProtocol.REQUEST) {
+					throw new IOException("unexpected message " + type);
+				}
+				EvaluationRequest request = EvaluationRequest.read(in);
+				double fitness[] = problem.evaluate(request.x);
+				EvaluationResult result = new EvaluationResult(request.id, fitness,
+					request.trajectory ? problem.getCurrentSimulationData() : null);
+				synchronized (out) {
+					out.writeByte(WorkerProtocol.RESULT);
+					result.write(out);
+					out.flush();
+				}
+				evaluations++;
+			}
+		} finally {
+			heartbeat.cancel();
+			socket.close();
+		}
+		logger.info(MessageFormat.format(bundle.getString("WORKER_FINISHED"), evaluations));
+		return evaluations;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A parameter vector to be evaluated by a worker.
+ *
+ * @since 2.1
+ */
+class EvaluationRequest {
+
+	/**
+	 * Identifies the request within the coordinator.
+	 */
+	final long id;
+
+	/**
+	 * The values for all quantities.
+	 */
+	final double x[];
+
+	/**
+	 * Whether or not the simulated trajectory should be sent back.
+	 */
+	final boolean trajectory;
+
+	/**
+	 *
+	 * @param id
+	 * @param x
+	 * @param trajectory
+	 */
+	EvaluationRequest(long id, double x[], boolean trajectory) {
+		this.id = id;
+		this.x = x;
+		this.trajectory = trajectory;
+	}
+
+	/**
+	 * Writes this request in the format of the {@link WorkerProtocol}.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeLong(id);
+		WorkerProtocol.writeDoubles(out, x);
+		out.writeBoolean(trajectory);
+	}
+
+	/**
+	 * Reads a request written by {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static EvaluationRequest read(DataInput in) throws IOException {
+		return new EvaluationRequest(in.readLong(), WorkerProtocol.readDoubles(in),
+			in.readBoolean());
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * The answer of a worker to one evaluation request: the fitness of the
+ * parameter vector and, if requested, the simulated trajectory.
+ *
+ * @since 2.1
+ */
+public class EvaluationResult {
+
+	/**
+	 * The identifier of the corresponding request.
+	 */
+	private long id;
+
+	/**
+	 *
+	 */
+	private double fitness[];
+
+	/**
+	 * The trajectory; {@code null} if not requested or if the simulation failed.
+	 */
+	private double timePoints[], data[][];
+
+	/**
+	 *
+	 */
+	private String identifiers[];
+
+	/**
+	 *
+	 * @param id
+	 * @param fitness
+	 * @param trajectory
+	 *        may be {@code null}.
+	 */
+	EvaluationResult(long id, double fitness[], MultiTable trajectory) {
+		this.id = id;
+		this.fitness = fitness;
+		if (trajectory != null) {
+			timePoints = trajectory.getTimePoints();
+			data = trajectory.getBlock(0).getData();
+			identifiers = trajectory.getBlock(0).getIdentifiers();
+		}
+	}
+
+	/**
+	 * For reading only.
+	 */
+	private EvaluationResult() {
+	}
+
+	/**
+	 * @return the fitness of the evaluated parameter vector.
+	 */
+	public double[] getFitness() {
+		return fitness;
+	}
+
+	/**
+	 * @return the identifier of the corresponding request.
+	 */
+	long getId() {
+		return id;
+	}
+
+	/**
+	 * @return the simulated trajectory or {@code null} if it has not been
+	 *         requested or the simulation failed.
+	 */
+	public MultiTable getTrajectory() {
+		if (timePoints == null) {
+			return null;
+		}
+		return new MultiTable(timePoints, data, identifiers);
+	}
+
+	/**
+	 * Writes this result in the format of the {@link WorkerProtocol}.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeLong(id);
+		WorkerProtocol.writeDoubles(out, fitness);
+		out.writeBoolean(timePoints != null);
+		if (timePoints != null) {
+			WorkerProtocol.writeDoubles(out, timePoints);
+			WorkerProtocol.writeMatrix(out, data);
+			WorkerProtocol.writeTexts(out, identifiers);
+		}
+	}
+
+	/**
+	 * Reads a result written by {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static EvaluationResult read(DataInput in) throws IOException {
+		EvaluationResult result = new EvaluationResult();
+		result.id = in.readLong();
+		result.fitness = WorkerProtocol.readDoubles(in);
+		if (in.readBoolean()) {
+			result.timePoints = WorkerProtocol.readDoubles(in);
+			result.data = WorkerProtocol.readMatrix(in);
+			result.identifiers = WorkerProtocol.readTexts(in);
+		}
+		return result;
+	}
+
+}
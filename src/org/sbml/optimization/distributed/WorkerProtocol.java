@@ -0,0 +1,437 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.simulator.math.MeanFunction;
+import org.simulator.math.QualityMeasure;
+
+/**
+ * The wire format shared by {@link EstimationCoordinator} and
+ * {@link EstimationWorker}. All messages consist of primitive values written
+ * with {@link DataOutput}, so that apart from the quality measure, which is
+ * read through an allow list, no objects are deserialized from the network.
+ * Every length read from the stream is checked before memory is
+ * allocated. Before any other data are exchanged, both sides prove the
+ * knowledge of a shared secret by a challenge-response handshake, in which the
+ * secret itself is never transmitted.
+ *
+ * @since 2.1
+ */
+final class WorkerProtocol {
+
+	/**
+	 * Identifies the protocol and its version at the beginning of the
+	 * handshake.
+	 */
+	static final int MAGIC = 0x53424D01;
+
+	/**
+	 * A parameter vector to be evaluated, see {@link EvaluationRequest}.
+	 */
+	static final byte REQUEST = 1;
+
+	/**
+	 * The answer to a request, see {@link EvaluationResult}.
+	 */
+	static final byte RESULT = 2;
+
+	/**
+	 * Sent while a side is alive but has nothing else to send.
+	 */
+	static final byte HEARTBEAT = 3;
+
+	/**
+	 * The worker has created the problem from the job.
+	 */
+	static final byte READY = 4;
+
+	/**
+	 * The worker could not create the problem; followed by the reason.
+	 */
+	static final byte REJECTED = 5;
+
+	/**
+	 * The time in milliseconds between two heartbeats.
+	 */
+	static final int KEEPALIVE_INTERVAL = 5000;
+
+	/**
+	 * The time in milliseconds after which a silent connection is considered
+	 * dead.
+	 */
+	static final int TIMEOUT = 6 * KEEPALIVE_INTERVAL;
+
+	/**
+	 * The maximal number of elements of an array and of bytes of a text.
+	 */
+	static final int MAX_LENGTH = 1 << 26;
+
+	/**
+	 *
+	 */
+	private static final int NONCE_LENGTH = 32;
+
+	/**
+	 *
+	 */
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	/**
+	 *
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 *
+	 */
+	private static final SecureRandom random = new SecureRandom();
+
+	/**
+	 * Not to be instantiated.
+	 */
+	private WorkerProtocol() {
+	}
+
+	/**
+	 * Reads the shared secret from the given file. Leading and trailing white
+	 * space is ignored.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *         if the file cannot be read or contains no secret.
+	 */
+	static byte[] readSecret(File file) throws IOException {
+		byte secret[] = new String(Files.readAllBytes(file.toPath()), UTF8).trim().getBytes(UTF8);
+		if (secret.length == 0) {
+			throw new IOException(file.getAbsolutePath());
+		}
+		return secret;
+	}
+
+	/**
+	 * Performs the mutual handshake: both sides send a random challenge and
+	 * answer the challenge of the other side with a message authentication
+	 * code of the shared secret. The role is part of the authenticated data,
+	 * so that an answer cannot be reflected to its sender.
+	 *
+	 * @param in
+	 * @param out
+	 * @param secret
+	 * @param coordinator
+	 *        whether this side is the coordinator.
+	 * @throws IOException
+	 *         if the other side does not speak this protocol or does not know
+	 *         the secret.
+	 */
+	static void authenticate(DataInput in, DataOutput out, byte secret[],
+		boolean coordinator) throws IOException {
+		byte challenge[] = new byte[NONCE_LENGTH];
+		random.nextBytes(challenge);
+		out.writeInt(MAGIC);
+		out.write(challenge);
+		flush(out);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("protocol mismatch");
+		}
+		byte peerChallenge[] = new byte[NONCE_LENGTH];
+		in.readFully(peerChallenge);
+		if (Arrays.equals(challenge, peerChallenge)) {
+			throw new IOException("reflected challenge");
+		}
+		out.write(mac(secret, coordinator, peerChallenge));
+		flush(out);
+		byte answer[] = new byte[mac(secret, !coordinator, challenge).length];
+		in.readFully(answer);
+		if (!MessageDigest.isEqual(answer, mac(secret, !coordinator, challenge))) {
+			throw new IOException("authentication failed");
+		}
+	}
+
+	/**
+	 *
+	 * @param secret
+	 * @param coordinator
+	 *        the role of the answering side.
+	 * @param challenge
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] mac(byte secret[], boolean coordinator, byte challenge[])
+		throws IOException {
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+			mac.update((byte) (coordinator ? 1 : 0));
+			return mac.doFinal(challenge);
+		} catch (GeneralSecurityException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private static void flush(DataOutput out) throws IOException {
+		if (out instanceof Flushable) {
+			((Flushable) out).flush();
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return a length that does not exceed {@link #MAX_LENGTH}.
+	 * @throws IOException
+	 */
+	static int readLength(DataInput in) throws IOException {
+		int length = in.readInt();
+		if ((length < 0) || (length > MAX_LENGTH)) {
+			throw new IOException("invalid length " + length);
+		}
+		return length;
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param text
+	 *        may be {@code null}.
+	 * @throws IOException
+	 */
+	static void writeText(DataOutput out, String text) throws IOException {
+		out.writeBoolean(text != null);
+		if (text != null) {
+			byte bytes[] = text.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static String readText(DataInput in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		byte bytes[] = new byte[readLength(in)];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param texts
+	 * @throws IOException
+	 */
+	static void writeTexts(DataOutput out, String texts[]) throws IOException {
+		out.writeInt(texts.length);
+		for (String text : texts) {
+			writeText(out, text);
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static String[] readTexts(DataInput in) throws IOException {
+		String texts[] = new String[readLength(in)];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = readText(in);
+		}
+		return texts;
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param values
+	 * @throws IOException
+	 */
+	static void writeDoubles(DataOutput out, double values[]) throws IOException {
+		out.writeInt(values.length);
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static double[] readDoubles(DataInput in) throws IOException {
+		double values[] = new double[readLength(in)];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	/**
+	 *
+	 * @param out
+	 * @param matrix
+	 * @throws IOException
+	 */
+	static void writeMatrix(DataOutput out, double matrix[][]) throws IOException {
+		out.writeInt(matrix.length);
+		for (double row[] : matrix) {
+			writeDoubles(out, row);
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static double[][] readMatrix(DataInput in) throws IOException {
+		double matrix[][] = new double[readLength(in)][];
+		for (int i = 0; i < matrix.length; i++) {
+			matrix[i] = readDoubles(in);
+		}
+		return matrix;
+	}
+
+	/**
+	 * Writes the given quality measure in the format of Java serialization.
+	 * This is the only object sent over the connection because not all
+	 * settings of the quality measures can be accessed otherwise.
+	 *
+	 * @param out
+	 * @param distance
+	 * @throws IOException
+	 * @see #readQualityMeasure(DataInput)
+	 */
+	static void writeQualityMeasure(DataOutput out, QualityMeasure distance)
+		throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(distance);
+		oos.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	/**
+	 * Reads a quality measure written by
+	 * {@link #writeQualityMeasure(DataOutput, QualityMeasure)}. Only subtypes
+	 * of {@link QualityMeasure} and {@link MeanFunction} from the package
+	 * {@code org.simulator.math} are resolved; any other class in the stream
+	 * is rejected before it is loaded.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static QualityMeasure readQualityMeasure(DataInput in) throws IOException {
+		byte bytes[] = new byte[readLength(in)];
+		in.readFully(bytes);
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+
+			/* (non-Javadoc)
+			 * @see java.io.ObjectInputStream#resolveClass(java.io.ObjectStreamClass)
+			 */
+			@Override
+			protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException,
+				ClassNotFoundException {
+				String name = desc.getName();
+				if (name.startsWith(QualityMeasure.class.getPackage().getName() + '.')) {
+					Class<?> c = Class.forName(name, false, QualityMeasure.class.getClassLoader());
+					if (QualityMeasure.class.isAssignableFrom(c)
+							|| MeanFunction.class.isAssignableFrom(c)) {
+						return c;
+					}
+				}
+				throw new InvalidClassException(name, "not permitted");
+			}
+
+			/* (non-Javadoc)
+			 * @see java.io.ObjectInputStream#resolveProxyClass(java.lang.String[])
+			 */
+			@Override
+			protected Class<?> resolveProxyClass(String[] interfaces)
+				throws IOException, ClassNotFoundException {
+				throw new InvalidClassException(Arrays.toString(interfaces), "not permitted");
+			}
+		};
+		try {
+			return (QualityMeasure) ois.readObject();
+		} catch (ClassNotFoundException exc) {
+			throw new IOException(exc);
+		} finally {
+			ois.close();
+		}
+	}
+
+	/**
+	 * Creates an instance of a class received from the other side, which must
+	 * be a subtype of the given type and have a public constructor without
+	 * arguments. No other classes are ever loaded or initialized on behalf of
+	 * the other side.
+	 *
+	 * @param className
+	 * @param type
+	 * @return
+	 * @throws IOException
+	 */
+	static <T> T newInstance(String className, Class<T> type) throws IOException {
+		try {
+			Class<?> c = Class.forName(className, false, type.getClassLoader());
+			if (!type.isAssignableFrom(c)) {
+				throw new IOException(className + " is not a " + type.getName());
+			}
+			return type.cast(c.getConstructor().newInstance());
+		} catch (ReflectiveOperationException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+}
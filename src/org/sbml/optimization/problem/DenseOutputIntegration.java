@@ -0,0 +1,243 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.problem;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math.ode.IntegratorException;
+import org.apache.commons.math.ode.nonstiff.AdaptiveStepsizeIntegrator;
+import org.apache.commons.math.ode.nonstiff.DormandPrince54Integrator;
+import org.apache.commons.math.ode.nonstiff.DormandPrince853Integrator;
+import org.apache.commons.math.ode.nonstiff.HighamHall54Integrator;
+import org.apache.commons.math.ode.sampling.StepHandler;
+import org.apache.commons.math.ode.sampling.StepInterpolator;
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.FunctionDefinition;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.simulator.math.odes.DESSolver;
+import org.simulator.math.odes.DormandPrince54Solver;
+import org.simulator.math.odes.DormandPrince853Solver;
+import org.simulator.math.odes.FirstOrderSolver;
+import org.simulator.math.odes.HighamHall54Solver;
+import org.simulator.math.odes.MultiTable;
+import org.simulator.sbml.SBMLinterpreter;
+
+/**
+ * Integrates a model with adaptive step sizes that are only limited by the
+ * tolerances and produces output only at the observation times, which are
+ * interpolated from the dense output of the integrator. In contrast to
+ * {@link DESSolver#solve(org.simulator.math.odes.DESystem, double[], double[])},
+ * no intermediate steps of a fixed size are enforced and no additional
+ * columns (e.g., reaction rates) are computed.
+ * <p>
+ * The solvers of the simulation core process events, rules, fast reactions
+ * and delays between their steps. Since this is not possible here, models
+ * that contain any of these are not supported (see
+ * {@link #isApplicable(SBMLinterpreter)}).
+ * <p>
+ * The interpolation relies on the continuous output of an embedded
+ * Runge-Kutta method. Hence, only the explicit Runge-Kutta solvers
+ * {@link DormandPrince54Solver}, {@link DormandPrince853Solver} and
+ * {@link HighamHall54Solver} are supported (see
+ * {@link #isSupported(DESSolver)}), whose method and tolerances are used.
+ * Stiff models require an implicit solver, which always integrates at all
+ * time points.
+ *
+ * @since 2.1
+ */
+class DenseOutputIntegration {
+
+	/**
+	 * The maximal number of evaluations of the derivatives per integration,
+	 * after which the integration is considered to have failed.
+	 */
+	private static final int MAX_EVALUATIONS = 1000000;
+
+	/**
+	 *
+	 * @param interpreter
+	 * @return {@code true} if the model of the given interpreter contains
+	 *         neither events nor rules nor fast reactions nor delays.
+	 */
+	static boolean isApplicable(SBMLinterpreter interpreter) {
+		if (interpreter.containsEventsOrRules()
+				|| interpreter.containsFastProcesses()) {
+			return false;
+		}
+		Model model = interpreter.getModel();
+		for (Reaction reaction : model.getListOfReactions()) {
+			if (reaction.isSetKineticLaw() && reaction.getKineticLaw().isSetMath()
+					&& containsDelay(reaction.getKineticLaw().getMath())) {
+				return false;
+			}
+		}
+		for (FunctionDefinition function : model.getListOfFunctionDefinitions()) {
+			if (function.isSetMath() && containsDelay(function.getMath())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param solver
+	 * @return {@code true} if the given solver is an explicit Runge-Kutta
+	 *         method with adaptive step sizes.
+	 */
+	static boolean isSupported(DESSolver solver) {
+		return (solver instanceof DormandPrince54Solver)
+				|| (solver instanceof DormandPrince853Solver)
+				|| (solver instanceof HighamHall54Solver);
+	}
+
+	/**
+	 *
+	 * @param math
+	 * @return
+	 */
+	private static boolean containsDelay(ASTNode math) {
+		if (math.getType() == ASTNode.Type.FUNCTION_DELAY) {
+			return true;
+		}
+		for (int i = 0; i < math.getChildCount(); i++) {
+			if (containsDelay(math.getChild(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 */
+	private final FirstOrderSolver solver;
+
+	/**
+	 *
+	 * @param solver
+	 *        a solver for which {@link #isSupported(DESSolver)} holds, whose
+	 *        method and tolerances are used.
+	 */
+	DenseOutputIntegration(DESSolver solver) {
+		if (!isSupported(solver)) {
+			throw new IllegalArgumentException(solver.getClass().getName());
+		}
+		this.solver = (FirstOrderSolver) solver;
+	}
+
+	/**
+	 *
+	 * @param span
+	 *        the length of the integration interval, which is the maximal step
+	 *        size.
+	 * @return a new integrator of the same method as the solver.
+	 */
+	private AdaptiveStepsizeIntegrator createIntegrator(double span) {
+		double absTol = solver.getAbsTol(), relTol = solver.getRelTol();
+		if (solver instanceof DormandPrince54Solver) {
+			return new DormandPrince54Integrator(0d, span, absTol, relTol);
+		} else if (solver instanceof HighamHall54Solver) {
+			return new HighamHall54Integrator(0d, span, absTol, relTol);
+		}
+		return new DormandPrince853Integrator(0d, span, absTol, relTol);
+	}
+
+	/**
+	 *
+	 * @param interpreter
+	 * @param initialValues
+	 *        the values at the first time point.
+	 * @param timePoints
+	 *        the observation times in ascending order.
+	 * @return a table with one row per observation time and one column per
+	 *         identifier of the interpreter.
+	 * @throws DerivativeException
+	 * @throws IntegratorException
+	 *         if the integration does not converge.
+	 */
+	MultiTable solve(final SBMLinterpreter interpreter, double initialValues[],
+		final double timePoints[]) throws DerivativeException,
+		IntegratorException {
+		final double data[][] = new double[timePoints.length][];
+		data[0] = initialValues.clone();
+		if (timePoints.length > 1) {
+			double span = timePoints[timePoints.length - 1] - timePoints[0];
+			AdaptiveStepsizeIntegrator integrator = createIntegrator(span);
+			integrator.setMaxEvaluations(MAX_EVALUATIONS);
+			integrator.addStepHandler(new StepHandler() {
+
+				/**
+				 * The next observation time to be interpolated.
+				 */
+				private int next = 1;
+
+				/* (non-Javadoc)
+				 * @see org.apache.commons.math.ode.sampling.StepHandler#requiresDenseOutput()
+				 */
+				@Override
+				public boolean requiresDenseOutput() {
+					return true;
+				}
+
+				/* (non-Javadoc)
+				 * @see org.apache.commons.math.ode.sampling.StepHandler#reset()
+				 */
+				@Override
+				public void reset() {
+					next = 1;
+				}
+
+				/* (non-Javadoc)
+				 * @see org.apache.commons.math.ode.sampling.StepHandler#handleStep(org.apache.commons.math.ode.sampling.StepInterpolator, boolean)
+				 */
+				@Override
+				public void handleStep(StepInterpolator interpolator, boolean isLast)
+					throws DerivativeException {
+					while ((next < timePoints.length)
+							&& (isLast || (timePoints[next] <= interpolator.getCurrentTime()))) {
+						interpolator.setInterpolatedTime(timePoints[next]);
+						data[next++] = interpolator.getInterpolatedState().clone();
+					}
+				}
+			});
+			integrator.integrate(new FirstOrderDifferentialEquations() {
+
+				/* (non-Javadoc)
+				 * @see org.apache.commons.math.ode.FirstOrderDifferentialEquations#getDimension()
+				 */
+				@Override
+				public int getDimension() {
+					return interpreter.getDimension();
+				}
+
+				/* (non-Javadoc)
+				 * @see org.apache.commons.math.ode.FirstOrderDifferentialEquations#computeDerivatives(double, double[], double[])
+				 */
+				@Override
+				public void computeDerivatives(double t, double[] y, double[] yDot)
+					throws DerivativeException {
+					interpreter.computeDerivatives(t, y, yDot);
+				}
+			}, timePoints[0], initialValues.clone(),
+				timePoints[timePoints.length - 1], new double[initialValues.length]);
+		}
+		return new MultiTable(timePoints.clone(), data,
+			interpreter.getIdentifiers());
+	}
+
+}
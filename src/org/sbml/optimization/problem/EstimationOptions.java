@@ -15,6 +15,7 @@
  */
 package org.sbml.optimization.problem;
 
+import java.io.File;
 import java.util.ResourceBundle;
 
 import org.sbml.simulator.SBMLsimulator;
@@ -134,6 +135,40 @@ public interface EstimationOptions extends KeyProvider {
 	public static final Option<Boolean> EST_MULTI_SHOOT = new Option<Boolean>(
 		"EST_MULTI_SHOOT", Boolean.class, bundle, Boolean.TRUE);
 	
+	/**
+	 * If this is selected together with multiple shooting and more than one
+	 * thread, the measurement time points are split into one segment per
+	 * thread, and the segments are integrated concurrently. Components that are
+	 * not measured at the start of a segment are guessed, and the remaining
+	 * mismatch between consecutive segments is added to the fitness as a
+	 * continuity penalty. Hence, the fitness can differ from the one of the
+	 * sequential multiple shooting.
+	 */
+	public static final Option<Boolean> EST_PARALLEL_MULTI_SHOOT = new Option<Boolean>(
+		"EST_PARALLEL_MULTI_SHOOT", Boolean.class, bundle, Boolean.FALSE);
+	
+	/**
+	 * If this is selected, single shooting lets the integrator choose its step
+	 * sizes according to the tolerances and computes the solution only at the
+	 * measurement time points by interpolation. This reduces the effort of
+	 * each simulation, especially for sparse measurements. Models with events,
+	 * rules, fast reactions or delays are still integrated by the selected
+	 * solver.
+	 */
+	public static final Option<Boolean> EST_DENSE_OUTPUT = new Option<Boolean>(
+		"EST_DENSE_OUTPUT", Boolean.class, bundle, Boolean.FALSE);
+	
+	/**
+	 * If this is selected and several data sets are given, each data set is
+	 * considered a separate experiment. It is simulated from the values
+	 * measured at its own first time point, and the distances of all
+	 * experiments are averaged. The experiments are simulated concurrently if
+	 * more than one thread is available. Otherwise, the data sets are averaged
+	 * into one table of initial conditions.
+	 */
+	public static final Option<Boolean> EST_MULTI_EXPERIMENT = new Option<Boolean>(
+		"EST_MULTI_EXPERIMENT", Boolean.class, bundle, Boolean.FALSE);
+	
 	/**
 	 * If this is selected, splines will be calculated from given experimental data
 	 * and the parameter estimation procedure will fit the system to the splines instead
@@ -161,6 +196,16 @@ public interface EstimationOptions extends KeyProvider {
 		"NUMBER_OF_SPLINE_SAMPLES", Integer.class, bundle, Integer.valueOf(50),
 		SPLINE_FITTING_SELECTED);
 
+	/**
+	 * If a directory is given, the splines fitted to a data file are stored in
+	 * this directory, so that subsequent runs on the same data file can reuse
+	 * them.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final Option<String> SPLINE_CACHE_DIRECTORY = new Option<String>(
+		"SPLINE_CACHE_DIRECTORY", String.class, bundle, (String) null,
+		SPLINE_FITTING_SELECTED);
+
 	/**
 	 * These options allow you to estimate parameters with respect to spline
 	 * interpolation values between given measurement data and to configure how to
@@ -168,7 +213,270 @@ public interface EstimationOptions extends KeyProvider {
 	 */
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public static final OptionGroup SPLINE_FITTING = new OptionGroup(
-		"SPLINE_FITTING", bundle, FIT_TO_SPLINES, NUMBER_OF_SPLINE_SAMPLES);
+		"SPLINE_FITTING", bundle, FIT_TO_SPLINES, NUMBER_OF_SPLINE_SAMPLES,
+		SPLINE_CACHE_DIRECTORY);
+	
+	/**
+	 * If this is selected, the best solution found by the global optimization
+	 * procedure is refined by a local Levenberg-Marquardt search. Global
+	 * procedures find the right region of the search space, but converge only
+	 * slowly within this region, whereas the local search needs only a few
+	 * iterations to reach the closest optimum. The refined solution is only kept
+	 * if it improves the selected quality measure.
+	 */
+	public static final Option<Boolean> EST_LOCAL_REFINEMENT = new Option<Boolean>(
+		"EST_LOCAL_REFINEMENT", Boolean.class, bundle, Boolean.FALSE);
+
+	/**
+	 * Range that is used to decide whether or not the local refinement is
+	 * enabled.
+	 */
+	public static final ValuePairUncomparable<Option<Boolean>, Range<Boolean>> LOCAL_REFINEMENT_SELECTED = new ValuePairUncomparable<Option<Boolean>, Range<Boolean>>(
+		EST_LOCAL_REFINEMENT, new Range<Boolean>(Boolean.class, Boolean.TRUE));
+
+	/**
+	 * The maximal number of iterations of the local refinement. In each
+	 * iteration, the model is simulated once for each estimated quantity in
+	 * order to approximate the Jacobian matrix.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final Option<Integer> EST_LOCAL_REFINEMENT_MAX_ITERATIONS = new Option<Integer>(
+		"EST_LOCAL_REFINEMENT_MAX_ITERATIONS", Integer.class, bundle,
+		Integer.valueOf(50), LOCAL_REFINEMENT_SELECTED);
+
+	/**
+	 * These options configure the local search that follows the global
+	 * optimization procedure.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static final OptionGroup LOCAL_REFINEMENT = new OptionGroup(
+		"LOCAL_REFINEMENT", bundle, EST_LOCAL_REFINEMENT,
+		EST_LOCAL_REFINEMENT_MAX_ITERATIONS);
+
+	/**
+	 * The number of threads that simulate the model concurrently whenever
+	 * independent simulations are required. Each thread works on its own copy of
+	 * the model.
+	 */
+	public static final Option<Integer> EST_NUMBER_OF_THREADS = new Option<Integer>(
+		"EST_NUMBER_OF_THREADS", Integer.class, bundle,
+		Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * If greater than zero, the estimation listens on this port for worker
+	 * processes (see {@link org.sbml.optimization.distributed.EstimationWorker})
+	 * that evaluate whole populations in parallel, possibly on other computers.
+	 * Only evaluated on the command line.
+	 */
+	public static final Option<Integer> EST_COORDINATOR_PORT = new Option<Integer>(
+		"EST_COORDINATOR_PORT", Integer.class, bundle, Integer.valueOf(0), false);
+
+	/**
+	 * The local address on which the estimation listens for worker processes.
+	 * The default, the loopback address, only accepts workers on the same
+	 * computer. Only evaluated on the command line.
+	 */
+	public static final Option<String> EST_COORDINATOR_ADDRESS = new Option<String>(
+		"EST_COORDINATOR_ADDRESS", String.class, bundle, "127.0.0.1", false);
+
+	/**
+	 * The file that contains the secret shared with the worker processes, which
+	 * must be given to each worker as well. Without this file, no worker is
+	 * accepted. Only evaluated on the command line.
+	 */
+	public static final Option<File> EST_COORDINATOR_SECRET_FILE = new Option<File>(
+		"EST_COORDINATOR_SECRET_FILE", File.class, bundle, new File(""), false);
+
+	/**
+	 * Options that influence how many processors are used for the estimation.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final OptionGroup<Integer> PARALLEL_COMPUTATION = new OptionGroup<Integer>(
+		"PARALLEL_COMPUTATION", bundle, EST_NUMBER_OF_THREADS);
+
+	/**
+	 * If selected, the state of the optimization is periodically written to a
+	 * checkpoint file, from which an interrupted run can be resumed.
+	 */
+	public static final Option<Boolean> EST_CHECKPOINTS = new Option<Boolean>(
+		"EST_CHECKPOINTS", Boolean.class, bundle, Boolean.FALSE);
+
+	/**
+	 * Range that is used to decide whether or not checkpoints are enabled.
+	 */
+	public static final ValuePairUncomparable<Option<Boolean>, Range<Boolean>> CHECKPOINTS_SELECTED = new ValuePairUncomparable<Option<Boolean>, Range<Boolean>>(
+		EST_CHECKPOINTS, new Range<Boolean>(Boolean.class, Boolean.TRUE));
+
+	/**
+	 * The file that contains the checkpoint.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final Option<File> EST_CHECKPOINT_FILE = new Option<File>(
+		"EST_CHECKPOINT_FILE", File.class, bundle, new File(
+			System.getProperty("user.home"), "SBMLsimulator.checkpoint"),
+		CHECKPOINTS_SELECTED);
+
+	/**
+	 * The minimal time in seconds between two checkpoints.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final Option<Integer> EST_CHECKPOINT_INTERVAL = new Option<Integer>(
+		"EST_CHECKPOINT_INTERVAL", Integer.class, bundle, Integer.valueOf(60),
+		CHECKPOINTS_SELECTED);
+
+	/**
+	 * If selected and the checkpoint file exists, the estimation continues
+	 * from the checkpoint instead of starting with a new population. The
+	 * evaluations performed before the checkpoint count towards the budget of
+	 * the terminator. Resuming is a one-shot action: this option is only
+	 * evaluated on the command line and never stored in the preferences; the
+	 * graphical user interface asks for each estimation instead.
+	 */
+	public static final Option<Boolean> EST_RESUME_FROM_CHECKPOINT = new Option<Boolean>(
+		"EST_RESUME_FROM_CHECKPOINT", Boolean.class, bundle, Boolean.FALSE, false);
+
+	/**
+	 * These options configure the checkpoints of long estimation runs.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static final OptionGroup CHECKPOINTS = new OptionGroup(
+		"CHECKPOINTS", bundle, EST_CHECKPOINTS, EST_CHECKPOINT_FILE,
+		EST_CHECKPOINT_INTERVAL);
+
+	/**
+	 * If selected, a surrogate model of the fitness landscape pre-screens the
+	 * candidate solutions, and only promising candidates are simulated.
+	 */
+	public static final Option<Boolean> EST_SURROGATE = new Option<Boolean>(
+		"EST_SURROGATE", Boolean.class, bundle, Boolean.FALSE);
+
+	/**
+	 * Range that is used to decide whether or not the surrogate model is
+	 * enabled.
+	 */
+	public static final ValuePairUncomparable<Option<Boolean>, Range<Boolean>> SURROGATE_SELECTED = new ValuePairUncomparable<Option<Boolean>, Range<Boolean>>(
+		EST_SURROGATE, new Range<Boolean>(Boolean.class, Boolean.TRUE));
+
+	/**
+	 * A candidate is simulated if its predicted fitness is not worse than this
+	 * quantile of the fitness values simulated so far.
+	 */
+	@SuppressWarnings("unchecked")
+	public static final Option<Double> EST_SURROGATE_QUANTILE = new Option<Double>(
+		"EST_SURROGATE_QUANTILE", Double.class, bundle, new Range<Double>(
+			Double.class, "{[0, 1]}"), Double.valueOf(0.3d), SURROGATE_SELECTED);
+
+	/**
+	 * These options configure the pre-screening of candidate solutions.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static final OptionGroup SURROGATE = new OptionGroup(
+		"SURROGATE", bundle, EST_SURROGATE, EST_SURROGATE_QUANTILE);
+
+	/**
+	 * The maximal number of evaluations of an estimation. This budget always
+	 * terminates the estimation, regardless of all other criteria. Like all
+	 * termination criteria, this is only evaluated on the command line, because
+	 * the graphical user interface lets EvA2 configure the termination.
+	 */
+	public static final Option<Integer> EST_MAX_EVALUATIONS = new Option<Integer>(
+		"EST_MAX_EVALUATIONS", Integer.class, bundle, Integer.valueOf(100000), false);
+
+	/**
+	 * The estimation is considered converged if the best fitness has not
+	 * improved for this number of generations. Zero disables this criterion.
+	 */
+	public static final Option<Integer> EST_STAGNATION_GENERATIONS = new Option<Integer>(
+		"EST_STAGNATION_GENERATIONS", Integer.class, bundle, Integer.valueOf(0), false);
+
+	/**
+	 * The minimal relative improvement of the best fitness that does not count
+	 * as stagnation.
+	 */
+	public static final Option<Double> EST_STAGNATION_TOLERANCE = new Option<Double>(
+		"EST_STAGNATION_TOLERANCE", Double.class, bundle, Double.valueOf(1E-6d), false);
+
+	/**
+	 * The estimation stops as soon as the best fitness is less than or equal
+	 * to this value. NaN disables this criterion.
+	 */
+	public static final Option<Double> EST_TARGET_FITNESS = new Option<Double>(
+		"EST_TARGET_FITNESS", Double.class, bundle, Double.valueOf(Double.NaN), false);
+
+	/**
+	 * The maximal duration of the estimation in seconds. Zero disables this
+	 * criterion.
+	 */
+	public static final Option<Integer> EST_MAX_TIME = new Option<Integer>(
+		"EST_MAX_TIME", Integer.class, bundle, Integer.valueOf(0), false);
+
+	/**
+	 * If selected, the estimation only stops when all enabled criteria
+	 * (stagnation, target fitness, time) are met. Otherwise, the first
+	 * criterion that is met stops the estimation.
+	 */
+	public static final Option<Boolean> EST_TERMINATE_ON_ALL_CRITERIA = new Option<Boolean>(
+		"EST_TERMINATE_ON_ALL_CRITERIA", Boolean.class, bundle, Boolean.FALSE, false);
+
+	/**
+	 * If a file is given, the profile likelihood of each estimated quantity is
+	 * computed after the estimation and the resulting confidence intervals are
+	 * written into this file.
+	 */
+	public static final Option<String> EST_PROFILE_LIKELIHOOD_FILE = new Option<String>(
+		"EST_PROFILE_LIKELIHOOD_FILE", String.class, bundle, (String) null);
+
+	/**
+	 * The number of profile points between the estimated value and each bound
+	 * of a quantity.
+	 */
+	public static final Option<Integer> EST_PROFILE_LIKELIHOOD_STEPS = new Option<Integer>(
+		"EST_PROFILE_LIKELIHOOD_STEPS", Integer.class, bundle, Integer.valueOf(10));
+
+	/**
+	 * The probability covered by the confidence intervals of the profile
+	 * likelihood.
+	 */
+	public static final Option<Double> EST_CONFIDENCE_LEVEL = new Option<Double>(
+		"EST_CONFIDENCE_LEVEL", Double.class, bundle, Double.valueOf(0.95d));
+
+	/**
+	 * If a file is given, the state of the estimation after each generation is
+	 * written into this file, one line in JSON format per generation.
+	 */
+	public static final Option<String> EST_TELEMETRY_FILE = new Option<String>(
+		"EST_TELEMETRY_FILE", String.class, bundle, (String) null);
+
+	/**
+	 * If a file is given, bootstrap replicates of the estimation are fitted
+	 * after the estimation and appended to this file. A run that has been
+	 * interrupted is continued from the replicates in the file.
+	 */
+	public static final Option<String> EST_BOOTSTRAP_FILE = new Option<String>(
+		"EST_BOOTSTRAP_FILE", String.class, bundle, (String) null);
+
+	/**
+	 * The total number of bootstrap replicates.
+	 */
+	public static final Option<Integer> EST_BOOTSTRAP_REPLICATES = new Option<Integer>(
+		"EST_BOOTSTRAP_REPLICATES", Integer.class, bundle, Integer.valueOf(200));
+
+	/**
+	 * The relative standard deviation of the Gaussian noise that is added to
+	 * the reference data of each replicate. If zero, the residuals of the
+	 * estimate are resampled instead.
+	 */
+	public static final Option<Double> EST_BOOTSTRAP_NOISE = new Option<Double>(
+		"EST_BOOTSTRAP_NOISE", Double.class, bundle, Double.valueOf(0d));
+
+	/**
+	 * If greater than zero, each bootstrap replicate is fitted by differential
+	 * evolution with this number of evaluations before it is refined locally.
+	 * Otherwise, the replicates are only refitted by a local search from the
+	 * estimate, which yields a local bootstrap.
+	 */
+	public static final Option<Integer> EST_BOOTSTRAP_GLOBAL_EVALUATIONS = new Option<Integer>(
+		"EST_BOOTSTRAP_GLOBAL_EVALUATIONS", Integer.class, bundle, Integer.valueOf(0));
 	
 	/**
    * 
@@ -192,7 +500,8 @@ public interface EstimationOptions extends KeyProvider {
 	 */
 	@SuppressWarnings("unchecked")
 	public static final OptionGroup<Boolean> INTEGRATION_STRATEGY = new OptionGroup<Boolean>(
-		"INTEGRATION_STRATEGY", bundle, EST_MULTI_SHOOT, USE_EXISTING_SOLUTION);
+		"INTEGRATION_STRATEGY", bundle, EST_MULTI_SHOOT, EST_PARALLEL_MULTI_SHOOT, EST_DENSE_OUTPUT,
+		EST_MULTI_EXPERIMENT, USE_EXISTING_SOLUTION);
 	
 	/**
 	 * This specifies the class name of the default distance function that
@@ -22,9 +22,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 import org.apache.commons.math.ode.DerivativeException;
+import org.apache.commons.math.ode.IntegratorException;
 import org.sbml.jsbml.KineticLaw;
 import org.sbml.jsbml.LocalParameter;
 import org.sbml.jsbml.Model;
@@ -32,12 +34,18 @@ import org.sbml.jsbml.Quantity;
 import org.sbml.jsbml.Reaction;
 import org.sbml.jsbml.SBMLException;
 import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.sbml.optimization.EstimationCheckpoint;
+import org.sbml.optimization.EstimationRandom;
 import org.sbml.optimization.QuantityRange;
+import org.sbml.optimization.SurrogateModel;
+import org.sbml.optimization.distributed.EstimationCoordinator;
+import org.sbml.simulator.math.AlignmentPlan;
 import org.simulator.math.PearsonCorrelation;
 import org.simulator.math.QualityMeasure;
 import org.simulator.math.odes.AbstractDESSolver;
 import org.simulator.math.odes.DESSolver;
 import org.simulator.math.odes.MultiTable;
+import org.simulator.math.odes.MultiTable.Block.Column;
 import org.simulator.sbml.SBMLinterpreter;
 
 import de.zbit.io.csv.CSVReader;
@@ -45,6 +53,7 @@ import de.zbit.io.csv.CSVWriter;
 import de.zbit.util.ResourceManager;
 import de.zbit.util.prefs.SBPreferences;
 import eva2.optimization.population.PopulationInterface;
+import eva2.optimization.individuals.AbstractEAIndividual;
 import eva2.optimization.individuals.ESIndividualDoubleData;
 import eva2.optimization.individuals.InterfaceDataTypeDouble;
 import eva2.optimization.population.Population;
@@ -73,6 +82,11 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 */
 	private MultiTable currentSimulationData = null;
 
+	/**
+	 * The simulation of each reference data set of the last evaluation.
+	 */
+	private transient MultiTable currentSimulations[] = null;
+
 	/**
 	 * Generated version identifier.
 	 */
@@ -114,6 +128,16 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		return bestSolutionFound;
 	}
 
+	/**
+	 * Replaces the best solution, e.g., after a subsequent local refinement.
+	 * 
+	 * @param bestSolutionFound
+	 *        the bestSolutionFound to set
+	 */
+	public void setBestSolutionFound(double[] bestSolutionFound) {
+		this.bestSolutionFound = bestSolutionFound;
+	}
+
 	/**
 	 * 
 	 */
@@ -142,6 +166,53 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 */
 	private boolean multishoot;
 
+	/**
+	 * Switch to decide whether or not the segments of the multiple shooting
+	 * are integrated concurrently (see {@link ParallelMultipleShooting}).
+	 */
+	private boolean parallelMultishoot = false;
+
+	/**
+	 * The number of threads used to simulate independent experiments or to
+	 * integrate the shooting segments concurrently if
+	 * {@link #parallelMultishoot} is set.
+	 */
+	private transient int numberOfThreads = 1;
+
+	/**
+	 * Created on demand if the multiple shooting intervals are to be integrated
+	 * concurrently.
+	 */
+	private transient ParallelMultipleShooting parallelMultipleShooting = null;
+
+	/**
+	 * The continuity penalty of the last simulation if it integrated the
+	 * shooting segments concurrently, zero otherwise.
+	 */
+	private transient double continuityPenalty = 0d;
+
+	/**
+	 * Decides whether or not single shooting integrates only at the
+	 * measurement time points.
+	 */
+	private boolean denseOutput = false;
+
+	/**
+	 * Integrates the model if {@link #denseOutput} is set.
+	 */
+	private transient DenseOutputIntegration denseOutputIntegration = null;
+
+	/**
+	 * Decides whether or not each reference data set is simulated as a
+	 * separate experiment.
+	 */
+	private boolean multiExperiment = false;
+
+	/**
+	 * Simulates the experiments if {@link #multiExperiment} is set.
+	 */
+	private transient MultiExperimentEvaluation multiExperimentEvaluation = null;
+
 	/**
 	 * 
 	 */
@@ -169,6 +240,115 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		ESIndividualDoubleData ind = (ESIndividualDoubleData) this.optimizer.getPopulation().getBestIndividual();
 		this.bestSolutionFound = ind.getDoublePosition();
 		this.evaluate(ind.getDoublePosition());
+		discountScreenedCandidates(this.optimizer.getPopulation());
+		checkpoint(this.optimizer.getPopulation());
+	}
+	
+	/**
+	 * The file to which the state of the optimization is written periodically
+	 * or {@code null} if no checkpoints are to be created.
+	 */
+	private transient File checkpointFile = null;
+	
+	/**
+	 * The minimal time in milliseconds between two checkpoints and the time of
+	 * the last checkpoint.
+	 */
+	private transient long checkpointInterval, lastCheckpoint;
+	
+	/**
+	 * A checkpoint to be applied when the next population is initialized.
+	 */
+	private transient EstimationCheckpoint resumeCheckpoint = null;
+	
+	/**
+	 * The random number generator of the optimizer, whose state is stored in
+	 * the checkpoints, or {@code null} without checkpoints.
+	 */
+	private transient EstimationRandom random;
+	
+	/**
+	 * Enables periodic checkpoints of the optimization, which are created in
+	 * {@link #checkpoint(Population)}. The file must be set before the
+	 * population is initialized, which installs the generator whose state the
+	 * checkpoints store.
+	 * 
+	 * @param file
+	 *        the checkpoint file or {@code null} to disable checkpoints.
+	 * @param interval
+	 *        the minimal time between two checkpoints in milliseconds.
+	 */
+	public void setCheckpointFile(File file, long interval) {
+		this.checkpointFile = file;
+		this.checkpointInterval = interval;
+		this.lastCheckpoint = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Writes the state of the given population to the checkpoint file if the
+	 * checkpoint interval has elapsed since the last checkpoint. The state of
+	 * the {@link EstimationRandom} installed in
+	 * {@link #initializePopulation(Population)} is only read, so that
+	 * checkpoints do not change the course of the optimization and a resumed
+	 * run continues with the same random numbers as the original run. This
+	 * method should be called once per generation.
+	 * 
+	 * @param population
+	 *        the current population of the optimizer.
+	 */
+	public void checkpoint(Population population) {
+		if ((checkpointFile == null) || (random == null)
+				|| (System.currentTimeMillis() - lastCheckpoint < checkpointInterval)) {
+			return;
+		}
+		double genotypes[][] = new double[population.size()][];
+		for (int i = 0; i < genotypes.length; i++) {
+			genotypes[i] = ((InterfaceDataTypeDouble) population.getIndividual(i)).getDoubleData().clone();
+		}
+		EstimationCheckpoint checkpoint = new EstimationCheckpoint(
+			getQuantityIdentifiers(), genotypes, bestSolutionFound,
+			random.getState(), random.getNextGaussian(),
+			population.getFunctionCalls());
+		try {
+			checkpoint.save(checkpointFile);
+			logger.fine(MessageFormat.format(bundle.getString("CHECKPOINT_SAVED"),
+				checkpointFile, checkpoint.getEvaluations()));
+		} catch (IOException exc) {
+			logger.warning(exc.getLocalizedMessage());
+		}
+		lastCheckpoint = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Memorizes the given checkpoint, which replaces the population created by
+	 * the next call of {@link #initializePopulation(Population)}. The number of
+	 * fitness evaluations of the population is set to the one of the
+	 * checkpoint, so that the resumed run uses the remaining budget of its
+	 * terminator.
+	 * 
+	 * @param checkpoint
+	 * @throws IllegalArgumentException
+	 *         if the checkpoint belongs to a problem with other quantities.
+	 */
+	public void resume(EstimationCheckpoint checkpoint) {
+		if (!checkpoint.isCompatible(getQuantityIdentifiers())) {
+			throw new IllegalArgumentException(
+				bundle.getString("CHECKPOINT_INCOMPATIBLE"));
+		}
+		this.resumeCheckpoint = checkpoint;
+	}
+	
+	/**
+	 * 
+	 * @return the identifiers of all quantities to be estimated (see
+	 *         {@link #getQuantityIdentifier(Quantity)}).
+	 */
+	public String[] getQuantityIdentifiers() {
+		String ids[] = new String[quantityRanges.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = getQuantityIdentifier(quantityRanges[i].getQuantity());
+		}
+		return ids;
 	}
 	
 	
@@ -254,6 +434,8 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		} catch (Exception e) {
 			// can never happen.
 		}
+		denseOutput = problem.denseOutput;
+		multiExperiment = problem.multiExperiment;
 	}
 
 	/**
@@ -286,50 +468,49 @@ public class EstimationProblem extends AbstractProblemDouble implements
     @Override
 	public double[] evaluate(double[] x) {
 		
-		for (int i = 0; i < x.length; i++) {
-			quantityRanges[i].getQuantity().setValue(x[i]);
-		}
-		
 		try {
-			interpreter.init(false);
+			MultiTable solutions[] = simulateAll(x);
+			MultiTable solution = solutions[0];
 			
-			double[] initialValues = interpreter.getInitialValues();
-			MultiTable solution = null;
-			try {
-				if (multishoot) {
-					solution = solver.solve(interpreter,
-						getInitialConditions().getBlock(0), initialValues);
-				} else {
-					solution = solver.solve(interpreter, initialValues, getTimePoints());
-				}
-			} catch (DerivativeException e) {
+			fitness[0] = continuityPenalty;
+			if (Arrays.asList(solutions).contains(null)) {
+				failedEvaluations++;
+				solution = null;
 			}
-			
-			fitness[0] = 0d;
-			for (MultiTable data : referenceData) {
+			if ((alignmentPlans == null) || (alignmentPlans.length != referenceData.length)) {
+				alignmentPlans = new AlignmentPlan[referenceData.length];
+			}
+			for (int i = 0; i < referenceData.length; i++) {
 				if (solution == null) {
 					fitness[0] = defaultValue;
 				} else {
+					alignmentPlans[i] = AlignmentPlan.update(alignmentPlans[i],
+						solutions[i], referenceData[i]);
 					// equal weight for each reference data set
 					if (negationOfDistance) {
 						fitness[0] += -1
-								* distance.distance(solution, data)
+								* alignmentPlans[i].distance(distance, solutions[i])
 								/ referenceData.length;
 					} else {
-						fitness[0] += distance.distance(solution,
-							data)
+						fitness[0] += alignmentPlans[i].distance(distance,
+							solutions[i])
 								/ referenceData.length;
 					}
 				}
 				
 			}
 			currentSimulationData = solution;
+			currentSimulations = (solution != null) ? solutions : null;
 			if(solution != null) {
 				currentSimulationData.setName(SIMULATION_DATA);
 			}
+			if (surrogate != null) {
+				surrogate.add(x, fitness[0]);
+			}
 			
 		} catch (Exception e) {
 			e.printStackTrace();
+			failedEvaluations++;
 			fitness[0] = Double.POSITIVE_INFINITY;
 		}
 		double fitnessClone[] = new double[fitness.length];
@@ -337,6 +518,294 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		return fitnessClone;
 	}
 
+	/**
+	 * Assigns the given values to all quantities to be estimated and integrates
+	 * the model at the measurement time points.
+	 * 
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link #getQuantityRanges()}.
+	 * @return the simulation result or {@code null} if the integration failed.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 */
+	private MultiTable simulate(double[] x) throws SBMLException,
+		ModelOverdeterminedException, InterruptedException, ExecutionException {
+		continuityPenalty = 0d;
+		if (multishoot && parallelMultishoot && (numberOfThreads > 1)) {
+			if (parallelMultipleShooting == null) {
+				parallelMultipleShooting = new ParallelMultipleShooting(this,
+					getInitialConditions(), new EstimationProblemPool(this, numberOfThreads));
+			}
+			MultiTable solution = parallelMultipleShooting.solve(x);
+			continuityPenalty = parallelMultipleShooting.getContinuityPenalty();
+			return solution;
+		}
+		prepareInterpreter(x);
+		
+		double[] initialValues = interpreter.getInitialValues();
+		MultiTable solution = null;
+		try {
+			if (multishoot) {
+				solution = solver.solve(interpreter,
+					getInitialConditions().getBlock(0), initialValues);
+			} else {
+				solution = integrate(initialValues, getTimePoints());
+			}
+		} catch (DerivativeException e) {
+			logIntegrationFailure(e);
+		} catch (IntegratorException e) {
+			logIntegrationFailure(e);
+		}
+		return solution;
+	}
+
+	/**
+	 * Simulates the model once for each reference data set.
+	 * 
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link #getQuantityRanges()}.
+	 * @return the simulation result for each reference data set, where an entry
+	 *         is {@code null} if the integration failed. Unless
+	 *         {@link #isMultiExperiment()}, all entries are the same simulation
+	 *         at the merged time points.
+	 * @throws Exception
+	 */
+	private MultiTable[] simulateAll(double[] x) throws Exception {
+		if (multiExperiment && (referenceData.length > 1)) {
+			continuityPenalty = 0d;
+			if (multiExperimentEvaluation == null) {
+				multiExperimentEvaluation = new MultiExperimentEvaluation(this,
+					referenceData, (numberOfThreads > 1) ? new EstimationProblemPool(
+						this, Math.min(numberOfThreads, referenceData.length)) : null);
+			}
+			return multiExperimentEvaluation.solve(x);
+		}
+		MultiTable solutions[] = new MultiTable[referenceData.length];
+		Arrays.fill(solutions, simulate(x));
+		return solutions;
+	}
+
+	/**
+	 * Simulates a single reference data set as a separate experiment, which
+	 * starts from the values measured at its first time point.
+	 * 
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link #getQuantityRanges()}.
+	 * @param experiment
+	 *        the reference data of the experiment.
+	 * @param initialState
+	 *        the values measured at the first time point of the experiment,
+	 *        one entry per component of the interpreter; {@link Double#NaN}
+	 *        for all components that have not been measured.
+	 * @return the simulation result at the time points of the experiment or
+	 *         {@code null} if the integration failed.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 */
+	MultiTable simulateExperiment(double[] x, MultiTable experiment,
+		double initialState[]) throws SBMLException, ModelOverdeterminedException {
+		prepareInterpreter(x);
+		double[] initialValues = interpreter.getInitialValues();
+		try {
+			if (multishoot) {
+				return solver.solve(interpreter, experiment.getBlock(0), initialValues);
+			}
+			double state[] = initialValues.clone();
+			for (int j = 0; j < state.length; j++) {
+				if (!Double.isNaN(initialState[j])) {
+					state[j] = initialState[j];
+				}
+			}
+			return integrate(state, experiment.getTimePoints());
+		} catch (DerivativeException e) {
+			logIntegrationFailure(e);
+		} catch (IntegratorException e) {
+			logIntegrationFailure(e);
+		}
+		return null;
+	}
+
+	/**
+	 * Failed integrations are expected for some parameter values and result
+	 * in the default distance of the quality measure, hence they are only
+	 * logged on a fine level.
+	 * 
+	 * @param exc
+	 */
+	private void logIntegrationFailure(Exception exc) {
+		logger.fine(MessageFormat.format(bundle.getString("INTEGRATION_FAILED"),
+			exc.getLocalizedMessage()));
+	}
+
+	/**
+	 * Integrates the model in a single shot, either by the solver or, if
+	 * {@link #denseOutput} is set, by a {@link DenseOutputIntegration}. If the
+	 * solver is not an explicit Runge-Kutta method or the model cannot be
+	 * integrated this way, the solver is used and dense output is switched
+	 * off.
+	 * 
+	 * @param initialValues
+	 * @param timePoints
+	 * @return
+	 * @throws DerivativeException
+	 * @throws IntegratorException
+	 */
+	private MultiTable integrate(double initialValues[], double timePoints[])
+		throws DerivativeException, IntegratorException {
+		if (denseOutput && (denseOutputIntegration == null)) {
+			if (!DenseOutputIntegration.isSupported(solver)) {
+				logger.warning(MessageFormat.format(
+					bundle.getString("DENSE_OUTPUT_SOLVER_NOT_SUPPORTED"),
+					solver.getClass().getSimpleName()));
+				denseOutput = false;
+			} else if (DenseOutputIntegration.isApplicable(interpreter)) {
+				denseOutputIntegration = new DenseOutputIntegration(solver);
+			} else {
+				logger.warning(bundle.getString("DENSE_OUTPUT_NOT_APPLICABLE"));
+				denseOutput = false;
+			}
+		}
+		if (denseOutput) {
+			return denseOutputIntegration.solve(interpreter, initialValues,
+				timePoints);
+		}
+		return solver.solve(interpreter, initialValues, timePoints);
+	}
+
+	/**
+	 * Assigns the given values to all quantities to be estimated and
+	 * initializes the {@link SBMLinterpreter} accordingly.
+	 * 
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link #getQuantityRanges()}.
+	 * @return the initialized {@link SBMLinterpreter} of this problem.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 */
+	SBMLinterpreter prepareInterpreter(double[] x) throws SBMLException,
+		ModelOverdeterminedException {
+		for (int i = 0; i < x.length; i++) {
+			quantityRanges[i].getQuantity().setValue(x[i]);
+		}
+		interpreter.init(false);
+		return interpreter;
+	}
+
+	/**
+	 * 
+	 * @return the {@link SBMLinterpreter} of this problem.
+	 */
+	SBMLinterpreter getInterpreter() {
+		return interpreter;
+	}
+
+	/**
+	 * Simulates the model for the given values and computes the residuals, i.e.,
+	 * the differences between simulated and measured values, for each data point
+	 * of each reference data set. The residuals are ordered by data set, column
+	 * and time point. Data points that are not available in the measurement or
+	 * in the simulation contribute a residual of zero, so that the length of the
+	 * returned vector does not depend on the values in {@code x}.
+	 * 
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link #getQuantityRanges()}.
+	 * @return the residual vector or {@code null} if the simulation failed.
+	 */
+	public double[] computeResiduals(double[] x) {
+		MultiTable solutions[] = null;
+		try {
+			solutions = simulateAll(x);
+		} catch (Exception e) {
+			logger.fine(e.getLocalizedMessage());
+		}
+		if ((solutions == null) || Arrays.asList(solutions).contains(null)) {
+			return null;
+		}
+		double residuals[] = new double[getResidualCount()];
+		ReferenceDataIndex dataIndex = getReferenceDataIndex();
+		int row, col, index, i = 0;
+		double measured;
+		for (int k = 0; k < referenceData.length; k++) {
+			MultiTable solution = solutions[k];
+			double simulatedTimePoints[] = solution.getTimePoints();
+			// a single shooting result is given at the merged time points
+			boolean mergedGrid = Arrays.equals(simulatedTimePoints, getTimePoints());
+			MultiTable data = referenceData[k];
+			MultiTable.Block block = data.getBlock(0);
+			for (col = 0; col < block.getColumnCount(); col++) {
+				Column simulated = solution.getColumn(block.getIdentifiers()[col]);
+				Column measurement = block.getColumn(col);
+				for (row = 0; row < data.getRowCount(); row++, i++) {
+					if (simulated == null) {
+						continue;
+					}
+					index = mergedGrid ? dataIndex.getMergedRow(k, row)
+							: Arrays.binarySearch(simulatedTimePoints, data.getTimePoint(row));
+					measured = measurement.getValue(row);
+					if ((index >= 0) && !Double.isNaN(measured)) {
+						residuals[i] = simulated.getValue(index) - measured;
+						if (Double.isNaN(residuals[i])) {
+							return null;
+						}
+					}
+				}
+			}
+		}
+		return residuals;
+	}
+
+	/**
+	 * 
+	 * @return the number of elements in the vector returned by
+	 *         {@link #computeResiduals(double[])}.
+	 */
+	public int getResidualCount() {
+		int count = 0;
+		for (MultiTable data : referenceData) {
+			count += data.getRowCount() * data.getBlock(0).getColumnCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Creates a copy of this problem that works on its own clone of the
+	 * {@link Model}, its own {@link SBMLinterpreter} and its own
+	 * {@link DESSolver}. In contrast to {@link #clone()}, the returned problem
+	 * can therefore be evaluated concurrently to this problem, e.g., in a
+	 * separate {@link Thread}. The reference data are shared because they are
+	 * never modified during the evaluation.
+	 * 
+	 * @return an independent copy of this problem.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 */
+	public EstimationProblem createIndependentCopy() throws SBMLException,
+		ModelOverdeterminedException {
+		Model model = getModel().getSBMLDocument().clone().getModel();
+		QuantityRange ranges[] = new QuantityRange[quantityRanges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			ranges[i] = quantityRanges[i].copyFor(findQuantity(model,
+				getQuantityIdentifier(quantityRanges[i].getQuantity())));
+		}
+		// the constructor resets the default value of the shared distance function
+		double defaultDistVal = distance.getDefaultValue();
+		EstimationProblem copy = new EstimationProblem(solver, distance, model,
+			Arrays.asList(referenceData), multishoot, ranges);
+		distance.setDefaultValue(defaultDistVal);
+		copy.defaultValue = defaultValue;
+		copy.negationOfDistance = negationOfDistance;
+		copy.originalValues = originalValues.clone();
+		copy.parallelMultishoot = parallelMultishoot;
+		copy.denseOutput = denseOutput;
+		copy.multiExperiment = multiExperiment;
+		return copy;
+	}
+
 	/**
 	 * 
 	 * @return
@@ -346,49 +815,24 @@ public class EstimationProblem extends AbstractProblemDouble implements
 			if (referenceData.length == 1) {
 				initConditions = referenceData[0];
 			} else {
-				// merge all identifiers
-				List<String> identifiers = new ArrayList<String>();
-				for (String s : referenceData[0].getBlock(0).getIdentifiers()) {
-					identifiers.add(s);
-				}
-				int i, j, index;
-				for (i = 1; i < referenceData.length; i++) {
-					for (j = 0; j < referenceData[i].getBlock(0).getColumnCount(); j++) {
-						index = Arrays.binarySearch(identifiers.toArray(new String[0]),
-							referenceData[i].getBlock(0).getIdentifiers()[j]);
-						if (index < 0) {
-							index = -index + 1;
-							if (index > identifiers.size()) {
-								index = identifiers.size();
-							}
-							identifiers.add(index, referenceData[i].getBlock(0).getIdentifiers()[j]);
-						}
-					}
-				}
-				// determine the merged time points
-				double tp[] = getTimePoints();
 				// merge all data points (using a simple mean calculation)
-				double data[][] = new double[tp.length][identifiers.size()];
-				MultiTable.Block block;
-				for (i = 0; i < tp.length; i++) {
-					for (j = 0; j < identifiers.size(); j++) {
-						for (index = 0; index < referenceData.length; index++) {
-							block = referenceData[index].getBlock(0);
-							if (block.containsColumn(identifiers.get(j))) {
-								data[i][j] += block.getColumn(identifiers.get(j)).getValue(i) / referenceData.length;
-							} else {
-								// If one value is not available, this data point will become null! 
-								data[i][j] = Double.NaN;
-							}
-						}
-					}
-				}
-				initConditions = new MultiTable(tp, data, identifiers.toArray(new String[0]));
+				initConditions = getReferenceDataIndex().merge(referenceData);
 			}
 		}
 		return initConditions;
 	}
 
+	/**
+	 * 
+	 * @return the index of the reference data, which is created on demand.
+	 */
+	ReferenceDataIndex getReferenceDataIndex() {
+		if (referenceDataIndex == null) {
+			referenceDataIndex = new ReferenceDataIndex(referenceData);
+		}
+		return referenceDataIndex;
+	}
+
 	/**
 	 * Memorizes the time points at which measurements are taken, i.e., at which
 	 * the integration system must be evaluated.
@@ -401,6 +845,18 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 */
 	private MultiTable initConditions = null;
 
+	/**
+	 * Memorizes the merged time points and identifiers of all reference data
+	 * and the positions of each data set within them.
+	 */
+	private transient ReferenceDataIndex referenceDataIndex = null;
+
+	/**
+	 * Memorizes for each reference data set how it is aligned with the
+	 * simulation results, so that this is not repeated for each evaluation.
+	 */
+	private transient AlignmentPlan alignmentPlans[] = null;
+
 	/**
 	 * Memorizes the optimizer
 	 */
@@ -411,45 +867,166 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 * @return
 	 */
 	public double[] getTimePoints() {
-
 		if ((timePoints == null) && (referenceData.length > 0)) {
 			// Merge all measurement time points into one double array
-			List<Double> tp = new ArrayList<Double>();
-			tp.add(0d);
-			int i, j, index;
-			if (referenceData.length == 1) {
+			timePoints = getReferenceDataIndex().getTimePoints();
+		}
+		return timePoints;
+	}
 
-				for (double d : referenceData[0].getTimePoints()) {
-					if (d != 0) {
-						tp.add(Double.valueOf(d));
-					}
-				}
-			} else {
-				for (double d : referenceData[0].getTimePoints()) {
-					if (d != 0) {
-						tp.add(Double.valueOf(d));
-					}
-				}
+	/**
+	 * The number of evaluations whose simulation failed.
+	 */
+	private transient int failedEvaluations = 0;
 
-				double t;
-				for (i = 1; i < referenceData.length; i++) {
-					for (j = 0; j < referenceData[i].getTimePoints().length; j++) {
-						t = referenceData[i].getTimePoint(j);
-						index = Arrays.binarySearch(tp.toArray(new Double[0]),
-								t);
-						if (index < 0) {
-							tp.add(-index + 1, Double.valueOf(t));
-						}
-					}
+	/**
+	 * 
+	 * @return the number of evaluations of this problem whose simulation
+	 *         failed, so that they received the default fitness.
+	 */
+	public int getFailedEvaluationCount() {
+		return failedEvaluations;
+	}
+
+	/**
+	 * Pre-screens the candidates of the optimizer if set; {@code null}
+	 * otherwise.
+	 */
+	private transient SurrogateModel surrogate = null;
+
+	/**
+	 * Enables the pre-screening of candidate solutions. Every simulation
+	 * performed by {@link #evaluate(double[])} is reported to the given model,
+	 * but only individuals evaluated by the optimizer are screened, so that
+	 * direct calls of {@link #evaluate(double[])} always simulate the model.
+	 * 
+	 * @param surrogate
+	 *        the surrogate model or {@code null} to simulate all candidates.
+	 */
+	public void setSurrogateModel(SurrogateModel surrogate) {
+		this.surrogate = surrogate;
+		discountedCandidates = 0;
+	}
+
+	/**
+	 * The number of screened candidates already subtracted from the function
+	 * calls of the population.
+	 */
+	private transient int discountedCandidates = 0;
+
+	/**
+	 * Subtracts the candidates that the surrogate model has screened out since
+	 * the last call from the function calls of the given population, which the
+	 * optimizer counts for every candidate, so that only real simulations count
+	 * towards the budget of a terminator. This method should be called once
+	 * per generation; additional calls do no harm.
+	 * 
+	 * @param population
+	 *        the current population of the optimizer.
+	 */
+	public void discountScreenedCandidates(Population population) {
+		if (surrogate == null) {
+			return;
+		}
+		int screened = surrogate.getScreenedCount();
+		if (screened > discountedCandidates) {
+			population.setFunctionCalls(Math.max(0,
+				population.getFunctionCalls() - (screened - discountedCandidates)));
+			discountedCandidates = screened;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the surrogate model or {@code null}.
+	 */
+	public SurrogateModel getSurrogateModel() {
+		return surrogate;
+	}
+
+	/* (non-Javadoc)
+	 * @see eva2.problems.AbstractProblemDouble#evaluate(eva2.optimization.individuals.AbstractEAIndividual)
+	 */
+	@Override
+	public void evaluate(AbstractEAIndividual individual) {
+		if (surrogate != null) {
+			double predicted = surrogate.screen(((InterfaceDataTypeDouble) individual).getDoubleData());
+			if (!Double.isNaN(predicted)) {
+				individual.setFitness(new double[] {predicted});
+				return;
+			}
+		}
+		super.evaluate(individual);
+	}
+
+	/**
+	 * Evaluations are delegated to remote workers if a coordinator is set;
+	 * {@code null} otherwise.
+	 */
+	private transient EstimationCoordinator coordinator = null;
+
+	/**
+	 * Lets remote workers evaluate whole populations. Individuals evaluated one
+	 * by one are still evaluated locally, and so are the candidates of a
+	 * population if the workers fail. Candidates screened out by the
+	 * surrogate model (see {@link #setSurrogateModel(SurrogateModel)}) are
+	 * not sent to the workers.
+	 * 
+	 * @param coordinator
+	 *        the coordinator of the workers or {@code null} to evaluate all
+	 *        individuals locally.
+	 */
+	public void setCoordinator(EstimationCoordinator coordinator) {
+		this.coordinator = coordinator;
+	}
+
+	/* (non-Javadoc)
+	 * @see eva2.problems.AbstractOptimizationProblem#evaluate(eva2.optimization.population.Population)
+	 */
+	@Override
+	public void evaluate(Population population) {
+		if ((coordinator == null) || (coordinator.getWorkerCount() == 0)) {
+			super.evaluate(population);
+			discountScreenedCandidates(population);
+			return;
+		}
+		evaluatePopulationStart(population);
+		// candidates rejected by the surrogate model are not sent to the workers
+		List<Integer> pending = new ArrayList<Integer>(population.size());
+		for (int i = 0; i < population.size(); i++) {
+			AbstractEAIndividual individual = population.getEAIndividual(i);
+			double predicted = Double.NaN;
+			if (surrogate != null) {
+				predicted = surrogate.screen(((InterfaceDataTypeDouble) individual).getDoubleData());
+			}
+			if (Double.isNaN(predicted)) {
+				pending.add(Integer.valueOf(i));
+			} else {
+				individual.setFitness(new double[] {predicted});
+			}
+			population.incrFunctionCalls();
+		}
+		double x[][] = new double[pending.size()][];
+		for (int k = 0; k < x.length; k++) {
+			x[k] = ((InterfaceDataTypeDouble) population.getIndividual(pending.get(k).intValue())).getDoubleData();
+		}
+		try {
+			double results[][] = (x.length > 0) ? coordinator.evaluate(x) : new double[0][];
+			for (int k = 0; k < results.length; k++) {
+				population.getEAIndividual(pending.get(k).intValue()).setFitness(results[k]);
+				if (surrogate != null) {
+					surrogate.add(x[k], results[k][0]);
 				}
 			}
-			i = 0;
-			this.timePoints = new double[tp.size()];
-			for (Double d : tp) {
-				this.timePoints[i++] = d.doubleValue();
+		} catch (Exception exc) {
+			// all workers are gone or an evaluation failed repeatedly
+			logger.warning(exc.getLocalizedMessage());
+			for (Integer i : pending) {
+				super.evaluate(population.getEAIndividual(i.intValue()));
 			}
 		}
-		return timePoints;
+		evaluatePopulationEnd(population);
+		discountScreenedCandidates(population);
 	}
 
 	/* (non-Javadoc)
@@ -459,6 +1036,7 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	public void evaluatePopulationStart(Population population) {
 		super.evaluatePopulationStart(population);
 		currentSimulationData = null;
+		currentSimulations = null;
 	}
 
 	/* (non-Javadoc)
@@ -568,6 +1146,16 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 */
 	@Override
 	public void initializePopulation(Population population) {
+		// only checkpoints need the state of the generator; without them, the
+		// process-wide generator of EvA2 is left alone, so that copies of this
+		// problem in other threads do not replace each other's generator
+		if ((checkpointFile != null) || (resumeCheckpoint != null)) {
+			// derived from the current generator to respect a user-defined seed
+			random = new EstimationRandom(RNG.randomLong());
+			RNG.setRandom(random);
+		} else {
+			random = null;
+		}
 		super.initializePopulation(population);
 		SBPreferences prefs = SBPreferences.getPreferencesFor(EstimationOptions.class);
 		boolean keepCurrentSolution = false;
@@ -579,6 +1167,20 @@ public class EstimationProblem extends AbstractProblemDouble implements
 			InterfaceDataTypeDouble individual = (InterfaceDataTypeDouble) population.getIndividual(RNG.randomInt(0, population.size()));
 			individual.setDoubleGenotype(getOriginalValues());
 		}
+		
+		if (resumeCheckpoint != null) {
+			double genotypes[][] = resumeCheckpoint.getPopulation();
+			for (int i = 0; (i < population.size()) && (i < genotypes.length); i++) {
+				((InterfaceDataTypeDouble) population.getIndividual(i)).setDoubleGenotype(genotypes[i]);
+			}
+			population.setFunctionCalls(resumeCheckpoint.getEvaluations());
+			bestSolutionFound = resumeCheckpoint.getBestSolution();
+			random.setState(resumeCheckpoint.getRandomState(),
+				resumeCheckpoint.getNextGaussian());
+			logger.info(MessageFormat.format(bundle.getString("CHECKPOINT_RESUMED"),
+				resumeCheckpoint.getEvaluations()));
+			resumeCheckpoint = null;
+		}
 	}
 
 	/**
@@ -656,9 +1258,159 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 *            the multishoot to set
 	 */
 	public void setMultishoot(boolean multishoot) {
+		shutdownParallelMultipleShooting();
 		this.multishoot = multishoot;
 	}
 
+	/**
+	 * 
+	 * @return the number of threads used for multiple shooting.
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	/**
+	 * If set, single shooting integrates the model with adaptive step sizes
+	 * and interpolates the result only at the measurement time points (see
+	 * {@link DenseOutputIntegration}) of the selected solver. Only explicit
+	 * Runge-Kutta solvers support this; for other solvers and for models that
+	 * contain events, rules, fast reactions or delays the setting is ignored.
+	 * 
+	 * @param denseOutput
+	 */
+	public void setDenseOutput(boolean denseOutput) {
+		this.denseOutput = denseOutput;
+		denseOutputIntegration = null;
+	}
+
+	/**
+	 * 
+	 * @return whether or not single shooting uses the dense output of an
+	 *         adaptive integrator.
+	 * @see #setDenseOutput(boolean)
+	 */
+	public boolean isDenseOutput() {
+		return denseOutput;
+	}
+
+	/**
+	 * If set and more than one reference data set is given, each data set is
+	 * treated as a separate experiment: it is simulated from the values
+	 * measured at its own first time point and at its own time points, and
+	 * the distances of all experiments are averaged. With more than one
+	 * thread, the experiments are simulated concurrently. Otherwise, a single
+	 * simulation is compared to all data sets.
+	 * 
+	 * @param multiExperiment
+	 */
+	public void setMultiExperiment(boolean multiExperiment) {
+		this.multiExperiment = multiExperiment;
+		shutdownParallelMultipleShooting();
+		shutdownMultiExperimentEvaluation();
+	}
+
+	/**
+	 * 
+	 * @return whether or not each reference data set is simulated separately.
+	 * @see #setMultiExperiment(boolean)
+	 */
+	public boolean isMultiExperiment() {
+		return multiExperiment;
+	}
+
+	/**
+	 * 
+	 * @param defaultValue
+	 *        the fitness of parameter vectors whose simulation fails.
+	 */
+	public void setDefaultValue(double defaultValue) {
+		this.defaultValue = defaultValue;
+	}
+
+	/**
+	 * 
+	 * @return the fitness of parameter vectors whose simulation fails.
+	 */
+	public double getDefaultValue() {
+		return defaultValue;
+	}
+
+	/**
+	 * 
+	 * @param negationOfDistance
+	 *        whether or not the fitness is the negated distance, e.g., for
+	 *        correlations, which are to be maximized.
+	 */
+	public void setNegationOfDistance(boolean negationOfDistance) {
+		this.negationOfDistance = negationOfDistance;
+	}
+
+	/**
+	 * 
+	 * @return whether or not the fitness is the negated distance.
+	 */
+	public boolean isNegationOfDistance() {
+		return negationOfDistance;
+	}
+
+	/**
+	 * Terminates the workers that simulate the experiments, if any.
+	 */
+	private void shutdownMultiExperimentEvaluation() {
+		if (multiExperimentEvaluation != null) {
+			multiExperimentEvaluation.shutdown();
+			multiExperimentEvaluation = null;
+		}
+	}
+
+	/**
+	 * Sets the number of threads that simulate independent experiments or,
+	 * if {@link #setParallelMultishoot(boolean)} is set, integrate the
+	 * shooting segments concurrently.
+	 * 
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		shutdownParallelMultipleShooting();
+		shutdownMultiExperimentEvaluation();
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * If set together with multiple shooting and more than one thread, the
+	 * shooting segments are integrated concurrently and the fitness contains
+	 * an additional continuity penalty (see {@link ParallelMultipleShooting}).
+	 * Otherwise, the shooting intervals are integrated one after the other.
+	 * 
+	 * @param parallelMultishoot
+	 */
+	public void setParallelMultishoot(boolean parallelMultishoot) {
+		shutdownParallelMultipleShooting();
+		this.parallelMultishoot = parallelMultishoot;
+	}
+
+	/**
+	 * 
+	 * @return whether or not the shooting segments are integrated
+	 *         concurrently.
+	 * @see #setParallelMultishoot(boolean)
+	 */
+	public boolean isParallelMultishoot() {
+		return parallelMultishoot;
+	}
+
+	/**
+	 * Terminates the workers that integrate the shooting segments, if any,
+	 * so that they are created again for the current data and solver.
+	 */
+	private void shutdownParallelMultipleShooting() {
+		if (parallelMultipleShooting != null) {
+			parallelMultipleShooting.shutdown();
+			parallelMultipleShooting = null;
+		}
+	}
+
 	/**
 	 * 
 	 * @param quantRange
@@ -692,6 +1444,12 @@ public class EstimationProblem extends AbstractProblemDouble implements
 				bundle.getString("MISSING_REFERENCE_DATA"));
 		}
 		this.referenceData = referenceData;
+		referenceDataIndex = null;
+		alignmentPlans = null;
+		shutdownParallelMultipleShooting();
+		shutdownMultiExperimentEvaluation();
+		timePoints = null;
+		initConditions = null;
 	}
 
 	/**
@@ -703,6 +1461,11 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		if (solver instanceof AbstractDESSolver) {
 			((AbstractDESSolver) this.solver).setIncludeIntermediates(false);
 		}
+		// the dense output uses the method and tolerances of the solver
+		denseOutputIntegration = null;
+		// the copies of the workers still use the previous solver
+		shutdownParallelMultipleShooting();
+		shutdownMultiExperimentEvaluation();
 	}
 
 	/**
@@ -718,6 +1481,12 @@ public class EstimationProblem extends AbstractProblemDouble implements
 	 */
 	public void unsetReferenceData() {
 		referenceData = null;
+		referenceDataIndex = null;
+		alignmentPlans = null;
+		shutdownParallelMultipleShooting();
+		shutdownMultiExperimentEvaluation();
+		timePoints = null;
+		initConditions = null;
 	}
 	
 	/**
@@ -744,20 +1513,7 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		List<QuantityRange> ranges = new ArrayList<QuantityRange>();
 		for (int i = 0; i != data.length; i++) {
 			if (data[i].length >= 5) {
-				String id = data[i][0];
-				Quantity quantity = null;
-				if (!id.contains(":")) {
-					quantity = model.findQuantity(id);
-				} else {
-					String[] splits = id.split(":");
-					Reaction reaction = model.getReaction(splits[0]);
-					if (reaction != null) {
-						KineticLaw kl = reaction.getKineticLaw();
-						if (kl != null) {
-							quantity = kl.getLocalParameter(splits[1]);
-						}
-					}
-				}
+				Quantity quantity = findQuantity(model, data[i][0]);
 				if (quantity != null) {
 					try {
 						QuantityRange range = new QuantityRange(quantity, true,
@@ -778,6 +1534,48 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		return ranges.toArray(new QuantityRange[ranges.size()]);
 	}
 	
+	/**
+	 * Determines an identifier for the given {@link Quantity} that is unique
+	 * within its {@link Model}. {@link LocalParameter}s are identified by the
+	 * identifier of their {@link Reaction} and their own identifier, separated by
+	 * a colon.
+	 * 
+	 * @param q
+	 * @return
+	 * @see #findQuantity(Model, String)
+	 */
+	public static String getQuantityIdentifier(Quantity q) {
+		if (q instanceof LocalParameter) {
+			Reaction r = (Reaction) ((LocalParameter) q).getParent().getParent().getParent();
+			return r.getId() + ":" + q.getId();
+		}
+		return q.getId();
+	}
+
+	/**
+	 * Searches the {@link Quantity} with the given identifier in the given
+	 * {@link Model}.
+	 * 
+	 * @param model
+	 * @param id
+	 *        an identifier as created by {@link #getQuantityIdentifier(Quantity)}
+	 * @return the {@link Quantity} or {@code null} if no such element exists.
+	 */
+	public static Quantity findQuantity(Model model, String id) {
+		if (!id.contains(":")) {
+			return model.findQuantity(id);
+		}
+		String[] splits = id.split(":");
+		Reaction reaction = model.getReaction(splits[0]);
+		if (reaction != null) {
+			KineticLaw kl = reaction.getKineticLaw();
+			if (kl != null) {
+				return kl.getLocalParameter(splits[1]);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * 
 	 * @param file
@@ -790,14 +1588,7 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		String[][] data = new String[ranges.length][];
 		for(int i=0; i!=ranges.length; i++) {
 			data[i] = new String[7];
-			Quantity q = ranges[i].getQuantity();
-			if(q instanceof LocalParameter) {
-				Reaction r = (Reaction)((LocalParameter)q).getParent().getParent().getParent();
-				data[i][0] = r.getId() + ":" + q.getId();
-			}
-			else {
-				data[i][0] = q.getId();
-			}
+			data[i][0] = getQuantityIdentifier(ranges[i].getQuantity());
 			data[i][1] = String.valueOf(ranges[i].getInitialMinimum());
 			data[i][2] = String.valueOf(ranges[i].getInitialMaximum());
 			data[i][3] = String.valueOf(ranges[i].getMinimum());
@@ -831,4 +1622,18 @@ public class EstimationProblem extends AbstractProblemDouble implements
 		return currentSimulationData;
 	}
 
+	/**
+	 * 
+	 * @param index
+	 *        the index of a reference data set.
+	 * @return the simulation of the last evaluation that belongs to the given
+	 *         reference data set, which differs from
+	 *         {@link #getCurrentSimulationData()} only if
+	 *         {@link #isMultiExperiment()}; {@code null} if the last simulation
+	 *         failed.
+	 */
+	public MultiTable getCurrentSimulationData(int index) {
+		return (currentSimulations != null) ? currentSimulations[index] : null;
+	}
+
 }
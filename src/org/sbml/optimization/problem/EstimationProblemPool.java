@@ -0,0 +1,211 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.problem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+
+/**
+ * A fixed number of independent copies of an {@link EstimationProblem}
+ * (see {@link EstimationProblem#createIndependentCopy()}) together with one
+ * worker {@link Thread} per copy. Tasks submitted to this pool are executed
+ * concurrently, where each running task has exclusive access to one of the
+ * copies. Since creating a copy requires cloning the model and building a new
+ * interpreter, a pool should be created once and reused for many evaluations.
+ *
+ * @since 2.1
+ */
+public class EstimationProblemPool {
+
+	/**
+	 * A piece of work that requires exclusive access to an
+	 * {@link EstimationProblem}.
+	 *
+	 * @param <T>
+	 *        the type of the result.
+	 */
+	public static interface Task<T> {
+
+		/**
+		 *
+		 * @param problem
+		 *        a copy of the problem, which is not used by any other task while
+		 *        this method is running.
+		 * @return
+		 * @throws Exception
+		 */
+		public T call(EstimationProblem problem) throws Exception;
+
+	}
+
+	/**
+	 * The copies that are currently not used by any task.
+	 */
+	private final BlockingQueue<EstimationProblem> idle;
+
+	/**
+	 * The threads that execute the tasks.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The number of copies in this pool.
+	 */
+	private final int size;
+
+	/**
+	 *
+	 * @param problem
+	 *        the problem to be copied.
+	 * @param size
+	 *        the number of copies and threads, at least one.
+	 * @throws SBMLException
+	 * @throws ModelOverdeterminedException
+	 */
+	public EstimationProblemPool(EstimationProblem problem, int size)
+		throws SBMLException, ModelOverdeterminedException {
+		this.size = Math.max(1, size);
+		idle = new ArrayBlockingQueue<EstimationProblem>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			idle.add(problem.createIndependentCopy());
+		}
+		executor = Executors.newFixedThreadPool(this.size, new ThreadFactory() {
+
+			/**
+			 *
+			 */
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			/* (non-Javadoc)
+			 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+			 */
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, EstimationProblemPool.class.getSimpleName()
+						+ "-" + count.incrementAndGet());
+				// The pool must never keep the application alive.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Executes the given {@link Task} on the next free copy of the problem.
+	 *
+	 * @param task
+	 * @return
+	 */
+	public <T> Future<T> submit(final Task<T> task) {
+		return executor.submit(new Callable<T>() {
+
+			/* (non-Javadoc)
+			 * @see java.util.concurrent.Callable#call()
+			 */
+			@Override
+			public T call() throws Exception {
+				EstimationProblem problem = idle.take();
+				try {
+					return task.call(problem);
+				} finally {
+					idle.put(problem);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Executes all given {@link Task}s concurrently and waits for their
+	 * completion.
+	 *
+	 * @param tasks
+	 * @return the results in the order of the given tasks.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *         if one of the tasks threw an exception.
+	 */
+	public <T> List<T> invokeAll(List<? extends Task<T>> tasks)
+		throws InterruptedException, ExecutionException {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Task<T> task : tasks) {
+			futures.add(submit(task));
+		}
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	/**
+	 * Convenience method to compute the residuals for several points in the
+	 * search space concurrently.
+	 *
+	 * @param x
+	 *        the points to be evaluated.
+	 * @return the residuals of each point, where an entry is {@code null} if the
+	 *         corresponding simulation failed.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @see EstimationProblem#computeResiduals(double[])
+	 */
+	public double[][] computeResiduals(double[]... x)
+		throws InterruptedException, ExecutionException {
+		List<Task<double[]>> tasks = new ArrayList<Task<double[]>>(x.length);
+		for (final double point[] : x) {
+			tasks.add(new Task<double[]>() {
+
+				/* (non-Javadoc)
+				 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+				 */
+				@Override
+				public double[] call(EstimationProblem problem) {
+					return problem.computeResiduals(point);
+				}
+			});
+		}
+		return invokeAll(tasks).toArray(new double[x.length][]);
+	}
+
+	/**
+	 *
+	 * @return the number of copies and worker threads.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Stops all worker threads after the currently running tasks are finished.
+	 * This pool cannot be used any longer afterwards.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.problem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Simulates each reference data set as a separate experiment. Instead of
+ * averaging all data sets into one table of initial conditions, each
+ * experiment starts from the values measured at its own first time point
+ * and is simulated at its own time points. If an
+ * {@link EstimationProblemPool} is given, the experiments are simulated
+ * concurrently, one per worker.
+ *
+ * @since 2.1
+ */
+class MultiExperimentEvaluation {
+
+	/**
+	 * The problem that simulates all experiments if no pool is given.
+	 */
+	private final EstimationProblem problem;
+
+	/**
+	 * Independent copies of the problem or {@code null}.
+	 */
+	private final EstimationProblemPool pool;
+
+	/**
+	 *
+	 */
+	private final MultiTable experiments[];
+
+	/**
+	 * For each experiment the values measured at its first time point, one
+	 * entry per component of the interpreter; {@link Double#NaN} if a value
+	 * is not measured.
+	 */
+	private final double initialStates[][];
+
+	/**
+	 *
+	 * @param problem
+	 * @param experiments
+	 *        the reference data sets.
+	 * @param pool
+	 *        copies of the given problem that simulate the experiments
+	 *        concurrently; if {@code null}, the experiments are simulated
+	 *        one after another by the given problem.
+	 */
+	MultiExperimentEvaluation(EstimationProblem problem,
+		MultiTable experiments[], EstimationProblemPool pool) {
+		this.problem = problem;
+		this.experiments = experiments;
+		this.pool = pool;
+		String identifiers[] = problem.getInterpreter().getIdentifiers();
+		initialStates = new double[experiments.length][identifiers.length];
+		for (int e = 0; e < experiments.length; e++) {
+			MultiTable.Block block = experiments[e].getBlock(0);
+			for (int j = 0; j < identifiers.length; j++) {
+				initialStates[e][j] = block.containsColumn(identifiers[j])
+						? block.getColumn(identifiers[j]).getValue(0) : Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Simulates all experiments for the given values of the quantities.
+	 *
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link EstimationProblem#getQuantityRanges()}.
+	 * @return the simulation result of each experiment at its time points; an
+	 *         entry is {@code null} if the simulation of this experiment
+	 *         failed.
+	 * @throws Exception
+	 */
+	MultiTable[] solve(double x[]) throws Exception {
+		List<EstimationProblemPool.Task<MultiTable>> tasks = new ArrayList<EstimationProblemPool.Task<MultiTable>>(experiments.length);
+		for (int e = 0; e < experiments.length; e++) {
+			tasks.add(createTask(x, e));
+		}
+		if (pool != null) {
+			return pool.invokeAll(tasks).toArray(new MultiTable[experiments.length]);
+		}
+		MultiTable solutions[] = new MultiTable[experiments.length];
+		for (int e = 0; e < experiments.length; e++) {
+			solutions[e] = tasks.get(e).call(problem);
+		}
+		return solutions;
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @param experiment
+	 * @return
+	 */
+	private EstimationProblemPool.Task<MultiTable> createTask(final double x[],
+		final int experiment) {
+		return new EstimationProblemPool.Task<MultiTable>() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+			 */
+			@Override
+			public MultiTable call(EstimationProblem problem) throws Exception {
+				return problem.simulateExperiment(x, experiments[experiment],
+					initialStates[experiment]);
+			}
+		};
+	}
+
+	/**
+	 * Terminates the worker threads, if any.
+	 */
+	void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+}
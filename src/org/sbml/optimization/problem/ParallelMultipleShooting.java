@@ -0,0 +1,303 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.problem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.simulator.math.odes.MultiTable;
+import org.simulator.sbml.SBMLinterpreter;
+
+/**
+ * A multiple shooting strategy whose shooting intervals are integrated
+ * concurrently. The time points of the merged reference data are split into
+ * one contiguous segment per worker of an {@link EstimationProblemPool}. Within
+ * a segment, each interval starts from the measured values at its left time
+ * point, just as in the sequential multiple shooting of
+ * {@link org.simulator.math.odes.AbstractDESSolver}, and unmeasured
+ * components are carried over from the end of the previous interval.
+ * <p>
+ * The first interval of each segment does not know the unmeasured components
+ * at its start, because they would be the result of the previous segment. For
+ * these, a guess is used: the initial values of the model in the first sweep,
+ * and the end state of the previous segment in each following sweep. Only
+ * segments whose start guess has changed are integrated again. The remaining
+ * mismatch between the end of a segment and the start of the next one is
+ * available as a continuity penalty that is added to the fitness. If all
+ * components are measured at all segment boundaries, one sweep suffices and
+ * the result equals the one of the sequential strategy.
+ * <p>
+ * Each worker reuses the {@link SBMLinterpreter} of its copy of the problem for
+ * all intervals of its segment, so that the interpreter is only initialized
+ * once per segment and evaluation.
+ *
+ * @since 2.1
+ */
+class ParallelMultipleShooting {
+
+	/**
+	 * The maximal number of sweeps to improve the start guesses of the
+	 * segments.
+	 */
+	private static final int MAX_SWEEPS = 3;
+
+	/**
+	 * No further sweep is performed if the continuity penalty falls below this
+	 * value.
+	 */
+	private static final double CONTINUITY_TOLERANCE = 1E-6d;
+
+	/**
+	 * The result of integrating one segment.
+	 */
+	private static class Segment {
+
+		/**
+		 * The simulated states at the time points of this segment, where the
+		 * first row is the state this segment started from.
+		 */
+		private double states[][];
+
+	}
+
+	/**
+	 * The copies of the problem together with their worker threads.
+	 */
+	private final EstimationProblemPool pool;
+
+	/**
+	 * The time points of the merged reference data.
+	 */
+	private final double timePoints[];
+
+	/**
+	 * The measured values, one row per time point and one column per component
+	 * of the interpreter; {@link Double#NaN} if a value is not measured.
+	 */
+	private final double measurements[][];
+
+	/**
+	 * The index of the first time point of each segment; the last entry is the
+	 * index of the last time point.
+	 */
+	private final int bounds[];
+
+	/**
+	 * The identifiers of all components of the interpreter.
+	 */
+	private final String identifiers[];
+
+	/**
+	 * The continuity penalty of the last call of {@link #solve(double[])}.
+	 */
+	private double continuityPenalty;
+
+	/**
+	 *
+	 * @param problem
+	 *        the problem whose copies are used for the integration.
+	 * @param conditions
+	 *        the merged reference data that define the shooting intervals.
+	 * @param pool
+	 *        independent copies of the given problem.
+	 */
+	ParallelMultipleShooting(EstimationProblem problem, MultiTable conditions,
+		EstimationProblemPool pool) {
+		this.pool = pool;
+		timePoints = conditions.getTimePoints();
+		identifiers = problem.getInterpreter().getIdentifiers();
+		measurements = new double[timePoints.length][identifiers.length];
+		MultiTable.Block block = conditions.getBlock(0);
+		MultiTable.Block.Column column;
+		for (int j = 0; j < identifiers.length; j++) {
+			column = block.containsColumn(identifiers[j]) ? block.getColumn(identifiers[j]) : null;
+			for (int i = 0; i < timePoints.length; i++) {
+				measurements[i][j] = (column == null) ? Double.NaN : column.getValue(i);
+			}
+		}
+		int intervals = timePoints.length - 1;
+		int segments = Math.max(1, Math.min(pool.getSize(), intervals));
+		bounds = new int[segments + 1];
+		for (int s = 0; s <= segments; s++) {
+			bounds[s] = (int) ((long) s * intervals / segments);
+		}
+	}
+
+	/**
+	 *
+	 * @return the continuity penalty of the last integration, i.e., the sum of
+	 *         the squared relative differences between the end state of each
+	 *         segment and the start state of the next one, considering only
+	 *         components that are not measured at the segment boundary.
+	 */
+	double getContinuityPenalty() {
+		return continuityPenalty;
+	}
+
+	/**
+	 * Integrates the model for the given values of the quantities.
+	 *
+	 * @param x
+	 *        the values for all quantities in the order of
+	 *        {@link EstimationProblem#getQuantityRanges()}.
+	 * @return the simulation result at the time points of the merged reference
+	 *         data.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *         if the integration of one of the segments failed.
+	 */
+	MultiTable solve(final double x[]) throws InterruptedException,
+		ExecutionException {
+		int segments = bounds.length - 1;
+		double guesses[][] = new double[segments][];
+		Segment results[] = new Segment[segments];
+		List<Integer> pending = new ArrayList<Integer>(segments);
+		for (int s = 0; s < segments; s++) {
+			pending.add(Integer.valueOf(s));
+		}
+		for (int sweep = 0; (sweep < MAX_SWEEPS) && !pending.isEmpty(); sweep++) {
+			List<EstimationProblemPool.Task<Segment>> tasks = new ArrayList<EstimationProblemPool.Task<Segment>>(pending.size());
+			for (Integer s : pending) {
+				tasks.add(createTask(x, s.intValue(), guesses[s.intValue()]));
+			}
+			List<Segment> solved = pool.invokeAll(tasks);
+			for (int i = 0; i < pending.size(); i++) {
+				results[pending.get(i).intValue()] = solved.get(i);
+			}
+			continuityPenalty = computeContinuityPenalty(results);
+			pending.clear();
+			if (continuityPenalty > CONTINUITY_TOLERANCE) {
+				for (int s = 1; s < segments; s++) {
+					double end[] = results[s - 1].states[results[s - 1].states.length - 1];
+					if (differs(end, results[s].states[0], bounds[s])) {
+						guesses[s] = end;
+						pending.add(Integer.valueOf(s));
+					}
+				}
+			}
+		}
+		// assemble the result in the order of the time points
+		double data[][] = new double[timePoints.length][];
+		data[0] = results[0].states[0];
+		for (int s = 0; s < segments; s++) {
+			for (int i = 1; i < results[s].states.length; i++) {
+				data[bounds[s] + i] = results[s].states[i];
+			}
+		}
+		return new MultiTable(timePoints, data, identifiers);
+	}
+
+	/**
+	 *
+	 * @param x
+	 * @param segment
+	 * @param guess
+	 *        the state to start from for all unmeasured components or
+	 *        {@code null} to use the initial values of the model.
+	 * @return
+	 */
+	private EstimationProblemPool.Task<Segment> createTask(final double x[],
+		final int segment, final double guess[]) {
+		return new EstimationProblemPool.Task<Segment>() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.optimization.problem.EstimationProblemPool.Task#call(org.sbml.optimization.problem.EstimationProblem)
+			 */
+			@Override
+			public Segment call(EstimationProblem problem) throws Exception {
+				SBMLinterpreter interpreter = problem.prepareInterpreter(x);
+				int first = bounds[segment], last = bounds[segment + 1];
+				Segment result = new Segment();
+				result.states = new double[last - first + 1][];
+				double state[] = (guess != null) ? guess.clone() : interpreter.getInitialValues().clone();
+				applyMeasurements(state, first);
+				result.states[0] = state.clone();
+				for (int i = first + 1; i <= last; i++) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedException();
+					}
+					MultiTable interval = problem.getSolver().solve(interpreter, state,
+						new double[] {timePoints[i - 1], timePoints[i]});
+					result.states[i - first] = interval.getBlock(0).getRow(1);
+					state = result.states[i - first].clone();
+					applyMeasurements(state, i);
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Replaces all components of the given state that have been measured at the
+	 * given time point by the measured value.
+	 *
+	 * @param state
+	 * @param timePoint
+	 */
+	private void applyMeasurements(double state[], int timePoint) {
+		for (int j = 0; j < state.length; j++) {
+			if (!Double.isNaN(measurements[timePoint][j])) {
+				state[j] = measurements[timePoint][j];
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param results
+	 * @return
+	 */
+	private double computeContinuityPenalty(Segment results[]) {
+		double penalty = 0d, end[], start[], diff;
+		for (int s = 1; s < results.length; s++) {
+			end = results[s - 1].states[results[s - 1].states.length - 1];
+			start = results[s].states[0];
+			for (int j = 0; j < end.length; j++) {
+				if (Double.isNaN(measurements[bounds[s]][j])) {
+					diff = (end[j] - start[j]) / Math.max(Math.max(Math.abs(end[j]), Math.abs(start[j])), 1E-10d);
+					penalty += diff * diff;
+				}
+			}
+		}
+		return penalty;
+	}
+
+	/**
+	 *
+	 * @param end
+	 * @param start
+	 * @param timePoint
+	 * @return {@code true} if an unmeasured component differs between both
+	 *         states.
+	 */
+	private boolean differs(double end[], double start[], int timePoint) {
+		for (int j = 0; j < end.length; j++) {
+			if (Double.isNaN(measurements[timePoint][j]) && (end[j] != start[j])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization.problem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * An index over several reference data sets that is computed once when the
+ * data are set. It contains the merged and sorted time points of all data
+ * sets, the merged column identifiers, and for each data set the positions of
+ * its rows and columns within the merged grid. All look-ups during the estimation are thereby
+ * reduced to array accesses.
+ *
+ * @since 2.1
+ */
+class ReferenceDataIndex {
+
+	/**
+	 * The sorted time points of all data sets without duplicates, always
+	 * including zero.
+	 */
+	private final double timePoints[];
+
+	/**
+	 * The identifiers of all columns in the order of their first occurrence.
+	 */
+	private final String identifiers[];
+
+	/**
+	 * For each data set and each of its rows the index within
+	 * {@link #timePoints}.
+	 */
+	private final int rowIndex[][];
+
+	/**
+	 * For each data set and each of its columns the index within
+	 * {@link #identifiers}.
+	 */
+	private final int columnIndex[][];
+
+	/**
+	 *
+	 * @param referenceData
+	 */
+	ReferenceDataIndex(MultiTable... referenceData) {
+		// merge the time points
+		int count = 1, i, j;
+		for (MultiTable data : referenceData) {
+			count += data.getRowCount();
+		}
+		double all[] = new double[count];
+		count = 1; // all[0] = 0
+		for (MultiTable data : referenceData) {
+			System.arraycopy(data.getTimePoints(), 0, all, count, data.getRowCount());
+			count += data.getRowCount();
+		}
+		Arrays.sort(all);
+		int unique = 0;
+		for (i = 0; i < all.length; i++) {
+			if ((unique == 0) || (all[i] != all[unique - 1])) {
+				all[unique++] = all[i];
+			}
+		}
+		timePoints = Arrays.copyOf(all, unique);
+
+		// merge the identifiers
+		List<String> ids = new ArrayList<String>();
+		Map<String, Integer> columnPositions = new HashMap<String, Integer>();
+		columnIndex = new int[referenceData.length][];
+		rowIndex = new int[referenceData.length][];
+		String blockIds[];
+		Integer position;
+		for (i = 0; i < referenceData.length; i++) {
+			blockIds = referenceData[i].getBlock(0).getIdentifiers();
+			columnIndex[i] = new int[blockIds.length];
+			for (j = 0; j < blockIds.length; j++) {
+				position = columnPositions.get(blockIds[j]);
+				if (position == null) {
+					position = Integer.valueOf(ids.size());
+					columnPositions.put(blockIds[j], position);
+					ids.add(blockIds[j]);
+				}
+				columnIndex[i][j] = position.intValue();
+			}
+			rowIndex[i] = new int[referenceData[i].getRowCount()];
+			for (j = 0; j < rowIndex[i].length; j++) {
+				rowIndex[i][j] = Arrays.binarySearch(timePoints, referenceData[i].getTimePoint(j));
+			}
+		}
+		identifiers = ids.toArray(new String[ids.size()]);
+	}
+
+	/**
+	 * Merges the given data sets, which must be the ones this index has been
+	 * created for, into one table on the merged grid. Each value is the mean of
+	 * all values given for its column and time point, including several rows
+	 * of one data set with the same time point. If one data set does not
+	 * contain a value for a certain column and time point, the merged value
+	 * becomes {@link Double#NaN}.
+	 *
+	 * @param referenceData
+	 * @return
+	 */
+	MultiTable merge(MultiTable... referenceData) {
+		double data[][] = new double[timePoints.length][identifiers.length];
+		// the number of values and of data sets that contribute to each value
+		int values[][] = new int[timePoints.length][identifiers.length];
+		int dataSets[][] = new int[timePoints.length][identifiers.length];
+		// the last data set (plus one) that contributed to each value
+		int lastDataSet[][] = new int[timePoints.length][identifiers.length];
+		int i, j, k, row, col;
+		MultiTable.Block block;
+		MultiTable.Block.Column column;
+		for (k = 0; k < referenceData.length; k++) {
+			block = referenceData[k].getBlock(0);
+			for (j = 0; j < columnIndex[k].length; j++) {
+				column = block.getColumn(j);
+				col = columnIndex[k][j];
+				for (i = 0; i < rowIndex[k].length; i++) {
+					row = rowIndex[k][i];
+					data[row][col] += column.getValue(i);
+					values[row][col]++;
+					if (lastDataSet[row][col] != k + 1) {
+						lastDataSet[row][col] = k + 1;
+						dataSets[row][col]++;
+					}
+				}
+			}
+		}
+		for (i = 0; i < timePoints.length; i++) {
+			for (j = 0; j < identifiers.length; j++) {
+				if (dataSets[i][j] < referenceData.length) {
+					// If one value is not available, this data point will become null!
+					data[i][j] = Double.NaN;
+				} else {
+					data[i][j] /= values[i][j];
+				}
+			}
+		}
+		return new MultiTable(timePoints, data, identifiers);
+	}
+
+	/**
+	 *
+	 * @return the merged time points.
+	 */
+	double[] getTimePoints() {
+		return timePoints;
+	}
+
+	/**
+	 *
+	 * @return the merged column identifiers.
+	 */
+	String[] getIdentifiers() {
+		return identifiers;
+	}
+
+	/**
+	 *
+	 * @param dataSet
+	 * @param row
+	 * @return the index of the given row of the given data set within
+	 *         {@link #getTimePoints()}.
+	 */
+	int getMergedRow(int dataSet, int row) {
+		return rowIndex[dataSet][row];
+	}
+
+}
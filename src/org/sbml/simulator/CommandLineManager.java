@@ -17,12 +17,16 @@ package org.sbml.simulator;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ResourceBundle;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLStreamException;
@@ -40,11 +44,22 @@ import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.Species;
 import org.sbml.jsbml.validator.ModelOverdeterminedException;
 import org.sbml.jsbml.xml.stax.SBMLReader;
+import org.sbml.optimization.Bootstrap;
+import org.sbml.optimization.ConvergenceTerminator;
+import org.sbml.optimization.EstimationCheckpoint;
+import org.sbml.optimization.EstimationTelemetry;
+import org.sbml.optimization.LevenbergMarquardt;
+import org.sbml.optimization.ProfileLikelihood;
+import org.sbml.optimization.distributed.EstimationCoordinator;
+import org.sbml.optimization.distributed.EstimationWorker;
 import org.sbml.optimization.QuantityRange;
+import org.sbml.optimization.SurrogateModel;
 import org.sbml.optimization.problem.EstimationOptions;
 import org.sbml.optimization.problem.EstimationProblem;
 import org.sbml.simulator.io.CSVDataImporter;
 import org.sbml.simulator.io.SimulatorIOOptions;
+import org.sbml.simulator.math.CubicSpline;
+import org.sbml.simulator.math.SplineCache;
 import org.sbml.simulator.math.SplineCalculation;
 import org.simulator.math.N_Metric;
 import org.simulator.math.QualityMeasure;
@@ -55,6 +70,7 @@ import org.simulator.math.odes.MultiTable;
 import de.zbit.AppConf;
 import de.zbit.io.csv.CSVOptions;
 import de.zbit.io.csv.CSVWriter;
+import de.zbit.util.ResourceManager;
 import de.zbit.util.prefs.SBPreferences;
 import de.zbit.util.prefs.SBProperties;
 import eva2.optimization.individuals.ESIndividualDoubleData;
@@ -81,6 +97,11 @@ public class CommandLineManager implements PropertyChangeListener, Runnable {
    */
   private static final Logger logger = Logger.getLogger(CommandLineManager.class.getName());
 
+  /**
+   * Localization support.
+   */
+  private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
   /**
    * 
    */
@@ -451,17 +472,51 @@ public class CommandLineManager implements PropertyChangeListener, Runnable {
     else {
       numSplineSamples = Integer.valueOf(prefsEst.get(EstimationOptions.NUMBER_OF_SPLINE_SAMPLES));
     }
+    String splineCacheDirectory = null;
+    if (props.containsKey(EstimationOptions.SPLINE_CACHE_DIRECTORY)) {
+      splineCacheDirectory = props.get(EstimationOptions.SPLINE_CACHE_DIRECTORY);
+    }
+    else {
+      splineCacheDirectory = prefsEst.get(EstimationOptions.SPLINE_CACHE_DIRECTORY);
+    }
     if (fitToSplines) {
-      for (int i = simulationManager.getQualityMeasurement().getMeasurements().size() - 1; i >= 0; i--) {
-        simulationManager.getQualityMeasurement().getMeasurements().set(i, SplineCalculation.calculateSplineValues(
-          simulationManager.getQualityMeasurement().getMeasurements().get(i),
-          numSplineSamples));
+      List<MultiTable> measurements = simulationManager.getQualityMeasurement().getMeasurements();
+      for (int i = measurements.size() - 1; i >= 0; i--) {
+        CubicSpline splines[][];
+        if ((splineCacheDirectory != null) && (splineCacheDirectory.length() > 0)) {
+          // all measurements stem from the time series file
+          splines = new SplineCache(new File(splineCacheDirectory)).getSplines(
+            new File(timeSeriesFile), measurements.get(i), getNumberOfThreads());
+        } else {
+          splines = SplineCalculation.fitSplines(measurements.get(i), getNumberOfThreads());
+        }
+        measurements.set(i, SplineCalculation.calculateSplineValues(
+          measurements.get(i), splines, numSplineSamples, true));
       }
     }
     if ((quantityRanges != null) && (quantityRanges.length >= 0)) {
       try {
         estimationProblem = new EstimationProblem(simulationManager.getSimulationConfiguration().getSolver(), simulationManager.getQualityMeasurement().getDistance(), clonedModel, simulationManager.getQualityMeasurement().getMeasurements(),
           multiShoot, quantityRanges);
+        estimationProblem.setNumberOfThreads(getNumberOfThreads());
+        if (props.containsKey(EstimationOptions.EST_PARALLEL_MULTI_SHOOT)) {
+          estimationProblem.setParallelMultishoot(props.getBoolean(EstimationOptions.EST_PARALLEL_MULTI_SHOOT));
+        }
+        else {
+          estimationProblem.setParallelMultishoot(prefsEst.getBoolean(EstimationOptions.EST_PARALLEL_MULTI_SHOOT));
+        }
+        if (props.containsKey(EstimationOptions.EST_DENSE_OUTPUT)) {
+          estimationProblem.setDenseOutput(props.getBoolean(EstimationOptions.EST_DENSE_OUTPUT));
+        }
+        else {
+          estimationProblem.setDenseOutput(prefsEst.getBoolean(EstimationOptions.EST_DENSE_OUTPUT));
+        }
+        if (props.containsKey(EstimationOptions.EST_MULTI_EXPERIMENT)) {
+          estimationProblem.setMultiExperiment(props.getBoolean(EstimationOptions.EST_MULTI_EXPERIMENT));
+        }
+        else {
+          estimationProblem.setMultiExperiment(prefsEst.getBoolean(EstimationOptions.EST_MULTI_EXPERIMENT));
+        }
       } catch (SBMLException e) {
         e.printStackTrace();
       } catch (ModelOverdeterminedException e) {
@@ -525,22 +580,82 @@ public class CommandLineManager implements PropertyChangeListener, Runnable {
     // set the initial EvA problem here
     goParams.setProblem(estimationProblem);
     goParams.setOptimizer(new DifferentialEvolution());
-    goParams.setTerminator(new EvaluationTerminator(100000));
+    ConvergenceTerminator terminator = createTerminator();
+    goParams.setTerminator(new EvaluationTerminator(terminator.getMaxEvaluations()));
 
+    configureCheckpoints();
+    EstimationCoordinator coordinator = startCoordinator();
+    configureSurrogateModel();
+    EstimationTelemetry telemetry = startTelemetry();
     InterfaceOptimizer optimizer = goParams.getOptimizer();
     optimizer.initialize();
-    while (!goParams.getTerminator().isTerminated(optimizer.getPopulation()))  {
+    while (!terminator.isTerminated(optimizer.getPopulation()))  {
       optimizer.optimize();
+      estimationProblem.discountScreenedCandidates(optimizer.getPopulation());
+      estimationProblem.checkpoint(optimizer.getPopulation());
+      if (telemetry != null) {
+        telemetry.record(optimizer.getPopulation(), estimationProblem);
+      }
+    }
+    logger.info(terminator.getMessage());
+    if (telemetry != null) {
+      try {
+        telemetry.close();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        logger.warning(bundle.getString("TELEMETRY_INTERRUPTED"));
+      }
+    }
+    if (coordinator != null) {
+      estimationProblem.setCoordinator(null);
+      coordinator.shutdown();
+    }
+    SurrogateModel surrogate = estimationProblem.getSurrogateModel();
+    if (surrogate != null) {
+      estimationProblem.setSurrogateModel(null);
+      logger.info(MessageFormat.format(bundle.getString("SURROGATE_STATISTICS"),
+        surrogate.getSimulatedCount(), surrogate.getScreenedCount()));
     }
 
     ESIndividualDoubleData best = (ESIndividualDoubleData)optimizer.getPopulation().getBestEAIndividual();
     double[] estimations = best.getDoubleData();
     double fitness = best.getFitness()[0];
+
+    SBProperties props = appConf.getCmdArgs();
+    SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    boolean localRefinement;
+    if (props.containsKey(EstimationOptions.EST_LOCAL_REFINEMENT)) {
+      localRefinement = props.getBoolean(EstimationOptions.EST_LOCAL_REFINEMENT);
+    } else {
+      localRefinement = prefsEst.getBoolean(EstimationOptions.EST_LOCAL_REFINEMENT);
+    }
+    if (localRefinement) {
+      int maxIterations;
+      if (props.containsKey(EstimationOptions.EST_LOCAL_REFINEMENT_MAX_ITERATIONS)) {
+        maxIterations = Integer.valueOf(props.get(EstimationOptions.EST_LOCAL_REFINEMENT_MAX_ITERATIONS));
+      } else {
+        maxIterations = prefsEst.getInt(EstimationOptions.EST_LOCAL_REFINEMENT_MAX_ITERATIONS);
+      }
+      try {
+        LevenbergMarquardt refinement = new LevenbergMarquardt(estimationProblem, maxIterations, getNumberOfThreads());
+        estimations = refinement.refine(estimations);
+        fitness = estimationProblem.evaluate(estimations)[0];
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
     logger.info("Fitness: " + fitness);
     for (int i = 0; i != estimations.length; i++) {
       logger.info(estimationProblem.getQuantityRanges()[i].getQuantity().getName() + ": " + estimations[i]);
     }
 
+    if (props.containsKey(EstimationOptions.EST_PROFILE_LIKELIHOOD_FILE)) {
+      computeProfileLikelihood(estimations, props, prefsEst);
+    }
+    if (props.containsKey(EstimationOptions.EST_BOOTSTRAP_FILE)) {
+      computeBootstrap(estimations, props, prefsEst);
+    }
+
     //Refresh model
     for(int i=0; i!=estimations.length; i++) {
       estimationProblem.getQuantities()[i].setValue(estimations[i]);
@@ -562,6 +677,281 @@ public class CommandLineManager implements PropertyChangeListener, Runnable {
 
   }
 
+  /**
+   * Creates the termination criteria of the estimation from the options.
+   * 
+   * @return
+   */
+  private ConvergenceTerminator createTerminator() {
+    SBProperties props = appConf.getCmdArgs();
+    SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    int maxEvaluations;
+    if (props.containsKey(EstimationOptions.EST_MAX_EVALUATIONS)) {
+      maxEvaluations = Integer.valueOf(props.get(EstimationOptions.EST_MAX_EVALUATIONS));
+    } else {
+      maxEvaluations = prefsEst.getInt(EstimationOptions.EST_MAX_EVALUATIONS);
+    }
+    int stagnationGenerations;
+    if (props.containsKey(EstimationOptions.EST_STAGNATION_GENERATIONS)) {
+      stagnationGenerations = Integer.valueOf(props.get(EstimationOptions.EST_STAGNATION_GENERATIONS));
+    } else {
+      stagnationGenerations = prefsEst.getInt(EstimationOptions.EST_STAGNATION_GENERATIONS);
+    }
+    double stagnationTolerance;
+    if (props.containsKey(EstimationOptions.EST_STAGNATION_TOLERANCE)) {
+      stagnationTolerance = Double.valueOf(props.get(EstimationOptions.EST_STAGNATION_TOLERANCE));
+    } else {
+      stagnationTolerance = prefsEst.getDouble(EstimationOptions.EST_STAGNATION_TOLERANCE);
+    }
+    double targetFitness;
+    if (props.containsKey(EstimationOptions.EST_TARGET_FITNESS)) {
+      targetFitness = Double.valueOf(props.get(EstimationOptions.EST_TARGET_FITNESS));
+    } else {
+      targetFitness = prefsEst.getDouble(EstimationOptions.EST_TARGET_FITNESS);
+    }
+    int maxTime;
+    if (props.containsKey(EstimationOptions.EST_MAX_TIME)) {
+      maxTime = Integer.valueOf(props.get(EstimationOptions.EST_MAX_TIME));
+    } else {
+      maxTime = prefsEst.getInt(EstimationOptions.EST_MAX_TIME);
+    }
+    boolean allCriteria;
+    if (props.containsKey(EstimationOptions.EST_TERMINATE_ON_ALL_CRITERIA)) {
+      allCriteria = props.getBoolean(EstimationOptions.EST_TERMINATE_ON_ALL_CRITERIA);
+    } else {
+      allCriteria = prefsEst.getBoolean(EstimationOptions.EST_TERMINATE_ON_ALL_CRITERIA);
+    }
+    ConvergenceTerminator terminator = new ConvergenceTerminator(maxEvaluations);
+    terminator.setStagnation(stagnationGenerations, stagnationTolerance);
+    terminator.setTargetFitness(targetFitness);
+    terminator.setMaxTime(maxTime);
+    terminator.setAllCriteria(allCriteria);
+    return terminator;
+  }
+
+  /**
+   * Starts listening for worker processes if a port is given.
+   * 
+   * @return the coordinator of the workers or {@code null}.
+   */
+  private EstimationCoordinator startCoordinator() {
+    SBProperties props = appConf.getCmdArgs();
+    int port;
+    if (props.containsKey(EstimationOptions.EST_COORDINATOR_PORT)) {
+      port = Integer.valueOf(props.get(EstimationOptions.EST_COORDINATOR_PORT));
+    } else {
+      port = SBPreferences.getPreferencesFor(EstimationOptions.class).getInt(EstimationOptions.EST_COORDINATOR_PORT);
+    }
+    if (port <= 0) {
+      return null;
+    }
+    SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    String address;
+    if (props.containsKey(EstimationOptions.EST_COORDINATOR_ADDRESS)) {
+      address = props.get(EstimationOptions.EST_COORDINATOR_ADDRESS);
+    } else {
+      address = prefsEst.get(EstimationOptions.EST_COORDINATOR_ADDRESS);
+    }
+    File secretFile;
+    if (props.containsKey(EstimationOptions.EST_COORDINATOR_SECRET_FILE)) {
+      secretFile = new File(props.get(EstimationOptions.EST_COORDINATOR_SECRET_FILE));
+    } else {
+      secretFile = new File(prefsEst.get(EstimationOptions.EST_COORDINATOR_SECRET_FILE));
+    }
+    if (!secretFile.isFile()) {
+      logger.warning(bundle.getString("WORKER_SECRET_MISSING"));
+      return null;
+    }
+    try {
+      EstimationCoordinator coordinator = new EstimationCoordinator(
+        estimationProblem, InetAddress.getByName(address), port,
+        EstimationWorker.readSecret(secretFile));
+      estimationProblem.setCoordinator(coordinator);
+      logger.info(MessageFormat.format(bundle.getString("WAITING_FOR_WORKERS"),
+        address, coordinator.getPort()));
+      return coordinator;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Starts writing the telemetry of each generation if a file is given.
+   * 
+   * @return the telemetry or {@code null}.
+   */
+  private EstimationTelemetry startTelemetry() {
+    SBProperties props = appConf.getCmdArgs();
+    String file;
+    if (props.containsKey(EstimationOptions.EST_TELEMETRY_FILE)) {
+      file = props.get(EstimationOptions.EST_TELEMETRY_FILE);
+    } else {
+      file = SBPreferences.getPreferencesFor(EstimationOptions.class).get(EstimationOptions.EST_TELEMETRY_FILE);
+    }
+    if ((file == null) || (file.length() == 0)) {
+      return null;
+    }
+    try {
+      return new EstimationTelemetry(new File(file),
+        estimationProblem.getQuantityIdentifiers());
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Lets a surrogate model pre-screen the candidate solutions if desired.
+   */
+  private void configureSurrogateModel() {
+    SBProperties props = appConf.getCmdArgs();
+    SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    boolean surrogate;
+    if (props.containsKey(EstimationOptions.EST_SURROGATE)) {
+      surrogate = props.getBoolean(EstimationOptions.EST_SURROGATE);
+    } else {
+      surrogate = prefsEst.getBoolean(EstimationOptions.EST_SURROGATE);
+    }
+    if (!surrogate) {
+      return;
+    }
+    double quantile;
+    if (props.containsKey(EstimationOptions.EST_SURROGATE_QUANTILE)) {
+      quantile = Double.valueOf(props.get(EstimationOptions.EST_SURROGATE_QUANTILE));
+    } else {
+      quantile = prefsEst.getDouble(EstimationOptions.EST_SURROGATE_QUANTILE);
+    }
+    estimationProblem.setSurrogateModel(new SurrogateModel(
+      estimationProblem.getQuantityRanges(), quantile));
+  }
+
+  /**
+   * Enables periodic checkpoints of the estimation and resumes from an
+   * existing checkpoint if desired.
+   */
+  private void configureCheckpoints() {
+    SBProperties props = appConf.getCmdArgs();
+    SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    boolean checkpoints;
+    if (props.containsKey(EstimationOptions.EST_CHECKPOINTS)) {
+      checkpoints = props.getBoolean(EstimationOptions.EST_CHECKPOINTS);
+    } else {
+      checkpoints = prefsEst.getBoolean(EstimationOptions.EST_CHECKPOINTS);
+    }
+    if (!checkpoints) {
+      return;
+    }
+    File checkpointFile;
+    if (props.containsKey(EstimationOptions.EST_CHECKPOINT_FILE)) {
+      checkpointFile = new File(props.get(EstimationOptions.EST_CHECKPOINT_FILE));
+    } else {
+      checkpointFile = new File(prefsEst.get(EstimationOptions.EST_CHECKPOINT_FILE));
+    }
+    int interval;
+    if (props.containsKey(EstimationOptions.EST_CHECKPOINT_INTERVAL)) {
+      interval = Integer.valueOf(props.get(EstimationOptions.EST_CHECKPOINT_INTERVAL));
+    } else {
+      interval = prefsEst.getInt(EstimationOptions.EST_CHECKPOINT_INTERVAL);
+    }
+    // a one-shot action, which is never taken from the preferences
+    boolean resume = props.containsKey(EstimationOptions.EST_RESUME_FROM_CHECKPOINT)
+        && props.getBoolean(EstimationOptions.EST_RESUME_FROM_CHECKPOINT);
+    if (resume && checkpointFile.exists()) {
+      try {
+        estimationProblem.resume(EstimationCheckpoint.load(checkpointFile));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    estimationProblem.setCheckpointFile(checkpointFile, 1000L * interval);
+  }
+
+  /**
+   * Computes the confidence intervals of all estimated quantities and writes
+   * them into the file given on the command line.
+   * 
+   * @param estimations
+   *        the estimated values.
+   * @param props
+   * @param prefsEst
+   */
+  private void computeProfileLikelihood(double[] estimations,
+    SBProperties props, SBPreferences prefsEst) {
+    ProfileLikelihood profileLikelihood = new ProfileLikelihood(estimationProblem, getNumberOfThreads());
+    if (props.containsKey(EstimationOptions.EST_PROFILE_LIKELIHOOD_STEPS)) {
+      profileLikelihood.setNumberOfSteps(Integer.valueOf(props.get(EstimationOptions.EST_PROFILE_LIKELIHOOD_STEPS)));
+    } else {
+      profileLikelihood.setNumberOfSteps(prefsEst.getInt(EstimationOptions.EST_PROFILE_LIKELIHOOD_STEPS));
+    }
+    if (props.containsKey(EstimationOptions.EST_CONFIDENCE_LEVEL)) {
+      profileLikelihood.setConfidenceLevel(Double.valueOf(props.get(EstimationOptions.EST_CONFIDENCE_LEVEL)));
+    } else {
+      profileLikelihood.setConfidenceLevel(prefsEst.getDouble(EstimationOptions.EST_CONFIDENCE_LEVEL));
+    }
+    try {
+      ProfileLikelihood.saveConfidenceIntervals(
+        new File(props.get(EstimationOptions.EST_PROFILE_LIKELIHOOD_FILE)),
+        profileLikelihood.compute(estimations));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Computes bootstrap confidence intervals of all estimated quantities. The
+   * replicates are written into the file given on the command line and the
+   * intervals into a file with the additional extension .intervals.csv.
+   * 
+   * @param estimations
+   *        the estimated values.
+   * @param props
+   * @param prefsEst
+   */
+  private void computeBootstrap(double[] estimations, SBProperties props,
+    SBPreferences prefsEst) {
+    Bootstrap bootstrap = new Bootstrap(estimationProblem, getNumberOfThreads());
+    if (props.containsKey(EstimationOptions.EST_BOOTSTRAP_REPLICATES)) {
+      bootstrap.setNumberOfReplicates(Integer.valueOf(props.get(EstimationOptions.EST_BOOTSTRAP_REPLICATES)));
+    } else {
+      bootstrap.setNumberOfReplicates(prefsEst.getInt(EstimationOptions.EST_BOOTSTRAP_REPLICATES));
+    }
+    if (props.containsKey(EstimationOptions.EST_BOOTSTRAP_NOISE)) {
+      bootstrap.setNoise(Double.valueOf(props.get(EstimationOptions.EST_BOOTSTRAP_NOISE)));
+    } else {
+      bootstrap.setNoise(prefsEst.getDouble(EstimationOptions.EST_BOOTSTRAP_NOISE));
+    }
+    if (props.containsKey(EstimationOptions.EST_BOOTSTRAP_GLOBAL_EVALUATIONS)) {
+      bootstrap.setGlobalEvaluations(Integer.valueOf(props.get(EstimationOptions.EST_BOOTSTRAP_GLOBAL_EVALUATIONS)));
+    } else {
+      bootstrap.setGlobalEvaluations(prefsEst.getInt(EstimationOptions.EST_BOOTSTRAP_GLOBAL_EVALUATIONS));
+    }
+    if (props.containsKey(EstimationOptions.EST_CONFIDENCE_LEVEL)) {
+      bootstrap.setConfidenceLevel(Double.valueOf(props.get(EstimationOptions.EST_CONFIDENCE_LEVEL)));
+    } else {
+      bootstrap.setConfidenceLevel(prefsEst.getDouble(EstimationOptions.EST_CONFIDENCE_LEVEL));
+    }
+    String file = props.get(EstimationOptions.EST_BOOTSTRAP_FILE);
+    try {
+      Bootstrap.saveConfidenceIntervals(new File(file + ".intervals.csv"),
+        bootstrap.compute(estimations, new File(file)));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * 
+   * @return the number of threads for concurrent simulations.
+   */
+  private int getNumberOfThreads() {
+    SBProperties props = appConf.getCmdArgs();
+    if (props.containsKey(EstimationOptions.EST_NUMBER_OF_THREADS)) {
+      return Integer.valueOf(props.get(EstimationOptions.EST_NUMBER_OF_THREADS));
+    }
+    return SBPreferences.getPreferencesFor(EstimationOptions.class).getInt(EstimationOptions.EST_NUMBER_OF_THREADS);
+  }
+
   /**
    * @param model
    * @param allGlobalParameters
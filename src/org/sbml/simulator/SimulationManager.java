@@ -28,6 +28,7 @@ import org.sbml.jsbml.SBMLException;
 import org.sbml.jsbml.validator.ModelOverdeterminedException;
 import org.sbml.optimization.problem.EstimationProblem;
 import org.sbml.simulator.gui.SimulationWorker;
+import org.sbml.simulator.math.AlignmentPlan;
 import org.simulator.math.odes.MultiTable;
 import org.simulator.sbml.SBMLinterpreter;
 
@@ -53,6 +54,12 @@ public class SimulationManager implements PropertyChangeListener {
 	 */
 	private double[] distanceValues;
 
+	/**
+	 * How the solution is aligned with each measurement, which is reused as
+	 * long as the layout of the solution and the measurements do not change.
+	 */
+	private transient AlignmentPlan[] alignmentPlans;
+
 	/**
 	 * The mean distance value over all experimental data sets.
 	 */
@@ -159,8 +166,12 @@ public class SimulationManager implements PropertyChangeListener {
 		meanDistanceValue = 0d;
 
 		if ((solution != null) && (qualityMeasurement.getMeasurements().size() > 0)) {
+			if ((alignmentPlans == null) || (alignmentPlans.length != distanceValues.length)) {
+				alignmentPlans = new AlignmentPlan[distanceValues.length];
+			}
 			for (int i = 0; i != qualityMeasurement.getMeasurements().size(); i++) {
-				distanceValues[i] = qualityMeasurement.getDistance().distance(solution, qualityMeasurement.getMeasurements().get(i));
+				alignmentPlans[i] = AlignmentPlan.update(alignmentPlans[i], solution, qualityMeasurement.getMeasurements().get(i));
+				distanceValues[i] = alignmentPlans[i].distance(qualityMeasurement.getDistance(), solution);
 			}
 			meanDistanceValue = Mathematics.mean(distanceValues);
 		}
@@ -0,0 +1,417 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.fba.controller.FBAContext;
+import org.sbml.simulator.fba.controller.FluxBalanceAnalysis;
+import org.sbml.simulator.fba.controller.FluxVariabilityAnalysis;
+import org.sbml.simulator.fba.dynamic.DynamicFBA;
+import org.sbml.simulator.fba.dynamic.FluxMinimizationII;
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverFactory;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
+import org.simulator.math.odes.MultiTable;
+
+import de.zbit.io.csv.CSVWriter;
+import de.zbit.util.ResourceManager;
+
+/**
+ * Measures the performance of the flux balance analysis, so that the results
+ * of different solvers, data structures and versions can be compared. Each
+ * {@link ReferenceNetwork} passes four stages:
+ * <ul>
+ * <li>{@code staticFBA}: the maximal flux of the objective reaction under
+ * steady-state conditions, a linear program,</li>
+ * <li>{@code reSolve}: the same problem, built and solved once and then
+ * solved again {@link #RE_SOLVES} times from the previous solution, while
+ * only the upper bound of the objective flux changes; the solve time and
+ * the iterations are averages per re-solve,</li>
+ * <li>{@code fluxMinimization}: the {@link FluxBalanceAnalysis} with its
+ * default {@link org.sbml.simulator.fba.controller.FluxMinimization}, a
+ * quadratic program, and</li>
+ * <li>{@code dynamicFBA}: a {@link DynamicFBA} with the linear
+ * {@link FluxMinimizationII} on {@link #TIME_POINTS} points in time with
+ * constant concentrations.</li>
+ * </ul>
+ * For each stage, the benchmark reports the time to build the optimization
+ * problem from the model (including the expansion of the model, which is
+ * not reused between repetitions), the time to solve it, the number of
+ * solver iterations and the memory that is retained by the objects of the
+ * stage. All values are medians of {@link #REPETITIONS} repetitions.
+ * <p>
+ * Without model files, the benchmark uses networks with a fixed random
+ * structure from 100 up to 2600 reactions. Run it with the Ant target
+ * {@code fba-benchmark} or from the command line:
+ * <pre>
+ * java -cp SBMLsimulator.jar org.sbml.simulator.fba.benchmark.FBABenchmark [solver] [output.csv] [model.xml ...]
+ * </pre>
+ *
+ * @since 2.1
+ */
+public class FBABenchmark {
+
+	/**
+	 * The number of repetitions of each stage.
+	 */
+	public static final int REPETITIONS = 3;
+
+	/**
+	 * The seed of the structure of the created networks.
+	 */
+	public static final long SEED = 42L;
+
+	/**
+	 * The number of points in time of the dynamic flux balance analysis.
+	 */
+	public static final int TIME_POINTS = 5;
+
+	/**
+	 * The number of re-solves of the static problem after it has been solved
+	 * once.
+	 */
+	public static final int RE_SOLVES = 10;
+
+	/**
+	 * The measures of each stage.
+	 */
+	private static final String MEASURES[] = {"buildMillis", "solveMillis", "iterations", "retainedBytes"};
+
+	/**
+	 * Localization support.
+	 */
+	private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(FBABenchmark.class.getName());
+
+	/**
+	 *
+	 * @param args
+	 *        the name of the {@link SolverType} (default: AUTOMATIC),
+	 *        optionally a CSV file for the results and optionally SBML files
+	 *        to be used instead of the created networks.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		SolverType solverType = SolverType.AUTOMATIC;
+		if (args.length > 0) {
+			solverType = SolverType.valueOf(args[0]);
+		}
+		File files[] = new File[Math.max(0, args.length - 2)];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File(args[i + 2]);
+		}
+		FBABenchmark benchmark = new FBABenchmark(solverType, files);
+		benchmark.run();
+		if (args.length > 1) {
+			benchmark.save(new File(args[1]));
+		}
+	}
+
+	/**
+	 *
+	 */
+	private final SolverType solverType;
+
+	/**
+	 * The SBML files of the networks or none for the created networks.
+	 */
+	private final File files[];
+
+	/**
+	 * The name of the network, the stage, the measure and the value of each
+	 * result.
+	 */
+	private final List<String[]> results = new ArrayList<String[]>();
+
+	/**
+	 *
+	 * @param solverType
+	 *        the solver of all stages.
+	 * @param files
+	 *        the SBML files of the networks or none for the created networks.
+	 */
+	public FBABenchmark(SolverType solverType, File... files) {
+		this.solverType = solverType;
+		this.files = files.clone();
+	}
+
+	/**
+	 * Runs all stages on all networks.
+	 *
+	 * @throws Exception
+	 */
+	public void run() throws Exception {
+		results.clear();
+		ReferenceNetwork networks[] = ReferenceNetwork.createAll(SEED);
+		if (files.length > 0) {
+			networks = new ReferenceNetwork[files.length];
+			for (int i = 0; i < files.length; i++) {
+				networks[i] = ReferenceNetwork.read(files[i]);
+			}
+		}
+		for (ReferenceNetwork network : networks) {
+			Model model = network.getDocument().getModel();
+			addResult(network, "model", "species", model.getSpeciesCount());
+			addResult(network, "model", "reactions", model.getReactionCount());
+			measure(network, "staticFBA");
+			measure(network, "reSolve");
+			measure(network, "fluxMinimization");
+			measure(network, "dynamicFBA");
+		}
+	}
+
+	/**
+	 * Runs one stage {@link #REPETITIONS} times and adds the medians of all
+	 * measures to the results.
+	 *
+	 * @param network
+	 * @param stage
+	 * @throws Exception
+	 */
+	private void measure(ReferenceNetwork network, String stage) throws Exception {
+		double values[][] = new double[MEASURES.length][REPETITIONS];
+		for (int k = 0; k < REPETITIONS; k++) {
+			// the expansion of the model belongs to the build time
+			FBAContext.clearCache(network.getDocument());
+			double measurement[];
+			if (stage.equals("staticFBA")) {
+				measurement = runStaticFBA(network, false);
+			} else if (stage.equals("reSolve")) {
+				measurement = runStaticFBA(network, true);
+			} else if (stage.equals("fluxMinimization")) {
+				measurement = runFluxMinimization(network);
+			} else {
+				measurement = runDynamicFBA(network);
+			}
+			for (int m = 0; m < MEASURES.length; m++) {
+				values[m][k] = measurement[m];
+			}
+		}
+		FBAContext.clearCache(network.getDocument());
+		for (int m = 0; m < MEASURES.length; m++) {
+			Arrays.sort(values[m]);
+			addResult(network, stage, MEASURES[m], values[m][REPETITIONS / 2]);
+		}
+	}
+
+	/**
+	 * Maximizes the flux of the objective reaction in the expanded model with
+	 * split reversible reactions, N * J = 0 and 0 <= J_j <=
+	 * {@link FluxVariabilityAnalysis#DEFAULT_FLUX_BOUND}.
+	 *
+	 * @param network
+	 * @param reSolve
+	 *        whether to measure the re-solves after lowering the upper bound
+	 *        of the objective flux step by step instead of the first solve.
+	 * @return the value of each measure
+	 * @throws Exception
+	 */
+	private double[] runStaticFBA(ReferenceNetwork network, boolean reSolve) throws Exception {
+		long memory = usedMemory();
+		long start = System.nanoTime();
+		FBAContext context = FBAContext.getInstance(network.getDocument());
+		SparseStoichiometricMatrix N = context.getExpandedSparseStoichiometricMatrix();
+		int reactionCount = N.getColumnDimension();
+		double lb[] = new double[reactionCount];
+		double ub[] = new double[reactionCount];
+		Arrays.fill(ub, FluxVariabilityAnalysis.DEFAULT_FLUX_BOUND);
+		double objective[] = new double[reactionCount];
+		Model expandedModel = context.getExpandedDocument().getModel();
+		for (int j = 0; j < expandedModel.getReactionCount(); j++) {
+			if (expandedModel.getReaction(j).getId().equals(network.getObjective())) {
+				objective[j] = 1d;
+			}
+		}
+
+		ProblemBuilder builder = new ProblemBuilder();
+		builder.addVariables(lb, ub);
+		builder.setObjective(objective, null, false);
+		int rowPointers[] = N.getRowPointers();
+		int columnIndices[] = N.getColumnIndices();
+		double rowValues[] = N.getRowValues();
+		for (int i = 0; i < N.getRowDimension(); i++) {
+			if (rowPointers[i + 1] > rowPointers[i]) {
+				builder.addRow(Arrays.copyOfRange(columnIndices, rowPointers[i], rowPointers[i + 1]),
+					Arrays.copyOfRange(rowValues, rowPointers[i], rowPointers[i + 1]), Solver.Relation.EQUAL, 0d);
+			}
+		}
+		Solver solver = SolverFactory.createSolver(solverType);
+		try {
+			builder.build(solver);
+			long built = System.nanoTime();
+			boolean optimal = solver.solve();
+			if (!optimal) {
+				logger.warning("No optimal flux distribution found for " + network.getName() + '.');
+			}
+			long solved = System.nanoTime();
+			if (!reSolve) {
+				return new double[] {(built - start) / 1E6d, (solved - built) / 1E6d,
+						solver.getIterationCount(), usedMemory() - memory};
+			} else if (!optimal) {
+				return new double[] {(built - start) / 1E6d, Double.NaN, Double.NaN, usedMemory() - memory};
+			}
+			double optimum = solver.getObjectiveValue();
+			long iterations = 0;
+			for (int k = 1; k <= RE_SOLVES; k++) {
+				solver.setStartingPoint(solver.getValues());
+				for (int j = 0; j < reactionCount; j++) {
+					if (objective[j] != 0d) {
+						solver.setBounds(j, lb[j], optimum * (1d - k / (2d * RE_SOLVES)));
+					}
+				}
+				if (!solver.solve()) {
+					logger.warning("No optimal flux distribution found for " + network.getName() + '.');
+					break;
+				}
+				iterations += solver.getIterationCount();
+			}
+			long reSolved = System.nanoTime();
+			return new double[] {(built - start) / 1E6d, (reSolved - solved) / 1E6d / RE_SOLVES,
+					iterations / (double) RE_SOLVES, usedMemory() - memory};
+		} finally {
+			solver.end();
+		}
+	}
+
+	/**
+	 * Solves the {@link FluxBalanceAnalysis} with its default target function.
+	 *
+	 * @param network
+	 * @return the value of each measure
+	 * @throws Exception
+	 */
+	private double[] runFluxMinimization(ReferenceNetwork network) throws Exception {
+		long memory = usedMemory();
+		long start = System.nanoTime();
+		FluxBalanceAnalysis fba = new FluxBalanceAnalysis(network.getDocument());
+		fba.setSolverType(solverType);
+		long built = System.nanoTime();
+		fba.solve();
+		long solved = System.nanoTime();
+		return new double[] {(built - start) / 1E6d, (solved - built) / 1E6d,
+				fba.getIterationCount(), usedMemory() - memory};
+	}
+
+	/**
+	 * Runs a {@link DynamicFBA} with the {@link FluxMinimizationII} on
+	 * {@link #TIME_POINTS} points in time, at which all species have their
+	 * initial concentration or 1 if none is set.
+	 *
+	 * @param network
+	 * @return the value of each measure
+	 * @throws Exception
+	 */
+	private double[] runDynamicFBA(ReferenceNetwork network) throws Exception {
+		SBMLDocument doc = network.getDocument();
+		Model model = doc.getModel();
+		double timePoints[] = new double[TIME_POINTS];
+		double data[][] = new double[TIME_POINTS][model.getSpeciesCount()];
+		String identifiers[] = new String[model.getSpeciesCount()];
+		for (int i = 0; i < identifiers.length; i++) {
+			identifiers[i] = model.getSpecies(i).getId();
+			double concentration = model.getSpecies(i).isSetInitialConcentration() ? model.getSpecies(i).getInitialConcentration() : 1d;
+			for (int t = 0; t < TIME_POINTS; t++) {
+				data[t][i] = concentration;
+			}
+		}
+		for (int t = 0; t < TIME_POINTS; t++) {
+			timePoints[t] = t;
+		}
+		MultiTable table = new MultiTable(timePoints, data, identifiers);
+		table.setTimeName(DynamicFBA.getDefaultTimeName());
+
+		long memory = usedMemory();
+		long start = System.nanoTime();
+		DynamicFBA dfba = new DynamicFBA(doc, table);
+		dfba.setSolverType(solverType);
+		FluxMinimizationII function = new FluxMinimizationII();
+		long built = System.nanoTime();
+		// the problem of each point in time is built and solved in turn
+		dfba.runDynamicFBA(function);
+		long solved = System.nanoTime();
+		return new double[] {(built - start) / 1E6d, (solved - built) / 1E6d,
+				dfba.getIterationCount(), usedMemory() - memory};
+	}
+
+	/**
+	 *
+	 * @return the number of bytes in use after a garbage collection.
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 2; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 *
+	 * @param network
+	 * @param stage
+	 * @param measure
+	 * @param value
+	 */
+	private void addResult(ReferenceNetwork network, String stage,
+		String measure, double value) {
+		logger.info(MessageFormat.format(bundle.getString("FBA_BENCHMARK_RESULT"),
+			network.getName(), stage, measure, value));
+		results.add(new String[] {network.getName(), stage, measure,
+				String.valueOf(value)});
+	}
+
+	/**
+	 *
+	 * @return the name of the network, the stage, the measure and the value of
+	 *         each result of the last run.
+	 */
+	public List<String[]> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes the results of the last run into a CSV file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		String comment = "FBA benchmark with solver " + solverType + ", "
+				+ REPETITIONS + " repetitions per stage and " + TIME_POINTS
+				+ " points in time.\n";
+		String header[] = {"model", "stage", "measure", "value"};
+		CSVWriter writer = new CSVWriter();
+		writer.write(results.toArray(new String[results.size()][]), header,
+			comment, file);
+	}
+
+}
@@ -0,0 +1,252 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+/**
+ * A metabolic network for the {@link FBABenchmark}, either read from an SBML
+ * file or created in memory. The created networks have a random but fixed
+ * structure of the size of small, medium and genome-scale models, so that the
+ * benchmark does not depend on any files.
+ *
+ * @since 2.1
+ */
+class ReferenceNetwork {
+
+	/**
+	 * The id of the objective reaction of the created networks.
+	 */
+	private static final String BIOMASS = "biomass";
+
+	/**
+	 * Every this-th species of a created network can be exchanged with the
+	 * environment.
+	 */
+	private static final int EXCHANGE_INTERVAL = 5;
+
+	/**
+	 * The number of species consumed by the objective reaction of a created
+	 * network.
+	 */
+	private static final int BIOMASS_PRECURSORS = 20;
+
+	/**
+	 * The fraction of reversible reactions in a created network.
+	 */
+	private static final double REVERSIBLE_FRACTION = 0.3d;
+
+	/**
+	 *
+	 */
+	private final String name;
+
+	/**
+	 *
+	 */
+	private final SBMLDocument document;
+
+	/**
+	 * The id of the reaction whose flux is maximized.
+	 */
+	private final String objective;
+
+	/**
+	 *
+	 * @param name
+	 * @param document
+	 * @param objective
+	 */
+	private ReferenceNetwork(String name, SBMLDocument document, String objective) {
+		this.name = name;
+		this.document = document;
+		this.objective = objective;
+	}
+
+	/**
+	 * Creates the networks of the benchmark: a small one, a medium one and
+	 * one of the size of a genome-scale model of <i>E. coli</i>.
+	 *
+	 * @param seed
+	 *        the seed of the structure, so that all runs use the same networks.
+	 * @return
+	 */
+	static ReferenceNetwork[] createAll(long seed) {
+		return new ReferenceNetwork[] {
+				create("small", 70, 100, seed),
+				create("medium", 700, 1000, seed),
+				create("genome-scale", 1800, 2600, seed)};
+	}
+
+	/**
+	 * Reads a network from an SBML file. The objective is the first reaction
+	 * whose id contains {@code biomass} or, if there is none, the last
+	 * reaction.
+	 *
+	 * @param file
+	 * @return
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	static ReferenceNetwork read(File file) throws XMLStreamException, IOException {
+		SBMLDocument doc = (new SBMLReader()).readSBML(file);
+		ListOf<Reaction> reactions = doc.getModel().getListOfReactions();
+		String objective = reactions.get(reactions.size() - 1).getId();
+		for (Reaction reaction : reactions) {
+			if (reaction.getId().toLowerCase().contains(BIOMASS)) {
+				objective = reaction.getId();
+				break;
+			}
+		}
+		return new ReferenceNetwork(file.getName(), doc, objective);
+	}
+
+	/**
+	 * Creates a connected network: every species, which cannot be taken up,
+	 * is produced from species with smaller indices, every
+	 * {@link #EXCHANGE_INTERVAL}-th species can be exchanged with the
+	 * environment and the objective reaction consumes
+	 * {@link #BIOMASS_PRECURSORS} species. The remaining reactions connect
+	 * random species.
+	 *
+	 * @param name
+	 * @param speciesCount
+	 * @param reactionCount
+	 *        the number of reactions without the exchange reactions and the
+	 *        objective reaction.
+	 * @param seed
+	 * @return
+	 */
+	private static ReferenceNetwork create(String name, int speciesCount,
+		int reactionCount, long seed) {
+		Random random = new Random(seed);
+		SBMLDocument doc = new SBMLDocument(3, 1);
+		Model model = doc.createModel(name.replace('-', '_'));
+		Compartment compartment = model.createCompartment("cell");
+		compartment.setSize(1d);
+		compartment.setSpatialDimensions(3d);
+		compartment.setConstant(true);
+		for (int i = 0; i < speciesCount; i++) {
+			Species species = model.createSpecies("M" + i, compartment);
+			species.setInitialConcentration(1d);
+			species.setHasOnlySubstanceUnits(false);
+			species.setBoundaryCondition(false);
+			species.setConstant(false);
+		}
+		for (int i = 0; i < speciesCount; i += EXCHANGE_INTERVAL) {
+			Reaction reaction = createReaction(model, "EX_M" + i, true);
+			addParticipant(model, reaction.getListOfReactants(), i);
+		}
+		for (int j = 0; j < reactionCount; j++) {
+			Reaction reaction = createReaction(model, "R" + j,
+				random.nextDouble() < REVERSIBLE_FRACTION);
+			int product = 1 + random.nextInt(speciesCount - 1);
+			if (j < speciesCount - 1) {
+				// the first reactions produce each species once
+				product = j + 1;
+			}
+			int substrates = 1 + random.nextInt(2);
+			for (int k = 0; k < substrates; k++) {
+				addParticipant(model, reaction.getListOfReactants(), random.nextInt(product));
+			}
+			addParticipant(model, reaction.getListOfProducts(), product);
+			if (random.nextBoolean()) {
+				addParticipant(model, reaction.getListOfProducts(), random.nextInt(speciesCount));
+			}
+		}
+		Reaction reaction = createReaction(model, BIOMASS, false);
+		for (int k = 0; k < BIOMASS_PRECURSORS; k++) {
+			addParticipant(model, reaction.getListOfReactants(), random.nextInt(speciesCount));
+		}
+		return new ReferenceNetwork(name, doc, BIOMASS);
+	}
+
+	/**
+	 *
+	 * @param model
+	 * @param id
+	 * @param reversible
+	 * @return
+	 */
+	private static Reaction createReaction(Model model, String id, boolean reversible) {
+		Reaction reaction = model.createReaction(id);
+		reaction.setReversible(reversible);
+		reaction.setFast(false);
+		return reaction;
+	}
+
+	/**
+	 *
+	 * @param model
+	 * @param participants
+	 *        a species that occurs several times gets the according
+	 *        stoichiometry.
+	 * @param species
+	 *        the index of the species
+	 */
+	private static void addParticipant(Model model,
+		ListOf<SpeciesReference> participants, int species) {
+		String id = model.getSpecies(species).getId();
+		for (SpeciesReference reference : participants) {
+			if (reference.getSpecies().equals(id)) {
+				reference.setStoichiometry(reference.getStoichiometry() + 1d);
+				return;
+			}
+		}
+		SpeciesReference reference = new SpeciesReference(model.getSpecies(species));
+		reference.setStoichiometry(1d);
+		reference.setConstant(true);
+		participants.add(reference);
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 *
+	 * @return
+	 */
+	SBMLDocument getDocument() {
+		return document;
+	}
+
+	/**
+	 *
+	 * @return the id of the reaction whose flux is maximized.
+	 */
+	String getObjective() {
+		return objective;
+	}
+
+}
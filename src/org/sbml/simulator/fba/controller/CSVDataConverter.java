@@ -85,6 +85,16 @@ public class CSVDataConverter {
    */
   private double[] systemBoundariesArray;
 
+  /**
+   * The opened {@link SBMLDocument}
+   */
+  private SBMLDocument originalDocument;
+
+  /**
+   * The {@link FBAContext} of the original document, created on demand
+   */
+  private FBAContext context;
+
   /**
    * Call this constructor if no system boundaries file is given, 
    * for the automated creation of the system boundaries.
@@ -92,8 +102,10 @@ public class CSVDataConverter {
    * @throws Exception 
    */
   public CSVDataConverter(SBMLDocument originalDoc) throws Exception {
-    this.modifiedDocument = FluxMinimizationUtils.getExpandedDocument(originalDoc);
-    this.systemBoundariesArray = FluxMinimizationUtils.getSystemBoundaries(originalDoc);
+    this.originalDocument = originalDoc;
+    this.context = FBAContext.getInstance(originalDoc);
+    this.modifiedDocument = context.getExpandedDocument();
+    this.systemBoundariesArray = context.getSystemBoundaries();
   }
 
   /**
@@ -102,6 +114,7 @@ public class CSVDataConverter {
    * @param systemBoundariesFile
    */
   public CSVDataConverter(SBMLDocument originalDoc, boolean systemBoundariesFile) {
+    this.originalDocument = originalDoc;
     this.modifiedDocument = FluxMinimizationUtils.eliminateTransportsAndSplitReversibleReactions(originalDoc);
   }
 
@@ -112,7 +125,19 @@ public class CSVDataConverter {
    * @throws Exception
    */
   public CSVDataConverter(SBMLDocument originalDoc, double[] systemBoundaries) throws Exception {
-    this.modifiedDocument = FluxMinimizationUtils.getExpandedDocument(originalDoc, systemBoundaries);
+    this.originalDocument = originalDoc;
+    this.context = FBAContext.getInstance(originalDoc, systemBoundaries);
+    this.modifiedDocument = context.getExpandedDocument();
+  }
+
+  /**
+   * @return the {@link FBAContext} of the original document and the system boundaries
+   */
+  private FBAContext getContext() {
+    if (context == null) {
+      context = FBAContext.getInstance(originalDocument, systemBoundariesArray);
+    }
+    return context;
   }
 
   /**
@@ -240,7 +265,7 @@ public class CSVDataConverter {
    * @throws Exception 
    */
   public void writeComputedValuesInCSV(double[] computed_solution, File file) throws Exception {
-    modifiedDocument = FluxMinimizationUtils.getExpandedDocument(modifiedDocument);
+    modifiedDocument = getContext().getExpandedDocument();
     CSVWriter writer = new CSVWriter();
     String[][] data = null;
     Boolean isFluxOrErrorSolution = null;
@@ -327,7 +352,7 @@ public class CSVDataConverter {
       if (!header) {
         String[] helper = line.split("\t");
         if (modifiedDocument.getModel().containsReaction(helper[0])) {
-          if (!FluxMinimizationUtils.eliminatedReactions.contains(helper[0])) {
+          if (!getContext().getEliminatedReactions().contains(helper[0])) {
             modifiedDocument.getModel().getReaction(helper[0]).putUserObject(KEY_GIBBS, Double.parseDouble(helper[1]));
             int index = modifiedDocument.getModel().getListOfReactions().getIndex(modifiedDocument.getModel().getReaction(helper[0]));
             gibbsArray[index] = Double.parseDouble(helper[1]);
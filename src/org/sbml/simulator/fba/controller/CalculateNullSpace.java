@@ -15,11 +15,12 @@
  */
 package org.sbml.simulator.fba.controller;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
+import java.util.Arrays;
 
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 import org.sbml.simulator.stability.math.StoichiometricMatrix;
 
 /**
@@ -31,33 +32,75 @@ public class CalculateNullSpace {
 	 * 
 	 * @param N
 	 * @return
-	 * @throws IloException
+	 * @throws SolverException
 	 */
-	public static double[] calculateNullSpace(StoichiometricMatrix N) throws IloException {
-		// create the cplex solver
-		IloCplex cplex = new IloCplex();
+	public static double[] calculateNullSpace(StoichiometricMatrix N) throws SolverException {
+		return calculateNullSpace(new SparseStoichiometricMatrix(N));
+	}
+
+	/**
+	 * 
+	 * @param N
+	 * @return
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	public static double[] calculateNullSpace(SparseStoichiometricMatrix N) throws SolverException {
+		Solver solver = SolverFactory.createSolver();
+		try {
+			return calculateNullSpace(N, solver);
+		} finally {
+			solver.end();
+		}
+	}
+
+	/**
+	 * 
+	 * @param N
+	 * @param solver
+	 *        an empty solver.
+	 * @return
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	public static double[] calculateNullSpace(StoichiometricMatrix N, Solver solver) throws SolverException {
+		return calculateNullSpace(new SparseStoichiometricMatrix(N), solver);
+	}
+
+	/**
+	 * 
+	 * @param N
+	 * @param solver
+	 *        an empty solver.
+	 * @return
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	public static double[] calculateNullSpace(SparseStoichiometricMatrix N, Solver solver) throws SolverException {
 		double[] solution = new double[N.getColumnDimension()];
 		double[] lb = new double[N.getColumnDimension()];
 		double[] ub = new double[N.getColumnDimension()];
+		double[] target = new double[N.getColumnDimension()];
 		for (int i = 0; i < ub.length; i++) {
 			lb[i] = 0;
 			ub[i] = 1;
+			target[i] = 1;
 		}
 		
-		IloNumVar[] x = cplex.numVarArray(N.getColumnDimension(), lb, ub);
-
-		IloNumExpr cplex_target = cplex.sum(x);
-		cplex.addMaximize(cplex_target);
+		solver.addVariables(lb, ub);
+		solver.setObjective(target, null, false);
 		
-		IloNumExpr expr = cplex.numExpr();
+		// one row per species with the non-zero entries only
+		int[] rowPointers = N.getRowPointers();
+		int[] columnIndices = N.getColumnIndices();
+		double[] rowValues = N.getRowValues();
 		for (int i = 0; i < N.getRowDimension(); i++) {
-			expr = cplex.scalProd(x, N.getRow(i));
-			System.out.println(i + ": " + expr);
-			cplex.addEq(expr, 0);
+			solver.addConstraint(Arrays.copyOfRange(columnIndices, rowPointers[i], rowPointers[i + 1]),
+				Arrays.copyOfRange(rowValues, rowPointers[i], rowPointers[i + 1]), Solver.Relation.EQUAL, 0);
 		}
 		
-		if (cplex.solve()) {
-			solution = cplex.getValues(x);
+		if (solver.solve()) {
+			solution = solver.getValues();
 		}
 		
 		return solution;
@@ -17,7 +17,7 @@ package org.sbml.simulator.fba.controller;
 
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
-import org.sbml.simulator.stability.math.StoichiometricMatrix;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 
 /**
  * Containing the read equilibrium Gibbs energies and the computed Gibbs energies 
@@ -127,18 +127,24 @@ public class Constraints {
     if ((equilibriumsGibbs != null) && (this.originalDocument != null) && (equilibriumConcentrations != null)) {
 
       // initialize
-      StoichiometricMatrix N = FluxMinimizationUtils.getExpandedStoichiometricMatrix(originalDocument);
-      SBMLDocument modifiedDocument = FluxMinimizationUtils.getExpandedDocument(originalDocument, systemBoundaries);
+      FBAContext context = getContext();
+      SparseStoichiometricMatrix N = context.getExpandedSparseStoichiometricMatrix();
+      SBMLDocument modifiedDocument = context.getExpandedDocument();
       computedGibbsEnergies = new double[equilibriumsGibbs.length];
       Model modModel = modifiedDocument.getModel();
 
       // compute delta(Gibbs)_j = delta(Gibbs)_j_eq + R * T * sum(N[i][j] * ln(S[i])) 
+      // (only over the species of reaction j, i.e., the non-zero entries of column j)
+      int[] columnPointers = N.getColumnPointers();
+      int[] rowIndices = N.getRowIndices();
+      double[] values = N.getValues();
       for (int j = 0; j < modModel.getReactionCount(); j++) {
         double sum = 0;
         // compute sum( N[i][j] * ln(S_eq[i]) ) equals to the sum( N[i][j] * c_eq[i] ) 
-        for (int i = 0; i < modModel.getSpeciesCount(); i++) {
-          if (!Double.isNaN(equilibriumConcentrations[i])) {
-            sum += N.get(i, j) * Math.log(equilibriumConcentrations[i]);
+        for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+          int i = rowIndices[k];
+          if ((i < modModel.getSpeciesCount()) && !Double.isNaN(equilibriumConcentrations[i])) {
+            sum += values[k] * Math.log(equilibriumConcentrations[i]);
           } 
         }
         // delta(Gibbs)_j = delta(Gibbs)_j_eq + R * T * sum( N[i][j] * ln(c_eq[i]) )
@@ -191,6 +197,14 @@ public class Constraints {
   }
 
 
+  /**
+   * @return the {@link FBAContext} of the original document and the system boundaries
+   */
+  public FBAContext getContext() {
+    return FBAContext.getInstance(originalDocument, systemBoundaries);
+  }
+
+
   /**
    * @return the equilibrium concentrations
    */
@@ -0,0 +1,876 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.stability.math.ConservationRelations;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
+
+/**
+ * Computes the elementary flux modes (EFMs) of a model with the double
+ * description method, i.e., the tableau algorithm of
+ * {@link ConservationRelations#calculateConsRelations(org.sbml.simulator.stability.math.StabilityMatrix)}
+ * applied to the fluxes instead of the species. The reversible reactions are
+ * split as in {@link FluxMinimizationUtils#splitAllReversibleReactions(SBMLDocument)},
+ * so that all fluxes are non-negative, and the internal species (all species
+ * without boundary condition) are processed one after another. Species
+ * that produce the fewest combinations come first.
+ * <p>
+ * For each species, the modes with positive and negative production are
+ * combined pairwise. A combination is elementary if the sub-matrix of the
+ * processed species on its support has a rank of one less than the size of
+ * its support. The candidates of one species are generated and tested
+ * concurrently. Modes that do not take part in the current species, the new
+ * modes and the result can be spilled into temporary files once there are more
+ * than {@link #getMaxModesInMemory()} of them, so that only the modes of the
+ * current species must fit into memory.
+ * <p>
+ * The resulting modes are given as net fluxes of the reactions of the
+ * original document, scaled to a maximal absolute value of 1. The trivial
+ * cycles of a split reaction and its backward reaction are omitted.
+ *
+ * @since 2.1
+ */
+public class ElementaryFluxModes {
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(ElementaryFluxModes.class.getName());
+
+	/**
+	 * Values below this tolerance (relative to the maximal absolute value of a
+	 * mode) count as zero.
+	 */
+	private static final double TOLERANCE = 1E-10d;
+
+	/**
+	 * The number of modes with positive production that a thread takes at
+	 * once.
+	 */
+	private static final int CHUNK_SIZE = 8;
+
+	/**
+	 * The original document.
+	 */
+	private final SBMLDocument originalDocument;
+
+	/**
+	 * The stoichiometric matrix of the document with split reversible
+	 * reactions.
+	 */
+	private final SparseStoichiometricMatrix N;
+
+	/**
+	 * The index of the backward reaction for the index of each reversible
+	 * reaction.
+	 */
+	private final Map<Integer, Integer> reverseReaction;
+
+	/**
+	 * The rows of the internal species.
+	 */
+	private final int[] internalSpecies;
+
+	/**
+	 * The number of threads that generate candidates concurrently.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of modes per set that are kept in memory before they are
+	 * spilled into a temporary file.
+	 */
+	private int maxModesInMemory = 100000;
+
+	/**
+	 * The directory of the temporary files or {@code null} for the default.
+	 */
+	private File temporaryDirectory = null;
+
+	/**
+	 * The resulting modes or {@code null} before {@link #run()}.
+	 */
+	private ModeStore result = null;
+
+	/**
+	 *
+	 * @param originalDocument
+	 */
+	public ElementaryFluxModes(SBMLDocument originalDocument) {
+		this.originalDocument = originalDocument;
+		reverseReaction = new HashMap<Integer, Integer>();
+		SBMLDocument splitDocument = FluxMinimizationUtils.splitAllReversibleReactions(originalDocument, new HashSet<String>(), reverseReaction);
+		Model model = splitDocument.getModel();
+		N = new SparseStoichiometricMatrix(model);
+
+		int[] rowPointers = N.getRowPointers();
+		List<Integer> internal = new ArrayList<Integer>();
+		for (int i = 0; i < model.getSpeciesCount(); i++) {
+			if (!model.getSpecies(i).getBoundaryCondition() && (rowPointers[i + 1] > rowPointers[i])) {
+				internal.add(Integer.valueOf(i));
+			}
+		}
+		internalSpecies = new int[internal.size()];
+		for (int k = 0; k < internalSpecies.length; k++) {
+			internalSpecies[k] = internal.get(k).intValue();
+		}
+	}
+
+	/**
+	 * @return the ids of the reactions of the original document in the order
+	 *         of the values of each mode.
+	 */
+	public String[] getReactionIds() {
+		Model model = originalDocument.getModel();
+		String[] ids = new String[model.getReactionCount()];
+		for (int j = 0; j < ids.length; j++) {
+			ids[j] = model.getReaction(j).getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the number of threads that generate candidates concurrently.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 *
+	 * @param threadCount
+	 *        the number of threads that generate candidates concurrently
+	 *        (default: the number of available processors).
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * @return the number of modes per set that are kept in memory before they
+	 *         are spilled into a temporary file.
+	 */
+	public int getMaxModesInMemory() {
+		return maxModesInMemory;
+	}
+
+	/**
+	 *
+	 * @param maxModesInMemory
+	 *        the number of modes per set that are kept in memory before they
+	 *        are spilled into a temporary file (default: 100000).
+	 */
+	public void setMaxModesInMemory(int maxModesInMemory) {
+		this.maxModesInMemory = Math.max(1, maxModesInMemory);
+	}
+
+	/**
+	 *
+	 * @param temporaryDirectory
+	 *        the directory of the temporary files or {@code null} for the
+	 *        default temporary directory.
+	 */
+	public void setTemporaryDirectory(File temporaryDirectory) {
+		this.temporaryDirectory = temporaryDirectory;
+	}
+
+	/**
+	 * @return the number of elementary flux modes or -1 before {@link #run()}.
+	 */
+	public long getModeCount() {
+		return (result != null) ? result.size() : -1L;
+	}
+
+	/**
+	 * Computes all elementary flux modes.
+	 *
+	 * @throws IOException
+	 *         if the modes cannot be spilled into a temporary file.
+	 */
+	public void run() throws IOException {
+		clear();
+		int n = N.getColumnDimension();
+		ModeStore modes = new ModeStore(n);
+		for (int j = 0; j < n; j++) {
+			double[] unit = new double[n];
+			unit[j] = 1d;
+			modes.add(unit);
+		}
+
+		boolean[] processed = new boolean[N.getRowDimension()];
+		int processedCount = 0;
+		for (int step = 0; step < internalSpecies.length; step++) {
+			int row = selectSpecies(modes, processed);
+			processed[row] = true;
+			processedCount++;
+
+			// modes that do not take part in this species are kept
+			ModeStore next = new ModeStore(n);
+			ModeStore positive = new ModeStore(n);
+			ModeStore negative = new ModeStore(n);
+			try {
+				ModeReader reader = modes.reader();
+				try {
+					for (double[] mode = reader.next(); mode != null; mode = reader.next()) {
+						double value = rowTimes(row, mode);
+						if (value > TOLERANCE) {
+							positive.add(mode);
+						} else if (value < -TOLERANCE) {
+							negative.add(mode);
+						} else {
+							next.add(mode);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+				modes.delete();
+
+				combine(row, positive, negative, processed, processedCount, next);
+			} finally {
+				positive.delete();
+				negative.delete();
+			}
+			modes = next;
+			logger.fine("Species " + (step + 1) + " of " + internalSpecies.length + ": " + modes.size() + " modes");
+		}
+
+		// net fluxes of the original reactions without the trivial cycles
+		int reactionCount = originalDocument.getModel().getReactionCount();
+		result = new ModeStore(reactionCount);
+		ModeReader reader = modes.reader();
+		try {
+			for (double[] mode = reader.next(); mode != null; mode = reader.next()) {
+				double[] net = new double[reactionCount];
+				for (int j = 0; j < reactionCount; j++) {
+					net[j] = mode[j];
+					Integer backward = reverseReaction.get(Integer.valueOf(j));
+					if (backward != null) {
+						net[j] -= mode[backward.intValue()];
+					}
+				}
+				if (normalize(net)) {
+					result.add(net);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		modes.delete();
+	}
+
+	/**
+	 * Selects the unprocessed internal species whose positive and negative
+	 * modes create the fewest combinations.
+	 *
+	 * @param modes
+	 * @param processed
+	 * @return the row of the species
+	 * @throws IOException
+	 */
+	private int selectSpecies(ModeStore modes, boolean[] processed) throws IOException {
+		int m = N.getRowDimension();
+		long[] positive = new long[m];
+		long[] negative = new long[m];
+		int[] columnPointers = N.getColumnPointers();
+		int[] rowIndices = N.getRowIndices();
+		double[] values = N.getValues();
+		double[] production = new double[m];
+		ModeReader reader = modes.reader();
+		try {
+			for (double[] mode = reader.next(); mode != null; mode = reader.next()) {
+				for (int j = 0; j < mode.length; j++) {
+					if (mode[j] != 0d) {
+						for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+							production[rowIndices[k]] += values[k] * mode[j];
+						}
+					}
+				}
+				for (int j = 0; j < mode.length; j++) {
+					if (mode[j] != 0d) {
+						for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+							int i = rowIndices[k];
+							if (production[i] > TOLERANCE) {
+								positive[i]++;
+							} else if (production[i] < -TOLERANCE) {
+								negative[i]++;
+							}
+							production[i] = 0d;
+						}
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		int best = -1;
+		long fewest = Long.MAX_VALUE;
+		for (int i : internalSpecies) {
+			if (!processed[i] && (positive[i] * negative[i] < fewest)) {
+				best = i;
+				fewest = positive[i] * negative[i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Combines each positive with each negative mode and adds the elementary
+	 * combinations to the next modes. The negative modes are read in blocks
+	 * of at most {@link #maxModesInMemory} modes and the positive modes are
+	 * read again for every block, so that neither set is loaded into memory
+	 * at once.
+	 *
+	 * @param row
+	 *        the row of the current species
+	 * @param positive
+	 *        the modes that produce the current species
+	 * @param negative
+	 *        the modes that consume the current species
+	 * @param processed
+	 * @param processedCount
+	 * @param next
+	 * @throws IOException
+	 */
+	private void combine(int row, ModeStore positive, ModeStore negative, boolean[] processed, int processedCount,
+		ModeStore next) throws IOException {
+		if ((positive.size() == 0L) || (negative.size() == 0L)) {
+			return;
+		}
+		ModeReader reader = negative.reader();
+		try {
+			for (List<double[]> block = read(reader, maxModesInMemory); !block.isEmpty(); block = read(reader, maxModesInMemory)) {
+				combine(row, positive, block, processed, processedCount, next);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Combines each positive mode with each mode of the given block of
+	 * negative modes. The threads take the positive modes in chunks of
+	 * {@link #CHUNK_SIZE} modes from a shared reader.
+	 *
+	 * @param row
+	 * @param positive
+	 * @param negative
+	 *        a block of the negative modes
+	 * @param processed
+	 * @param processedCount
+	 * @param next
+	 * @throws IOException
+	 */
+	private void combine(final int row, ModeStore positive, final List<double[]> negative, final boolean[] processed,
+		final int processedCount, final ModeStore next) throws IOException {
+		final BitSet[] negativeSupports = new BitSet[negative.size()];
+		final double[] negativeValues = new double[negative.size()];
+		for (int q = 0; q < negativeSupports.length; q++) {
+			negativeSupports[q] = support(negative.get(q));
+			negativeValues[q] = -rowTimes(row, negative.get(q));
+		}
+		final ModeReader positiveReader = positive.reader();
+		try {
+			int threads = (int) Math.max(1L, Math.min(threadCount, (positive.size() + CHUNK_SIZE - 1) / CHUNK_SIZE));
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+			for (int t = 0; t < threads; t++) {
+				tasks.add(new Callable<Void>() {
+
+					/* (non-Javadoc)
+					 * @see java.util.concurrent.Callable#call()
+					 */
+					@Override
+					public Void call() throws IOException {
+						for (List<double[]> chunk = read(positiveReader, CHUNK_SIZE); !chunk.isEmpty(); chunk = read(positiveReader, CHUNK_SIZE)) {
+							for (double[] modeP : chunk) {
+								BitSet supportP = support(modeP);
+								double valueP = rowTimes(row, modeP);
+								for (int q = 0; q < negativeSupports.length; q++) {
+									BitSet union = (BitSet) supportP.clone();
+									union.or(negativeSupports[q]);
+									// the rank of the processed rows cannot exceed their number
+									int size = union.cardinality();
+									if ((size > processedCount + 1) || (rank(union, processed) != size - 1)) {
+										continue;
+									}
+									double[] modeQ = negative.get(q);
+									double valueQ = negativeValues[q];
+									double[] mode = new double[modeP.length];
+									for (int j = union.nextSetBit(0); j >= 0; j = union.nextSetBit(j + 1)) {
+										mode[j] = valueQ * modeP[j] + valueP * modeQ[j];
+									}
+									if (normalize(mode)) {
+										next.add(mode);
+									}
+								}
+							}
+						}
+						return null;
+					}
+				});
+			}
+			execute(tasks);
+		} finally {
+			positiveReader.close();
+		}
+	}
+
+	/**
+	 * Reads the next modes from the given reader, which may be shared by
+	 * several threads.
+	 *
+	 * @param reader
+	 * @param count
+	 *        the maximal number of modes
+	 * @return the modes, which are fewer than {@code count} only at the end
+	 * @throws IOException
+	 */
+	private static List<double[]> read(ModeReader reader, int count) throws IOException {
+		List<double[]> modes = new ArrayList<double[]>(Math.min(count, CHUNK_SIZE));
+		synchronized (reader) {
+			double[] mode;
+			while ((modes.size() < count) && ((mode = reader.next()) != null)) {
+				modes.add(mode);
+			}
+		}
+		return modes;
+	}
+
+	/**
+	 * Runs the given tasks, a single task in the current thread.
+	 *
+	 * @param tasks
+	 * @throws IOException
+	 */
+	private static void execute(List<Callable<Void>> tasks) throws IOException {
+		int threads = tasks.size();
+		if (threads == 1) {
+			try {
+				tasks.get(0).call();
+			} catch (IOException exc) {
+				throw exc;
+			} catch (Exception exc) {
+				throw new RuntimeException(exc);
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				throw new IOException("The computation of the elementary flux modes has been interrupted.", exc);
+			} catch (ExecutionException exc) {
+				if (exc.getCause() instanceof IOException) {
+					throw (IOException) exc.getCause();
+				}
+				throw new RuntimeException(exc.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * @param row
+	 * @param mode
+	 * @return the production of the species in the given row by the mode
+	 */
+	private double rowTimes(int row, double[] mode) {
+		int[] rowPointers = N.getRowPointers();
+		int[] columnIndices = N.getColumnIndices();
+		double[] rowValues = N.getRowValues();
+		double sum = 0d;
+		for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+			sum += rowValues[k] * mode[columnIndices[k]];
+		}
+		return sum;
+	}
+
+	/**
+	 * Computes the rank of the sub-matrix of the processed rows and the given
+	 * columns by Gaussian elimination.
+	 *
+	 * @param columns
+	 * @param processed
+	 * @return the rank
+	 */
+	private int rank(BitSet columns, boolean[] processed) {
+		int[] columnPointers = N.getColumnPointers();
+		int[] rowIndices = N.getRowIndices();
+		double[] values = N.getValues();
+		int size = columns.cardinality();
+
+		// only the processed rows with a non-zero entry in one of the columns
+		Map<Integer, Integer> rows = new HashMap<Integer, Integer>();
+		for (int j = columns.nextSetBit(0); j >= 0; j = columns.nextSetBit(j + 1)) {
+			for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+				if (processed[rowIndices[k]] && !rows.containsKey(Integer.valueOf(rowIndices[k]))) {
+					rows.put(Integer.valueOf(rowIndices[k]), Integer.valueOf(rows.size()));
+				}
+			}
+		}
+		double[][] matrix = new double[rows.size()][size];
+		int c = 0;
+		for (int j = columns.nextSetBit(0); j >= 0; j = columns.nextSetBit(j + 1), c++) {
+			for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+				Integer r = rows.get(Integer.valueOf(rowIndices[k]));
+				if (r != null) {
+					matrix[r.intValue()][c] = values[k];
+				}
+			}
+		}
+
+		int rank = 0;
+		for (c = 0; (c < size) && (rank < matrix.length); c++) {
+			int pivot = rank;
+			for (int r = rank + 1; r < matrix.length; r++) {
+				if (Math.abs(matrix[r][c]) > Math.abs(matrix[pivot][c])) {
+					pivot = r;
+				}
+			}
+			if (Math.abs(matrix[pivot][c]) <= TOLERANCE) {
+				continue;
+			}
+			double[] swap = matrix[pivot];
+			matrix[pivot] = matrix[rank];
+			matrix[rank] = swap;
+			for (int r = rank + 1; r < matrix.length; r++) {
+				double factor = matrix[r][c] / matrix[rank][c];
+				if (factor != 0d) {
+					for (int l = c; l < size; l++) {
+						matrix[r][l] -= factor * matrix[rank][l];
+					}
+				}
+			}
+			rank++;
+		}
+		return rank;
+	}
+
+	/**
+	 * @param mode
+	 * @return the indices of the non-zero fluxes
+	 */
+	private static BitSet support(double[] mode) {
+		BitSet support = new BitSet(mode.length);
+		for (int j = 0; j < mode.length; j++) {
+			if (mode[j] != 0d) {
+				support.set(j);
+			}
+		}
+		return support;
+	}
+
+	/**
+	 * Scales the given mode to a maximal absolute value of 1 and sets values
+	 * below the tolerance to zero.
+	 *
+	 * @param mode
+	 * @return {@code false} if all values are zero
+	 */
+	private static boolean normalize(double[] mode) {
+		double max = 0d;
+		for (double value : mode) {
+			max = Math.max(max, Math.abs(value));
+		}
+		if (max == 0d) {
+			return false;
+		}
+		boolean nonZero = false;
+		for (int j = 0; j < mode.length; j++) {
+			mode[j] /= max;
+			if (Math.abs(mode[j]) <= TOLERANCE) {
+				mode[j] = 0d;
+			} else {
+				nonZero = true;
+			}
+		}
+		return nonZero;
+	}
+
+	/**
+	 * @return all elementary flux modes, one per row
+	 * @throws IOException
+	 *         if the modes cannot be read from their temporary file.
+	 */
+	public double[][] getModes() throws IOException {
+		if (result == null) {
+			throw new IllegalStateException("The elementary flux modes have not been computed.");
+		}
+		List<double[]> modes = new ArrayList<double[]>();
+		ModeReader reader = result.reader();
+		try {
+			for (double[] mode = reader.next(); mode != null; mode = reader.next()) {
+				modes.add(mode);
+			}
+		} finally {
+			reader.close();
+		}
+		return modes.toArray(new double[modes.size()][]);
+	}
+
+	/**
+	 * Writes all elementary flux modes into a tab-separated file, one mode
+	 * per line, without loading them into memory at once.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		if (result == null) {
+			throw new IllegalStateException("The elementary flux modes have not been computed.");
+		}
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		ModeReader reader = result.reader();
+		try {
+			writer.write("# " + result.size() + " elementary flux modes");
+			writer.newLine();
+			String[] ids = getReactionIds();
+			for (int j = 0; j < ids.length; j++) {
+				if (j > 0) {
+					writer.write('\t');
+				}
+				writer.write(ids[j]);
+			}
+			writer.newLine();
+			for (double[] mode = reader.next(); mode != null; mode = reader.next()) {
+				for (int j = 0; j < mode.length; j++) {
+					if (j > 0) {
+						writer.write('\t');
+					}
+					writer.write(String.valueOf(mode[j]));
+				}
+				writer.newLine();
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * Deletes the temporary file of the resulting modes, if any.
+	 */
+	public void clear() {
+		if (result != null) {
+			result.delete();
+			result = null;
+		}
+	}
+
+	/**
+	 * Reads the modes of a {@link ModeStore}.
+	 */
+	private static class ModeReader {
+
+		/**
+		 * The temporary file or {@code null}.
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * The number of modes in the temporary file that have not been read.
+		 */
+		private long remaining;
+
+		/**
+		 * The modes in memory.
+		 */
+		private final List<double[]> buffer;
+
+		/**
+		 * The next mode in memory.
+		 */
+		private int position = 0;
+
+		/**
+		 * The length of each mode.
+		 */
+		private final int length;
+
+		/**
+		 *
+		 * @param file
+		 * @param count
+		 * @param buffer
+		 * @param length
+		 * @throws IOException
+		 */
+		private ModeReader(File file, long count, List<double[]> buffer, int length) throws IOException {
+			this.in = (file != null) ? new DataInputStream(new BufferedInputStream(new FileInputStream(file))) : null;
+			this.remaining = count;
+			this.buffer = buffer;
+			this.length = length;
+		}
+
+		/**
+		 * @return the next mode or {@code null} if all modes have been read
+		 * @throws IOException
+		 */
+		public double[] next() throws IOException {
+			if (remaining > 0) {
+				double[] mode = new double[length];
+				for (int j = 0; j < length; j++) {
+					mode[j] = in.readDouble();
+				}
+				remaining--;
+				return mode;
+			}
+			return (position < buffer.size()) ? buffer.get(position++) : null;
+		}
+
+		/**
+		 * @throws IOException
+		 */
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+
+	}
+
+	/**
+	 * A set of modes that is kept in memory until it exceeds
+	 * {@link ElementaryFluxModes#maxModesInMemory}, then the modes are
+	 * appended to a temporary file.
+	 */
+	private class ModeStore {
+
+		/**
+		 * The length of each mode.
+		 */
+		private final int length;
+
+		/**
+		 * The modes in memory.
+		 */
+		private final List<double[]> buffer = new ArrayList<double[]>();
+
+		/**
+		 * The temporary file or {@code null}.
+		 */
+		private File file = null;
+
+		/**
+		 * The stream into the temporary file or {@code null}.
+		 */
+		private DataOutputStream out = null;
+
+		/**
+		 * The number of modes in the temporary file.
+		 */
+		private long spilled = 0L;
+
+		/**
+		 *
+		 * @param length
+		 */
+		private ModeStore(int length) {
+			this.length = length;
+		}
+
+		/**
+		 * @param mode
+		 * @throws IOException
+		 */
+		public synchronized void add(double[] mode) throws IOException {
+			buffer.add(mode);
+			if (buffer.size() >= maxModesInMemory) {
+				if (out == null) {
+					file = File.createTempFile("efm", ".bin", temporaryDirectory);
+					file.deleteOnExit();
+					out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				}
+				for (double[] spill : buffer) {
+					for (double value : spill) {
+						out.writeDouble(value);
+					}
+				}
+				spilled += buffer.size();
+				buffer.clear();
+			}
+		}
+
+		/**
+		 * @return the number of modes
+		 */
+		public synchronized long size() {
+			return spilled + buffer.size();
+		}
+
+		/**
+		 * @return a reader of all modes added so far
+		 * @throws IOException
+		 */
+		public synchronized ModeReader reader() throws IOException {
+			if (out != null) {
+				out.flush();
+			}
+			return new ModeReader(file, spilled, buffer, length);
+		}
+
+		/**
+		 * Releases the modes and deletes the temporary file.
+		 */
+		public synchronized void delete() {
+			buffer.clear();
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException exc) {
+					logger.fine(exc.getMessage());
+				}
+				out = null;
+			}
+			if ((file != null) && !file.delete()) {
+				logger.fine("Cannot delete " + file);
+			}
+			file = null;
+			spilled = 0L;
+		}
+
+	}
+
+}
@@ -0,0 +1,345 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
+import org.sbml.simulator.stability.math.StabilityMatrix;
+import org.sbml.simulator.stability.math.StoichiometricMatrix;
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Contains everything that the flux balance analysis derives from one model
+ * and one array of system boundaries: the expanded {@link SBMLDocument}
+ * without transports, with split reversible reactions and with added system
+ * boundaries, its stoichiometric matrices and its steady state matrix.
+ * <p>
+ * A context never changes after its creation. Expensive parts are computed
+ * on first access, which is thread-safe, so FBAs of different models or with
+ * different system boundaries can run concurrently. The contexts of a model
+ * are cached in the user objects of its {@link SBMLDocument}, i.e., they are
+ * released together with the document. After modifying a document, its cache
+ * must be cleared by {@link #clearCache(SBMLDocument)}.
+ *
+ * @since 2.1
+ */
+public class FBAContext {
+
+	/**
+	 * The key of the cache in the user objects of an {@link SBMLDocument}.
+	 */
+	private static final String CACHE_KEY = FBAContext.class.getName();
+
+	/**
+	 * The key of the context with the computed system boundaries.
+	 */
+	private static final String COMPUTED_SYSTEM_BOUNDARIES = "computed";
+
+	/**
+	 * contains the original {@link SBMLDocument}
+	 */
+	private final SBMLDocument originalDocument;
+
+	/**
+	 * contains the system boundaries array, either given or computed
+	 */
+	private final double[] systemBoundaries;
+
+	/**
+	 * contains the {@link SBMLDocument} with added systems boundaries
+	 */
+	private final SBMLDocument expandedDocument;
+
+	/**
+	 * contains the {@link SparseStoichiometricMatrix} with added system boundaries
+	 */
+	private final SparseStoichiometricMatrix sparseN_int_sys;
+
+	/**
+	 * List contains the eliminated reactions (the transport reactions).
+	 */
+	private final List<String> eliminatedReactions;
+
+	/**
+	 * List contains the reversible reactions.
+	 */
+	private final Set<String> reversibleReactions;
+
+	/**
+	 * contains the corresponding index of the backward reaction in the modified sbml document
+	 * to the i-th reaction in the document without transports for all reactions that are reversible
+	 */
+	private final Map<Integer, Integer> reverseReaction;
+
+	/**
+	 * contains the dense {@link StoichiometricMatrix} with added system boundaries, created on demand
+	 */
+	private StoichiometricMatrix N_int_sys;
+
+	/**
+	 * contains the {@link SparseStoichiometricMatrix} incl. all reactions and transports, created on demand
+	 */
+	private SparseStoichiometricMatrix sparseN_all;
+
+	/**
+	 * contains the dense {@link StoichiometricMatrix} incl. all reactions and transports, created on demand
+	 */
+	private StoichiometricMatrix N_all;
+
+	/**
+	 * contains the steadyStateMatrix, created on demand
+	 */
+	private StabilityMatrix steadyStateMatrix;
+
+	/**
+	 * contains all factors for fluxes in transport reactions, created on demand
+	 */
+	private double[][] transportFactors;
+
+	/**
+	 * contains all factors for fluxes in reactions, created on demand
+	 */
+	private double[] previousFactors;
+
+	/**
+	 * Expands the given document.
+	 *
+	 * @param originalDocument
+	 * @param systemBoundaries
+	 *        the system boundaries or {@code null} to compute them from the
+	 *        stoichiometric matrix
+	 */
+	private FBAContext(SBMLDocument originalDocument, double[] systemBoundaries) {
+		this.originalDocument = originalDocument;
+		List<String> eliminated = new ArrayList<String>();
+		Set<String> reversible = new HashSet<String>();
+		Map<Integer, Integer> reverse = new HashMap<Integer, Integer>();
+		SBMLDocument modifiedDocument = FluxMinimizationUtils.eliminateTransportsAndSplitReversibleReactions(originalDocument, eliminated, reversible, reverse);
+		if (systemBoundaries == null) {
+			this.systemBoundaries = FluxMinimizationUtils.computeSystemBoundaries(new SparseStoichiometricMatrix(modifiedDocument.getModel()));
+		} else {
+			this.systemBoundaries = systemBoundaries.clone();
+		}
+		expandedDocument = FluxMinimizationUtils.addSystemBoundaries(modifiedDocument, this.systemBoundaries);
+		sparseN_int_sys = new SparseStoichiometricMatrix(expandedDocument.getModel());
+		eliminatedReactions = Collections.unmodifiableList(eliminated);
+		reversibleReactions = Collections.unmodifiableSet(reversible);
+		reverseReaction = Collections.unmodifiableMap(reverse);
+	}
+
+	/**
+	 * @param originalDocument
+	 * @return the context of the given document with the system boundaries
+	 *         computed from its stoichiometric matrix
+	 */
+	public static FBAContext getInstance(SBMLDocument originalDocument) {
+		return getInstance(originalDocument, null);
+	}
+
+	/**
+	 * Returns the cached context of the given document and system boundaries
+	 * or creates it.
+	 *
+	 * @param originalDocument
+	 * @param systemBoundaries
+	 *        the system boundaries or {@code null} to compute them from the
+	 *        stoichiometric matrix
+	 * @return the context of the given document and system boundaries
+	 */
+	@SuppressWarnings("unchecked")
+	public static FBAContext getInstance(SBMLDocument originalDocument, double[] systemBoundaries) {
+		String key = (systemBoundaries == null) ? COMPUTED_SYSTEM_BOUNDARIES : Arrays.toString(systemBoundaries);
+		synchronized (originalDocument) {
+			Map<String, FBAContext> cache = (Map<String, FBAContext>) originalDocument.getUserObject(CACHE_KEY);
+			FBAContext context = (cache != null) ? cache.get(key) : null;
+			if ((context != null) && (context.originalDocument != originalDocument)) {
+				// a clone of a document shares the user objects of the original
+				cache = null;
+				context = null;
+			}
+			if (cache == null) {
+				cache = new HashMap<String, FBAContext>();
+				originalDocument.putUserObject(CACHE_KEY, cache);
+			}
+			if (context == null) {
+				context = new FBAContext(originalDocument, systemBoundaries);
+				cache.put(key, context);
+			}
+			return context;
+		}
+	}
+
+	/**
+	 * Removes all cached contexts of the given document, e.g., after the
+	 * document has been modified.
+	 *
+	 * @param originalDocument
+	 */
+	public static void clearCache(SBMLDocument originalDocument) {
+		synchronized (originalDocument) {
+			originalDocument.removeUserObject(CACHE_KEY);
+		}
+	}
+
+	/**
+	 * @return the original {@link SBMLDocument}
+	 */
+	public SBMLDocument getOriginalDocument() {
+		return originalDocument;
+	}
+
+	/**
+	 * @return a copy of the system boundaries
+	 */
+	public double[] getSystemBoundaries() {
+		return systemBoundaries.clone();
+	}
+
+	/**
+	 * @return the {@link SBMLDocument} without transports, with split
+	 *         reversible reactions and with added system boundaries; must not
+	 *         be modified
+	 */
+	public SBMLDocument getExpandedDocument() {
+		return expandedDocument;
+	}
+
+	/**
+	 * @return SparseStoichiometricMatrix with added system boundaries
+	 */
+	public SparseStoichiometricMatrix getExpandedSparseStoichiometricMatrix() {
+		return sparseN_int_sys;
+	}
+
+	/**
+	 * @return StoichiometricMatrix with added system boundaries; must not be
+	 *         modified
+	 */
+	public synchronized StoichiometricMatrix getExpandedStoichiometricMatrix() {
+		if (N_int_sys == null) {
+			N_int_sys = sparseN_int_sys.toStoichiometricMatrix();
+		}
+		return N_int_sys;
+	}
+
+	/**
+	 * @return the {@link SparseStoichiometricMatrix} of all reactions and
+	 *         transports of the original document
+	 */
+	public synchronized SparseStoichiometricMatrix getSparseStoichiometricMatrix() {
+		if (sparseN_all == null) {
+			sparseN_all = new SparseStoichiometricMatrix(originalDocument.getModel());
+		}
+		return sparseN_all;
+	}
+
+	/**
+	 * @return the {@link StoichiometricMatrix} of all reactions and transports
+	 *         of the original document; must not be modified
+	 */
+	public synchronized StoichiometricMatrix getStoichiometricMatrix() {
+		if (N_all == null) {
+			N_all = getSparseStoichiometricMatrix().toStoichiometricMatrix();
+		}
+		return N_all;
+	}
+
+	/**
+	 * @return the ids of the eliminated transport reactions
+	 */
+	public List<String> getEliminatedReactions() {
+		return eliminatedReactions;
+	}
+
+	/**
+	 * @return the ids of the reversible reactions
+	 */
+	public Set<String> getReversibleReactions() {
+		return reversibleReactions;
+	}
+
+	/**
+	 * @return the index of the backward reaction in the expanded document for
+	 *         the index of each reversible reaction in the document without
+	 *         transports
+	 */
+	public Map<Integer, Integer> getReverseReactions() {
+		return reverseReaction;
+	}
+
+	/**
+	 * Returns K_int^T
+	 * @return the steady state matrix; must not be modified
+	 */
+	public synchronized StabilityMatrix getSteadyStateMatrix() {
+		if (steadyStateMatrix == null) {
+			steadyStateMatrix = FluxMinimizationUtils.computeSteadyStateMatrix(getExpandedStoichiometricMatrix(), expandedDocument);
+		}
+		return steadyStateMatrix;
+	}
+
+	/**
+	 * Gives back the flux-vector in Manhattan-Norm of the steady state matrix,
+	 * without the given target fluxes.
+	 *
+	 * @param targetFluxes
+	 * @return double[] flux vector
+	 */
+	public double[] computeFluxVector(String[] targetFluxes) {
+		return FluxMinimizationUtils.computeFluxVector(getSteadyStateMatrix(), targetFluxes, expandedDocument);
+	}
+
+	/**
+	 * @return the factors for fluxes in transport reactions of the original
+	 *         document; must not be modified
+	 */
+	public synchronized double[][] getTransportFactors() {
+		if (transportFactors == null) {
+			transportFactors = FluxMinimizationUtils.calculateTransportFactors(originalDocument);
+		}
+		return transportFactors;
+	}
+
+	/**
+	 * @return the factors for fluxes in all reactions of the original
+	 *         document; must not be modified
+	 */
+	public synchronized double[] getPreviousFactors() {
+		if (previousFactors == null) {
+			previousFactors = FluxMinimizationUtils.calculatePreviousFactors(originalDocument);
+		}
+		return previousFactors;
+	}
+
+	/**
+	 * @param mt
+	 * @return the given fluxes of the reactions of the original document by
+	 *         their index
+	 */
+	public Map<Integer, double[]> getKnownFluxesMap(MultiTable mt) {
+		return FluxMinimizationUtils.getKnownFluxesMap(originalDocument, mt);
+	}
+
+}
@@ -15,18 +15,19 @@
  */
 package org.sbml.simulator.fba.controller;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
-
+import java.io.File;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.sbml.jsbml.Reaction;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.Species;
-import org.sbml.simulator.stability.math.StoichiometricMatrix;
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 import org.simulator.math.odes.MultiTable;
 
 /**
@@ -80,6 +81,23 @@ public class FluxBalanceAnalysis {
 	 */
 	private int cplexIterations = 600;
 
+	/**
+	 * The solver for the optimization problem.
+	 */
+	private SolverType solverType = SolverType.AUTOMATIC;
+
+	/**
+	 * The file into which the optimization problem is written before it is
+	 * solved, or {@code null}.
+	 */
+	private File debugFile = null;
+
+	/**
+	 * The number of iterations of the solver in the last call of
+	 * {@link #solve()}.
+	 */
+	private int iterationCount = 0;
+
 	/**
 	 * Contains the {@link# solution_fluxVector} in a {@link MultiTable} for visualization.
 	 */
@@ -129,7 +147,7 @@ public class FluxBalanceAnalysis {
 	/**
 	 * The stoichiometric matrix
 	 */
-	private StoichiometricMatrix N;
+	private SparseStoichiometricMatrix N;
 
 	/**
 	 * the solutions for the gibbs values
@@ -155,7 +173,7 @@ public class FluxBalanceAnalysis {
 	 * @throws Exception
 	 */
 	public FluxBalanceAnalysis(SBMLDocument originalDocument) throws Exception {
-		this(new FluxMinimization(originalDocument, new Constraints(originalDocument), FluxMinimizationUtils.getExpandedStoichiometricMatrix(originalDocument), null), new Constraints(originalDocument));
+		this(new FluxMinimization(originalDocument, new Constraints(originalDocument), FBAContext.getInstance(originalDocument).getExpandedStoichiometricMatrix(), null), new Constraints(originalDocument));
 	}
 
 
@@ -171,8 +189,9 @@ public class FluxBalanceAnalysis {
 		super();
 		this.targetFunction = targetfunc;
 		this.constraints = constraints;
-		SBMLDocument modDoc = FluxMinimizationUtils.getExpandedDocument(constraints.originalDocument);
-		N = FluxMinimizationUtils.getExpandedStoichiometricMatrix(modDoc);
+		FBAContext context = constraints.getContext();
+		SBMLDocument modDoc = context.getExpandedDocument();
+		N = context.getExpandedSparseStoichiometricMatrix();
 		target_length_without_all_flux_values = modDoc.getModel().getReactionCount()*4 + 1 - targetfunc.getFluxVector().length;
 		this.target = new double[modDoc.getModel().getReactionCount()*4];
 
@@ -208,7 +227,7 @@ public class FluxBalanceAnalysis {
 		}
 
 		// init solution arrays
-		System.out.println("targetFunction.getGibbs().length: " + targetFunction.getGibbs().length);
+		logger.log(Level.FINER, "targetFunction.getGibbs().length: " + targetFunction.getGibbs().length);
 		this.solutionFluxVector = new double[targetfunc.getFluxVector().length];
 		this.solutionConcentrations = new double[concentrations.length];
 		this.solutionGibbs = new double[targetFunction.getGibbs().length];
@@ -226,10 +245,11 @@ public class FluxBalanceAnalysis {
 	 */
 	private MultiTable createMultiTableForVisualizing() throws Exception{
 		double[] time = {0};
-		String[] idsOfReactions = new String[FluxMinimizationUtils.getExpandedDocument(constraints.originalDocument).getModel().getReactionCount()+1];
+		SBMLDocument modDoc = constraints.getContext().getExpandedDocument();
+		String[] idsOfReactions = new String[modDoc.getModel().getReactionCount()+1];
 		idsOfReactions[0] = "time";
-		for (int i = 0; i < FluxMinimizationUtils.getExpandedDocument(constraints.originalDocument).getModel().getReactionCount(); i++) {
-			idsOfReactions[i+1] = FluxMinimizationUtils.getExpandedDocument(constraints.originalDocument).getModel().getReaction(i).getId();
+		for (int i = 0; i < modDoc.getModel().getReactionCount(); i++) {
+			idsOfReactions[i+1] = modDoc.getModel().getReaction(i).getId();
 		}
 		double[][] fluxes = new double[1][solutionFluxVector.length];
 		for (int j = 0; j < solutionFluxVector.length; j++) {
@@ -247,6 +267,21 @@ public class FluxBalanceAnalysis {
 		return cplexIterations;
 	}
 
+	/**
+	 * @return the number of iterations of the solver in the last call of
+	 *         {@link #solve()}
+	 */
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+
+	/**
+	 * @return the solver for the optimization problem
+	 */
+	public SolverType getSolverType() {
+		return solverType;
+	}
 
 	/**
 	 * @param i index of the {@link Species}
@@ -352,35 +387,59 @@ public class FluxBalanceAnalysis {
 	}
 
 	/**
-	 * Sets {@link TargetFunction#lambda1}
+	 * @param solverType the solver for the optimization problem
+	 */
+	public void setSolverType(SolverType solverType) {
+		this.solverType = solverType;
+	}
+
+	/**
+	 * @return the file into which the optimization problem is written before
+	 *         it is solved, or {@code null}
+	 */
+	public File getDebugFile() {
+		return debugFile;
+	}
+
+	/**
+	 * @param debugFile
+	 *        the file into which the optimization problem is written in the LP
+	 *        format before it is solved, or {@code null} (default)
+	 */
+	public void setDebugFile(File debugFile) {
+		this.debugFile = debugFile;
+	}
+
+	/**
+	 * Sets {@link TargetFunction#setLambda1(double)} of the target function
 	 * @param lambda1
 	 */
 	public void setLambda1(double lambda1) {
-		TargetFunction.lambda1 = lambda1;
+		targetFunction.setLambda1(lambda1);
 	}
 
 	/**
-	 * Sets {@link TargetFunction#lambda2}
+	 * Sets {@link TargetFunction#setLambda2(double)} of the target function
 	 * @param lambda2
 	 */
 	public void setLambda2(double lambda2) {
-		TargetFunction.lambda2 = lambda2;
+		targetFunction.setLambda2(lambda2);
 	}
 
 	/**
-	 * Sets {@link TargetFunction#lambda3}
+	 * Sets {@link TargetFunction#setLambda3(double)} of the target function
 	 * @param lambda3
 	 */
 	public void setLambda3(double lambda3) {
-		TargetFunction.lambda3 = lambda3;
+		targetFunction.setLambda3(lambda3);
 	}
 
 	/**
-	 * Sets {@link TargetFunction#lambda4} 
+	 * Sets {@link TargetFunction#setLambda4(double)} of the target function
 	 * @param lambda4
 	 */
 	public void setLambda4(double lambda4) {
-		TargetFunction.lambda4 = lambda4;
+		targetFunction.setLambda4(lambda4);
 	}
 
 	/**
@@ -503,7 +562,7 @@ public class FluxBalanceAnalysis {
 	 * Calls a method to solve the problem with linear programming if the boolean
 	 * {@link# linearProgramming} is set and true, else it calls a method for quadratic programming.
 	 * @return double[]
-	 * @throws IloException 
+	 * @throws Exception 
 	 */
 	public double[] solve() throws Exception {
 		target = targetFunction.computeTargetFunctionForQuadraticProgramming();
@@ -511,109 +570,103 @@ public class FluxBalanceAnalysis {
 	}
 
 	/**
-	 * Calls CPLEX to solve the problem with quadratic programming and sets in the end
+	 * Solves the problem with quadratic programming and sets in the end
 	 * the computed solutions for concentrations and fluxes.
+	 * <p>
+	 * All constraints are formulated linearly, so that they can be solved
+	 * by any {@link Solver}: since the scaling variable x[0] of the fluxes is
+	 * positive, J_j * G_j <= 0 only depends on the sign of G_j, and |J_j| is
+	 * the larger one of J_j and -J_j. If r_max * |G_j| depends on a variable,
+	 * |G_j| is taken on the side that J_j * G_j <= 0 admits, i.e., G_j has
+	 * the opposite sign of J_j.
 	 * @throws Exception 
 	 */
 	private double[] solveWithQuadraticProgramming() throws Exception {
-		// create the cplex solver
-		IloCplex cplex = new IloCplex();
+		Solver solver = SolverFactory.createSolver(solverType);
+		try {
+			return solveWithQuadraticProgramming(solver);
+		} finally {
+			solver.end();
+		}
+	}
 
+	/**
+	 * 
+	 * @param solver
+	 * @return the solution for all variables
+	 * @throws Exception
+	 */
+	private double[] solveWithQuadraticProgramming(Solver solver) throws Exception {
 		// TARGET
 		// create upper bounds (ub) and lower bounds (lb) for the variables x
 		int[] counter = targetFunction.getCounterArray();
+		int variableCount = target_length_without_all_flux_values + concentrations.length;
+		ProblemBuilder builder = new ProblemBuilder();
 
 		// create variables with upper bounds and lower bounds
-		IloNumVar[] x = cplex.numVarArray((target_length_without_all_flux_values  + concentrations.length), lb, ub);
+		builder.addVariables(lb, ub);
 
-		//compute the target function for cplex with the scalar product (lin)
-		IloNumExpr lin = cplex.numExpr();
+		//compute the linear part of the target function
+		double[] linear = new double[variableCount];
 		for (int i = 0; i < counter[1]; i++) {
 			//for every flux value only one variable
-			lin = cplex.sum(lin, cplex.prod(target[i], x[0]));
+			linear[0] += target[i];
 		}
-		System.out.println("Zielfunktion nur Fluss: " + lin);
-		System.out.println();
-		
 		// for all other values in the target-array
 		for (int i = counter[1]; i < target.length; i++) {
-			lin = cplex.sum(cplex.prod(target[i], x[i + 1 - counter[1]]), lin);
+			linear[i + 1 - counter[1]] += target[i];
 		}
 
-		System.out.println("Zielfunktion ohne Konzentrationen: " + lin);
-		System.out.println();
-
 		//lambda1*sum((c_i - c_eq)^2)
+		// the binomial formula gives lambda1 * (a^2 * x^2 - 2 * a * c_eq * x), the constant lambda1 * c_eq^2 is omitted
 		double[] c_eq = constraints.getEquilibriumConcentrations();
-		IloNumExpr sum = cplex.numExpr();
+		double[] quadratic = new double[variableCount];
 		for (int i = 0; i< concentrations.length; i++) {
-			IloNumExpr temp = sum;
-			IloNumExpr c_i = cplex.prod(x[i + target_length_without_all_flux_values], concentrations[i]);
-			if(!Double.isNaN(concentrations[i]) && !Double.isNaN(c_eq[i])) {
-				// here the sum (c_i - c_eq)^2 is performed by cplex. To make it simpler for cplex, the binomial formula is used
-				// where cplex.square(x) = x^2
-				sum = cplex.sum(temp, cplex.square(c_i), cplex.sum(cplex.prod(c_i, ((-2) * c_eq[i])), cplex.square(cplex.constant(c_eq[i]))));
-			} else if(!Double.isNaN(c_eq[i])) {
-				sum = cplex.sum(temp, cplex.square(x[i + target_length_without_all_flux_values]),cplex.sum(cplex.prod(x[i + target_length_without_all_flux_values], ((-2) * c_eq[i])), cplex.square(cplex.constant(c_eq[i]))));
-			} else {
-				//TODO delete
-				sum = cplex.sum(temp ,cplex.square(x[i + target_length_without_all_flux_values]));
+			int c_i = i + target_length_without_all_flux_values;
+			double a = 1d;
+			if (!Double.isNaN(concentrations[i]) && !Double.isNaN(c_eq[i])) {
+				a = concentrations[i];
+			}
+			quadratic[c_i] = targetFunction.getLambda1() * a * a;
+			if (!Double.isNaN(c_eq[i])) {
+				linear[c_i] -= 2d * targetFunction.getLambda1() * a * c_eq[i];
 			}
 		}
-		// now put the variables together  
-		IloNumExpr cplex_target = cplex.sum(cplex.prod(TargetFunction.lambda1, sum),lin);
 
-		System.out.println("Zielfunktion: " + cplex_target);
-		
 		// only for FluxMinimization the target function has to be minimized
-		if (targetFunction instanceof FluxMinimization) {
-			cplex.addMinimize(cplex_target);
-		} else { //TODO: implement more target functions
-			cplex.addMaximize(cplex_target);
-		}
+		//TODO: implement more target functions
+		builder.setObjective(linear, quadratic, targetFunction instanceof FluxMinimization);
 
 		//CONSTRAINTS
 
-		SBMLDocument modifiedDocument = FluxMinimizationUtils.getExpandedDocument(constraints.originalDocument, constraints.getSystemBoundaries());
-
 		double[] steadyStateFluxes = targetFunction.getFluxVector();
 		double[] compGibbs = constraints.getComputedGibbsEnergies();
 		double r_max = constraints.computeR_max(steadyStateFluxes);
 
-		//TODO
-		System.out.println("Nebenbedingungen: ");
-		System.out.println("J_rmaxG<0: " + isConstraintJ_rmaxG() + " J>0: " + isConstraintJ0() + " JG: " + isConstraintJG() + " Error: " + isConstraintError());
-		System.out.println();
+		logger.log(Level.FINER, "J_rmaxG<0: " + isConstraintJ_rmaxG() + " J>0: " + isConstraintJ0() + " JG: " + isConstraintJG() + " Error: " + isConstraintError());
 		for (int j = 0; j< counter[1]; j++) {
-			//jg is the expression for J_j * G_j
-			//and j_rmaxG the expression for |J_j| - r_max * |G_j|
+			// x[k] is the variable for G_j
 			int k = j + target_length_without_all_flux_values -	compGibbs.length;
-
-			IloNumExpr j_j = cplex.abs(cplex.prod(Math.abs(steadyStateFluxes[j]), x[0]));
+			double J_j = steadyStateFluxes[j];
+			boolean isGibbsKnown = !Double.isNaN(compGibbs[j]) && !Double.isInfinite(compGibbs[j]);
 
 			// constraint |J_j| - r_max * |G_j| < 0
-			if (isConstraintJ_rmaxG()) {
-				IloNumExpr rmaxG = cplex.numExpr();
-				if (!Double.isNaN(compGibbs[j]) && !Double.isInfinite(compGibbs[j])) {
-					if ((r_max * Math.abs(compGibbs[j])) < steadyStateFluxes[j]) {
-						rmaxG = cplex.prod(r_max, cplex.abs(x[k]));
-					} else {
-						rmaxG = cplex.prod(r_max, cplex.abs(cplex.constant(compGibbs[j])));
-					}
+			if (isConstraintJ_rmaxG() && (J_j != 0d)) {
+				if (isGibbsKnown && ((r_max * Math.abs(compGibbs[j])) >= J_j)) {
+					double rmaxG = r_max * Math.abs(compGibbs[j]);
+					builder.addRow(new int[] {0}, new double[] {J_j}, Solver.Relation.LESS_EQUAL, rmaxG);
+					builder.addRow(new int[] {0}, new double[] {-J_j}, Solver.Relation.LESS_EQUAL, rmaxG);
 				} else {
-					rmaxG = cplex.prod(r_max, cplex.abs(x[k]));
+					// |G_j| = -sign(J_j) * G_j with G_j = compGibbs[j] * x[k] or G_j = x[k]
+					double sign = -Math.signum(J_j) * (isGibbsKnown && (compGibbs[j] != 0d) ? Math.signum(compGibbs[j]) : 1d);
+					builder.addRow(new int[] {0, k}, new double[] {J_j, -r_max * sign}, Solver.Relation.LESS_EQUAL, 0);
+					builder.addRow(new int[] {0, k}, new double[] {-J_j, -r_max * sign}, Solver.Relation.LESS_EQUAL, 0);
 				}
-
-				cplex.addLe(cplex.diff(j_j, rmaxG), 0);
-				// TODO sysout
-				System.out.println(modifiedDocument.getModel().getReaction(j) + ": " + "|J_j| - r_max * |G_j| <= 0:  "+ cplex.diff(j_j, rmaxG)+ " <= " + 0 );
-				logger.log(Level.FINER, String.format("constraint |J_j| - r_max * |G_j| < 0:  "+ cplex.diff(j_j, rmaxG)+ " < " + 0 ));
 			}
 
 			// constraint J_j >= 0
 			if (isConstraintJ0()) {
-				cplex.addGe(cplex.prod(steadyStateFluxes[j], x[0]), 0);
-				System.out.println(modifiedDocument.getModel().getReaction(j) + ": J_j >= 0: " + cplex.prod(steadyStateFluxes[j], x[0]) + " > " + 0);
+				builder.addRow(new int[] {0}, new double[] {J_j}, Solver.Relation.GREATER_EQUAL, 0);
 			}
 
 			// constraint to compute the error
@@ -624,68 +677,77 @@ public class FluxBalanceAnalysis {
 					 *  the error vector comes after the fluxvector and the fluxes have only one
 					 *  variable to be optimized
 					 */
-					cplex.addEq(cplex.prod(compGibbs[j], x[k]), cplex.prod(compGibbs[j], x[j+1]));
+					builder.addRow(new int[] {k, j + 1}, new double[] {compGibbs[j], -compGibbs[j]}, Solver.Relation.EQUAL, 0);
 				}
-				IloNumExpr sumConcentrations = cplex.numExpr();
-				double sumPrint = 0;
-				for (int i = 0; i < concentrations.length; i++) {
-					if (!Double.isNaN(concentrations[i]) && concentrations[i] !=0) {
-						sumConcentrations = cplex.sum(cplex.prod(N.get(i, j),cplex.prod(Math.log(concentrations[i]),x[target_length_without_all_flux_values+i])),sumConcentrations);
-						sumPrint += N.get(i, j) * Math.log(concentrations[i]);
-					} else { //use only the variable
-						sumConcentrations = cplex.sum(cplex.prod(N.get(i, j), x[target_length_without_all_flux_values+i]),sumConcentrations);
+				// R * T * sum_i N_ij * ln(c_i) - x[j+1] - G_j >= -G_eq_j
+				// (only the species of reaction j, i.e., the non-zero entries of column j)
+				int[] columnPointers = N.getColumnPointers();
+				int[] rowIndices = N.getRowIndices();
+				double[] values = N.getValues();
+				int l = 0;
+				for (int p = columnPointers[j]; p < columnPointers[j + 1]; p++) {
+					if (rowIndices[p] < concentrations.length) {
+						l++;
 					}
 				}
-
+				int[] variables = new int[l + 2];
+				double[] coefficients = new double[l + 2];
+				l = 0;
+				for (int p = columnPointers[j]; p < columnPointers[j + 1]; p++) {
+					int i = rowIndices[p];
+					if (i < concentrations.length) {
+						variables[l] = target_length_without_all_flux_values + i;
+						coefficients[l] = constraints.R * constraints.T * values[p];
+						if (!Double.isNaN(concentrations[i]) && concentrations[i] !=0) {
+							coefficients[l] *= Math.log(concentrations[i]);
+						}
+						l++;
+					}
+				}
+				variables[l] = j + 1;
+				coefficients[l] = -1d;
+				variables[l + 1] = k;
 				if (!Double.isNaN(compGibbs[j])) {
 					//there is a problem if gibbs_eq < 0 TODO: fix it
 					//6.43
-					IloNumExpr delta_G_computation = cplex.sum(cplex.prod(constraints.R, cplex.prod(constraints.T, sumConcentrations)), cplex.diff(constraints.getEquilibriumGibbsEnergies()[j],x[j+1]));
-					cplex.addGe(delta_G_computation, cplex.prod(compGibbs[j], x[k]));
-					//TODO: syso
-										System.out.println(modifiedDocument.getModel().getReaction(j) + ": " + constraints.R + "*" + constraints.T + "*" + sumPrint + cplex.diff(constraints.getEquilibriumGibbsEnergies()[j],x[j+1]) + " = " + cplex.prod(compGibbs[j], x[k]));
+					coefficients[l + 1] = -compGibbs[j];
+					builder.addRow(variables, coefficients, Solver.Relation.GREATER_EQUAL, -constraints.getEquilibriumGibbsEnergies()[j]);
 				} else {
-					IloNumExpr delta_G_computation = cplex.sum(cplex.prod(constraints.R, cplex.prod(constraints.T, sumConcentrations)), cplex.prod(-1, x[j+1]));
-					cplex.addGe(delta_G_computation, x[k]);
-					//TODO: syso
-									    System.out.println(modifiedDocument.getModel().getReaction(j) + ": " + cplex.sum((constraints.R * constraints.T * sumPrint),cplex.prod(-1, x[j+1])) + " = " + x[k]);
+					coefficients[l + 1] = -1d;
+					builder.addRow(variables, coefficients, Solver.Relation.GREATER_EQUAL, 0);
 				}
 			}
 
-
 			// constraint J_j * G_j <= 0
 			if (isConstraintJG()) {
-				IloNumExpr jg = cplex.numExpr();
-				if (!Double.isNaN(compGibbs[j]) && !Double.isInfinite(compGibbs[j])) {
-					if(Math.signum(steadyStateFluxes[j]) == Math.signum(compGibbs[j])) {
-						//the sign is equal, so the gibbs energy must be changed
-						jg = cplex.prod(cplex.prod(steadyStateFluxes[j], x[0]),cplex.prod(compGibbs[j],x[k]));
+				if (isGibbsKnown) {
+					if(Math.signum(J_j) == Math.signum(compGibbs[j])) {
+						//the sign is equal, so the gibbs energy must be changed: J_j * G_j * x[k] <= 0 with x[0] > 0
+						builder.addRow(new int[] {k}, new double[] {J_j * compGibbs[j]}, Solver.Relation.LESS_EQUAL, 0);
 					} else {
-						jg = cplex.prod(cplex.prod(steadyStateFluxes[j], x[0]),compGibbs[j]);
+						builder.addRow(new int[] {0}, new double[] {J_j * compGibbs[j]}, Solver.Relation.LESS_EQUAL, 0);
 					}
 				} else {
-					jg = cplex.prod(steadyStateFluxes[j],x[k]);
+					builder.addRow(new int[] {k}, new double[] {J_j}, Solver.Relation.LESS_EQUAL, 0);
 				}
-
-				cplex.addLe(jg, 0);
-				// TODO sysout
-				System.out.println(modifiedDocument.getModel().getReaction(j) + ": J_j * G_j <= 0: " + jg + " <= " + 0);
-				logger.log(Level.FINER, String.format("constraint J_j * G_j: " + jg + " <= " + 0));
 			}
-			System.out.println();
 		}
-
-		// now solve the problem and get the solution array for the variables x,
-		// cplex.setOut(null) stops the logger massages of cplex
-		double[] solution = null;
-		//		cplex.setOut(null);
+		logger.log(Level.FINER, "Solving " + builder.getVariableCount() + " variables and " + builder.getRowCount() + " constraints with " + builder.getNonZeroCount() + " non-zero entries");
+		if (debugFile != null) {
+			builder.export(debugFile);
+		}
+		builder.build(solver);
 
 		//set the iteration limit: without doing this, cplex iterates 2100000000 times...
-		cplex.setParam(IloCplex.IntParam.BarItLim, cplexIterations );
+		solver.setIterationLimit(cplexIterations);
 
-		cplex.solve();
-		// get the from cplex computed values for the variables x
-		solution = cplex.getValues(x);
+		boolean solved = solver.solve();
+		iterationCount = solver.getIterationCount();
+		if (!solved) {
+			throw new SolverException("Only the null vector solution found.");
+		}
+		// get the computed values for the variables x
+		double[] solution = solver.getValues();
 		for (int i = 0; i < counter[1]; i++) {
 			// the first counter[1]-values are corresponding to the fluxes
 			solutionFluxVector[i] = steadyStateFluxes[i] * solution[0];
@@ -711,7 +773,6 @@ public class FluxBalanceAnalysis {
 				solutionConcentrations[j] = solution[j + target_length_without_all_flux_values];
 			}
 		}
-		cplex.end();
 
 		// create the MultiTable for visualization
 		fluxesForVisualization = createMultiTableForVisualizing();
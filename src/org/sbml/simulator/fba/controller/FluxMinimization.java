@@ -96,7 +96,7 @@ public class FluxMinimization extends TargetFunction {
 
 		// set the fields of this object
 		this.oriDocument = originalDocument;
-		this.fluxVector = FluxMinimizationUtils.computeFluxVector(N_int, targetFluxes, originalDocument);
+		this.fluxVector = constraints.getContext().computeFluxVector(targetFluxes);
 		setC_eq(constraints.getEquilibriumConcentrations());
 
 		this.N = N_int;
@@ -116,7 +116,7 @@ public class FluxMinimization extends TargetFunction {
 
 		// compute L or let it be null if the Gibbs energies couldn't be computed
 		if(computedGibbsEnergies != null && oriDocument != null) {
-			this.L = computeL(oriDocument);
+			this.L = computeL();
 		} else {
 			L = new double[0];
 		}
@@ -142,7 +142,7 @@ public class FluxMinimization extends TargetFunction {
 	 * @throws Exception 
 	 */
 	public FluxMinimization(SBMLDocument doc, double[] c_eq, double[] gibbs_eq, String[] targetFluxes) throws Exception {
-		this(doc,new Constraints(doc, gibbs_eq, c_eq, null),FluxMinimizationUtils.getExpandedStoichiometricMatrix(doc), targetFluxes);
+		this(doc,new Constraints(doc, gibbs_eq, c_eq, null),FBAContext.getInstance(doc).getExpandedStoichiometricMatrix(), targetFluxes);
 	}
 
 	/**
@@ -153,20 +153,19 @@ public class FluxMinimization extends TargetFunction {
 	 * @throws Exception
 	 */
 	public FluxMinimization(SBMLDocument doc, Constraints constraints, String[] targetFluxes) throws Exception {
-		this(doc, constraints, FluxMinimizationUtils.getExpandedStoichiometricMatrix(doc), targetFluxes);
+		this(doc, constraints, constraints.getContext().getExpandedStoichiometricMatrix(), targetFluxes);
 	}
 
 	/**
 	 * Computes the transposed kernel matrix of the reduced stoichiometric matrix N
 	 * multiplied with the reaction Gibbs energy values for the internal reactions of the system.
 	 * 
-	 * @param originalDocument
 	 * @return L = (K_int^T) * (Delta_r(gibbs))_int
 	 * @throws Exception 
 	 */
-	private double[] computeL(SBMLDocument originalDocument) throws Exception {
+	private double[] computeL() throws Exception {
 		// get the kernel (K_int) of this StoichiometricMatrix and transpose it
-		StoichiometricMatrix N_int_sys = FluxMinimizationUtils.getExpandedStoichiometricMatrix(originalDocument);
+		StoichiometricMatrix N_int_sys = this.N;
 		Matrix transposedK_int = new StoichiometricMatrix(N_int_sys.transpose().getArray(), N_int_sys.getColumnDimension(), N_int_sys.getRowDimension()).getConservationRelations();
 		double[] vectorL = new double[computedGibbsEnergies.length];
 //		int k = 0;
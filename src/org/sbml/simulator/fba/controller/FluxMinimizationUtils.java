@@ -15,17 +15,15 @@
  */
 package org.sbml.simulator.fba.controller;
 
-import ilog.concert.IloException;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.ModifierSpeciesReference;
@@ -35,6 +33,7 @@ import org.sbml.jsbml.SBO;
 import org.sbml.jsbml.Species;
 import org.sbml.jsbml.SpeciesReference;
 import org.sbml.simulator.stability.math.ConservationRelations;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 import org.sbml.simulator.stability.math.StabilityMatrix;
 import org.sbml.simulator.stability.math.StoichiometricMatrix;
 import org.simulator.math.odes.MultiTable;
@@ -44,6 +43,8 @@ import org.simulator.math.odes.MultiTable.Block.Column;
 /**
  * Contains methods to compute the flux vector for FBA and a method to get the {@link StoichiometricMatrix} of an incoming {@link SBMLDocument}.
  * It also contains a method to compute the Error array for FluxMinimization.
+ * All results that depend on a model are cached in the {@link FBAContext} of this model,
+ * so this class does not keep any state.
  * 
  * @author Meike Aichele
  * @date 07.05.2012
@@ -52,14 +53,14 @@ import org.simulator.math.odes.MultiTable.Block.Column;
 public class FluxMinimizationUtils {
 
 	/**
-	 * contains prefix for a degradation reaction
+	 * A {@link Logger} for this class.
 	 */
-	protected static final String degradationPrefix = "deg_";
+	private static final transient Logger logger = Logger.getLogger(FluxMinimizationUtils.class.getName());
 
 	/**
-	 * List contains the eliminated reactions (the transport reactions).
+	 * contains prefix for a degradation reaction
 	 */
-	public static List<String> eliminatedReactions = new ArrayList<String>();
+	protected static final String degradationPrefix = "deg_";
 
 	/**
 	 * contains the suffix for integrated backward reactions of reversible reactions.
@@ -70,90 +71,6 @@ public class FluxMinimizationUtils {
 	 * contains prefix for the metaID
 	 */
 	protected static final String metaIdPrefix = "meta_";
-	
-	/**
-	 * contains the {@link StoichiometricMatrix} with added system boundaries
-	 */
-	private static StoichiometricMatrix N_int_sys;
-	
-	/**
-	 * contains the {@link StoichiometricMatrix} incl. all reactions and transports
-	 */
-	private static StoichiometricMatrix N_all;
-	
-	/**
-	 * contains the splitted {@link SBMLDocument} 
-	 */
-	private static SBMLDocument splittedDocument = null;
-
-	/**
-	 * contains the original {@link SBMLDocument} 
-	 */
-	private static SBMLDocument originalDocument = null;
-	
-	/**
-	 * 
-	 * @param doc
-	 * @return
-	 */
-	public static SBMLDocument getSplittedDocument(SBMLDocument doc) {
-		if (originalDocument == null) {
-			originalDocument = doc;
-		}
-		if (splittedDocument == null) {
-			splittedDocument = splitAllReversibleReactions(doc);
-		}
-		return splittedDocument;
-	}
-
-	/**
-	 * 
-	 * @param splittedDocument
-	 */
-	public static void setSplittedDocument(SBMLDocument splittedDocument) {
-		FluxMinimizationUtils.splittedDocument = splittedDocument;
-	}
-
-	/**
-	 * contains the indices of the remaining rows, which are not only zeros
-	 */
-	public static List<Integer> remainingList = new LinkedList<Integer>();
-
-	/**
-	 * List contains the reversible reactions.
-	 */
-	public static Set<String> reversibleReactions = new HashSet<String>();
-	
-	/**
-	 * contains the corresponding index of the backward reaction in the modified sbml document 
-	 * to the i-th reaction in the original sbml document for all reactions that are reversible
-	 */
-	public static Map<Integer, Integer> reverseReaction = new HashMap<Integer, Integer>(); 
-
-	/**
-	 * contains the steadyStateMatrix
-	 */
-	private static StabilityMatrix steadyStateMatrix;
-
-	/**
-	 * contains the system boundaries array
-	 */
-	private static double[] systemBoundaries;
-
-	/**
-	 * contains the {@link SBMLDocument} with added systems boundaries
-	 */
-	private static SBMLDocument systemBoundaryDocument;
-	
-	/**
-	 * contains all factors for fluxes in transport reactions
-	 */
-	private static double[][] transportFactors = null;
-	
-	/**
-	 * contains all factors for fluxes in reactions
-	 */
-	private static double[] previousFactors = null;
 
 	/**
 		 * 
@@ -208,35 +125,30 @@ public class FluxMinimizationUtils {
 	 * @param modDoc
 	 * @param systemBoundaries
 	 * @return
-	 * @throws Exception 
 	 */
-	private static SBMLDocument addSystemBoundaries(SBMLDocument modDoc, double[] systemBoundaries) throws Exception {
+	static SBMLDocument addSystemBoundaries(SBMLDocument modDoc, double[] systemBoundaries) {
 		SBMLDocument doc = modDoc.clone();
 		doc = addNewReactionEntriesToDoc(systemBoundaries, doc);
 		return doc;
 	}
 
 	/**
-	 * 
+	 * Computes the system boundaries from the sums of the rows of the given matrix.
 	 * @param n_int
-	 * @param modDoc
-	 * @return
+	 * @return the system boundaries, NaN for species that are not at the system boundary
 	 */
-	private static SBMLDocument addSystemBoundaries(StoichiometricMatrix n_int,
-			SBMLDocument modDoc) {
-		SBMLDocument doc = modDoc.clone();
+	static double[] computeSystemBoundaries(SparseStoichiometricMatrix n_int) {
 		double[] systemBoundaries = new double[n_int.getRowDimension()];
 		for (int row = 0; row < n_int.getRowDimension(); row++) {
-			if (sumOfRowOrCol(n_int.getRow(row)) != 0) {
-				systemBoundaries[row] = -(sumOfRowOrCol(n_int.getRow(row)));
+			double sum = sumOfRow(n_int, row);
+			if (sum != 0) {
+				systemBoundaries[row] = -sum;
 			}
 			else {
 				systemBoundaries[row] = Double.NaN;
 			}
 		}
-		FluxMinimizationUtils.systemBoundaries = systemBoundaries;
-		doc = addNewReactionEntriesToDoc(systemBoundaries, doc);
-		return doc;
+		return systemBoundaries;
 	}
 
 	/**
@@ -254,27 +166,34 @@ public class FluxMinimizationUtils {
 	}
 
 	/**
-		 * Gets a {@link StoichiometricMatrix} and gives back the corresponding flux-vector in Manhattan-Norm, without the given 
+	 * Computes the steady state matrix K_int^T of the given {@link StoichiometricMatrix}.
+	 * 
+	 * @param N_int_sys
+	 * @param expandedDocument the document that belongs to N_int_sys
+	 * @return the steady state matrix
+	 */
+	static StabilityMatrix computeSteadyStateMatrix(StoichiometricMatrix N_int_sys, SBMLDocument expandedDocument) {
+		double[][] NwithoutZeroRows = eliminateZeroRows(N_int_sys).getArray();
+		// pre-processing: sort the matrix to speed up the computation of the steady state matrix
+		double[][] sortedMatrixArray = getSortedArray(NwithoutZeroRows);
+		
+		StoichiometricMatrix sortedMatrix = new StoichiometricMatrix(sortedMatrixArray, sortedMatrixArray.length, sortedMatrixArray[0].length);
+		StabilityMatrix steadyStateMatrix = ConservationRelations.calculateConsRelations(sortedMatrix.transpose());
+
+		// post-processing: delete rows with only forward and backward of a reaction
+		return getCorrectedSteadyStateMatrix(steadyStateMatrix, expandedDocument);
+	}
+
+	/**
+		 * Gets the steady state matrix and gives back the corresponding flux-vector in Manhattan-Norm, without the given 
 		 * target fluxes.
 		 * 
-		 * @param N_int_sys
+		 * @param steadyStateMatrix
 		 * @param targetFluxes 
-		 * @param doc 
+		 * @param doc the expanded document
 		 * @return double[] flux vector
-		 * @throws IOException 
-		 * @throws IloException 
 		 */
-		public static double[] computeFluxVector(StoichiometricMatrix N_int_sys, String[] targetFluxes, SBMLDocument doc) throws IOException, IloException {
-			double[][] NwithoutZeroRows = eliminateZeroRows(N_int_sys).getArray();
-			// pre-processing: sort the matrix to speed up the computation of the steady state matrix
-			double[][] sortedMatrixArray = getSortedArray(NwithoutZeroRows);
-			
-			StoichiometricMatrix sortedMatrix = new StoichiometricMatrix(sortedMatrixArray, sortedMatrixArray.length, sortedMatrixArray[0].length);
-			steadyStateMatrix = ConservationRelations.calculateConsRelations(sortedMatrix.transpose());
-	
-			// post-processing: delete rows with only forward and backward of a reaction
-			steadyStateMatrix = getCorrectedSteadyStateMatrix(steadyStateMatrix);
-	
+		static double[] computeFluxVector(StabilityMatrix steadyStateMatrix, String[] targetFluxes, SBMLDocument doc) {
 			double[] fluxVector = new double[steadyStateMatrix.getColumnDimension()];
 			
 			// fill the fluxVector
@@ -297,8 +216,10 @@ public class FluxMinimizationUtils {
 					}
 				}
 			}
-			for (int i = 0; i < fluxVector.length; i++) {
-				System.out.println(systemBoundaryDocument.getModel().getReaction(i).getId() + ": " + fluxVector[i]);
+			if (logger.isLoggable(Level.FINE)) {
+				for (int i = 0; i < fluxVector.length; i++) {
+					logger.fine(doc.getModel().getReaction(i).getId() + ": " + fluxVector[i]);
+				}
 			}
 			return fluxVector;
 		}
@@ -313,7 +234,7 @@ public class FluxMinimizationUtils {
 	 * @throws Exception 
 	 */
 	public static double[] computeFluxVector(String[] targetFluxes, SBMLDocument doc) throws Exception {
-		return computeFluxVector(getExpandedStoichiometricMatrix(doc), targetFluxes, doc);
+		return FBAContext.getInstance(doc).computeFluxVector(targetFluxes);
 	}
 
 	/**
@@ -338,6 +259,16 @@ public class FluxMinimizationUtils {
 	 * @return a new SBMLDocument without transport reactions
 	 */
 	public static SBMLDocument eliminateTransports(SBMLDocument doc) {
+		return eliminateTransports(doc, new ArrayList<String>());
+	}
+
+	/**
+	 * Eliminates the transport-reactions and gives back the new {@link SBMLDocument}.
+	 * @param doc
+	 * @param eliminatedReactions collects the ids of the eliminated reactions
+	 * @return a new SBMLDocument without transport reactions
+	 */
+	static SBMLDocument eliminateTransports(SBMLDocument doc, List<String> eliminatedReactions) {
 		SBMLDocument newDoc = doc.clone();
 		for (int i = 0; i < doc.getModel().getReactionCount(); i++) {
 			String id = doc.getModel().getReaction(i).getId();
@@ -358,6 +289,19 @@ public class FluxMinimizationUtils {
 	 * @return {@link SBMLDocument}
 	 */
 	public static SBMLDocument splitAllReversibleReactions(SBMLDocument document) {
+		return splitAllReversibleReactions(document, new HashSet<String>(), new HashMap<Integer, Integer>());
+	}
+
+	/**
+	 * Gets a {@link SBMLDocument} and searches the reversible reactions. Than it creates
+	 * a new SBMLDocument and splits the reversible reactions in two
+	 * irreversible reaction to both directions.
+	 * @param document
+	 * @param reversibleReactions collects the ids of the reversible reactions
+	 * @param reverseReaction collects the index of the backward reaction for the index of each reversible reaction
+	 * @return {@link SBMLDocument}
+	 */
+	static SBMLDocument splitAllReversibleReactions(SBMLDocument document, Set<String> reversibleReactions, Map<Integer, Integer> reverseReaction) {
 		SBMLDocument revReacDoc = document.clone();
 		//split reversible reactions
 		for (int i = 0; i < document.getModel().getReactionCount(); i++) {
@@ -421,6 +365,21 @@ public class FluxMinimizationUtils {
 		return splitAllReversibleReactions(doc);
 	}
 
+	/**
+	 * Eliminates the transport reactions and splits the reversible reactions of the given document
+	 * like {@link #eliminateTransportsAndSplitReversibleReactions(SBMLDocument)}.
+	 * @param document
+	 * @param eliminatedReactions collects the ids of the eliminated reactions
+	 * @param reversibleReactions collects the ids of the reversible reactions
+	 * @param reverseReaction collects the index of the backward reaction for the index of each reversible reaction
+	 * @return {@link SBMLDocument}
+	 */
+	static SBMLDocument eliminateTransportsAndSplitReversibleReactions(SBMLDocument document,
+			List<String> eliminatedReactions, Set<String> reversibleReactions, Map<Integer, Integer> reverseReaction) {
+		SBMLDocument doc = eliminateTransports(document, eliminatedReactions);
+		return splitAllReversibleReactions(doc, reversibleReactions, reverseReaction);
+	}
+
 	/**
 	 * Method to eliminate the rows in the {@link StoichiometricMatrix} that contains only zeros.
 	 * @param {@link StoichiometricMatrix} N
@@ -429,6 +388,7 @@ public class FluxMinimizationUtils {
 	private static StoichiometricMatrix eliminateZeroRows(StoichiometricMatrix N) {
 		// initialize the new StoichiometricMatrix (without the zero-rows)
 		StoichiometricMatrix S;
+		List<Integer> remainingList = new ArrayList<Integer>();
 	
 		for (int row = 0; row <N.getRowDimension(); row++) {
 			//flagZeros is true if this row contains only zeros
@@ -450,43 +410,19 @@ public class FluxMinimizationUtils {
 		return S;
 	}
 
-	/**
-	 * Expands the {@link SBMLDocument} and computes itself the system boundaries.
-	 * @param originalDocument
-	 * @throws Exception
-	 */
-	private static void expandDocument(SBMLDocument originalDocument) throws Exception {
-		SBMLDocument modifiedDocument = eliminateTransportsAndSplitReversibleReactions(originalDocument);
-		StoichiometricMatrix N_int = SBMLDocToStoichMatrix(modifiedDocument);
-		systemBoundaryDocument = addSystemBoundaries(N_int, modifiedDocument);
-		N_int_sys = SBMLDocToStoichMatrix(systemBoundaryDocument);
-	}
-
-	/**
-	 * Expands the {@link SBMLDocument} with the given system boundaries.
-	 * @param originalDocument
-	 * @param systemBoundaries
-	 * @throws Exception
-	 */
-	private static void expandDocument(SBMLDocument originalDocument, double[] systemBoundaries) throws Exception {
-		SBMLDocument modifiedDocument = eliminateTransportsAndSplitReversibleReactions(originalDocument);
-		systemBoundaryDocument = addSystemBoundaries(modifiedDocument, systemBoundaries);
-		N_int_sys = SBMLDocToStoichMatrix(systemBoundaryDocument);
-		System.out.println();
-	}
-
 	/**
 	 * delete the rows of the steadyStateMatrix with conservation relations of a reversible reactions
 	 * (rows with a conservation relation of only the forward and backward flux of a splitted reversible reaction)
 	 * 
 	 * @param ssMatrix
+	 * @param expandedDocument
 	 * @return the corrected SteadyStateMatrix
 	 */
-	private static StabilityMatrix getCorrectedSteadyStateMatrix(StabilityMatrix ssMatrix) {
+	private static StabilityMatrix getCorrectedSteadyStateMatrix(StabilityMatrix ssMatrix, SBMLDocument expandedDocument) {
 		boolean[] deleting = new boolean[ssMatrix.getRowDimension()];
 		int toDeleteCnt = 0;
 		for (int i = 0; i < ssMatrix.getRowDimension(); i++) {
-			if (isForwardBackwardConservation(ssMatrix.getRow(i))) {
+			if (isForwardBackwardConservation(ssMatrix.getRow(i), expandedDocument)) {
 				deleting[i] = true;
 				toDeleteCnt++;
 			}
@@ -512,10 +448,8 @@ public class FluxMinimizationUtils {
 	 */
 	public static double[] getCorrectedSystemBoundaries(SBMLDocument oriDoc, double[] rawSystemBoundaries) throws Exception {
 		SBMLDocument modifiedDocument = eliminateTransportsAndSplitReversibleReactions(oriDoc);
-		StoichiometricMatrix n_int = SBMLDocToStoichMatrix(modifiedDocument);
-		double[] sb = getCorrectedSystemBoundaries(n_int, rawSystemBoundaries);
-		systemBoundaries = sb;
-		return sb;
+		SparseStoichiometricMatrix n_int = new SparseStoichiometricMatrix(modifiedDocument.getModel());
+		return getCorrectedSystemBoundaries(n_int, rawSystemBoundaries);
 	}
 
 	/**
@@ -525,13 +459,14 @@ public class FluxMinimizationUtils {
 	 * @return
 	 */
 	private static double[] getCorrectedSystemBoundaries(
-			StoichiometricMatrix n_int, double[] rawSystemBoundaries) {
+			SparseStoichiometricMatrix n_int, double[] rawSystemBoundaries) {
 		double[] sb = rawSystemBoundaries.clone();
 		
 		for (int row = 0; row < rawSystemBoundaries.length; row++) {
 			if (rawSystemBoundaries[row] == 0) {
-				if (sumOfRowOrCol(n_int.getRow(row)) != 0) {
-					sb[row] = -(sumOfRowOrCol(n_int.getRow(row)));
+				double sum = sumOfRow(n_int, row);
+				if (sum != 0) {
+					sb[row] = -sum;
 				}
 				else {
 					sb[row] = Double.NaN;
@@ -560,12 +495,10 @@ public class FluxMinimizationUtils {
 	 * @param originalDocument
 	 * @return SBMLDocument with added system boundaries
 	 * @throws Exception
+	 * @see FBAContext#getExpandedDocument()
 	 */
 	public static SBMLDocument getExpandedDocument(SBMLDocument originalDocument) throws Exception {
-		if (systemBoundaryDocument == null) {
-			expandDocument(originalDocument);
-		}
-		return systemBoundaryDocument;
+		return FBAContext.getInstance(originalDocument).getExpandedDocument();
 	}
 
 	/**
@@ -574,12 +507,10 @@ public class FluxMinimizationUtils {
 	 * @param systemBoundaries
 	 * @return SBMLDocument with added system boundaries
 	 * @throws Exception
+	 * @see FBAContext#getExpandedDocument()
 	 */
 	public static SBMLDocument getExpandedDocument(SBMLDocument originalDocument, double[] systemBoundaries) throws Exception {
-		if (systemBoundaryDocument == null) {
-			expandDocument(originalDocument, systemBoundaries);
-		}
-		return systemBoundaryDocument;
+		return FBAContext.getInstance(originalDocument, systemBoundaries).getExpandedDocument();
 	}
 
 	/**
@@ -588,10 +519,16 @@ public class FluxMinimizationUtils {
 	 * @throws Exception 
 	 */
 	public static StoichiometricMatrix getExpandedStoichiometricMatrix(SBMLDocument originalDocument) throws Exception {
-		if (N_int_sys == null) {
-			getExpandedDocument(originalDocument);
-		}
-		return N_int_sys;
+		return FBAContext.getInstance(originalDocument).getExpandedStoichiometricMatrix();
+	}
+
+	/**
+	 * @param originalDocument
+	 * @return SparseStoichiometricMatrix with added system boundaries
+	 * @throws Exception 
+	 */
+	public static SparseStoichiometricMatrix getExpandedSparseStoichiometricMatrix(SBMLDocument originalDocument) throws Exception {
+		return FBAContext.getInstance(originalDocument).getExpandedSparseStoichiometricMatrix();
 	}
 
 	/**
@@ -601,10 +538,17 @@ public class FluxMinimizationUtils {
 	 * @throws Exception 
 	 */
 	public static StoichiometricMatrix getExpandedStoichiometricMatrix(SBMLDocument originalDocument, double[] systemBoundaries) throws Exception {
-		if (N_int_sys == null) {
-			getExpandedDocument(originalDocument, systemBoundaries);
-		}
-		return N_int_sys;
+		return FBAContext.getInstance(originalDocument, systemBoundaries).getExpandedStoichiometricMatrix();
+	}
+
+	/**
+	 * @param originalDocument
+	 * @param systemBoundaries
+	 * @return SparseStoichiometricMatrix with added system boundaries
+	 * @throws Exception 
+	 */
+	public static SparseStoichiometricMatrix getExpandedSparseStoichiometricMatrix(SBMLDocument originalDocument, double[] systemBoundaries) throws Exception {
+		return FBAContext.getInstance(originalDocument, systemBoundaries).getExpandedSparseStoichiometricMatrix();
 	}
 
 	/**
@@ -614,10 +558,16 @@ public class FluxMinimizationUtils {
 	 * @throws Exception
 	 */
 	public static StoichiometricMatrix getStoichiometricMatrix(SBMLDocument doc) throws Exception {
-		if (N_all == null) {
-			N_all = SBMLDocToStoichMatrix(doc);
-		}
-		return N_all;
+		return FBAContext.getInstance(doc).getStoichiometricMatrix();
+	}
+	
+	/**
+	 * 
+	 * @param SBMLDocument
+	 * @return the {@link SparseStoichiometricMatrix} of all reactions and transports
+	 */
+	public static SparseStoichiometricMatrix getSparseStoichiometricMatrix(SBMLDocument doc) {
+		return FBAContext.getInstance(doc).getSparseStoichiometricMatrix();
 	}
 	
 	/**
@@ -669,30 +619,6 @@ public class FluxMinimizationUtils {
 		return sortedMatrixArray;
 	}
 
-	/**
-	 * 
-	 * Returns K_int^T
-	 * @return the steady state matrix
-	 */
-	public static StabilityMatrix getSteadyStateMatrix() {
-		return steadyStateMatrix;
-	}
-
-	/**
-	 * @return the system boundaries
-	 */
-	public static double[] getSystemBoundaries() {
-		return systemBoundaries;
-	}
-	
-	/**
-	 * 
-	 * @return the factors for fluxes in transport reactions
-	 */
-	public static double[][] getTransportFactors() {
-		return transportFactors;
-	}
-	
 	/**
 	 * 
 	 * @param doc
@@ -703,7 +629,7 @@ public class FluxMinimizationUtils {
 		//init the array
 		int reacCnt = m.getReactionCount();
 		int specCnt = m.getSpeciesCount();
-		transportFactors = new double[specCnt][reacCnt];
+		double[][] transportFactors = new double[specCnt][reacCnt];
 		
 		for (int j = 0; j < reacCnt; j++) {
 			for (int i = 0; i < specCnt; i++) {
@@ -723,14 +649,6 @@ public class FluxMinimizationUtils {
 		return transportFactors;
 	}
 
-	/**
-	 * 
-	 * @return the factors for fluxes in all reactions
-	 */
-	public static double[] getPreviousFactors() {
-		return previousFactors;
-	}
-	
 	/**
 	 * 
 	 * @param doc
@@ -738,6 +656,7 @@ public class FluxMinimizationUtils {
 	 */
 	public static double[] calculatePreviousFactors(SBMLDocument doc) {
 		Model m = doc.getModel();
+		double[] previousFactors = null;
 		//init the array
 		if (m != null) {
 			int specCnt = m.getSpeciesCount();
@@ -759,18 +678,16 @@ public class FluxMinimizationUtils {
 	 * @throws Exception 
 	 */
 	public static double[] getSystemBoundaries(SBMLDocument doc) throws Exception {
-		if (systemBoundaries == null) {
-			expandDocument(doc);
-		}
-		return systemBoundaries;
+		return FBAContext.getInstance(doc).getSystemBoundaries();
 	}
 
 	/**
 	 * checks whether one possible conservation only consists of a splitted reversible reaction
 	 * @param row
+	 * @param expandedDocument
 	 * @return true if the row only contains a forward and the corresponding backward direction of a reversible reaction
 	 */
-	private static boolean isForwardBackwardConservation(double[] row) {
+	private static boolean isForwardBackwardConservation(double[] row, SBMLDocument expandedDocument) {
 		int counter = 0;
 		int indexCounter = 0;
 		int[] index = new int[2];
@@ -785,8 +702,8 @@ public class FluxMinimizationUtils {
 			}
 		}
 		if (counter == 2) {
-			String r1 = systemBoundaryDocument.getModel().getReaction(index[0]).getId();
-			String r2 = systemBoundaryDocument.getModel().getReaction(index[1]).getId();
+			String r1 = expandedDocument.getModel().getReaction(index[0]).getId();
+			String r2 = expandedDocument.getModel().getReaction(index[1]).getId();
 			if (r2.startsWith(r1) || r1.startsWith(r2)) {
 				return true;
 			}
@@ -821,43 +738,25 @@ public class FluxMinimizationUtils {
 	 * @throws Exception 
 	 */
 	public static StoichiometricMatrix SBMLDocToStoichMatrix(SBMLDocument doc) throws Exception{
+		// one pass over the reactants and products of each reaction instead of
+		// looking up each species in each reaction
+		return new SparseStoichiometricMatrix(doc.getModel()).toStoichiometricMatrix();
+	}
 
-		// build a new StoichiometricMatrix with the number of species as the dimension of rows
-		// and the number of reactions as the dimension of columns
-		int speciesCount = doc.getModel().getSpeciesCount();
-		int reactionCount = doc.getModel().getReactionCount();
-		StoichiometricMatrix sMatrix = new StoichiometricMatrix (speciesCount,reactionCount);
-
-		//fill the matrix with the stoichiometry of each reaction
-		for (int j = 0; j < reactionCount; j++) { //j is the column (reaction)
-			for (int i = 0; i < speciesCount; i++) { // i is the row (species)
-				Reaction reac = doc.getModel().getReaction(j);
-				Species species = doc.getModel().getSpecies(i);
-				if (reac.hasProduct(species)) {
-					// the stoichiometry of products is positive in the stoichiometricMatrix
-					if (reac.getProductForSpecies(species.getId()).getStoichiometry() != Double.NaN) {
-						sMatrix.set(i, j, reac.getProductForSpecies(species.getId()).getStoichiometry());
-					}
-					else {
-						throw new Exception("Stoichiometry of species: " + reac.getProductForSpecies(species.getId()) + " is unknown. Can't create the full stoichiometric matrix of the model.");
-					}
-				} else if (reac.hasReactant(species)) {
-					// the stoichiometry of reactants is negative in the stoichiometricMatrix
-					if (reac.getReactantForSpecies(species.getId()).getStoichiometry() != Double.NaN) {
-						sMatrix.set(i, j, - reac.getReactantForSpecies(species.getId()).getStoichiometry());
-					}
-					else {
-						throw new Exception("Stoichiometry of species: " + reac.getReactantForSpecies(species.getId()) + " is unknown. Can't create the full stoichiometric matrix of the model.");
-					}
-				}
-			}
-		}
-		for (int i = 0; i< sMatrix.getRowDimension(); i++) {
-			double[] d = sMatrix.getRow(i);
-			if (d.equals(sMatrix.getRowShallow(i)))
-			System.out.println(d);
+	/**
+	 * Computes the sum of all values in the given row of the sparse matrix.
+	 * @param N
+	 * @param row
+	 * @return
+	 */
+	private static double sumOfRow(SparseStoichiometricMatrix N, int row) {
+		int[] rowPointers = N.getRowPointers();
+		double[] rowValues = N.getRowValues();
+		double sum = 0;
+		for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+			sum += rowValues[k];
 		}
-		return sMatrix;
+		return sum;
 	}
 
 	/**
@@ -874,11 +773,11 @@ public class FluxMinimizationUtils {
 	}
 
 	/**
-	 * @param fullMT
-	 * @param i
-	 * @return
+	 * @param originalDocument
+	 * @param mt
+	 * @return the given fluxes of the reactions of the original document by their index
 	 */
-	public static Map<Integer, double[]> getKnownFluxesMap(MultiTable mt, int block) {
+	public static Map<Integer, double[]> getKnownFluxesMap(SBMLDocument originalDocument, MultiTable mt) {
 		Map<Integer, double[]> knownFluxes = new HashMap<Integer, double[]>();
 		Model m = originalDocument.getModel();
 		for (int j = 0; j < m.getReactionCount(); j++) {
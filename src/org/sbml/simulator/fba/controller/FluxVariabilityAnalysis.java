@@ -0,0 +1,355 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+
+import de.zbit.io.csv.CSVWriter;
+
+/**
+ * Flux variability analysis (FVA): computes the minimal and the maximal value
+ * of each flux of the expanded model (see
+ * {@link FBAContext#getExpandedDocument()}) under the
+ * steady-state condition N * J = 0, the bounds of the fluxes and the
+ * thermodynamic constraint J_j * G_j <= 0 with the Gibbs energies of the
+ * {@link Constraints}. If an objective is given, it may deviate from its
+ * optimal value only by the optimality fraction.
+ * <p>
+ * The 2 * (number of reactions) linear programs are distributed across a pool
+ * of solvers that run concurrently. Each solver creates the problem once,
+ * only exchanges the objective from one flux to the next and starts from the
+ * solution of its previous flux.
+ *
+ * @since 2.1
+ */
+public class FluxVariabilityAnalysis {
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(FluxVariabilityAnalysis.class.getName());
+
+	/**
+	 * The default upper bound of each flux.
+	 */
+	public static final double DEFAULT_FLUX_BOUND = 1000d;
+
+	/**
+	 * The number of reactions that a solver takes from the pool at once.
+	 */
+	private static final int CHUNK_SIZE = 16;
+
+	/**
+	 * The relative tolerance of the optimal value of the objective, which
+	 * keeps the optimality constraint feasible despite the accuracy of the
+	 * solver.
+	 */
+	private static final double OPTIMALITY_TOLERANCE = 1E-6d;
+
+	/**
+	 * The expanded document with split reversible reactions and system
+	 * boundaries.
+	 */
+	private final SBMLDocument expandedDocument;
+
+	/**
+	 * The steady-state condition and the bounds of the fluxes.
+	 */
+	private final SteadyStateProblem problem;
+
+	/**
+	 * The coefficients of the objective or {@code null}.
+	 */
+	private double[] objective = null;
+
+	/**
+	 * Whether the objective is maximized.
+	 */
+	private boolean maximize = true;
+
+	/**
+	 * The fraction of the optimal value of the objective that must be reached.
+	 */
+	private double optimalityFraction = 1d;
+
+	/**
+	 * The number of solvers that run concurrently.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The solver for the linear programs.
+	 */
+	private SolverType solverType = SolverType.AUTOMATIC;
+
+	/**
+	 * The optimal value of the objective.
+	 */
+	private double objectiveValue = Double.NaN;
+
+	/**
+	 * The minimal and the maximal value of each flux.
+	 */
+	private double[] minimum, maximum;
+
+	/**
+	 *
+	 * @param constraints
+	 *        the constraints, whose computed Gibbs energies belong to the
+	 *        reactions of the expanded document.
+	 */
+	public FluxVariabilityAnalysis(Constraints constraints) {
+		expandedDocument = constraints.getContext().getExpandedDocument();
+		problem = new SteadyStateProblem(constraints);
+	}
+
+	/**
+	 * @return the ids of the reactions of the expanded document in the order
+	 *         of the fluxes.
+	 */
+	public String[] getReactionIds() {
+		Model model = expandedDocument.getModel();
+		String[] ids = new String[model.getReactionCount()];
+		for (int j = 0; j < ids.length; j++) {
+			ids[j] = model.getReaction(j).getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the lower bound on the given
+	 * lbValue.
+	 *
+	 * @param lbValue
+	 * @param j (index of reaction)
+	 * @return true if lbValue was set successfully
+	 */
+	public boolean setLbOfReactionJ(double lbValue, int j) {
+		return problem.setLbOfReactionJ(lbValue, j);
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the upper bound on the given
+	 * ubValue.
+	 *
+	 * @param ubValue
+	 * @param j (index of reaction)
+	 * @return true if ubValue was set successfully
+	 */
+	public boolean setUbOfReactionJ(double ubValue, int j) {
+		return problem.setUbOfReactionJ(ubValue, j);
+	}
+
+	/**
+	 * Sets a linear objective of the fluxes, e.g., the flux of a biomass
+	 * reaction, whose optimal value restricts the variability.
+	 *
+	 * @param coefficients
+	 *        one coefficient per reaction of the expanded document or
+	 *        {@code null} to analyze all fluxes of the steady states.
+	 * @param maximize
+	 */
+	public void setObjective(double[] coefficients, boolean maximize) {
+		if ((coefficients != null) && (coefficients.length != problem.getReactionCount())) {
+			throw new IllegalArgumentException("Expected " + problem.getReactionCount() + " objective coefficients, but got " + coefficients.length + '.');
+		}
+		this.objective = coefficients != null ? coefficients.clone() : null;
+		this.maximize = maximize;
+	}
+
+	/**
+	 * @return the fraction of the optimal value of the objective that must be
+	 *         reached.
+	 */
+	public double getOptimalityFraction() {
+		return optimalityFraction;
+	}
+
+	/**
+	 *
+	 * @param optimalityFraction
+	 *        a value between 0 (the objective is ignored) and 1 (the objective
+	 *        must be optimal, the default).
+	 */
+	public void setOptimalityFraction(double optimalityFraction) {
+		if ((optimalityFraction < 0d) || (optimalityFraction > 1d)) {
+			throw new IllegalArgumentException("The optimality fraction must be between 0 and 1, but is " + optimalityFraction + '.');
+		}
+		this.optimalityFraction = optimalityFraction;
+	}
+
+	/**
+	 * @return the number of solvers that run concurrently.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 *
+	 * @param threadCount
+	 *        the number of solvers that run concurrently (default: the number
+	 *        of available processors).
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * @return the solver for the linear programs
+	 */
+	public SolverType getSolverType() {
+		return solverType;
+	}
+
+	/**
+	 * @param solverType the solver for the linear programs
+	 */
+	public void setSolverType(SolverType solverType) {
+		this.solverType = solverType;
+	}
+
+	/**
+	 * @return the optimal value of the objective or NaN if there is no
+	 *         objective.
+	 */
+	public double getObjectiveValue() {
+		return objectiveValue;
+	}
+
+	/**
+	 * @return the minimal value of each flux (NaN if the solver failed) or
+	 *         {@code null} before {@link #run()}.
+	 */
+	public double[] getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * @return the maximal value of each flux (NaN if the solver failed) or
+	 *         {@code null} before {@link #run()}.
+	 */
+	public double[] getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * Computes the minimal and the maximal value of each flux.
+	 *
+	 * @throws SolverException
+	 *         if the problem is infeasible or a solver cannot be created.
+	 */
+	public void run() throws SolverException {
+		final int reactionCount = problem.getReactionCount();
+		ProblemBuilder builder = problem.createBuilder();
+		SolverPool pool = new SolverPool(solverType, builder, "The flux variability analysis");
+		objectiveValue = Double.NaN;
+		if (objective != null) {
+			builder.setObjective(objective, null, !maximize);
+			Solver solver = pool.createSolver();
+			try {
+				if (!solver.solve()) {
+					throw new SolverException("The objective has no optimal value.");
+				}
+				objectiveValue = solver.getObjectiveValue();
+			} finally {
+				solver.end();
+			}
+
+			// the objective must reach the optimality fraction of its optimal value
+			double deviation = (1d - optimalityFraction) * Math.abs(objectiveValue)
+					+ OPTIMALITY_TOLERANCE * Math.max(1d, Math.abs(objectiveValue));
+			if (maximize) {
+				builder.addRow(objective, 0, Solver.Relation.GREATER_EQUAL, objectiveValue - deviation);
+			} else {
+				builder.addRow(objective, 0, Solver.Relation.LESS_EQUAL, objectiveValue + deviation);
+			}
+		}
+
+		final double[] min = new double[reactionCount];
+		final double[] max = new double[reactionCount];
+		final AtomicInteger next = new AtomicInteger(0);
+		int threads = Math.min(threadCount, (reactionCount + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		pool.execute(threads, new SolverPool.SolverTask() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.simulator.fba.controller.SolverPool.SolverTask#run(org.sbml.simulator.fba.solver.Solver)
+			 */
+			@Override
+			public void run(Solver solver) throws SolverException {
+				double[] linear = new double[reactionCount];
+				double[] start = null;
+				for (int first = next.getAndAdd(CHUNK_SIZE); first < reactionCount; first = next.getAndAdd(CHUNK_SIZE)) {
+					for (int j = first; j < Math.min(reactionCount, first + CHUNK_SIZE); j++) {
+						linear[j] = 1d;
+						for (boolean minimize : new boolean[] {true, false}) {
+							solver.setObjective(linear, null, minimize);
+							solver.setStartingPoint(start);
+							double value = Double.NaN;
+							if (solver.solve()) {
+								start = solver.getValues();
+								value = start[j];
+							} else {
+								logger.warning("Cannot compute the " + (minimize ? "minimal" : "maximal") + " flux of reaction " + j + '.');
+							}
+							if (minimize) {
+								min[j] = value;
+							} else {
+								max[j] = value;
+							}
+						}
+						linear[j] = 0d;
+					}
+				}
+			}
+		});
+		minimum = min;
+		maximum = max;
+	}
+
+	/**
+	 * Writes the minimal and the maximal value of each flux into a CSV file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		if ((minimum == null) || (maximum == null)) {
+			throw new IllegalStateException("The flux variability analysis has not been run.");
+		}
+		String comment = "Flux variability analysis"
+				+ (Double.isNaN(objectiveValue) ? "" : " with optimality fraction " + optimalityFraction + " of the objective value " + objectiveValue) + ".\n";
+		String header[] = {"reaction", "minimum", "maximum"};
+		String ids[] = getReactionIds();
+		String data[][] = new String[minimum.length][];
+		for (int j = 0; j < minimum.length; j++) {
+			data[j] = new String[] {ids[j], String.valueOf(minimum[j]), String.valueOf(maximum[j])};
+		}
+		CSVWriter writer = new CSVWriter();
+		writer.write(data, header, comment, file);
+	}
+
+}
@@ -0,0 +1,704 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+
+import de.zbit.io.csv.CSVWriter;
+
+/**
+ * Screens single and double knockouts for their effect on an objective, e.g.,
+ * the flux of a biomass reaction. A knockout is a named set of reactions of
+ * the original model, e.g., all reactions that depend on one gene, whose
+ * fluxes (incl. the fluxes of their split backward reactions) are fixed to
+ * zero in the steady-state problem of the expanded model (see
+ * {@link FBAContext#getExpandedDocument()}).
+ * <p>
+ * The problem is created once per solver, and each knockout only changes the
+ * bounds of its fluxes and starts from the wild-type solution. The knockouts
+ * are distributed across a pool of solvers that run concurrently. Double
+ * knockouts are pruned with the results of the single knockouts: pairs that
+ * contain a lethal single knockout are not screened, and if the optimal
+ * fluxes of one single knockout do not use the reactions of the other, the
+ * double knockout has the same optimum and is not solved again.
+ * <p>
+ * Each result is passed to the registered {@link KnockoutListener}s as soon
+ * as it is available.
+ *
+ * @since 2.1
+ */
+public class KnockoutScreening {
+
+	/**
+	 * Receives the results of a {@link KnockoutScreening} while it is running.
+	 * The calls come from the threads of the solvers, but never concurrently.
+	 */
+	public static interface KnockoutListener {
+
+		/**
+		 * @param result
+		 */
+		public void knockoutScreened(KnockoutResult result);
+
+	}
+
+	/**
+	 * The effect of one single or double knockout on the objective.
+	 */
+	public static class KnockoutResult {
+
+		/**
+		 * The names of the knockouts.
+		 */
+		private final String[] knockouts;
+
+		/**
+		 * The optimal value of the objective or NaN if the problem is
+		 * infeasible.
+		 */
+		private final double objectiveValue;
+
+		/**
+		 * The fraction of the wild-type objective value that is kept.
+		 */
+		private final double growthRatio;
+
+		/**
+		 * Whether the knockout is lethal.
+		 */
+		private final boolean lethal;
+
+		/**
+		 * Whether the value has been inferred from a single knockout instead of
+		 * being solved.
+		 */
+		private final boolean inferred;
+
+		/**
+		 *
+		 * @param knockouts
+		 * @param objectiveValue
+		 * @param growthRatio
+		 * @param lethal
+		 * @param inferred
+		 */
+		private KnockoutResult(String[] knockouts, double objectiveValue, double growthRatio, boolean lethal, boolean inferred) {
+			this.knockouts = knockouts;
+			this.objectiveValue = objectiveValue;
+			this.growthRatio = growthRatio;
+			this.lethal = lethal;
+			this.inferred = inferred;
+		}
+
+		/**
+		 * @return the names of the knockouts, one for a single and two for a
+		 *         double knockout.
+		 */
+		public String[] getKnockouts() {
+			return knockouts.clone();
+		}
+
+		/**
+		 * @return the optimal value of the objective or NaN if the problem is
+		 *         infeasible.
+		 */
+		public double getObjectiveValue() {
+			return objectiveValue;
+		}
+
+		/**
+		 * @return the fraction of the wild-type objective value that is kept,
+		 *         i.e., 1 minus the loss relative to the absolute wild-type
+		 *         value, between 0 and 1. It is 0 if the problem is infeasible
+		 *         or if the wild-type value is zero and the knockout loses
+		 *         anything, e.g., for a negative optimum of the knockout.
+		 */
+		public double getGrowthRatio() {
+			return growthRatio;
+		}
+
+		/**
+		 * @return {@code true} if the knockout is lethal.
+		 */
+		public boolean isLethal() {
+			return lethal;
+		}
+
+		/**
+		 * @return {@code true} if the value has been taken from a single
+		 *         knockout instead of being solved.
+		 */
+		public boolean isInferred() {
+			return inferred;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return Arrays.toString(knockouts) + ": " + objectiveValue + (lethal ? " (lethal)" : "");
+		}
+
+	}
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(KnockoutScreening.class.getName());
+
+	/**
+	 * The default fraction of the wild-type objective value below which a
+	 * knockout is lethal.
+	 */
+	public static final double DEFAULT_LETHALITY_THRESHOLD = 0.01d;
+
+	/**
+	 * Fluxes below this value count as inactive when double knockouts are
+	 * pruned.
+	 */
+	private static final double FLUX_TOLERANCE = 1E-9d;
+
+	/**
+	 * Losses of the objective value up to this fraction of the absolute
+	 * wild-type value (or of 1 for smaller values) are due to the accuracy of
+	 * the solver.
+	 */
+	private static final double OBJECTIVE_TOLERANCE = 1E-6d;
+
+	/**
+	 * The expanded document with split reversible reactions and system
+	 * boundaries.
+	 */
+	private final SBMLDocument expandedDocument;
+
+	/**
+	 * The steady-state condition and the bounds of the fluxes.
+	 */
+	private final SteadyStateProblem problem;
+
+	/**
+	 * The indices of the fluxes of the expanded document for each reaction of
+	 * the original document.
+	 */
+	private final Map<String, int[]> fluxIndices;
+
+	/**
+	 * The fluxes of each knockout in the order of their registration.
+	 */
+	private final Map<String, int[]> knockouts = new LinkedHashMap<String, int[]>();
+
+	/**
+	 * The coefficients of the objective.
+	 */
+	private double[] objective = null;
+
+	/**
+	 * Whether the objective is maximized.
+	 */
+	private boolean maximize = true;
+
+	/**
+	 * The fraction of the wild-type objective value below which a knockout is
+	 * lethal.
+	 */
+	private double lethalityThreshold = DEFAULT_LETHALITY_THRESHOLD;
+
+	/**
+	 * Whether double knockouts are screened after the single knockouts.
+	 */
+	private boolean doubleKnockouts = false;
+
+	/**
+	 * The number of solvers that run concurrently.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The solver for the linear programs.
+	 */
+	private SolverType solverType = SolverType.AUTOMATIC;
+
+	/**
+	 * The listeners for the results.
+	 */
+	private final List<KnockoutListener> listeners = new ArrayList<KnockoutListener>();
+
+	/**
+	 * The optimal value of the objective of the wild type.
+	 */
+	private double wildTypeValue = Double.NaN;
+
+	/**
+	 * All results of the last run.
+	 */
+	private List<KnockoutResult> results = null;
+
+	/**
+	 *
+	 * @param constraints
+	 *        the constraints, whose computed Gibbs energies belong to the
+	 *        reactions of the expanded document.
+	 */
+	public KnockoutScreening(Constraints constraints) {
+		FBAContext context = constraints.getContext();
+		expandedDocument = context.getExpandedDocument();
+		problem = new SteadyStateProblem(constraints);
+
+		// a reversible reaction has been split into a forward reaction with the
+		// same id and a backward reaction
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		Model model = expandedDocument.getModel();
+		for (int j = 0; j < model.getReactionCount(); j++) {
+			indices.put(model.getReaction(j).getId(), Integer.valueOf(j));
+		}
+		fluxIndices = new HashMap<String, int[]>();
+		Model originalModel = context.getOriginalDocument().getModel();
+		for (int r = 0; r < originalModel.getReactionCount(); r++) {
+			String id = originalModel.getReaction(r).getId();
+			Integer forward = indices.get(id);
+			if (forward == null) {
+				// eliminated transport reaction
+				continue;
+			}
+			Integer backward = indices.get(id + FluxMinimizationUtils.endingForBackwardReaction);
+			fluxIndices.put(id, (backward == null) ? new int[] {forward.intValue()} : new int[] {forward.intValue(), backward.intValue()});
+		}
+	}
+
+	/**
+	 * Registers a knockout of the given reactions of the original document,
+	 * e.g., of all reactions that depend on one gene. Transport reactions,
+	 * which are not part of the expanded document, are ignored.
+	 *
+	 * @param name
+	 *        the name of the knockout, e.g., the gene
+	 * @param reactionIds
+	 */
+	public void addKnockout(String name, String... reactionIds) {
+		BitSet fluxes = new BitSet();
+		for (String id : reactionIds) {
+			int[] j = fluxIndices.get(id);
+			if (j == null) {
+				logger.warning("Reaction " + id + " of knockout " + name + " is no reaction of the expanded model.");
+				continue;
+			}
+			for (int index : j) {
+				fluxes.set(index);
+			}
+		}
+		int[] indices = new int[fluxes.cardinality()];
+		for (int i = fluxes.nextSetBit(0), k = 0; i >= 0; i = fluxes.nextSetBit(i + 1)) {
+			indices[k++] = i;
+		}
+		knockouts.put(name, indices);
+	}
+
+	/**
+	 * Registers one knockout per reaction of the original document that is
+	 * part of the expanded document, named by the id of the reaction.
+	 */
+	public void addAllReactionKnockouts() {
+		for (Map.Entry<String, int[]> entry : fluxIndices.entrySet()) {
+			knockouts.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @return the names of the registered knockouts.
+	 */
+	public List<String> getKnockouts() {
+		return Collections.unmodifiableList(new ArrayList<String>(knockouts.keySet()));
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the lower bound on the given
+	 * lbValue.
+	 *
+	 * @param lbValue
+	 * @param j (index of reaction)
+	 * @return true if lbValue was set successfully
+	 */
+	public boolean setLbOfReactionJ(double lbValue, int j) {
+		return problem.setLbOfReactionJ(lbValue, j);
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the upper bound on the given
+	 * ubValue.
+	 *
+	 * @param ubValue
+	 * @param j (index of reaction)
+	 * @return true if ubValue was set successfully
+	 */
+	public boolean setUbOfReactionJ(double ubValue, int j) {
+		return problem.setUbOfReactionJ(ubValue, j);
+	}
+
+	/**
+	 * Sets the linear objective of the fluxes, e.g., the flux of a biomass
+	 * reaction.
+	 *
+	 * @param coefficients
+	 *        one coefficient per reaction of the expanded document.
+	 * @param maximize
+	 */
+	public void setObjective(double[] coefficients, boolean maximize) {
+		if (coefficients.length != problem.getReactionCount()) {
+			throw new IllegalArgumentException("Expected " + problem.getReactionCount() + " objective coefficients, but got " + coefficients.length + '.');
+		}
+		this.objective = coefficients.clone();
+		this.maximize = maximize;
+	}
+
+	/**
+	 * Maximizes the flux of the given reaction of the original document.
+	 *
+	 * @param reactionId
+	 */
+	public void setObjective(String reactionId) {
+		int[] j = fluxIndices.get(reactionId);
+		if (j == null) {
+			throw new IllegalArgumentException("Reaction " + reactionId + " is no reaction of the expanded model.");
+		}
+		double[] coefficients = new double[problem.getReactionCount()];
+		coefficients[j[0]] = 1d;
+		if (j.length > 1) {
+			coefficients[j[1]] = -1d;
+		}
+		setObjective(coefficients, true);
+	}
+
+	/**
+	 * @return the fraction of the wild-type objective value below which a
+	 *         knockout is lethal.
+	 */
+	public double getLethalityThreshold() {
+		return lethalityThreshold;
+	}
+
+	/**
+	 *
+	 * @param lethalityThreshold
+	 *        a value between 0 and 1 (default:
+	 *        {@link #DEFAULT_LETHALITY_THRESHOLD}).
+	 */
+	public void setLethalityThreshold(double lethalityThreshold) {
+		if ((lethalityThreshold < 0d) || (lethalityThreshold > 1d)) {
+			throw new IllegalArgumentException("The lethality threshold must be between 0 and 1, but is " + lethalityThreshold + '.');
+		}
+		this.lethalityThreshold = lethalityThreshold;
+	}
+
+	/**
+	 * @return {@code true} if double knockouts are screened.
+	 */
+	public boolean isDoubleKnockouts() {
+		return doubleKnockouts;
+	}
+
+	/**
+	 * @param doubleKnockouts
+	 *        whether all pairs of non-lethal single knockouts are screened
+	 *        after the single knockouts (default: {@code false}).
+	 */
+	public void setDoubleKnockouts(boolean doubleKnockouts) {
+		this.doubleKnockouts = doubleKnockouts;
+	}
+
+	/**
+	 * @return the number of solvers that run concurrently.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 *
+	 * @param threadCount
+	 *        the number of solvers that run concurrently (default: the number
+	 *        of available processors).
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * @return the solver for the linear programs
+	 */
+	public SolverType getSolverType() {
+		return solverType;
+	}
+
+	/**
+	 * @param solverType the solver for the linear programs
+	 */
+	public void setSolverType(SolverType solverType) {
+		this.solverType = solverType;
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void addKnockoutListener(KnockoutListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void removeKnockoutListener(KnockoutListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the optimal value of the objective of the wild type.
+	 */
+	public double getWildTypeValue() {
+		return wildTypeValue;
+	}
+
+	/**
+	 * @return the results of all screened knockouts in the order of their
+	 *         completion or {@code null} before {@link #run()}.
+	 */
+	public List<KnockoutResult> getResults() {
+		return results;
+	}
+
+	/**
+	 * Solves the wild type, then all single knockouts and, if requested, all
+	 * double knockouts that cannot be pruned.
+	 *
+	 * @throws SolverException
+	 *         if the wild type is infeasible or a solver cannot be created.
+	 */
+	public void run() throws SolverException {
+		if (objective == null) {
+			throw new IllegalStateException("The knockout screening needs an objective.");
+		}
+		if (knockouts.isEmpty()) {
+			addAllReactionKnockouts();
+		}
+		ProblemBuilder builder = problem.createBuilder();
+		builder.setObjective(objective, null, !maximize);
+		SolverPool pool = new SolverPool(solverType, builder, "The knockout screening");
+		final double[] wildType;
+		Solver solver = pool.createSolver();
+		try {
+			if (!solver.solve()) {
+				throw new SolverException("The objective of the wild type has no optimal value.");
+			}
+			wildTypeValue = solver.getObjectiveValue();
+			wildType = solver.getValues();
+		} finally {
+			solver.end();
+		}
+
+		results = Collections.synchronizedList(new ArrayList<KnockoutResult>());
+		final String[] names = knockouts.keySet().toArray(new String[knockouts.size()]);
+		final int[][] fluxes = knockouts.values().toArray(new int[knockouts.size()][]);
+
+		// single knockouts, keeping the active fluxes of each optimum
+		final KnockoutResult[] single = new KnockoutResult[names.length];
+		final BitSet[] active = new BitSet[names.length];
+		final AtomicInteger next = new AtomicInteger(0);
+		pool.execute(Math.min(threadCount, names.length), new SolverPool.SolverTask() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.simulator.fba.controller.SolverPool.SolverTask#run(org.sbml.simulator.fba.solver.Solver)
+			 */
+			@Override
+			public void run(Solver solver) throws SolverException {
+				for (int a = next.getAndIncrement(); a < names.length; a = next.getAndIncrement()) {
+					double[] values = knockOut(solver, wildType, fluxes[a]);
+					if (values != null) {
+						active[a] = new BitSet(values.length);
+						for (int j = 0; j < values.length; j++) {
+							if (Math.abs(values[j]) > FLUX_TOLERANCE) {
+								active[a].set(j);
+							}
+						}
+					}
+					single[a] = createResult(new String[] {names[a]}, (values != null) ? solver.getObjectiveValue() : Double.NaN, false);
+				}
+			}
+		});
+		if (!doubleKnockouts) {
+			return;
+		}
+
+		// double knockouts of pairs of non-lethal single knockouts
+		final int[] viable = new int[names.length];
+		int viableCount = 0;
+		for (int a = 0; a < names.length; a++) {
+			if (!single[a].isLethal()) {
+				viable[viableCount++] = a;
+			}
+		}
+		logger.fine((names.length - viableCount) + " of " + names.length + " single knockouts are lethal.");
+		final int count = viableCount;
+		next.set(0);
+		pool.execute(Math.min(threadCount, count), new SolverPool.SolverTask() {
+
+			/* (non-Javadoc)
+			 * @see org.sbml.simulator.fba.controller.SolverPool.SolverTask#run(org.sbml.simulator.fba.solver.Solver)
+			 */
+			@Override
+			public void run(Solver solver) throws SolverException {
+				for (int p = next.getAndIncrement(); p < count; p = next.getAndIncrement()) {
+					int a = viable[p];
+					for (int q = p + 1; q < count; q++) {
+						int b = viable[q];
+						String[] pair = new String[] {names[a], names[b]};
+						if (!intersects(active[a], fluxes[b])) {
+							// the optimum of a does not use b
+							createResult(pair, single[a].getObjectiveValue(), true);
+						} else if (!intersects(active[b], fluxes[a])) {
+							createResult(pair, single[b].getObjectiveValue(), true);
+						} else {
+							int[] both = Arrays.copyOf(fluxes[a], fluxes[a].length + fluxes[b].length);
+							System.arraycopy(fluxes[b], 0, both, fluxes[a].length, fluxes[b].length);
+							double[] values = knockOut(solver, wildType, both);
+							createResult(pair, (values != null) ? solver.getObjectiveValue() : Double.NaN, false);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Fixes the given fluxes to zero, solves the problem starting from the
+	 * wild type and restores the bounds.
+	 *
+	 * @param solver
+	 * @param wildType
+	 * @param fluxes
+	 * @return the optimal fluxes or {@code null} if the problem is infeasible
+	 * @throws SolverException
+	 */
+	private double[] knockOut(Solver solver, double[] wildType, int[] fluxes) throws SolverException {
+		for (int j : fluxes) {
+			solver.setBounds(j, 0d, 0d);
+		}
+		solver.setStartingPoint(wildType);
+		double[] values = solver.solve() ? solver.getValues() : null;
+		for (int j : fluxes) {
+			solver.setBounds(j, problem.getLb(j), problem.getUb(j));
+		}
+		return values;
+	}
+
+	/**
+	 *
+	 * @param active
+	 *        the active fluxes of an optimum or {@code null} if there is none
+	 * @param fluxes
+	 * @return {@code true} if one of the given fluxes is active
+	 */
+	private static boolean intersects(BitSet active, int[] fluxes) {
+		if (active == null) {
+			return true;
+		}
+		for (int j : fluxes) {
+			if (active.get(j)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the result of a knockout, stores it and passes it to the
+	 * listeners.
+	 *
+	 * @param names
+	 * @param objectiveValue
+	 *        the optimal value or NaN if the problem is infeasible
+	 * @param inferred
+	 * @return the result
+	 */
+	private KnockoutResult createResult(String[] names, double objectiveValue, boolean inferred) {
+		double growthRatio = 0d;
+		if (!Double.isNaN(objectiveValue)) {
+			// the ratio objectiveValue / wildTypeValue would make every knockout
+			// lethal for a negative maximum or a positive minimum of the wild type
+			double loss = maximize ? wildTypeValue - objectiveValue : objectiveValue - wildTypeValue;
+			double scale = Math.abs(wildTypeValue);
+			if (loss <= OBJECTIVE_TOLERANCE * Math.max(1d, scale)) {
+				growthRatio = 1d;
+			} else if (scale > 0d) {
+				growthRatio = Math.max(0d, 1d - loss / scale);
+			}
+		}
+		boolean lethal = Double.isNaN(objectiveValue) || (growthRatio < lethalityThreshold);
+		KnockoutResult result = new KnockoutResult(names, objectiveValue, growthRatio, lethal, inferred);
+		synchronized (listeners) {
+			results.add(result);
+			for (KnockoutListener listener : listeners) {
+				listener.knockoutScreened(result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the results of all screened knockouts into a CSV file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		if (results == null) {
+			throw new IllegalStateException("The knockout screening has not been run.");
+		}
+		String comment = "Knockout screening with the wild-type objective value " + wildTypeValue
+				+ " and the lethality threshold " + lethalityThreshold + ".\n";
+		String header[] = {"knockout 1", "knockout 2", "objective value", "growth ratio", "lethal", "inferred"};
+		String data[][];
+		synchronized (listeners) {
+			data = new String[results.size()][];
+			for (int k = 0; k < data.length; k++) {
+				KnockoutResult result = results.get(k);
+				data[k] = new String[] {result.knockouts[0], (result.knockouts.length > 1) ? result.knockouts[1] : "",
+						String.valueOf(result.objectiveValue), String.valueOf(result.growthRatio),
+						String.valueOf(result.lethal), String.valueOf(result.inferred)};
+			}
+		}
+		CSVWriter writer = new CSVWriter();
+		writer.write(data, header, comment, file);
+	}
+
+}
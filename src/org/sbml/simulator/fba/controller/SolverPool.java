@@ -0,0 +1,165 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+
+/**
+ * Runs a task with one solver per thread, e.g., the linear programs of a
+ * {@link FluxVariabilityAnalysis} or a {@link KnockoutScreening}. Each solver
+ * is filled with the same problem once and ended afterwards; the task takes
+ * its work items from a shared counter until there are none left.
+ *
+ * @since 2.1
+ */
+class SolverPool {
+
+	/**
+	 * The work of one solver.
+	 */
+	public static interface SolverTask {
+
+		/**
+		 * Processes work items until there are none left.
+		 *
+		 * @param solver
+		 *        a solver with the problem of the pool
+		 * @throws SolverException
+		 */
+		public void run(Solver solver) throws SolverException;
+
+	}
+
+	/**
+	 * The solver for the problems.
+	 */
+	private final SolverType solverType;
+
+	/**
+	 * The problem of every solver.
+	 */
+	private final ProblemBuilder problem;
+
+	/**
+	 * The description of the work for the exception after an interruption,
+	 * e.g., "The knockout screening".
+	 */
+	private final String description;
+
+	/**
+	 *
+	 * @param solverType
+	 * @param problem
+	 * @param description
+	 *        the description of the work, e.g., "The knockout screening".
+	 */
+	public SolverPool(SolverType solverType, ProblemBuilder problem, String description) {
+		this.solverType = solverType;
+		this.problem = problem;
+		this.description = description;
+	}
+
+	/**
+	 * Creates a solver with the problem. The caller must end it.
+	 *
+	 * @return the solver
+	 * @throws SolverException
+	 */
+	public Solver createSolver() throws SolverException {
+		Solver solver = SolverFactory.createSolver(solverType);
+		try {
+			problem.build(solver);
+		} catch (SolverException exc) {
+			solver.end();
+			throw exc;
+		}
+		return solver;
+	}
+
+	/**
+	 * Runs the given task with one solver per thread. A single thread runs the
+	 * task directly.
+	 *
+	 * @param threads
+	 *        the number of solvers that run concurrently
+	 * @param task
+	 * @throws SolverException
+	 *         if a solver cannot be created, the task fails or the threads are
+	 *         interrupted.
+	 */
+	public void execute(int threads, final SolverTask task) throws SolverException {
+		threads = Math.max(1, threads);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+		for (int t = 0; t < threads; t++) {
+			tasks.add(new Callable<Void>() {
+
+				/* (non-Javadoc)
+				 * @see java.util.concurrent.Callable#call()
+				 */
+				@Override
+				public Void call() throws SolverException {
+					Solver solver = createSolver();
+					try {
+						task.run(solver);
+					} finally {
+						solver.end();
+					}
+					return null;
+				}
+			});
+		}
+
+		if (threads == 1) {
+			try {
+				tasks.get(0).call();
+			} catch (SolverException exc) {
+				throw exc;
+			} catch (Exception exc) {
+				throw new SolverException(exc);
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				throw new SolverException(description + " has been interrupted.", exc);
+			} catch (ExecutionException exc) {
+				if (exc.getCause() instanceof SolverException) {
+					throw (SolverException) exc.getCause();
+				}
+				throw new SolverException(exc.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.util.Arrays;
+
+import org.sbml.simulator.fba.solver.ProblemBuilder;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
+
+/**
+ * The linear constraints on the fluxes of the expanded model (see
+ * {@link FBAContext#getExpandedDocument()}), which the
+ * {@link FluxVariabilityAnalysis} and the {@link KnockoutScreening} share:
+ * the steady-state condition N * J = 0 and the bounds of the fluxes, of which
+ * the thermodynamic constraint J_j * G_j <= 0 with the Gibbs energies of the
+ * {@link Constraints} blocks the reactions with a positive Gibbs energy.
+ *
+ * @since 2.1
+ */
+class SteadyStateProblem {
+
+	/**
+	 * The stoichiometric matrix of the expanded document.
+	 */
+	private final SparseStoichiometricMatrix N;
+
+	/**
+	 * The bounds of the fluxes.
+	 */
+	private final double[] lb, ub;
+
+	/**
+	 *
+	 * @param constraints
+	 *        the constraints, whose computed Gibbs energies belong to the
+	 *        reactions of the expanded document.
+	 */
+	public SteadyStateProblem(Constraints constraints) {
+		N = constraints.getContext().getExpandedSparseStoichiometricMatrix();
+
+		int reactionCount = N.getColumnDimension();
+		lb = new double[reactionCount];
+		ub = new double[reactionCount];
+		Arrays.fill(ub, FluxVariabilityAnalysis.DEFAULT_FLUX_BOUND);
+
+		// constraint J_j * G_j <= 0: all reactions of the expanded document are
+		// irreversible, so a positive Gibbs energy blocks the reaction
+		double[] compGibbs = constraints.getComputedGibbsEnergies();
+		if (compGibbs != null) {
+			for (int j = 0; j < Math.min(reactionCount, compGibbs.length); j++) {
+				if (!Double.isNaN(compGibbs[j]) && (compGibbs[j] > 0d)) {
+					ub[j] = 0d;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of fluxes
+	 */
+	public int getReactionCount() {
+		return lb.length;
+	}
+
+	/**
+	 * @param j (index of reaction)
+	 * @return the lower bound of flux j
+	 */
+	public double getLb(int j) {
+		return lb[j];
+	}
+
+	/**
+	 * @param j (index of reaction)
+	 * @return the upper bound of flux j
+	 */
+	public double getUb(int j) {
+		return ub[j];
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the lower bound on the given
+	 * lbValue.
+	 *
+	 * @param lbValue
+	 * @param j (index of reaction)
+	 * @return true if lbValue was set successfully
+	 */
+	public boolean setLbOfReactionJ(double lbValue, int j) {
+		if (j < lb.length) {
+			lb[j] = lbValue;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Puts for {@link org.sbml.jsbml.Reaction} j the upper bound on the given
+	 * ubValue.
+	 *
+	 * @param ubValue
+	 * @param j (index of reaction)
+	 * @return true if ubValue was set successfully
+	 */
+	public boolean setUbOfReactionJ(double ubValue, int j) {
+		if (j < ub.length) {
+			ub[j] = ubValue;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a problem with one variable per flux within its current bounds
+	 * and one row N_i * J = 0 per species that takes part in a reaction. The
+	 * caller adds the objective and further rows. Since
+	 * {@link ProblemBuilder#build(Solver)} does not change the problem, one
+	 * builder can fill the solvers of all threads.
+	 *
+	 * @return the problem without an objective
+	 */
+	public ProblemBuilder createBuilder() {
+		ProblemBuilder builder = new ProblemBuilder();
+		builder.addVariables(lb, ub);
+		int[] rowPointers = N.getRowPointers();
+		int[] columnIndices = N.getColumnIndices();
+		double[] rowValues = N.getRowValues();
+		for (int i = 0; i < N.getRowDimension(); i++) {
+			if (rowPointers[i + 1] > rowPointers[i]) {
+				builder.addRow(Arrays.copyOfRange(columnIndices, rowPointers[i], rowPointers[i + 1]),
+					Arrays.copyOfRange(rowValues, rowPointers[i], rowPointers[i + 1]), Solver.Relation.EQUAL, 0d);
+			}
+		}
+		return builder;
+	}
+
+}
@@ -23,32 +23,104 @@ package org.sbml.simulator.fba.controller;
 public abstract class TargetFunction {
 	
 	/**
-	 * weighting factor for the optimization problem, 
-	 * default value according to Ziller et al. (2009): 
+	 * default value of {@link #lambda1} according to Ziller et al. (2009)
+	 */
+	public static final double DEFAULT_LAMBDA1 = 10;
+	
+	/**
+	 * default value of {@link #lambda2} according to Ziller et al. (2009)
+	 */
+	public static final double DEFAULT_LAMBDA2 = 10;
+	
+	/**
+	 * default value of {@link #lambda3} according to Ziller et al. (2009)
+	 */
+	public static final double DEFAULT_LAMBDA3 = 0.01;
+	
+	/**
+	 * default value of {@link #lambda4} according to Ziller et al. (2009)
+	 */
+	public static final double DEFAULT_LAMBDA4 = 1.0;
+	
+	/**
+	 * weighting factor for the optimization problem: 
 	 * lambda1*sum((c_i - c_eq)^2)
 	 */
-	public static double lambda1 = 10;
+	protected double lambda1 = DEFAULT_LAMBDA1;
 	
 	/**
-	 * weighting factor for the optimization problem,
-	 * default value according to Ziller et al. (2009):
+	 * weighting factor for the optimization problem:
 	 * lambda2*||L||
 	 */
-	public static double lambda2 = 10;
+	protected double lambda2 = DEFAULT_LAMBDA2;
 	
 	/**
-	 * weighting factor for the optimization problem,
-	 * default value according to Ziller et al. (2009):
+	 * weighting factor for the optimization problem:
 	 * lambda3*||E||
 	 */
-	public static double lambda3 = 0.01;
+	protected double lambda3 = DEFAULT_LAMBDA3;
 	
 	/**
-	 * weighting factor for the optimization problem,
-	 * default value according to Ziller et al. (2009):
+	 * weighting factor for the optimization problem:
 	 * lambda4*||deltaG||
 	 */
-	public static double lambda4 = 1.0;
+	protected double lambda4 = DEFAULT_LAMBDA4;
+	
+	/**
+	 * @return the weighting factor of the concentrations
+	 */
+	public double getLambda1() {
+		return lambda1;
+	}
+	
+	/**
+	 * @param lambda1 the weighting factor of the concentrations
+	 */
+	public void setLambda1(double lambda1) {
+		this.lambda1 = lambda1;
+	}
+	
+	/**
+	 * @return the weighting factor of L
+	 */
+	public double getLambda2() {
+		return lambda2;
+	}
+	
+	/**
+	 * @param lambda2 the weighting factor of L
+	 */
+	public void setLambda2(double lambda2) {
+		this.lambda2 = lambda2;
+	}
+	
+	/**
+	 * @return the weighting factor of the errors
+	 */
+	public double getLambda3() {
+		return lambda3;
+	}
+	
+	/**
+	 * @param lambda3 the weighting factor of the errors
+	 */
+	public void setLambda3(double lambda3) {
+		this.lambda3 = lambda3;
+	}
+	
+	/**
+	 * @return the weighting factor of the Gibbs energies
+	 */
+	public double getLambda4() {
+		return lambda4;
+	}
+	
+	/**
+	 * @param lambda4 the weighting factor of the Gibbs energies
+	 */
+	public void setLambda4(double lambda4) {
+		this.lambda4 = lambda4;
+	}
 	
 	/**
 	 * This method gives an array back, which contains the target function for quadratic programming 
@@ -15,14 +15,21 @@
  */
 package org.sbml.simulator.fba.dynamic;
 
-import ilog.concert.IloException;
-import ilog.cplex.IloCplex;
-
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
 import org.sbml.simulator.math.SplineCalculation;
 import org.simulator.math.odes.MultiTable;
 import org.simulator.math.odes.MultiTable.Block;
@@ -43,12 +50,7 @@ public class DynamicFBA {
 	/**
 	 * The original SBML document
 	 */
-	protected static SBMLDocument originalDocument;
-	
-	/**
-	 * The splitted SBML document on which the dynamic FBA will be performed
-	 */
-	protected static SBMLDocument splittedDocument;
+	private final SBMLDocument originalDocument;
 	
 	/**
 	 * The starting {@link MultiTable} with all given and then interpolated concentration and flux values.
@@ -88,7 +90,22 @@ public class DynamicFBA {
 	/**
 	 * Saves all set points in time of the dynamic flux balance analysis
 	 */
-	protected static double[] dFBATimePoints;
+	private double[] dFBATimePoints;
+	
+	/**
+	 * The solver for the optimization problems of each point in time
+	 */
+	private SolverType solverType = SolverType.AUTOMATIC;
+	
+	/**
+	 * Whether independent points in time are solved concurrently
+	 */
+	private boolean parallel = false;
+	
+	/**
+	 * The number of solver iterations of the last dynamic flux balance analysis
+	 */
+	private long iterationCount = 0;
 	
 	
 	/**
@@ -99,7 +116,7 @@ public class DynamicFBA {
 	 */
 	public DynamicFBA(SBMLDocument document, MultiTable table, int timePointCount) {
 		// Save original SBML document and multi table
-		originalDocument = document;
+		this.originalDocument = document;
 		this.originalMultiTable = table;
 		
 		// Interpolate concentrations and fluxes
@@ -141,6 +158,75 @@ public class DynamicFBA {
 		return this.finalSolutionMultiTable;
 	}
 	
+	/**
+	 * Solve the points in time in contiguous blocks, each with its own copy of
+	 * the target function and its own solver, and transfer the solutions into
+	 * the working {@link MultiTable} in the order of the points in time.
+	 * 
+	 * @param function
+	 * @return the number of solver iterations of all copies
+	 * @throws SolverException
+	 */
+	private long optimizeConcurrently(final TargetFunction function) throws SolverException {
+		int timePointCount = dFBATimePoints.length;
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), timePointCount);
+		int blockSize = (timePointCount + threads - 1) / threads;
+		final double[][] solutions = new double[timePointCount][];
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int first = 0; first < timePointCount; first += blockSize) {
+			final int from = first;
+			final int to = Math.min(timePointCount, first + blockSize);
+			tasks.add(new Callable<Long>() {
+				
+				/* (non-Javadoc)
+				 * @see java.util.concurrent.Callable#call()
+				 */
+				@Override
+				public Long call() throws SolverException {
+					TargetFunction copy = function.copy();
+					Solver solver = SolverFactory.createSolver(solverType);
+					try {
+						for (int i = from; i < to; i++) {
+							copy.setTimePointStep(i);
+							copy.optimizeProblem(solver);
+							solutions[i] = copy.getSolution();
+						}
+					} finally {
+						solver.end();
+					}
+					return copy.getIterationCount();
+				}
+			});
+		}
+		
+		long iterations = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<Long> future : executor.invokeAll(tasks)) {
+				iterations += future.get();
+			}
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new SolverException("The dynamic FBA has been interrupted.", exc);
+		} catch (ExecutionException exc) {
+			if (exc.getCause() instanceof SolverException) {
+				throw (SolverException) exc.getCause();
+			}
+			throw new SolverException(exc.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		for (int i = 0; i < timePointCount; i++) {
+			function.setTimePointStep(i);
+			function.setSolution(solutions[i]);
+			function.getOptimizedSolution();
+			// transfer the solution into the working MT
+			function.saveValuesForCurrentTimePoint(this.workingSolutionMultiTable);
+		}
+		return iterations;
+	}
+	
 	/**
 	 * Initialize the solution {@link MultiTable} for visualization. This
 	 * {@link MultiTable} contains multiple {@link MultiTable.Block}s.
@@ -161,61 +247,120 @@ public class DynamicFBA {
 	}
 	
 	/**
-	 * A dynamic flux balance analysis will be performed.
 	 * 
-	 * @param fluxMin
-	 * @throws IloException
+	 * @return the number of solver iterations of the last dynamic flux balance
+	 *         analysis
+	 */
+	public long getIterationCount() {
+		return iterationCount;
+	}
+	
+	/**
+	 * 
+	 * @return the type of the solver for the optimization problems
+	 */
+	public SolverType getSolverType() {
+		return solverType;
+	}
+	
+	/**
+	 * 
+	 * @param solverType the type of the solver for the optimization problems
 	 */
-	public void runDynamicFBA(TargetFunction function) throws IloException {
+	public void setSolverType(SolverType solverType) {
+		this.solverType = solverType;
+	}
+	
+	/**
+	 * 
+	 * @return <CODE>true</CODE> if independent points in time are solved
+	 *         concurrently
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+	
+	/**
+	 * If the target function is a linear program whose points in time do not
+	 * depend on each other (see {@link TargetFunction#isTimePointIndependent()}),
+	 * the points in time are partitioned across several solvers that run
+	 * concurrently. Otherwise, the points in time are always solved one after
+	 * the other.
+	 * 
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * A dynamic flux balance analysis will be performed. Target functions that
+	 * are linear programs are solved by the selected {@link Solver}, all
+	 * others by the solver they require (see
+	 * {@link TargetFunction#initVariables(Solver)}).
+	 * 
+	 * @param function
+	 * @throws SolverException if the target function cannot be solved by the
+	 *         selected solver or if the solver fails
+	 */
+	public void runDynamicFBA(TargetFunction function) throws SolverException {
 		this.function = function;
+		function.setOriginalDocument(originalDocument);
+		function.setTimePoints(dFBATimePoints);
+		long previousIterations = function.getIterationCount();
 		
-		// Initialize a new CPLEX object
-		IloCplex cplex = new IloCplex();
-		// Initialize the CPLEX variables
-		function.initCplexVariables(cplex);
-		
-		// Initialize the solution MultiTable
-		initializeWorkingSolutionMultiTable(function);
-		
-		// Set the complete interpolated concentrations
-		int speciesMTCount = dFBAStartingMultiTable.getBlock(0).getColumnCount();
-		double[][] concentrations = new double[dFBATimePoints.length][speciesMTCount];
-		Block conc = dFBAStartingMultiTable.getBlock(0);
-
-		int reactionCount = originalDocument.getModel().getReactionCount();
-		double[][] netFluxes = new double[dFBATimePoints.length][reactionCount];
-		Block flux = dFBAStartingMultiTable.getBlock(1);
-		
-		
-		for (int t = 0; t < dFBATimePoints.length; t++) {
-			for (int i = 0; i < speciesMTCount; i++) {
-				// Remember: first column of each MultiTable/block contains the timePoints -> i + 1
-				concentrations[t][i] = conc.getValueAt(t, i + 1);
+		// Initialize a new solver
+		Solver solver = SolverFactory.createSolver(solverType);
+		try {
+			function.initVariables(solver);
+			
+			// Initialize the solution MultiTable
+			initializeWorkingSolutionMultiTable(function);
+			
+			// Set the complete interpolated concentrations
+			int speciesMTCount = dFBAStartingMultiTable.getBlock(0).getColumnCount();
+			double[][] concentrations = new double[dFBATimePoints.length][speciesMTCount];
+			Block conc = dFBAStartingMultiTable.getBlock(0);
+			
+			int reactionCount = originalDocument.getModel().getReactionCount();
+			double[][] netFluxes = new double[dFBATimePoints.length][reactionCount];
+			Block flux = dFBAStartingMultiTable.getBlock(1);
+			
+			
+			for (int t = 0; t < dFBATimePoints.length; t++) {
+				for (int i = 0; i < speciesMTCount; i++) {
+					// Remember: first column of each MultiTable/block contains the timePoints -> i + 1
+					concentrations[t][i] = conc.getValueAt(t, i + 1);
+				}
+				for (int j = 0; j < reactionCount; j++) {
+					// Remember: first column of each MultiTable/block contains the timePoints -> j + 1
+					netFluxes[t][j] = flux.getValueAt(t, j + 1);
+				}
 			}
-			for (int j = 0; j < reactionCount; j++) {
-				// Remember: first column of each MultiTable/block contains the timePoints -> j + 1
-				netFluxes[t][j] = flux.getValueAt(t, j + 1);
+			function.setInterpolatedConcentrations(concentrations);
+			function.setInterpolatedFluxes(netFluxes);
+			
+			
+			// Independent points in time can be solved concurrently
+			if (parallel && function.isLinearProgram() && function.isTimePointIndependent()) {
+				this.iterationCount = optimizeConcurrently(function);
+			} else {
+				// Iterate over the complete points in time of the dynamic FBA
+				for (int i = 0; i < dFBATimePoints.length; i++) {
+					// Let the solver solve the optimization problem...
+					function.setTimePointStep(i);
+					function.optimizeProblem(solver);
+					// method must be called to transfer the solution from the solver into a double[][]
+					function.getOptimizedSolution();
+					// transfer the solution into the working MT
+					function.saveValuesForCurrentTimePoint(this.workingSolutionMultiTable);
+				}
+				this.iterationCount = function.getIterationCount() - previousIterations;
 			}
+		} finally {
+			// Stop the solver
+			solver.end();
 		}
-		function.setInterpolatedConcentrations(concentrations);
-		function.setInterpolatedFluxes(netFluxes);
-		
-		
-		// Iterate over the complete points in time of the dynamic FBA
-		for (int i = 0; i < dFBATimePoints.length; i++) {
-			// Let CPLEX solve the optimization problem...
-			function.setTimePointStep(i);
-			function.optimizeProblem(cplex);
-			// method must be called to transfer the solution from cplex into a double[][]
-			function.getOptimizedSolution();
-			// (Reset the CPLEX object! If not, a MultipleObjectiveException is waiting!)
-			cplex.clearModel();
-			// transfer the solution into the working MT
-			function.saveValuesForCurrentTimePoint(this.workingSolutionMultiTable);
-		}
-
-		// Stop the CPLEX stream
-		cplex.end();
 		
 		finalizeSolutionMultiTable();
 		
@@ -15,10 +15,6 @@
  */
 package org.sbml.simulator.fba.dynamic;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -27,10 +23,11 @@ import java.util.logging.Logger;
 
 import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Reaction;
-import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.Species;
-import org.sbml.simulator.fba.controller.FluxMinimizationUtils;
-import org.sbml.simulator.stability.math.StoichiometricMatrix;
+import org.sbml.simulator.fba.controller.FBAContext;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 import org.simulator.math.odes.MultiTable;
 
 /**
@@ -55,12 +52,6 @@ public class FluxMinimizationII extends TargetFunction {
 //	 */
 //	protected SBMLDocument expandedDocument;
 	
-	/**
-	 * contains the {@link SBMLDocument} with all reaction including transports, 
-	 * which are splitted in case of reversibility
-	 */
-	protected SBMLDocument originalDocument;
-	
 //	/**
 //	 * The complete internal {@link StoichiometricMatrix} N (with system
 //	 * boundaries)
@@ -68,9 +59,10 @@ public class FluxMinimizationII extends TargetFunction {
 //	protected StoichiometricMatrix N_int_sys;
 
 	/**
-	 * The complete {@link StoichiometricMatrix} N including transport reactions
+	 * The complete stoichiometric matrix N including transport reactions in
+	 * sparse format
 	 */
-	protected StoichiometricMatrix N_all;
+	protected SparseStoichiometricMatrix sparseN_all;
 
 	/**
 	 * These numbers (lambda_i, i is el. of {1, 2}) weight the contributions
@@ -103,12 +95,12 @@ public class FluxMinimizationII extends TargetFunction {
 	protected double[][] optimizedSolution;
 	
 	/**
-	 * Lower bounds for CPLEX variables saved in a double array
+	 * Lower bounds for the variables saved in a double array
 	 */
 	protected double[] lowerBounds = null;
 	
 	/**
-	 * Upper bounds for CPLEX variables saved in a double array
+	 * Upper bounds for the variables saved in a double array
 	 */
 	protected double[] upperBounds = null;
 	
@@ -344,13 +336,12 @@ public class FluxMinimizationII extends TargetFunction {
 	/**
 	 * Prepare the FluxMinimization by setting the:
 	 * - splitted SBML document
-	 * - matrix N_all
+	 * - sparse matrix N_all
 	 * 
 	 * @throws Exception
 	 */
 	protected void prepareFluxMinimizationII() throws Exception {
-			this.originalDocument = DynamicFBA.originalDocument;
-			this.N_all = FluxMinimizationUtils.getStoichiometricMatrix(originalDocument);
+			this.sparseN_all = FBAContext.getInstance(originalDocument).getSparseStoichiometricMatrix();
 	}
 
 	/* (non-Javadoc)
@@ -488,10 +479,27 @@ public class FluxMinimizationII extends TargetFunction {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#initCplexVariables(ilog.cplex.IloCplex)
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#isLinearProgram()
+	 */
+	@Override
+	public boolean isLinearProgram() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#isTimePointIndependent()
 	 */
 	@Override
-	public void initCplexVariables(IloCplex cplex) throws IloException {
+	public boolean isTimePointIndependent() {
+		// the previous estimations couple the points in time
+		return !this.usePreviousEstimations;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#initVariables(org.sbml.simulator.fba.solver.Solver)
+	 */
+	@Override
+	public void initVariables(Solver solver) {
 		// Prepare the FluxMinimization
 		try {
 			prepareFluxMinimizationII();
@@ -499,72 +507,101 @@ public class FluxMinimizationII extends TargetFunction {
 			e.printStackTrace();
 		}
 
-		int fullVariableLength = 0;
-		for (int i = 0; i < getTargetVariablesLengths().length; i++) {
-			fullVariableLength += getTargetVariablesLengths()[i];
-		}
-
 		// Set default bounds
 		setDefaultBounds();
-
-		IloNumVar[] variables = cplex.numVarArray(fullVariableLength, this.lowerBounds, this.upperBounds);
-
-		// Set the variables
-		setVariables(variables);
 	}
 
 	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#createTargetFunction(ilog.cplex.IloCplex)
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#createProblem(org.sbml.simulator.fba.solver.Solver)
 	 */
 	@Override
-	public IloNumExpr createTargetFunction(IloCplex cplex) throws IloException {
-		IloNumExpr function = cplex.numExpr();
-		
-		// One variable for all fluxes in the flux vector
-		IloNumExpr flux = cplex.numExpr();
-		int fluxPosition = 0;
-		// Manhattan norm included
-		for (int j = 0; j < getTargetVariablesLengths()[0]; j++) {
-			flux = cplex.sum(flux, cplex.abs(getVariables()[fluxPosition + j]));
+	public void createProblem(Solver solver) throws SolverException {
+		addVariables(solver, this.lowerBounds, this.upperBounds);
+		addTargetFunction(solver);
+		addConstraints(solver);
+	}
+
+	/**
+	 * @return the distance delta_t between the previous and the current point
+	 *         in time
+	 */
+	protected double getDeltaT() {
+		// Only if each timepoint has the same distance to its neighboring timepoint
+		double delta_t = getTimePoints()[1] - getTimePoints()[0];
+		if(this.getTimePointStep() > 0) {
+			delta_t = getTimePoints()[this.getTimePointStep()] - getTimePoints()[this.getTimePointStep()-1];
 		}
-		
-		// Concentrations 
-		IloNumExpr concentrations = cplex.numExpr();
-		int concentrationPosition = fluxPosition + getTargetVariablesLengths()[0];
+		return delta_t;
+	}
+
+	/**
+	 * The weight of the deviation |c_k(t_i) - z_k| of a species in the target
+	 * function.
+	 * 
+	 * @param i the index of the species
+	 * @return the weight or NaN if the concentration is not given
+	 */
+	protected double getConcentrationWeight(int i) {
+		return Double.isNaN(this.completeConcentrations[this.getTimePointStep()][i]) ? Double.NaN : 1d;
+	}
+
+	/**
+	 * Add the target function with the Manhattan norms as a linear program:
+	 * each |J_j| and each |c_k(t_i) - z_k| is replaced by an auxiliary
+	 * variable that is bounded below by both signs of its argument.
+	 * 
+	 * @param solver
+	 * @throws SolverException
+	 */
+	protected void addTargetFunction(Solver solver) throws SolverException {
+		int fluxPosition = 0;
+		int reactionCount = getTargetVariablesLengths()[0];
+		int concentrationPosition = fluxPosition + reactionCount;
+		int speciesCount = getTargetVariablesLengths()[1];
 		double[] c_k_ti = this.completeConcentrations[this.getTimePointStep()];
-		
-		for (int i = 0; i < getTargetVariablesLengths()[1]; i++) {
-			IloNumExpr optimizingConcentration = cplex.numExpr();
-			
-			if (!Double.isNaN(c_k_ti[i])) {
-				optimizingConcentration = cplex.abs(cplex.diff(c_k_ti[i], getVariables()[concentrationPosition + i]));
-			} else {
-				// TODO if c_m_measured[n] is NaN???
+
+		Map<Integer, Double> coefficients = new HashMap<Integer, Double>();
+		int variableCount = concentrationPosition + speciesCount;
+		// Fluxes term
+		for (int j = 0; j < reactionCount; j++) {
+			int a_j = addVariables(solver, new double[] {0d}, new double[] {Double.POSITIVE_INFINITY});
+			addConstraint(solver, new int[] {a_j, fluxPosition + j}, new double[] {1d, -1d}, Solver.Relation.GREATER_EQUAL, 0d);
+			addConstraint(solver, new int[] {a_j, fluxPosition + j}, new double[] {1d, 1d}, Solver.Relation.GREATER_EQUAL, 0d);
+			coefficients.put(a_j, this.lambda_1);
+			variableCount = Math.max(variableCount, a_j + 1);
+		}
+		// Concentrations term
+		for (int i = 0; i < speciesCount; i++) {
+			double weight = getConcentrationWeight(i);
+			if (!Double.isNaN(weight)) {
+				int d_i = addVariables(solver, new double[] {0d}, new double[] {Double.POSITIVE_INFINITY});
+				addConstraint(solver, new int[] {d_i, concentrationPosition + i}, new double[] {1d, 1d}, Solver.Relation.GREATER_EQUAL, c_k_ti[i]);
+				addConstraint(solver, new int[] {d_i, concentrationPosition + i}, new double[] {1d, -1d}, Solver.Relation.GREATER_EQUAL, -c_k_ti[i]);
+				coefficients.put(d_i, this.lambda_2 * weight);
+				variableCount = Math.max(variableCount, d_i + 1);
 			}
-			
-			concentrations = cplex.sum(concentrations, optimizingConcentration);
 		}
-		
-		// Sum up each term
-		function = cplex.sum(cplex.prod(this.lambda_1, flux), cplex.prod(this.lambda_2, concentrations));
-		return function;
+		double[] linear = new double[variableCount];
+		for (Map.Entry<Integer, Double> coefficient : coefficients.entrySet()) {
+			linear[coefficient.getKey()] = coefficient.getValue();
+		}
+		setObjective(solver, linear, null, isMinProblem());
 	}
 
-	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#addConstraintsToTargetFunction(ilog.cplex.IloCplex)
+	/**
+	 * Add the constraints of the current point in time.
+	 * 
+	 * @param solver
+	 * @throws SolverException
 	 */
-	@Override
-	public void addConstraintsToTargetFunction(IloCplex cplex) throws IloException {
-		int speciesCount = this.originalDocument.getModel().getSpeciesCount();
-
+	protected void addConstraints(Solver solver) throws SolverException {
 		int fluxPosition = 0;
 		int concentrationPosition = fluxPosition + getTargetVariablesLengths()[0];
 		
-		
 		// Constraint J_j >= 0
 		if (this.constraintJ0 == true) {
 			for (int j = 0; j < getTargetVariablesLengths()[0]; j++) {
-				cplex.addGe(getVariables()[fluxPosition + j], 0);
+				setBounds(solver, fluxPosition + j, Math.max(0d, this.lowerBounds[fluxPosition + j]), this.upperBounds[fluxPosition + j]);
 			}
 		}
 		
@@ -572,72 +609,64 @@ public class FluxMinimizationII extends TargetFunction {
 			// Flux J_j
 			if ((knownFluxes.containsKey(j)) && (this.getTimePointStep() > 0)) {
 				double eightyPercent = knownFluxes.get(j)[this.getTimePointStep()-1];
-				
-				IloNumExpr j_j_min = cplex.numExpr();
-				if (FluxMinimizationUtils.reverseReaction.containsKey(j)) {
-					j_j_min = cplex.diff(
-						getVariables()[fluxPosition + j],
-						getVariables()[fluxPosition
-								+ FluxMinimizationUtils.reverseReaction.get(j)]);
-				} else {
-					j_j_min = getVariables()[fluxPosition + j];
-				}
-				
-				if (eightyPercent >= 0) {
-					cplex.addEq(j_j_min, eightyPercent);
-				} else {
-					cplex.addEq(j_j_min, eightyPercent);
-				}
+				// the original document has no split backward reactions
+				addConstraint(solver, new int[] {fluxPosition + j}, new double[] {1d}, Solver.Relation.EQUAL, eightyPercent);
 			}
 		}
-			
+		
 		// Constraint z_m (t_i+1) >= 0
 		if (this.constraintZm == true) {
-			for (int m = 0; m < speciesCount; m++) {
-				// Concentration z_m (t_i+1)
-				cplex.addGe(getVariables()[concentrationPosition + m], 0);
+			for (int m = 0; m < getTargetVariablesLengths()[1]; m++) {
+				setBounds(solver, concentrationPosition + m, Math.max(0d, this.lowerBounds[concentrationPosition + m]), this.upperBounds[concentrationPosition + m]);
 			}
 		}
 		
 		// Computation of z_m (t_i+1)
-
-		// Use this computation of delta_t:
-		// Only if each timepoint has the same distance to its neighboring timepoint
-		double delta_t = DynamicFBA.dFBATimePoints[1] - DynamicFBA.dFBATimePoints[0];
-		if(this.getTimePointStep() > 0) {
-			delta_t = DynamicFBA.dFBATimePoints[this.getTimePointStep()] - DynamicFBA.dFBATimePoints[this.getTimePointStep()-1];
-		}
-
+		double delta_t = getDeltaT();
 		for (int n = 0; n < getTargetVariablesLengths()[1]; n++) {
-
 			if (this.getTimePointStep() == 0) {
 				// In the first time point step 0, there is no c_m (t_i+1).
-				// t_i+1 would be time point step 1, not 0!
 				if (!Double.isNaN(this.completeConcentrations[this.getTimePointStep()][n])) {
-					cplex.addEq(getVariables()[concentrationPosition + n], this.completeConcentrations[this.getTimePointStep()][n]);
-				} else {
-					// TODO if currentConcentrations[n] is NaN???
-				}
-			} else {
-				// In all other cases
-				if (!Double.isNaN(completeConcentrations[this.getTimePointStep()-1][n])) {
-					IloNumExpr computedConcentration = cplex.numExpr();
-					IloNumExpr NJ = cplex.numExpr();
-
-					double[] currentN_row = this.N_all.getRow(n);
-					for (int col = 0; col < this.N_all.getColumnDimension(); col++) {
-						NJ = cplex.sum(NJ, cplex.prod(currentN_row[col], getVariables()[fluxPosition + col]));
-					}
-					
-					computedConcentration = cplex.sum(this.completeConcentrations[this.getTimePointStep()-1][n], cplex.prod(NJ, delta_t));
-					cplex.addEq(getVariables()[concentrationPosition + n], computedConcentration);
-				} else {
-					// TODO if last concentration (completeConcentrations[this.getTimePointStep()-1][n]) is NaN???
+					addConstraint(solver, new int[] {concentrationPosition + n}, new double[] {1d}, Solver.Relation.EQUAL, this.completeConcentrations[this.getTimePointStep()][n]);
 				}
+			} else if (!Double.isNaN(completeConcentrations[this.getTimePointStep()-1][n])) {
+				// z_m - delta_t * N * J = c_m (t_i)
+				addConcentrationChange(solver, n, 1d, delta_t, this.completeConcentrations[this.getTimePointStep()-1][n]);
 			}
 		}
 	}
 
+	/**
+	 * Add the constraint z_n - delta_t * factor * sum_j N_nj * J_j = c, i.e.,
+	 * the concentration of species n at the current point in time follows
+	 * from the concentration c at the previous point in time and the fluxes.
+	 * 
+	 * @param solver
+	 * @param n the index of the species
+	 * @param factor
+	 * @param delta_t
+	 * @param c
+	 * @throws SolverException
+	 */
+	protected void addConcentrationChange(Solver solver, int n, double factor, double delta_t, double c) throws SolverException {
+		int fluxPosition = 0;
+		int concentrationPosition = fluxPosition + getTargetVariablesLengths()[0];
+		// only the reactions of species n, i.e., the non-zero entries of row n
+		int[] rowPointers = this.sparseN_all.getRowPointers();
+		int[] columnIndices = this.sparseN_all.getColumnIndices();
+		double[] rowValues = this.sparseN_all.getRowValues();
+		int length = rowPointers[n + 1] - rowPointers[n];
+		int[] variables = new int[length + 1];
+		double[] coefficients = new double[length + 1];
+		for (int k = 0; k < length; k++) {
+			variables[k] = fluxPosition + columnIndices[rowPointers[n] + k];
+			coefficients[k] = -delta_t * factor * rowValues[rowPointers[n] + k];
+		}
+		variables[length] = concentrationPosition + n;
+		coefficients[length] = 1d;
+		addConstraint(solver, variables, coefficients, Solver.Relation.EQUAL, c);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#getOptimizedSolution()
 	 */
@@ -658,8 +687,7 @@ public class FluxMinimizationII extends TargetFunction {
 				optimizedFluxVector[j] = solution[fluxPosition + j]; // J_j of the formula
 				fluxMap.put(listOfReactions.get(j).getId(), optimizedFluxVector[j]);
 			}
-			System.out.println("Timepoint: " + this.getTimePointStep());
-			System.out.println(fluxMap.toString());
+			logger.fine("Timepoint: " + this.getTimePointStep() + " " + fluxMap.toString());
 			this.optimizedSolution[1] = optimizedFluxVector; // 2nd position: flux vector
 			
 			// 2. Concentration vector assignment
@@ -684,11 +712,6 @@ public class FluxMinimizationII extends TargetFunction {
 	public void saveValuesForCurrentTimePoint(MultiTable workingSolutionMultiTable) {
 		// for concentration
 		double[] currentSpecificSolution = optimizedSolution[0];
-		for(double value: currentSpecificSolution) {
-			if(value <= 0) {
-				System.out.println();
-			}
-		}
 		workingSolutionMultiTable.getBlock(0).setRowData(this.getTimePointStep(), currentSpecificSolution);
 		// save previous estimated concentrations
 		this.previousEstimatedConcentrations = currentSpecificSolution;
@@ -14,13 +14,15 @@
  */
 package org.sbml.simulator.fba.dynamic;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
-import ilog.cplex.IloCplex;
-
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+
 /**
  * @author Roland Keller
  */
@@ -28,130 +30,48 @@ public class FluxMinimizationIIa extends FluxMinimizationII {
 	
 	private static double epsilon = 1E-12;
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.sbml.simulator.fba.dynamic.TargetFunction#createTargetFunction(ilog
-	 * .cplex.IloCplex)
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.dynamic.FluxMinimizationII#getConcentrationWeight(int)
 	 */
 	@Override
-	public IloNumExpr createTargetFunction(IloCplex cplex) throws IloException {
-		double delta_t = DynamicFBA.dFBATimePoints[1] - DynamicFBA.dFBATimePoints[0];
-		if(this.getTimePointStep() > 0) {
-			delta_t = DynamicFBA.dFBATimePoints[this.getTimePointStep()] - DynamicFBA.dFBATimePoints[this.getTimePointStep()-1];
-		}
-		
-		IloNumExpr function = cplex.numExpr();
-		
-		// Fluxes term
-		IloNumExpr flux = cplex.numExpr();
-		int fluxPosition = 0;
-		int reactionCount = getTargetVariablesLengths()[0];
-		
-		// Manhattan norm included in cplex.abs()
-		for (int j = 0; j < reactionCount; j++) {
-			IloNumExpr optimizingFluxes = cplex.numExpr();
-			optimizingFluxes = cplex.abs(getVariables()[fluxPosition + j]);
-			flux = cplex.sum(flux, optimizingFluxes);
+	protected double getConcentrationWeight(int i) {
+		double c_k_ti = this.completeConcentrations[this.getTimePointStep()][i];
+		if (Double.isNaN(c_k_ti)) {
+			return Double.NaN;
 		}
-		
-		// Concentrations term
-		IloNumExpr concentrations = cplex.numExpr();
-		int concentrationPosition = fluxPosition + reactionCount;
-		double[] c_k_ti = this.completeConcentrations[this.getTimePointStep()];
-		
-		int speciesCount = getTargetVariablesLengths()[1];
-		for (int i = 0; i < speciesCount; i++) {
-			IloNumExpr optimizingConcentration = cplex.numExpr();
-			
-			if (!Double.isNaN(c_k_ti[i])) {
-				// the bigger the change, the better it is (should supporting non zero concentrations)
-				double div = epsilon; 
-				// the bigger the concentration change, the more penalty it has
-				double delta_c = epsilon;
-				if(this.getTimePointStep() > 0) {
-					double c_k_ti_1 = completeConcentrations[this.getTimePointStep()-1][i];
-					if((!Double.isNaN(c_k_ti_1)))  {
-						div+= c_k_ti_1;
-						delta_c = (c_k_ti_1 - c_k_ti[i]) * (c_k_ti_1 - c_k_ti[i]);
-					}
-				}
-				else {
-					div+= c_k_ti[i];
-					delta_c = epsilon;
-				}
-				
-				double volume = 1/factors[i];
-				optimizingConcentration = cplex.prod(1/div, cplex.abs(cplex.diff(c_k_ti[i], getVariables()[concentrationPosition + i]))); 
-				concentrations = cplex.sum(concentrations, cplex.prod(volume, cplex.prod(1 / delta_t, optimizingConcentration))); 
-				
+		double div = epsilon;
+		if (this.getTimePointStep() > 0) {
+			double c_k_ti_1 = completeConcentrations[this.getTimePointStep()-1][i];
+			if (!Double.isNaN(c_k_ti_1)) {
+				div += c_k_ti_1;
 			}
-			// else if c_m_measured[i] is NaN --> estimation of concentration in constraints, in case of true flag usePreviousEstimations
+		} else {
+			div += c_k_ti;
 		}
-		// Sum up each term
-		function = cplex.sum(cplex.prod(cplex.constant(this.lambda_1), flux), cplex.prod(cplex.constant(this.lambda_2), concentrations));
-		
-		return function;
+		return (1/factors[i]) * (1/getDeltaT()) * (1/div);
 	}
-	
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.sbml.simulator.fba.dynamic.TargetFunction#addConstraintsToTargetFunction
-	 * (ilog.cplex.IloCplex)
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.dynamic.FluxMinimizationII#addConstraints(org.sbml.simulator.fba.solver.Solver)
 	 */
 	@Override
-	public void addConstraintsToTargetFunction(IloCplex cplex)
-		throws IloException {
+	protected void addConstraints(Solver solver) throws SolverException {
 		int speciesCount = this.originalDocument.getModel().getSpeciesCount();
 		
 		int fluxPosition = 0;
 		int concentrationPosition = getTargetVariablesLengths()[0];
 		
-		// TODO fixed assumptions 
-//		cplex.addGe(getVariables()[fluxPosition + 5], Double.MIN_VALUE);
-		
 		// Constraint J_j >= 0
 		if (isConstraintJ0()) {
 			for (int j = 0; j < getTargetVariablesLengths()[0]; j++) {
 				if(!originalDocument.getModel().getReaction(j).isReversible()) {
-					cplex.addGe(getVariables()[fluxPosition + j], 0);
-				}
-			}
-		}
-		
-		// Constraint supporting little flux changes
-		if (isLittleFluxChanges()) {
-			for (int j = 0; j < getTargetVariablesLengths()[0]; j++) {
-				if (this.getTimePointStep() > 0) {
-					if (!this.originalDocument.getModel().getReaction(j).isFast()) {
-						IloNumExpr j_j_min = cplex.numExpr();
-						j_j_min = getVariables()[fluxPosition + j];
-						cplex.diff(j_j_min, cplex.constant(this.optimizedSolution[1][j]));
-					}
-					// else if the reaction is a fast reaction, do nothing
+					setBounds(solver, fluxPosition + j, Math.max(0d, this.lowerBounds[fluxPosition + j]), this.upperBounds[fluxPosition + j]);
 				}
 			}
 		}
 		
-		// Constraint supporting net fluxes greater then zero
-//		if (isFluxDynamic()) {
-//			for (int j = 0; j < getTargetVariablesLengths()[0]; j++) {
-//				IloNumExpr j_j_min = cplex.numExpr();
-//				if (FluxMinimizationUtils.reverseReaction.containsKey(j)) {
-//					j_j_min = cplex.diff(
-//							getVariables()[fluxPosition + j],
-//							getVariables()[fluxPosition	+ FluxMinimizationUtils.reverseReaction.get(j)]);
-//				} else {
-//					j_j_min = getVariables()[fluxPosition + j];
-//				}
-//				
-////				cplex.addGe(cplex.constant(cplex.getValue(j_j_min)), epsilon);
-//				cplex.maximize(j_j_min);
-//			}
-//		}
+		// The constraint supporting little flux changes has never restricted
+		// the problem, so it is omitted here.
 		
 		// Constraint of using known fluxes from the given multitable
 		if (this.useKnownFluxes) {
@@ -159,73 +79,33 @@ public class FluxMinimizationIIa extends FluxMinimizationII {
 				// Flux J_j
 				if ((this.getTimePointStep() > 0) && !Double.isNaN(this.completeNetFluxes[this.getTimePointStep() - 1][j])) {
 					double knownFluxValue = this.completeNetFluxes[this.getTimePointStep() - 1][j];
-
-					IloNumExpr j_j_min = cplex.numExpr();
-					j_j_min = getVariables()[fluxPosition + j];
-					cplex.addEq(j_j_min, knownFluxValue);
+					addConstraint(solver, new int[] {fluxPosition + j}, new double[] {1d}, Solver.Relation.EQUAL, knownFluxValue);
 				}
 			}
 		}
 		
 		// Constraint flux pairs
 		if (fluxPairs != null) {
+			Pattern pPlus = Pattern.compile("\\+(\\d+)");
+			Pattern pMinus = Pattern.compile("\\-(\\d+)");
 			for (int j = 0; j < fluxPairs.length; j++) {
-//				System.out.println(fluxPairs[j]);
 				if (fluxPairs[j].replaceAll("[\\+\\-\\=\\d]", "").length() > 0) {
 					continue;
 				}
 				String[] hEq = fluxPairs[j].split("=");
-				IloNumExpr leftFluxes = null;
-				IloNumExpr rightFluxes = null;
-				
-				Pattern pPlus = Pattern.compile("\\+(\\d+)");
-				Pattern pMinus = Pattern.compile("\\-(\\d+)");
-				
-				Matcher mPlus = pPlus.matcher(hEq[1]);
-				while (mPlus.find()) {
-					int iPlus = Integer.parseInt(mPlus.group(1));
-					if (rightFluxes == null) {
-						rightFluxes = getVariables()[fluxPosition + iPlus];
+				// left - right = 0, both sides are read from hEq[1] as above
+				Map<Integer, Double> coefficients = new LinkedHashMap<Integer, Double>();
+				for (int side = 1; side >= -1; side -= 2) {
+					Matcher mPlus = pPlus.matcher(hEq[1]);
+					while (mPlus.find()) {
+						addCoefficient(coefficients, fluxPosition + Integer.parseInt(mPlus.group(1)), side);
 					}
-					else {
-						rightFluxes = cplex.sum(rightFluxes, getVariables()[fluxPosition + iPlus]);
+					Matcher mMinus = pMinus.matcher(hEq[1]);
+					while (mMinus.find()) {
+						addCoefficient(coefficients, fluxPosition + Integer.parseInt(mMinus.group(1)), -side);
 					}
 				}
-
-				mPlus = pPlus.matcher(hEq[1]);
-				while (mPlus.find()) {
-					int iPlus = Integer.parseInt(mPlus.group(1));
-					if (leftFluxes == null) {
-						leftFluxes = getVariables()[fluxPosition + iPlus];
-					}
-					else {
-						leftFluxes = cplex.sum(leftFluxes, getVariables()[fluxPosition + iPlus]);
-					}
-				}
-
-				Matcher mMinus = pMinus.matcher(hEq[1]);
-				while (mMinus.find()) {
-					int iMinus = Integer.parseInt(mMinus.group(1));
-					if (rightFluxes == null) {
-						rightFluxes = cplex.negative(getVariables()[fluxPosition + iMinus]);
-					}
-					else {
-						rightFluxes = cplex.diff(rightFluxes, getVariables()[fluxPosition + iMinus]);
-					}
-				}
-				
-				mMinus = pMinus.matcher(hEq[1]);
-				while (mMinus.find()) {
-					int iMinus = Integer.parseInt(mMinus.group(1));
-					if (leftFluxes == null) {
-						leftFluxes = cplex.negative(getVariables()[fluxPosition + iMinus]);
-					}
-					else {
-						leftFluxes = cplex.diff(leftFluxes, getVariables()[fluxPosition + iMinus]);
-					}
-				}
-				
-				cplex.addEq(leftFluxes, rightFluxes);
+				addConstraint(solver, coefficients, Solver.Relation.EQUAL, 0d);
 			}
 		}
 		
@@ -246,79 +126,80 @@ public class FluxMinimizationIIa extends FluxMinimizationII {
 				int forward = Integer.parseInt(h[0].split(",")[0]);
 				int backward = Integer.parseInt(h[0].split(",")[1]);
 				int species = Integer.parseInt(h[1]);
-				IloNumExpr netFlux = cplex.diff(getVariables()[fluxPosition + forward], getVariables()[fluxPosition + backward]);
 				double deltaConc = this.completeConcentrations[this.getTimePointStep()][species] - this.completeConcentrations[this.getTimePointStep() - 1][species];
-				
-					cplex.addLe(netFlux, cplex.constant(sign * this.conversionFactor * deltaConc));
-			
+				Map<Integer, Double> coefficients = new LinkedHashMap<Integer, Double>();
+				addCoefficient(coefficients, fluxPosition + forward, 1d);
+				addCoefficient(coefficients, fluxPosition + backward, -1d);
+				addConstraint(solver, coefficients, Solver.Relation.LESS_EQUAL, sign * this.conversionFactor * deltaConc);
 			}
 		}
 		
 		// Constraint z_m (t_i+1) >= 0
 		if (isConstraintZm()) {
 			for (int m = 0; m < speciesCount; m++) {
-				// Concentration z_m (t_i+1)
-				cplex.addGe(getVariables()[concentrationPosition + m], 0);
+				setBounds(solver, concentrationPosition + m, Math.max(0d, this.lowerBounds[concentrationPosition + m]), this.upperBounds[concentrationPosition + m]);
 			}
 		}
 		
 		// Computation of z_m (t_i+1)
-		
-		// Use this computation of delta_t:
-		// Only if each timepoint has the same distance to its neighboring timepoint
-		double delta_t = DynamicFBA.dFBATimePoints[1] - DynamicFBA.dFBATimePoints[0];
-		if(this.getTimePointStep() > 0) {
-			delta_t = DynamicFBA.dFBATimePoints[this.getTimePointStep()] - DynamicFBA.dFBATimePoints[this.getTimePointStep()-1];
-		}
-		
+		double delta_t = getDeltaT();
 		for (int i = 0; i < getTargetVariablesLengths()[1]; i++) { // species count
-			
-			// Concentrations 
 			double[] c_k_ti = this.completeConcentrations[this.getTimePointStep()];
 			
 			if (this.getTimePointStep() == 0) {
-				// In the first time point step 0, there is no c_k (t_i+1).
-				// t_i+1 would be time point step 1, not 0!
 				if (!Double.isNaN(c_k_ti[i])) {
-					cplex.addEq(getVariables()[concentrationPosition + i], cplex.constant(c_k_ti[i]));
-				} else {
-					// TODO if currentConcentrations[n] is NaN???
+					addConstraint(solver, new int[] {concentrationPosition + i}, new double[] {1d}, Solver.Relation.EQUAL, c_k_ti[i]);
 				}
 			} else {
 				double[] c_k_ti_1 = completeConcentrations[this.getTimePointStep() - 1];
 				if(this.usePreviousEstimations) {
 					double estimated = previousEstimatedConcentrations[i];
-					// allowing errors of 10 % // TODO check error assumption
-					if (Double.isNaN(c_k_ti_1[i]) && !Double.isNaN(estimated)) { // || (Math.abs(given - estimated) < Math.abs(0.10 * given))) {
-						// if given is NaN or estimated fits better than given
+					if (Double.isNaN(c_k_ti_1[i]) && !Double.isNaN(estimated)) {
 						c_k_ti_1[i] = estimated;
 					}
 				}
-				if (!Double.isNaN(c_k_ti_1[i])) { 
-					IloNumExpr computedConcentration = cplex.numExpr();
-					IloNumExpr fNJ = cplex.numExpr();
-					
-					for (int j = 0; j < this.N_all.getColumnDimension(); j++) {
-						double factor = factors[i] * this.N_all.get(i, j);
-						if (factor != 0) {
-							fNJ = cplex.sum(fNJ, cplex.prod(cplex.constant(factor),
-									getVariables()[fluxPosition + j]));
-						}
-					}
-					
-					computedConcentration = cplex.sum(cplex.constant(c_k_ti_1[i]), cplex.prod(fNJ, cplex.constant(delta_t)));
-					cplex.addEq(getVariables()[concentrationPosition + i], computedConcentration);
-//					if (!Double.isNaN(c_m_measured[n])) {
-//						cplex.addLe(cplex.abs(cplex.diff(getVariables()[concentrationPosition + n],
-//							c_m_measured[n])), 1E-5);
-//					}
-				} else {
-					// TODO if last concentration (completeConcentrations[this.getTimePointStep()-1][n]) is NaN???
+				if (!Double.isNaN(c_k_ti_1[i])) {
+					addConcentrationChange(solver, i, factors[i], delta_t, c_k_ti_1[i]);
 				}
 			}
-			
 		}
 	}
 
-	
+	/**
+	 * Adds the given coefficient to the coefficient of the variable.
+	 * 
+	 * @param coefficients
+	 * @param variable
+	 * @param coefficient
+	 */
+	private static void addCoefficient(Map<Integer, Double> coefficients, int variable, double coefficient) {
+		Double current = coefficients.get(variable);
+		coefficients.put(variable, current == null ? coefficient : current.doubleValue() + coefficient);
+	}
+
+	/**
+	 * Adds a constraint unless all of its coefficients cancel out.
+	 * 
+	 * @param solver
+	 * @param coefficients
+	 * @param relation
+	 * @param rhs
+	 * @throws SolverException
+	 */
+	private void addConstraint(Solver solver, Map<Integer, Double> coefficients, Solver.Relation relation, double rhs) throws SolverException {
+		int variables[] = new int[coefficients.size()];
+		double values[] = new double[coefficients.size()];
+		int k = 0;
+		for (Map.Entry<Integer, Double> entry : coefficients.entrySet()) {
+			if (entry.getValue().doubleValue() != 0d) {
+				variables[k] = entry.getKey();
+				values[k] = entry.getValue();
+				k++;
+			}
+		}
+		if (k > 0) {
+			addConstraint(solver, Arrays.copyOf(variables, k), Arrays.copyOf(values, k), relation, rhs);
+		}
+	}
+
 }
@@ -15,13 +15,15 @@
  */
 package org.sbml.simulator.fba.dynamic;
 
-import ilog.concert.IloException;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
-
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
 import org.simulator.math.odes.MultiTable;
 
 /**
@@ -29,7 +31,7 @@ import org.simulator.math.odes.MultiTable;
  * @author Robin F&auml;hnrich
  * @since 1.0
  */
-public abstract class TargetFunction {
+public abstract class TargetFunction implements Cloneable {
 	
 	/**
 	 * A {@link Logger} for this class.
@@ -43,14 +45,19 @@ public abstract class TargetFunction {
 	private double[] coefficients;
 	
 	/*
-	 * Save the variables of the CPLEX object in a {@link IloNumVar[]}
+	 * Save the current step of points in time of the dynamic FBA.
 	 */
-	private IloNumVar[] variables;
+	private int timePointStep;
 	
 	/*
-	 * Save the current step of points in time of the dynamic FBA.
+	 * The original SBML document of the dynamic FBA
 	 */
-	private int timePointStep;
+	protected SBMLDocument originalDocument;
+	
+	/*
+	 * Save all points in time of the dynamic FBA.
+	 */
+	private double[] timePoints;
 	
 	/*
 	 * Save the variables that are solved by CPLEX in a double array
@@ -62,6 +69,48 @@ public abstract class TargetFunction {
 	 */
 	private int cplexIterations = 50000;
 	
+	/*
+	 * The directory into which CPLEX writes the problem of each point in time
+	 * before solving it, or null
+	 */
+	private File debugDirectory = null;
+	
+	/*
+	 * The number of iterations of all solver calls of this target function
+	 */
+	private long iterationCount = 0;
+	
+	/*
+	 * The solver that contains the problem described by the following records
+	 */
+	private Solver problemSolver = null;
+	
+	/*
+	 * The variables, coefficients, relations and right-hand sides of the rows
+	 * that have been added to the problem solver
+	 */
+	private List<int[]> rowVariables;
+	private List<double[]> rowCoefficients;
+	private List<Solver.Relation> rowRelations;
+	private List<Double> rowRightHandSides;
+	
+	/*
+	 * The bounds of the variables in the problem solver and the bounds that
+	 * are requested while the problem is updated
+	 */
+	private double[] lowerBoundRecord, upperBoundRecord, pendingLowerBounds, pendingUpperBounds;
+	
+	/*
+	 * Whether createProblem updates the existing problem instead of adding to
+	 * an empty solver, and whether the update has found a different structure
+	 */
+	private boolean updating = false, structureChanged = false;
+	
+	/*
+	 * The next variable and the next row during an update
+	 */
+	private int variableCursor, rowCursor;
+	
 	
 	/**
 	 * Alternatively (for use when needed).
@@ -83,35 +132,53 @@ public abstract class TargetFunction {
 	}
 	
 	/**
-	 * @return The variables of the CPLEX object
+	 * @return The current step of points in time
 	 */
-	public IloNumVar[] getVariables() {
-		return this.variables;
+	public int getTimePointStep() {
+		return this.timePointStep;
 	}
 	
 	/**
-	 * Set the variables of the CPLEX object.
+	 * Set the current step of points in time.
 	 * 
-	 * @param variables
+	 * @param timePointStep
 	 */
-	public void setVariables(IloNumVar[] variables) {
-		this.variables = variables;
+	public void setTimePointStep(int timePointStep) {
+		this.timePointStep = timePointStep;
 	}
 	
 	/**
-	 * @return The current step of points in time
+	 * @return The original SBML document of the dynamic FBA
 	 */
-	public int getTimePointStep() {
-		return this.timePointStep;
+	public SBMLDocument getOriginalDocument() {
+		return this.originalDocument;
 	}
 	
 	/**
-	 * Set the current step of points in time.
+	 * Set the original SBML document of the dynamic FBA.
 	 * 
-	 * @param timePointStep
+	 * @param originalDocument
+	 * @since 2.1
 	 */
-	public void setTimePointStep(int timePointStep) {
-		this.timePointStep = timePointStep;
+	public void setOriginalDocument(SBMLDocument originalDocument) {
+		this.originalDocument = originalDocument;
+	}
+	
+	/**
+	 * @return All points in time of the dynamic FBA
+	 */
+	public double[] getTimePoints() {
+		return this.timePoints;
+	}
+	
+	/**
+	 * Set all points in time of the dynamic FBA.
+	 * 
+	 * @param timePoints
+	 * @since 2.1
+	 */
+	public void setTimePoints(double[] timePoints) {
+		this.timePoints = timePoints;
 	}
 	
 	/**
@@ -121,6 +188,54 @@ public abstract class TargetFunction {
 		return this.solution;
 	}
 	
+	/**
+	 * Set the solution to the variables of the optimization problem, e.g.,
+	 * the one that a copy of this target function has found.
+	 * 
+	 * @param solution
+	 * @since 2.1
+	 */
+	public void setSolution(double[] solution) {
+		this.solution = solution;
+	}
+	
+	/**
+	 * @return <CODE>true</CODE> if the optimization problem of a point in time
+	 *         does not depend on the solutions of the previous points in time,
+	 *         so that the points in time can be solved in any order by
+	 *         {@link #copy() copies} of this target function
+	 * @since 2.1
+	 */
+	public boolean isTimePointIndependent() {
+		return false;
+	}
+	
+	/**
+	 * Create a copy that shares the data of this target function but has its
+	 * own solution and does not know the problem in any solver.
+	 * 
+	 * @return the copy
+	 * @since 2.1
+	 */
+	public TargetFunction copy() {
+		TargetFunction copy;
+		try {
+			copy = (TargetFunction) super.clone();
+		} catch (CloneNotSupportedException exc) {
+			throw new IllegalStateException(exc);
+		}
+		copy.solution = null;
+		copy.problemSolver = null;
+		copy.rowVariables = null;
+		copy.rowCoefficients = null;
+		copy.rowRelations = null;
+		copy.rowRightHandSides = null;
+		copy.updating = false;
+		copy.structureChanged = false;
+		copy.iterationCount = 0;
+		return copy;
+	}
+	
 	/**
 	 * Set the CPLEX iterations (default: 50000 iterations).
 	 * 
@@ -130,6 +245,54 @@ public abstract class TargetFunction {
 		this.cplexIterations = iterations;
 	}
 	
+	/**
+	 * @return The maximal number of solver iterations per point in time
+	 * @since 2.1
+	 */
+	public int getCplexIterations() {
+		return this.cplexIterations;
+	}
+	
+	/**
+	 * @return The directory into which CPLEX writes the problem of each point
+	 *         in time, or <CODE>null</CODE>
+	 * @since 2.1
+	 */
+	public File getDebugDirectory() {
+		return this.debugDirectory;
+	}
+	
+	/**
+	 * Let CPLEX write the problem of each point in time into a file in the LP
+	 * format of the given directory before solving it, instead of printing
+	 * it (default: <CODE>null</CODE>, no export).
+	 * 
+	 * @param debugDirectory
+	 * @since 2.1
+	 */
+	public void setDebugDirectory(File debugDirectory) {
+		this.debugDirectory = debugDirectory;
+	}
+	
+	/**
+	 * @return The number of iterations of all solver calls of this target
+	 *         function (copies count their own iterations)
+	 * @since 2.1
+	 */
+	public long getIterationCount() {
+		return this.iterationCount;
+	}
+	
+	/**
+	 * Add the iterations of a solver call to the iteration count.
+	 * 
+	 * @param iterations
+	 * @since 2.1
+	 */
+	protected void addIterations(long iterations) {
+		this.iterationCount += iterations;
+	}
+	
 	/**
 	 * Set the complete interpolated concentrations.
 	 * 
@@ -165,84 +328,253 @@ public abstract class TargetFunction {
 	public abstract boolean isMaxProblem();
 	
 	/**
-	 * Initialize the CPLEX variables with lower and upper bounds and
-	 * alternatively the target coefficients.
+	 * @return <CODE>true</CODE> if the optimization problem is a linear or
+	 *         convex quadratic program that can be created by
+	 *         {@link #createProblem(Solver)} in every {@link Solver},
+	 *         <CODE>false</CODE> if it requires a particular solver (see
+	 *         {@link org.sbml.simulator.fba.dynamic.cplex.CplexTargetFunction})
+	 * @since 2.1
+	 */
+	public boolean isLinearProgram() {
+		return false;
+	}
+	
+	/**
+	 * Prepare the variables and their bounds before the first point in time.
 	 * 
-	 * @param cplex
-	 * @throws IloException
+	 * @param solver the solver that is passed to
+	 *        {@link #optimizeProblem(Solver)} for the points in time
+	 * @throws SolverException if the target function cannot be solved by the
+	 *         given solver
+	 * @since 2.1
 	 */
-	public abstract void initCplexVariables(IloCplex cplex) throws IloException;
+	public abstract void initVariables(Solver solver) throws SolverException;
 	
 	/**
-	 * Create a new target function that will be solved by CPLEX.
+	 * Create the variables, the target function and the constraints of the
+	 * current point in time in an empty solver.
 	 * 
-	 * @param cplex
-	 * @return The target function in a {@link IloNumExpr}
-	 * @throws IloException
+	 * @param solver
+	 * @throws SolverException if the target function is not a linear program
+	 * @since 2.1
 	 */
-	public abstract IloNumExpr createTargetFunction(IloCplex cplex) throws IloException;
+	public void createProblem(Solver solver) throws SolverException {
+		throw new SolverException(getClass().getSimpleName() + " is not a linear program.");
+	}
 	
 	/**
-	 * If the target function belongs to a minimization problem, minimize it, if
-	 * the target function belongs to a maximization problem, maximize it.
+	 * Let the solver solve the optimization problem and set the solution of
+	 * the variables.
 	 * 
-	 * @param cplex
-	 * @param expr The target function in a {@link IloNumExpr}
-	 * @throws IloException
-	 */
-	public void optimizeTargetFunction(IloCplex cplex, IloNumExpr expr) throws IloException {
-		if (isMinProblem()) {
-			cplex.addMinimize(expr);
-		} else if (isMaxProblem()) {
-			cplex.addMaximize(expr);
+	 * @param solver
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	public void solve(Solver solver) throws SolverException {
+		solver.setIterationLimit(this.cplexIterations);
+		
+		boolean solved = solver.solve();
+		addIterations(solver.getIterationCount());
+		
+		if (solved) {
+			this.solution = solver.getValues();
 		} else {
-			logger.warning("No minimization or maximization problem!");
+			this.solution = null;
+			logger.warning("No feasible solution found!");
 		}
 	}
 	
 	/**
-	 * Add constraints to the CPLEX target function.
+	 * The solver solves the optimization problem of the current point in time.
+	 * If the solver still contains the problem of the previous point in time
+	 * and its structure has not changed, only the changed coefficients, right-
+	 * hand sides and bounds are updated, so that the solver keeps what it has
+	 * derived from the structure, e.g., the ordering and the sparsity pattern
+	 * of the factorization in the
+	 * {@link org.sbml.simulator.fba.solver.InteriorPointSolver}. The previous
+	 * solution is the starting point; the interior-point solver also keeps
+	 * the multipliers of the previous solve in this case.
 	 * 
-	 * @param cplex
-	 * @throws IloException
+	 * @param solver
+	 * @throws SolverException
+	 * @since 2.1
 	 */
-	public abstract void addConstraintsToTargetFunction(IloCplex cplex) throws IloException;
+	public void optimizeProblem(Solver solver) throws SolverException {
+		double[] previousSolution = this.solution;
+		if (!updateProblem(solver)) {
+			solver.clear();
+			problemSolver = solver;
+			rowVariables = new ArrayList<int[]>();
+			rowCoefficients = new ArrayList<double[]>();
+			rowRelations = new ArrayList<Solver.Relation>();
+			rowRightHandSides = new ArrayList<Double>();
+			lowerBoundRecord = new double[0];
+			upperBoundRecord = new double[0];
+			createProblem(solver);
+		}
+		if ((previousSolution != null) && (previousSolution.length == solver.getVariableCount())) {
+			solver.setStartingPoint(previousSolution);
+		}
+		solve(solver);
+	}
 	
 	/**
-	 * Let CPLEX solve the optimization problem (if necessary check the CPLEX
-	 * iterations) and set the solution of the variables.
+	 * Update the problem of the previous point in time to the current one by
+	 * calling {@link #createProblem(Solver)}, whose calls of
+	 * {@link #addVariables(Solver, double[], double[])},
+	 * {@link #setBounds(Solver, int, double, double)} and
+	 * {@link #addConstraint(Solver, int[], double[], Solver.Relation, double)}
+	 * then only change what differs.
 	 * 
-	 * @param cplex
-	 * @throws IloException
+	 * @param solver
+	 * @return <CODE>false</CODE> if the solver does not contain the previous
+	 *         problem or if the structure of the problem has changed, e.g.,
+	 *         because a concentration is unknown at this point in time. The
+	 *         problem must then be created from scratch.
+	 * @throws SolverException
+	 * @since 2.1
 	 */
-	public void solveCplex(IloCplex cplex) throws IloException {
-		cplex.setParam(IloCplex.IntParam.BarItLim, this.cplexIterations);
-		
-		boolean solved = cplex.solve();
-		
-		if (solved) {
-			this.solution = cplex.getValues(this.variables);
-		} else {
-			this.solution = null;
-			logger.warning("No feasible solution found!");
+	protected boolean updateProblem(Solver solver) throws SolverException {
+		if ((solver != problemSolver) || (rowVariables == null)
+				|| (solver.getConstraintCount() != rowVariables.size())
+				|| (solver.getVariableCount() != lowerBoundRecord.length)) {
+			return false;
+		}
+		updating = true;
+		structureChanged = false;
+		variableCursor = 0;
+		rowCursor = 0;
+		pendingLowerBounds = lowerBoundRecord.clone();
+		pendingUpperBounds = upperBoundRecord.clone();
+		try {
+			createProblem(solver);
+		} finally {
+			updating = false;
+		}
+		if (structureChanged || (variableCursor != lowerBoundRecord.length) || (rowCursor != rowVariables.size())) {
+			problemSolver = null;
+			return false;
+		}
+		for (int j = 0; j < lowerBoundRecord.length; j++) {
+			if ((pendingLowerBounds[j] != lowerBoundRecord[j]) || (pendingUpperBounds[j] != upperBoundRecord[j])) {
+				solver.setBounds(j, pendingLowerBounds[j], pendingUpperBounds[j]);
+				lowerBoundRecord[j] = pendingLowerBounds[j];
+				upperBoundRecord[j] = pendingUpperBounds[j];
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Add variables to the problem in {@link #createProblem(Solver)}.
+	 * 
+	 * @param solver
+	 * @param lowerBounds
+	 * @param upperBounds
+	 * @return the index of the first new variable
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	protected int addVariables(Solver solver, double[] lowerBounds, double[] upperBounds) throws SolverException {
+		if (!updating) {
+			int first = solver.addVariables(lowerBounds, upperBounds);
+			lowerBoundRecord = Arrays.copyOf(lowerBoundRecord, first + lowerBounds.length);
+			upperBoundRecord = Arrays.copyOf(upperBoundRecord, first + upperBounds.length);
+			System.arraycopy(lowerBounds, 0, lowerBoundRecord, first, lowerBounds.length);
+			System.arraycopy(upperBounds, 0, upperBoundRecord, first, upperBounds.length);
+			return first;
 		}
+		int first = variableCursor;
+		variableCursor += lowerBounds.length;
+		if (variableCursor > pendingLowerBounds.length) {
+			structureChanged = true;
+		} else if (!structureChanged) {
+			System.arraycopy(lowerBounds, 0, pendingLowerBounds, first, lowerBounds.length);
+			System.arraycopy(upperBounds, 0, pendingUpperBounds, first, upperBounds.length);
+		}
+		return first;
 	}
 	
 	/**
-	 * CPLEX solves the optimization problem.
+	 * Set the bounds of a variable in {@link #createProblem(Solver)}.
 	 * 
-	 * @param cplex
-	 * @throws IloException
-	 */
-	public void optimizeProblem(IloCplex cplex) throws IloException {
-		// Create target function
-		IloNumExpr targetFunction = createTargetFunction(cplex);
-		// Optimize target function
-		optimizeTargetFunction(cplex, targetFunction);
-		// Add constraints to target function
-		addConstraintsToTargetFunction(cplex);
-		// Solve the optimization problem
-		solveCplex(cplex);
+	 * @param solver
+	 * @param variable
+	 * @param lowerBound
+	 * @param upperBound
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	protected void setBounds(Solver solver, int variable, double lowerBound, double upperBound) throws SolverException {
+		if (!updating) {
+			solver.setBounds(variable, lowerBound, upperBound);
+			lowerBoundRecord[variable] = lowerBound;
+			upperBoundRecord[variable] = upperBound;
+		} else if (!structureChanged && (variable < variableCursor)) {
+			pendingLowerBounds[variable] = lowerBound;
+			pendingUpperBounds[variable] = upperBound;
+		}
+	}
+	
+	/**
+	 * Add a row to the problem in {@link #createProblem(Solver)}. The
+	 * variables of a row must be distinct.
+	 * 
+	 * @param solver
+	 * @param variables
+	 * @param coefficients
+	 * @param relation
+	 * @param rhs
+	 * @return the index of the row, or -1 if the update has found a different
+	 *         structure
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	protected int addConstraint(Solver solver, int[] variables, double[] coefficients, Solver.Relation relation, double rhs) throws SolverException {
+		if (!updating) {
+			int row = solver.addConstraint(variables, coefficients, relation, rhs);
+			rowVariables.add(variables.clone());
+			rowCoefficients.add(coefficients.clone());
+			rowRelations.add(relation);
+			rowRightHandSides.add(rhs);
+			return row;
+		}
+		if (structureChanged) {
+			return -1;
+		}
+		int row = rowCursor++;
+		if ((row >= rowVariables.size()) || (rowRelations.get(row) != relation) || !Arrays.equals(rowVariables.get(row), variables)) {
+			structureChanged = true;
+			return -1;
+		}
+		double[] previous = rowCoefficients.get(row);
+		for (int k = 0; k < variables.length; k++) {
+			if (previous[k] != coefficients[k]) {
+				solver.setCoefficient(row, variables[k], coefficients[k]);
+				previous[k] = coefficients[k];
+			}
+		}
+		if (rowRightHandSides.get(row).doubleValue() != rhs) {
+			solver.setRightHandSide(row, rhs);
+			rowRightHandSides.set(row, rhs);
+		}
+		return row;
+	}
+	
+	/**
+	 * Set the target function in {@link #createProblem(Solver)}.
+	 * 
+	 * @param solver
+	 * @param linear
+	 * @param quadratic
+	 * @param minimize
+	 * @throws SolverException
+	 * @since 2.1
+	 */
+	protected void setObjective(Solver solver, double[] linear, double[] quadratic, boolean minimize) throws SolverException {
+		if (!structureChanged && (linear.length <= solver.getVariableCount())) {
+			solver.setObjective(linear, quadratic, minimize);
+		}
 	}
 	
 	/**
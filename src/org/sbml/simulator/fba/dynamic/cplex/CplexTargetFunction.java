@@ -0,0 +1,222 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.dynamic.cplex;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.cplex.IloCplex;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.sbml.simulator.fba.dynamic.TargetFunction;
+import org.sbml.simulator.fba.solver.CplexSolver;
+import org.sbml.simulator.fba.solver.Solver;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory;
+
+/**
+ * A target function whose optimization problem is formulated directly for
+ * CPLEX, e.g., with absolute values or logical constraints, and can therefore
+ * only be solved by a {@link CplexSolver}. All exceptions of CPLEX are
+ * reported as {@link SolverException}s, so that the
+ * {@link org.sbml.simulator.fba.dynamic.DynamicFBA} does not depend on CPLEX.
+ *
+ * @since 2.1
+ */
+public abstract class CplexTargetFunction extends TargetFunction {
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(CplexTargetFunction.class.getName());
+
+	/*
+	 * Save the variables of the CPLEX object in a {@link IloNumVar[]}
+	 */
+	private IloNumVar[] variables;
+
+	/**
+	 * @return The variables of the CPLEX object
+	 */
+	public IloNumVar[] getVariables() {
+		return this.variables;
+	}
+
+	/**
+	 * Set the variables of the CPLEX object.
+	 *
+	 * @param variables
+	 */
+	public void setVariables(IloNumVar[] variables) {
+		this.variables = variables;
+	}
+
+	/**
+	 *
+	 * @param solver
+	 * @return the CPLEX object of the given solver
+	 * @throws SolverException if the solver is not a {@link CplexSolver}
+	 */
+	private IloCplex getCplex(Solver solver) throws SolverException {
+		if (!SolverFactory.isCplex(solver)) {
+			throw new SolverException(getClass().getSimpleName() + " requires CPLEX.");
+		}
+		return ((CplexSolver) solver).getCplex();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#initVariables(org.sbml.simulator.fba.solver.Solver)
+	 */
+	@Override
+	public void initVariables(Solver solver) throws SolverException {
+		try {
+			initCplexVariables(getCplex(solver));
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/**
+	 * CPLEX solves the optimization problem of the current point in time.
+	 * Afterwards, the CPLEX object is reset, because the problem of the next
+	 * point in time is created from scratch.
+	 *
+	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#optimizeProblem(org.sbml.simulator.fba.solver.Solver)
+	 */
+	@Override
+	public void optimizeProblem(Solver solver) throws SolverException {
+		IloCplex cplex = getCplex(solver);
+		try {
+			optimizeProblem(cplex);
+			// (Reset the CPLEX object! If not, a MultipleObjectiveException is waiting!)
+			cplex.clearModel();
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/**
+	 * Initialize the CPLEX variables with lower and upper bounds and
+	 * alternatively the target coefficients.
+	 *
+	 * @param cplex
+	 * @throws IloException
+	 */
+	public abstract void initCplexVariables(IloCplex cplex) throws IloException;
+
+	/**
+	 * Create a new target function that will be solved by CPLEX.
+	 *
+	 * @param cplex
+	 * @return The target function in a {@link IloNumExpr}
+	 * @throws IloException
+	 */
+	public abstract IloNumExpr createTargetFunction(IloCplex cplex) throws IloException;
+
+	/**
+	 * If the target function belongs to a minimization problem, minimize it, if
+	 * the target function belongs to a maximization problem, maximize it.
+	 *
+	 * @param cplex
+	 * @param expr The target function in a {@link IloNumExpr}
+	 * @throws IloException
+	 */
+	public void optimizeTargetFunction(IloCplex cplex, IloNumExpr expr) throws IloException {
+		if (isMinProblem()) {
+			cplex.addMinimize(expr);
+		} else if (isMaxProblem()) {
+			cplex.addMaximize(expr);
+		} else {
+			logger.warning("No minimization or maximization problem!");
+		}
+	}
+
+	/**
+	 * Add constraints to the CPLEX target function.
+	 *
+	 * @param cplex
+	 * @throws IloException
+	 */
+	public abstract void addConstraintsToTargetFunction(IloCplex cplex) throws IloException;
+
+	/**
+	 * Let CPLEX solve the optimization problem (if necessary check the CPLEX
+	 * iterations) and set the solution of the variables.
+	 *
+	 * @param cplex
+	 * @throws IloException
+	 */
+	public void solveCplex(IloCplex cplex) throws IloException {
+		cplex.setParam(IloCplex.IntParam.BarItLim, getCplexIterations());
+
+		boolean solved = cplex.solve();
+		addIterations(cplex.getNiterations() + cplex.getNbarrierIterations());
+
+		if (solved) {
+			setSolution(cplex.getValues(this.variables));
+		} else {
+			setSolution(null);
+			logger.warning("No feasible solution found!");
+		}
+	}
+
+	/**
+	 * CPLEX solves the optimization problem.
+	 *
+	 * @param cplex
+	 * @throws IloException
+	 */
+	public void optimizeProblem(IloCplex cplex) throws IloException {
+		// Create target function
+		IloNumExpr targetFunction = createTargetFunction(cplex);
+		// Optimize target function
+		optimizeTargetFunction(cplex, targetFunction);
+		// Add constraints to target function
+		addConstraintsToTargetFunction(cplex);
+		// Export the problem for debugging
+		if (getDebugDirectory() != null) {
+			cplex.exportModel(new File(getDebugDirectory(), getClass().getSimpleName() + "_" + getTimePointStep() + ".lp").getPath());
+		}
+		// Solve the optimization problem
+		solveCplex(cplex);
+	}
+
+	/**
+	 * Create the linear expression sum_k coefficients[k] * x[offset + k] of
+	 * the CPLEX variables x from the non-zero coefficients only. Nesting
+	 * cplex.sum and cplex.prod instead copies the growing expression for
+	 * each term.
+	 *
+	 * @param cplex
+	 * @param coefficients
+	 * @param offset the variable of the first coefficient
+	 * @return the linear expression
+	 * @throws IloException
+	 */
+	protected IloLinearNumExpr linearExpression(IloCplex cplex, double[] coefficients, int offset) throws IloException {
+		IloLinearNumExpr expr = cplex.linearNumExpr();
+		for (int k = 0; k < coefficients.length; k++) {
+			if (coefficients[k] != 0d) {
+				expr.addTerm(coefficients[k], this.variables[offset + k]);
+			}
+		}
+		return expr;
+	}
+
+}
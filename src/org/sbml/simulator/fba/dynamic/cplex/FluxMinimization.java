@@ -13,9 +13,10 @@
  * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
  * ---------------------------------------------------------------------
  */
-package org.sbml.simulator.fba.dynamic;
+package org.sbml.simulator.fba.dynamic.cplex;
 
 import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.concert.IloNumVarType;
@@ -31,7 +32,8 @@ import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Reaction;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.Species;
-import org.sbml.simulator.fba.controller.FluxMinimizationUtils;
+import org.sbml.simulator.fba.controller.FBAContext;
+import org.sbml.simulator.stability.math.SparseStoichiometricMatrix;
 import org.sbml.simulator.stability.math.StabilityMatrix;
 import org.sbml.simulator.stability.math.StoichiometricMatrix;
 import org.simulator.math.odes.MultiTable;
@@ -47,7 +49,7 @@ import org.simulator.math.odes.MultiTable;
  * @author Robin F&auml;hnrich
  * @since 1.0
  */
-public class FluxMinimization extends TargetFunction {
+public class FluxMinimization extends CplexTargetFunction {
 	
 	/**
 	 * A {@link Logger} for this class.
@@ -73,6 +75,11 @@ public class FluxMinimization extends TargetFunction {
 	 */
 	private StabilityMatrix K_intTransposed;
 	
+	/**
+	 * The {@link FBAContext} of the original document and the system boundaries
+	 */
+	private FBAContext context;
+	
 	/**
 	 * Ideal Gas Constant (unit J/mol*K)
 	 */
@@ -250,23 +257,19 @@ public class FluxMinimization extends TargetFunction {
 	 * @throws Exception
 	 */
 	private void prepareFluxMinimization() throws Exception {
-		// If system boundaries are read from file...
+		// If system boundaries are read from file use them,
+		// otherwise they are computed
 		if (this.isSystemBoundaries) {
-			this.expandedDocument = FluxMinimizationUtils.getExpandedDocument(DynamicFBA.originalDocument, this.readSystemBoundaries);
-			this.N_int_sys = FluxMinimizationUtils.getExpandedStoichiometricMatrix(DynamicFBA.originalDocument, this.readSystemBoundaries);
-			// Compute (with Tableau algorithm) and set flux vector
-			this.computedFluxVector = FluxMinimizationUtils.computeFluxVector(this.N_int_sys, null, this.expandedDocument);
-			// Set K_int_T
-			this.K_intTransposed = FluxMinimizationUtils.getSteadyStateMatrix();
+			this.context = FBAContext.getInstance(originalDocument, this.readSystemBoundaries);
 		} else {
-			//... or aren't available
-			this.expandedDocument = FluxMinimizationUtils.getExpandedDocument(DynamicFBA.originalDocument);
-			this.N_int_sys = FluxMinimizationUtils.getExpandedStoichiometricMatrix(DynamicFBA.originalDocument);
-			// Compute (with Tableau algorithm) and set flux vector
-			this.computedFluxVector = FluxMinimizationUtils.computeFluxVector(this.N_int_sys, null, this.expandedDocument);
-			// Set K_int_T
-			this.K_intTransposed = FluxMinimizationUtils.getSteadyStateMatrix();
+			this.context = FBAContext.getInstance(originalDocument);
 		}
+		this.expandedDocument = this.context.getExpandedDocument();
+		this.N_int_sys = this.context.getExpandedStoichiometricMatrix();
+		// Compute (with Tableau algorithm) and set flux vector
+		this.computedFluxVector = this.context.computeFluxVector(null);
+		// Set K_int_T
+		this.K_intTransposed = this.context.getSteadyStateMatrix();
 	}
 	
 	/* (non-Javadoc)
@@ -420,7 +423,7 @@ public class FluxMinimization extends TargetFunction {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#initCplexVariables(ilog.cplex.IloCplex)
+	 * @see org.sbml.simulator.fba.dynamic.cplex.CplexTargetFunction#initCplexVariables(ilog.cplex.IloCplex)
 	 */
 	@Override
 	public void initCplexVariables(IloCplex cplex) throws IloException {
@@ -449,28 +452,28 @@ public class FluxMinimization extends TargetFunction {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#createTargetFunction(ilog.cplex.IloCplex)
+	 * @see org.sbml.simulator.fba.dynamic.cplex.CplexTargetFunction#createTargetFunction(ilog.cplex.IloCplex)
 	 */
 	@Override
 	public IloNumExpr createTargetFunction(IloCplex cplex) throws IloException {
 		IloNumExpr function = cplex.numExpr();
 		
 		// One variable for all fluxes in the flux vector
-		IloNumExpr flux = cplex.numExpr();
-		
 		int fluxPosition = 0;
-		// Manhattan norm included
+		// Manhattan norm included: sum_i sum_k K_ki * x_k = sum_k (sum_i K_ki) * x_k
+		double[] fluxCoefficients = new double[getTargetVariablesLengths()[0]];
 		for (int k = 0; k < getTargetVariablesLengths()[0]; k++) {
+			double[] row = this.K_intTransposed.getRow(k);
 			for (int i = 0; i < this.expandedDocument.getModel().getReactionCount(); i++) {
-				IloNumExpr k_var = cplex.prod(this.K_intTransposed.getRow(k)[i], getVariables()[k]);
-				flux = cplex.sum(flux, k_var);
+				fluxCoefficients[k] += row[i];
 			}
 		}
+		IloNumExpr flux = linearExpression(cplex, fluxCoefficients, fluxPosition);
 		
 		// Concentrations 
-		IloNumExpr conc = cplex.numExpr();
 		int concentrationPosition = fluxPosition + getTargetVariablesLengths()[0];
 		double[] c_eq = this.completeConcentrations[this.getTimePointStep()];
+		IloNumExpr[] concTerms = new IloNumExpr[getTargetVariablesLengths()[1]];
 		for (int i = 0; i < getTargetVariablesLengths()[1]; i++) {
 			IloNumExpr c_i = getVariables()[i + concentrationPosition];
 			getVariables()[i + concentrationPosition].setName("conc" + i);
@@ -479,40 +482,29 @@ public class FluxMinimization extends TargetFunction {
 				if(Double.isInfinite(logConc)) {
 					logConc = this.lowerBounds[i + concentrationPosition];
 				}
-				conc = cplex.sum(conc, cplex.prod(cplex.constant(this.lambda_1), cplex.sum(cplex.square(c_i), cplex.prod(c_i, (-2) * logConc), cplex.square(cplex.constant(logConc)))));
+				concTerms[i] = cplex.sum(cplex.square(c_i), cplex.prod(c_i, (-2) * logConc), cplex.square(cplex.constant(logConc)));
 			} else {
 				double logcmin = Math.log(Math.pow(10, -10));
 				double logcmax = Math.log(Math.pow(10, -1));
-				conc = cplex.sum(conc, cplex.prod(cplex.constant(this.lambda_1), cplex.max(cplex.max(cplex.constant(0d), cplex.diff(logcmin, c_i)), cplex.diff(c_i, logcmax))));
+				concTerms[i] = cplex.max(cplex.max(cplex.constant(0d), cplex.diff(logcmin, c_i)), cplex.diff(c_i, logcmax));
 			}
 		}
+		IloNumExpr conc = cplex.prod(this.lambda_1, cplex.sum(concTerms));
 		
 		// L vector
-		IloNumExpr l = cplex.numExpr();
 		int lPosition = concentrationPosition + getTargetVariablesLengths()[1];
 		// Manhattan norm included
-		for (int i = 0; i < getTargetVariablesLengths()[2]; i++) {
-			getVariables()[i + lPosition].setName("l" + i);
-			l = cplex.sum(l, cplex.prod(cplex.constant(this.lambda_2), cplex.abs(getVariables()[i + lPosition])));
-		}
+		IloNumExpr l = cplex.prod(this.lambda_2, sumOfAbsoluteValues(cplex, lPosition, getTargetVariablesLengths()[2], "l"));
 		
 		// Error values
-		IloNumExpr error = cplex.numExpr();
 		int errorPosition = lPosition + getTargetVariablesLengths()[2];
 		// Manhattan norm included
-		for (int i = 0; i < getTargetVariablesLengths()[3]; i++) {
-			getVariables()[i + errorPosition].setName("e" + i);
-			error = cplex.sum(error, cplex.prod(cplex.constant(this.lambda_3), cplex.abs(getVariables()[i + errorPosition])));
-		}
+		IloNumExpr error = cplex.prod(this.lambda_3, sumOfAbsoluteValues(cplex, errorPosition, getTargetVariablesLengths()[3], "e"));
 		
 		// Gibbs energies
-		IloNumExpr gibbs = cplex.numExpr();
 		int gibbsPosition = errorPosition + getTargetVariablesLengths()[3];
 		// Manhattan norm included
-		for (int i = 0; i < getTargetVariablesLengths()[4]; i++) {
-			getVariables()[i + gibbsPosition].setName("g" + i);
-			gibbs = cplex.sum(gibbs, cplex.prod(cplex.constant(this.lambda_4), cplex.abs(getVariables()[i + gibbsPosition])));
-		}
+		IloNumExpr gibbs = cplex.prod(this.lambda_4, sumOfAbsoluteValues(cplex, gibbsPosition, getTargetVariablesLengths()[4], "g"));
 		
 		// Sum up each term
 		//function = cplex.sum(flux, conc, l, error, gibbs);
@@ -520,9 +512,29 @@ public class FluxMinimization extends TargetFunction {
 		
 		return function;
 	}
+	
+	/**
+	 * Name the given variables and sum up their absolute values in one
+	 * expression.
+	 * 
+	 * @param cplex
+	 * @param position the first variable
+	 * @param length the number of variables
+	 * @param name the prefix of the names of the variables
+	 * @return sum_i |x_i|
+	 * @throws IloException
+	 */
+	private IloNumExpr sumOfAbsoluteValues(IloCplex cplex, int position, int length, String name) throws IloException {
+		IloNumExpr[] terms = new IloNumExpr[length];
+		for (int i = 0; i < length; i++) {
+			getVariables()[i + position].setName(name + i);
+			terms[i] = cplex.abs(getVariables()[i + position]);
+		}
+		return cplex.sum(terms);
+	}
 
 	/* (non-Javadoc)
-	 * @see org.sbml.simulator.fba.dynamic.TargetFunction#addConstraintsToTargetFunction(ilog.cplex.IloCplex)
+	 * @see org.sbml.simulator.fba.dynamic.cplex.CplexTargetFunction#addConstraintsToTargetFunction(ilog.cplex.IloCplex)
 	 */
 	@Override
 	public void addConstraintsToTargetFunction(IloCplex cplex) throws IloException {
@@ -535,15 +547,29 @@ public class FluxMinimization extends TargetFunction {
 		int errorPosition = lPosition + getTargetVariablesLengths()[2];
 		int gibbsPosition = errorPosition + getTargetVariablesLengths()[3];
 		
+		// Flux J_j = sum_k K_kj * x_k, created once for all constraints
+		IloNumExpr[] fluxes = null;
+		if (this.constraintJG || this.constraintJ_rmaxG || this.constraintJ0) {
+			int kCount = getTargetVariablesLengths()[0];
+			double[][] K = new double[kCount][];
+			for (int k = 0; k < kCount; k++) {
+				K[k] = this.K_intTransposed.getRow(k);
+			}
+			fluxes = new IloNumExpr[reactionCount];
+			double[] column = new double[kCount];
+			for (int j = 0; j < reactionCount; j++) {
+				for (int k = 0; k < kCount; k++) {
+					column[k] = K[k][j];
+				}
+				fluxes[j] = linearExpression(cplex, column, fluxPosition);
+			}
+		}
+		
 		// Constraint J_j * G_j < 0
 		if (this.constraintJG == true) {
 			for (int j = 0; j < reactionCount; j++) {
 				// Flux J_j
-				IloNumExpr j_j = cplex.numExpr();
-				for (int k = 0; k < getTargetVariablesLengths()[0]; k++) {
-					IloNumExpr k_var = cplex.prod(this.K_intTransposed.getRow(k)[j], getVariables()[k]);
-					j_j = cplex.sum(j_j, k_var);
-				}
+				IloNumExpr j_j = fluxes[j];
 				// J_j * G_j
 				cplex.add(cplex.ifThen(cplex.not(cplex.eq(j_j, 0)),cplex.le(getVariables()[j + gibbsPosition],0)));
 				
@@ -556,17 +582,23 @@ public class FluxMinimization extends TargetFunction {
 		// Constraint delta_r G_j = delta_r G^0_j - E_j + RT...
 		if (this.constraintError == true) {
 			double[] c_eq = this.completeConcentrations[this.getTimePointStep()];
+			// only the species of reaction j, i.e., the non-zero entries of column j
+			SparseStoichiometricMatrix N = this.context.getExpandedSparseStoichiometricMatrix();
+			int[] columnPointers = N.getColumnPointers();
+			int[] rowIndices = N.getRowIndices();
+			double[] values = N.getValues();
 			for (int j = 0; j < reactionCount; j++) {
-				IloNumExpr sumConcentrations = cplex.numExpr();
-				
-				for (int i = 0; i < speciesCount; i++) {
-					if (!Double.isNaN(c_eq[i])) {
-						sumConcentrations = cplex.sum(sumConcentrations, cplex.prod(this.N_int_sys.get(i, j), getVariables()[i + concentrationPosition]));
-					}
-				}
 				// TODO if readGibbsEnergies[i] is NaN???
 				if(!Double.isNaN(this.readGibbsEnergies[j])) {
-					IloNumExpr delta_G_computation = cplex.diff(cplex.sum(cplex.prod(R, cplex.prod(T, sumConcentrations)), this.readGibbsEnergies[j]), getVariables()[j + errorPosition]);
+					// R * T * sum_i N_ij * c_i + delta_r G^0_j - E_j
+					IloLinearNumExpr delta_G_computation = cplex.linearNumExpr(this.readGibbsEnergies[j]);
+					for (int p = columnPointers[j]; p < columnPointers[j + 1]; p++) {
+						int i = rowIndices[p];
+						if ((i < speciesCount) && !Double.isNaN(c_eq[i])) {
+							delta_G_computation.addTerm(R * T * values[p], getVariables()[i + concentrationPosition]);
+						}
+					}
+					delta_G_computation.addTerm(-1d, getVariables()[j + errorPosition]);
 					cplex.addEq(getVariables()[j + gibbsPosition], delta_G_computation);
 				}
 			}
@@ -589,11 +621,7 @@ public class FluxMinimization extends TargetFunction {
 		if (this.constraintJ_rmaxG == true) {
 			for (int j = 0; j < reactionCount; j++) {
 				// Flux J_j
-				IloNumExpr j_j = cplex.numExpr();
-				for (int k = 0; k < getTargetVariablesLengths()[0]; k++) {
-					IloNumExpr k_var = cplex.prod(this.K_intTransposed.getRow(k)[j], getVariables()[k]);
-					j_j = cplex.sum(j_j, k_var);
-				}
+				IloNumExpr j_j = fluxes[j];
 				// |J_j| - r_max * |G_j|
 				IloNumExpr rmaxG = cplex.prod(this.r_max, cplex.abs(getVariables()[j + gibbsPosition]));
 				
@@ -605,11 +633,7 @@ public class FluxMinimization extends TargetFunction {
 		if (this.constraintJ0 == true) {
 			for (int j = 0; j < reactionCount; j++) {
 				// Flux J_j
-				IloNumExpr j_j = cplex.numExpr();
-				for (int k = 0; k < getTargetVariablesLengths()[0]; k++) {
-					IloNumExpr k_var = cplex.prod(this.K_intTransposed.getRow(k)[j], getVariables()[k]);
-					j_j = cplex.sum(j_j, k_var);
-				}
+				IloNumExpr j_j = fluxes[j];
 				
 				cplex.addGe(j_j, 0);
 			}
@@ -637,7 +661,7 @@ public class FluxMinimization extends TargetFunction {
 //		}
 		
 		//Ensure that the gibbs values of a reaction and the corresponding backward reaction correspond to each other
-		Map<Integer, Integer> reverseReaction = FluxMinimizationUtils.reverseReaction;
+		Map<Integer, Integer> reverseReaction = this.context.getReverseReactions();
 		for (Entry<Integer, Integer> map : reverseReaction.entrySet()) {
 			int index = map.getKey();
 			int revIndex= map.getValue();
@@ -672,8 +696,8 @@ public class FluxMinimization extends TargetFunction {
 				optimizedFluxVector[i] = fluxVector;
 			}
 			this.optimizedSolution[1] = optimizedFluxVector; // 2nd position: flux vector
-			System.out.println("Optimized Flux Vector: " + Arrays.toString(optimizedFluxVector));
-			System.out.println("Optimized Flux factor: " + Arrays.toString(optimizedFluxFactors));
+			logger.fine("Optimized Flux Vector: " + Arrays.toString(optimizedFluxVector));
+			logger.fine("Optimized Flux factor: " + Arrays.toString(optimizedFluxFactors));
 			
 			// 2. Concentration vector assignment
 			int concentrationPosition = fluxPosition + getTargetVariablesLengths()[0];
@@ -682,7 +706,7 @@ public class FluxMinimization extends TargetFunction {
 				optimizedConcentrations[i] = Math.pow(Math.E, solution[i + concentrationPosition]);
 			}
 			this.optimizedSolution[0] = optimizedConcentrations; // 1st position: concentrations
-			System.out.println("Optimized concentration: " + Arrays.toString(optimizedConcentrations));
+			logger.fine("Optimized concentration: " + Arrays.toString(optimizedConcentrations));
 			
 			// 3. L vector assignment
 			int lPosition = concentrationPosition + getTargetVariablesLengths()[1];
@@ -690,7 +714,7 @@ public class FluxMinimization extends TargetFunction {
 			for (int i = 0; i < getTargetVariablesLengths()[2]; i++) {
 				optimizedLVector[i] = solution[i + lPosition];
 			}
-			System.out.println("Optimized L vector: " + Arrays.toString(optimizedLVector));
+			logger.fine("Optimized L vector: " + Arrays.toString(optimizedLVector));
 			// Now: no assignment useful! There are no L vector ID's for the MultiTable
 			
 			// 4. Error vector assignment
@@ -699,7 +723,7 @@ public class FluxMinimization extends TargetFunction {
 			for (int i = 0; i < getTargetVariablesLengths()[3]; i++) {
 				optimizedErrors[i] = solution[i + errorPosition];
 			}
-			System.out.println("Optimized error Vector: " + Arrays.toString(optimizedErrors));
+			logger.fine("Optimized error Vector: " + Arrays.toString(optimizedErrors));
 			
 			// 5. Gibbs energy vector assignment
 			int gibbsPosition = errorPosition + getTargetVariablesLengths()[3];
@@ -708,8 +732,8 @@ public class FluxMinimization extends TargetFunction {
 				optimizedGibbsEnergies[i] = solution[i + gibbsPosition];
 			}
 			this.optimizedSolution[2] = optimizedGibbsEnergies; // 3rd position: gibbs energies
-			System.out.println("G0 Gibbs Vector: " + Arrays.toString(this.readGibbsEnergies));
-			System.out.println("Optimized Gibbs Vector: " + Arrays.toString(optimizedGibbsEnergies));
+			logger.fine("G0 Gibbs Vector: " + Arrays.toString(this.readGibbsEnergies));
+			logger.fine("Optimized Gibbs Vector: " + Arrays.toString(optimizedGibbsEnergies));
 		}
 		
 		return this.optimizedSolution;
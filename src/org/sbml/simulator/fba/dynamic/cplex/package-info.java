@@ -0,0 +1,26 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+
+/**
+ * Target functions of the dynamic flux balance analysis that are formulated
+ * directly for CPLEX, because they are neither linear nor convex quadratic
+ * programs. This is the only package besides
+ * {@link org.sbml.simulator.fba.solver.CplexSolver} that depends on CPLEX; it
+ * can be left out of builds without CPLEX.
+ *
+ * @since 2.1
+ */
+package org.sbml.simulator.fba.dynamic.cplex;
@@ -20,6 +20,7 @@ import java.util.ResourceBundle;
 
 import org.sbml.simulator.fba.controller.FluxBalanceAnalysis;
 import org.sbml.simulator.fba.controller.TargetFunction;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
 
 import de.zbit.io.filefilter.SBFileFilter;
 import de.zbit.util.ResourceManager;
@@ -98,25 +99,25 @@ public interface FBAOptions extends KeyProvider {
    * Change lambda1 to weight the concentrations in the target function
    */
   public static final Option<Double> LAMBDA1 = new Option<Double>(
-      "LAMBDA1", Double.class, bundle, Double.valueOf(TargetFunction.lambda1));
+      "LAMBDA1", Double.class, bundle, Double.valueOf(TargetFunction.DEFAULT_LAMBDA1));
 
   /**
    * Change lambda2 to weight the errors in the target function
    */
   public static final Option<Double> LAMBDA2 = new Option<Double>(
-      "LAMBDA2", Double.class, bundle, Double.valueOf(TargetFunction.lambda2));
+      "LAMBDA2", Double.class, bundle, Double.valueOf(TargetFunction.DEFAULT_LAMBDA2));
 
   /**
    * Change lambda3 to weight the L-Matrix in the target function
    */
   public static final Option<Double> LAMBDA3 = new Option<Double>(
-      "LAMBDA3", Double.class, bundle, Double.valueOf(TargetFunction.lambda3));
+      "LAMBDA3", Double.class, bundle, Double.valueOf(TargetFunction.DEFAULT_LAMBDA3));
 
   /**
    * Change lambda4 to weight the Gibbs energies in the target function
    */
   public static final Option<Double> LAMBDA4 = new Option<Double>(
-      "LAMBDA4", Double.class, bundle, Double.valueOf(TargetFunction.lambda4));
+      "LAMBDA4", Double.class, bundle, Double.valueOf(TargetFunction.DEFAULT_LAMBDA4));
 
   /**
    * Load a concentration file
@@ -161,6 +162,13 @@ public interface FBAOptions extends KeyProvider {
           Integer.class, "{(1, 100000]}"), Integer.valueOf(600));
 
 
+  /**
+   * Choose the solver for the optimization problems
+   */
+  public static final Option<String> FBA_SOLVER = new Option<String>(
+      "FBA_SOLVER", String.class, bundle, new Range<String>(String.class, SolverType.getAllNames()), SolverType.AUTOMATIC.name());
+
+
   /**
    * Group to load files
    */
@@ -182,7 +190,7 @@ public interface FBAOptions extends KeyProvider {
    */
   @SuppressWarnings("unchecked")
   public static final OptionGroup<?> SET_TARGET_AND_ITERATIONS = new OptionGroup<Object>(
-      "SET_TARGET_AND_ITERATIONS", bundle, DEFAULT_TARGET_FUNCTION, SET_ITERATIONS);
+      "SET_TARGET_AND_ITERATIONS", bundle, DEFAULT_TARGET_FUNCTION, SET_ITERATIONS, FBA_SOLVER);
 
 
 }
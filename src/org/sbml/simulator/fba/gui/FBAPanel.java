@@ -33,6 +33,8 @@ import org.sbml.simulator.fba.controller.CSVDataConverter;
 import org.sbml.simulator.fba.controller.Constraints;
 import org.sbml.simulator.fba.controller.FluxBalanceAnalysis;
 import org.sbml.simulator.fba.controller.FluxMinimizationUtils;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
 import org.sbml.simulator.gui.LegendPanel;
 import org.sbml.simulator.gui.SimulationPanel;
 
@@ -112,6 +114,11 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
    */
   private int iterations;
 
+  /**
+   * The solver for the optimization problem
+   */
+  private SolverType solverType;
+
   /**
    * Constraint J*G < 0 is on, when this variable is set true.
    */
@@ -232,6 +239,7 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
     J_rmax_G_less_than_0 = sbPrefs.getBoolean(FBAOptions.ACTIVATE_CONSTRAINT_J_R_MAX_G_LESS_THAN_0);
     J_greater_0 = sbPrefs.getBoolean(FBAOptions.ACTIVATE_CONSTRAINT_J_GREATER_THAN_0);
     iterations = sbPrefs.getInt(FBAOptions.SET_ITERATIONS);
+    solverType = SolverType.valueOf(sbPrefs.getString(FBAOptions.FBA_SOLVER));
 
     //check lambdas
     lambda1 = sbPrefs.getDouble(FBAOptions.LAMBDA1);
@@ -446,6 +454,7 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
       fba.setConstraintJG(JG_less_than_0);
       fba.setConstraintJ_rmaxG(J_rmax_G_less_than_0);
       fba.setCplexIterations(iterations);
+      fba.setSolverType(solverType);
       fba.setConstraintJ0(J_greater_0);
 
       //set lambdas
@@ -465,10 +474,10 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
       //solve
       try{
         fba.solve();
-      } catch (ilog.cplex.CpxException cplexExc) {
-        cplexExc.printStackTrace();
+      } catch (SolverException solverExc) {
+        solverExc.printStackTrace();
         JOptionPane.showMessageDialog(this,
-          new String("Only the null vector solution found."),
+          solverExc.getMessage(),
           "available solutions",
           JOptionPane.ERROR_MESSAGE);
       }
@@ -484,7 +493,7 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
     simultorPanel.getDynamicGraphView().addFluxbalance(fba.fluxesForVisualization);
 
     if (theFirstCall) {
-      vod.setDocument(FluxMinimizationUtils.getExpandedDocument(originalDoc));
+      vod.setDocument(fba.constraints.getContext().getExpandedDocument());
       vod.setFluxes(fba.solutionFluxVector);
       vod.setConcentrations(fba.solutionConcentrations);
       vod.init();
@@ -495,7 +504,7 @@ public class FBAPanel extends JPanel implements ActionListener, TableModelListen
       settings.setFBA(fba);
       this.repaint();
     } else {
-      vod.setDocument(FluxMinimizationUtils.getExpandedDocument(originalDoc));
+      vod.setDocument(fba.constraints.getContext().getExpandedDocument());
       vod.setFluxes(fba.solutionFluxVector);
       vod.setConcentrations(fba.solutionConcentrations);
       vod.updateUI();
@@ -0,0 +1,341 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloObjective;
+import ilog.concert.IloObjectiveSense;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Solver} that delegates to CPLEX. This class must only be loaded
+ * if CPLEX is available on the class path, which is why it is instantiated
+ * by {@link SolverFactory} via reflection. Formulations that go beyond linear
+ * and convex quadratic programs (absolute values in constraints, bilinear
+ * terms, logical constraints) can use the underlying {@link IloCplex} object
+ * directly.
+ *
+ * @since 2.1
+ */
+public class CplexSolver implements Solver {
+
+	/**
+	 *
+	 */
+	private final IloCplex cplex;
+
+	/**
+	 *
+	 */
+	private final List<IloNumVar> variables = new ArrayList<IloNumVar>();
+
+	/**
+	 *
+	 */
+	private final List<IloRange> constraints = new ArrayList<IloRange>();
+
+	/**
+	 *
+	 */
+	private final List<Relation> relations = new ArrayList<Relation>();
+
+	/**
+	 *
+	 */
+	private IloObjective objective = null;
+
+	/**
+	 * The starting point of the next solve or {@code null}.
+	 */
+	private double start[] = null;
+
+	/**
+	 *
+	 * @throws IloException
+	 */
+	public CplexSolver() throws IloException {
+		cplex = new IloCplex();
+	}
+
+	/**
+	 * @return the underlying CPLEX object.
+	 */
+	public IloCplex getCplex() {
+		return cplex;
+	}
+
+	/**
+	 * @return the variables of the underlying CPLEX object.
+	 */
+	public IloNumVar[] getVariables() {
+		return variables.toArray(new IloNumVar[variables.size()]);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#addVariables(double[], double[])
+	 */
+	@Override
+	public int addVariables(double lowerBounds[], double upperBounds[]) throws SolverException {
+		int first = variables.size();
+		try {
+			for (IloNumVar variable : cplex.numVarArray(lowerBounds.length, lowerBounds, upperBounds)) {
+				variables.add(variable);
+			}
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+		return first;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getVariableCount()
+	 */
+	@Override
+	public int getVariableCount() {
+		return variables.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setBounds(int, double, double)
+	 */
+	@Override
+	public void setBounds(int variable, double lowerBound, double upperBound) throws SolverException {
+		try {
+			variables.get(variable).setLB(lowerBound);
+			variables.get(variable).setUB(upperBound);
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setObjective(double[], double[], boolean)
+	 */
+	@Override
+	public void setObjective(double linear[], double quadratic[], boolean minimize) throws SolverException {
+		try {
+			IloNumExpr expr = cplex.numExpr();
+			for (int j = 0; j < linear.length; j++) {
+				if (linear[j] != 0d) {
+					expr = cplex.sum(expr, cplex.prod(linear[j], variables.get(j)));
+				}
+			}
+			if (quadratic != null) {
+				for (int j = 0; j < quadratic.length; j++) {
+					if (quadratic[j] != 0d) {
+						expr = cplex.sum(expr, cplex.prod(quadratic[j], cplex.square(variables.get(j))));
+					}
+				}
+			}
+			if (objective == null) {
+				objective = minimize ? cplex.addMinimize(expr) : cplex.addMaximize(expr);
+			} else {
+				objective.setExpr(expr);
+				objective.setSense(minimize ? IloObjectiveSense.Minimize : IloObjectiveSense.Maximize);
+			}
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setObjectiveCoefficient(int, double)
+	 */
+	@Override
+	public void setObjectiveCoefficient(int variable, double coefficient) throws SolverException {
+		try {
+			if (objective == null) {
+				objective = cplex.addMinimize(cplex.numExpr());
+			}
+			cplex.setLinearCoef(objective, coefficient, variables.get(variable));
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#addConstraint(int[], double[], org.sbml.simulator.fba.solver.Solver.Relation, double)
+	 */
+	@Override
+	public int addConstraint(int variables[], double coefficients[], Relation relation, double rhs) throws SolverException {
+		try {
+			IloLinearNumExpr expr = cplex.linearNumExpr();
+			for (int k = 0; k < variables.length; k++) {
+				expr.addTerm(coefficients[k], this.variables.get(variables[k]));
+			}
+			IloRange range;
+			switch (relation) {
+			case LESS_EQUAL:
+				range = cplex.addLe(expr, rhs);
+				break;
+			case GREATER_EQUAL:
+				range = cplex.addGe(expr, rhs);
+				break;
+			default:
+				range = cplex.addEq(expr, rhs);
+				break;
+			}
+			constraints.add(range);
+			relations.add(relation);
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+		return constraints.size() - 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getConstraintCount()
+	 */
+	@Override
+	public int getConstraintCount() {
+		return constraints.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setCoefficient(int, int, double)
+	 */
+	@Override
+	public void setCoefficient(int constraint, int variable, double coefficient) throws SolverException {
+		try {
+			cplex.setLinearCoef(constraints.get(constraint), coefficient, variables.get(variable));
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setRightHandSide(int, double)
+	 */
+	@Override
+	public void setRightHandSide(int constraint, double rhs) throws SolverException {
+		try {
+			IloRange range = constraints.get(constraint);
+			switch (relations.get(constraint)) {
+			case LESS_EQUAL:
+				range.setUB(rhs);
+				break;
+			case GREATER_EQUAL:
+				range.setLB(rhs);
+				break;
+			default:
+				range.setBounds(rhs, rhs);
+				break;
+			}
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setStartingPoint(double[])
+	 */
+	@Override
+	public void setStartingPoint(double values[]) {
+		start = values != null ? values.clone() : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setIterationLimit(int)
+	 */
+	@Override
+	public void setIterationLimit(int iterations) throws SolverException {
+		try {
+			cplex.setParam(IloCplex.IntParam.BarItLim, iterations);
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#solve()
+	 */
+	@Override
+	public boolean solve() throws SolverException {
+		try {
+			if ((start != null) && (start.length == variables.size())) {
+				cplex.setStart(start, null, getVariables(), null, null, null);
+			}
+			return cplex.solve();
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getValues()
+	 */
+	@Override
+	public double[] getValues() throws SolverException {
+		try {
+			return cplex.getValues(getVariables());
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getObjectiveValue()
+	 */
+	@Override
+	public double getObjectiveValue() throws SolverException {
+		try {
+			return cplex.getObjValue();
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getIterationCount()
+	 */
+	@Override
+	public int getIterationCount() {
+		return cplex.getNiterations() + cplex.getNbarrierIterations();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#clear()
+	 */
+	@Override
+	public void clear() throws SolverException {
+		try {
+			cplex.clearModel();
+		} catch (IloException exc) {
+			throw new SolverException(exc);
+		}
+		variables.clear();
+		constraints.clear();
+		relations.clear();
+		objective = null;
+		start = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#end()
+	 */
+	@Override
+	public void end() {
+		cplex.end();
+	}
+
+}
@@ -0,0 +1,1202 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A pure-Java primal-dual interior-point solver (Mehrotra's
+ * predictor-corrector method) for linear and convex quadratic programs with
+ * a diagonal quadratic part. Inequality constraints are turned into
+ * equations by non-negative slack variables, each constraint is scaled to a
+ * maximal coefficient of one, and the normal equations of each Newton step
+ * are solved by a sparse Cholesky factorization, in which linearly dependent
+ * constraints are skipped. The constraints are ordered by minimum degree to
+ * keep the factor sparse.
+ * <p>
+ * The ordering and the sparsity pattern of the factor are only computed
+ * again if variables or constraints are added or coefficients become zero
+ * or non-zero. Solves that only change bounds, right-hand sides, the
+ * objective or the values of coefficients reuse them, so that a problem is
+ * built once and then solved repeatedly at the cost of the iterations alone.
+ * <p>
+ * A starting point is moved into the interior of the bounds before it is
+ * used. Unless the structure of the problem has changed, the multipliers of
+ * the last solve are kept as well, so that the method continues close to
+ * the central path of the previous problem. If the warm-started solve does
+ * not converge, the problem is solved again from scratch.
+ *
+ * @since 2.1
+ */
+public class InteriorPointSolver implements Solver {
+
+	/**
+	 * A constraint as it has been added.
+	 */
+	private static class Constraint {
+
+		/**
+		 *
+		 */
+		private int variables[];
+
+		/**
+		 *
+		 */
+		private double coefficients[];
+
+		/**
+		 *
+		 */
+		private Relation relation;
+
+		/**
+		 *
+		 */
+		private double rhs;
+
+	}
+
+	/**
+	 * The state of one run of the interior-point method on the standard form
+	 * of the problem.
+	 */
+	private class Iteration {
+
+		/**
+		 * The primal variables, the multipliers of the constraints and of the
+		 * lower and upper bounds.
+		 */
+		private final double x[], y[], zl[], zu[];
+
+		/**
+		 * The inverse diagonal of the reduced Hessian and the residuals.
+		 */
+		private final double d[], dualResidual[], primalResidual[], reduced[];
+
+		/**
+		 * The current search direction.
+		 */
+		private final double dx[], dy[], dzl[], dzu[];
+
+		/**
+		 * The number of finite bounds of variables that are not fixed.
+		 */
+		private int boundCount = 0;
+
+		/**
+		 *
+		 * @param start
+		 *        a starting point for the original variables or {@code null}.
+		 * @param previous
+		 *        the last iteration of the previous solve, whose multipliers
+		 *        are kept, or {@code null}.
+		 */
+		private Iteration(double start[], Iteration previous) {
+			x = new double[n];
+			y = new double[m];
+			zl = new double[n];
+			zu = new double[n];
+			d = new double[n];
+			dualResidual = new double[n];
+			primalResidual = new double[m];
+			reduced = new double[n];
+			dx = new double[n];
+			dy = new double[m];
+			dzl = new double[n];
+			dzu = new double[n];
+
+			for (int j = 0; j < n; j++) {
+				if (fixed[j]) {
+					x[j] = lower[j];
+					continue;
+				}
+				boolean given = (start != null) && (j < start.length) && !Double.isNaN(start[j]);
+				x[j] = interior(j, given ? start[j] : center(j));
+				if (hasLower[j]) {
+					zl[j] = 1d;
+					boundCount++;
+				}
+				if (hasUpper[j]) {
+					zu[j] = 1d;
+					boundCount++;
+				}
+			}
+			if (previous != null) {
+				System.arraycopy(previous.y, 0, y, 0, m);
+				for (int j = 0; j < n; j++) {
+					if (hasLower[j] && !fixed[j]) {
+						zl[j] = Math.max(previous.zl[j], MULTIPLIER_FLOOR);
+					}
+					if (hasUpper[j] && !fixed[j]) {
+						zu[j] = Math.max(previous.zu[j], MULTIPLIER_FLOOR);
+					}
+				}
+			}
+			if (start != null) {
+				// the slack variables follow from the given point
+				double activity[] = new double[m];
+				for (int j = 0; j < variableCount; j++) {
+					for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+						activity[columnRow[p]] += columnValue[p] * x[j];
+					}
+				}
+				for (int j = variableCount; j < n; j++) {
+					int p = columnStart[j];
+					x[j] = interior(j, (rhs[columnRow[p]] - activity[columnRow[p]]) / columnValue[p]);
+				}
+			}
+		}
+
+		/**
+		 *
+		 * @param j
+		 * @return a starting value of the given variable in the middle of its
+		 *         bounds.
+		 */
+		private double center(int j) {
+			if (hasLower[j] && hasUpper[j]) {
+				return 0.5d * (lower[j] + upper[j]);
+			} else if (hasLower[j]) {
+				return lower[j] + 1d;
+			} else if (hasUpper[j]) {
+				return upper[j] - 1d;
+			}
+			return 0d;
+		}
+
+		/**
+		 *
+		 * @param j
+		 * @param value
+		 * @return the given value moved strictly into the bounds of the given
+		 *         variable.
+		 */
+		private double interior(int j, double value) {
+			double margin = 1E-2d * Math.max(1d, Math.abs(value));
+			if (hasLower[j] && hasUpper[j]) {
+				margin = Math.min(margin, 0.5d * (upper[j] - lower[j]));
+			}
+			if (hasLower[j]) {
+				value = Math.max(value, lower[j] + margin);
+			}
+			if (hasUpper[j]) {
+				value = Math.min(value, upper[j] - margin);
+			}
+			return value;
+		}
+
+		/**
+		 * Runs the interior-point method.
+		 *
+		 * @return the values of all variables of the standard form or
+		 *         {@code null} if the method does not converge.
+		 */
+		private double[] run() {
+			double rhsNorm = normInf(rhs), costNorm = normInf(cost);
+			double rcl[] = new double[n], rcu[] = new double[n];
+			for (int k = 0; k < iterationLimit; k++) {
+				computeResiduals();
+				double mu = complementarity(0d);
+				double dualInfeasibility = 0d;
+				for (int j = 0; j < n; j++) {
+					if (!fixed[j]) {
+						dualInfeasibility = Math.max(dualInfeasibility, Math.abs(dualResidual[j]));
+					}
+				}
+				if ((normInf(primalResidual) <= TOLERANCE * (1d + rhsNorm))
+						&& (dualInfeasibility <= TOLERANCE * (1d + costNorm))
+						&& (mu <= TOLERANCE * (1d + Math.abs(objective())))) {
+					return x;
+				}
+				if (normInf(x) > DIVERGENCE) {
+					// the problem is unbounded or (dual) infeasible
+					return null;
+				}
+				iterations++;
+
+				for (int j = 0; j < n; j++) {
+					if (!fixed[j]) {
+						double h = hessian[j] + REGULARIZATION;
+						if (hasLower[j]) {
+							h += zl[j] / (x[j] - lower[j]);
+						}
+						if (hasUpper[j]) {
+							h += zu[j] / (upper[j] - x[j]);
+						}
+						d[j] = 1d / h;
+					}
+				}
+				factorize();
+
+				// predictor: the affine-scaling direction
+				for (int j = 0; j < n; j++) {
+					rcl[j] = hasLower[j] && !fixed[j] ? -(x[j] - lower[j]) * zl[j] : 0d;
+					rcu[j] = hasUpper[j] && !fixed[j] ? -(upper[j] - x[j]) * zu[j] : 0d;
+				}
+				computeDirection(rcl, rcu);
+				double sigma = 0d;
+				if (mu > 0d) {
+					sigma = Math.pow(complementarity(Math.min(1d, maxStep())) / mu, 3d);
+				}
+
+				// corrector: centering and second-order term
+				for (int j = 0; j < n; j++) {
+					if (hasLower[j] && !fixed[j]) {
+						rcl[j] = sigma * mu - (x[j] - lower[j]) * zl[j] - dx[j] * dzl[j];
+					}
+					if (hasUpper[j] && !fixed[j]) {
+						rcu[j] = sigma * mu - (upper[j] - x[j]) * zu[j] + dx[j] * dzu[j];
+					}
+				}
+				computeDirection(rcl, rcu);
+				double alpha = Math.min(1d, STEP_FACTOR * maxStep());
+				if (alpha < MIN_STEP) {
+					return null;
+				}
+				for (int j = 0; j < n; j++) {
+					x[j] += alpha * dx[j];
+					zl[j] += alpha * dzl[j];
+					zu[j] += alpha * dzu[j];
+				}
+				for (int i = 0; i < m; i++) {
+					y[i] += alpha * dy[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Computes the residuals of the constraints and of the optimality
+		 * conditions.
+		 */
+		private void computeResiduals() {
+			System.arraycopy(rhs, 0, primalResidual, 0, m);
+			for (int j = 0; j < n; j++) {
+				double r = hessian[j] * x[j] + cost[j] - zl[j] + zu[j];
+				for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+					primalResidual[columnRow[p]] -= columnValue[p] * x[j];
+					r -= columnValue[p] * y[columnRow[p]];
+				}
+				dualResidual[j] = r;
+			}
+		}
+
+		/**
+		 *
+		 * @param alpha
+		 * @return the average complementarity after a step of the given length
+		 *         along the current direction.
+		 */
+		private double complementarity(double alpha) {
+			if (boundCount == 0) {
+				return 0d;
+			}
+			double sum = 0d;
+			for (int j = 0; j < n; j++) {
+				if (!fixed[j]) {
+					if (hasLower[j]) {
+						sum += (x[j] - lower[j] + alpha * dx[j]) * (zl[j] + alpha * dzl[j]);
+					}
+					if (hasUpper[j]) {
+						sum += (upper[j] - x[j] - alpha * dx[j]) * (zu[j] + alpha * dzu[j]);
+					}
+				}
+			}
+			return sum / boundCount;
+		}
+
+		/**
+		 *
+		 * @return the longest step along the current direction that keeps all
+		 *         bounds and multipliers non-negative.
+		 */
+		private double maxStep() {
+			double alpha = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < n; j++) {
+				if (fixed[j]) {
+					continue;
+				}
+				if (hasLower[j]) {
+					if (dx[j] < 0d) {
+						alpha = Math.min(alpha, -(x[j] - lower[j]) / dx[j]);
+					}
+					if (dzl[j] < 0d) {
+						alpha = Math.min(alpha, -zl[j] / dzl[j]);
+					}
+				}
+				if (hasUpper[j]) {
+					if (dx[j] > 0d) {
+						alpha = Math.min(alpha, (upper[j] - x[j]) / dx[j]);
+					}
+					if (dzu[j] < 0d) {
+						alpha = Math.min(alpha, -zu[j] / dzu[j]);
+					}
+				}
+			}
+			return alpha;
+		}
+
+		/**
+		 * Computes and factorizes the matrix A * D * A^T of the normal
+		 * equations column by column into the sparsity pattern of the factor.
+		 */
+		private void factorize() {
+			Arrays.fill(factorValue, 0d);
+			for (int j = 0; j < n; j++) {
+				if (fixed[j]) {
+					continue;
+				}
+				int t = pairStart[j];
+				for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+					double value = d[j] * columnValue[p];
+					for (int q = columnStart[j]; q <= p; q++) {
+						factorValue[pairPosition[t++]] += value * columnValue[q];
+					}
+				}
+			}
+			double maxDiagonal = 0d;
+			for (int k = 0; k < m; k++) {
+				maxDiagonal = Math.max(maxDiagonal, factorValue[factorStart[k]]);
+			}
+			double pivotTolerance = Math.max(1E-30d, 1E-16d * maxDiagonal);
+
+			// each column waits in the list of the row of its next entry
+			Arrays.fill(head, -1);
+			for (int k = 0; k < m; k++) {
+				for (int p = factorStart[k]; p < factorStart[k + 1]; p++) {
+					work[factorRow[p]] = factorValue[p];
+				}
+				int j = head[k];
+				while (j >= 0) {
+					int following = next[j];
+					int f = position[j];
+					double l = factorValue[f];
+					for (int p = f; p < factorStart[j + 1]; p++) {
+						work[factorRow[p]] -= factorValue[p] * l;
+					}
+					enqueue(j, f + 1);
+					j = following;
+				}
+				double sum = work[k];
+				// a linearly dependent constraint is skipped
+				double pivot = sum > pivotTolerance ? Math.sqrt(sum) : DEPENDENT_PIVOT;
+				factorValue[factorStart[k]] = pivot;
+				for (int p = factorStart[k] + 1; p < factorStart[k + 1]; p++) {
+					factorValue[p] = work[factorRow[p]] / pivot;
+				}
+				enqueue(k, factorStart[k] + 1);
+			}
+		}
+
+		/**
+		 * Adds the given column of the factor to the list of the row of its
+		 * entry at the given position, if there is one.
+		 *
+		 * @param column
+		 * @param p
+		 */
+		private void enqueue(int column, int p) {
+			if (p < factorStart[column + 1]) {
+				int row = factorRow[p];
+				position[column] = p;
+				next[column] = head[row];
+				head[row] = column;
+			}
+		}
+
+		/**
+		 * Computes the Newton direction for the given right-hand sides of the
+		 * complementarity conditions.
+		 *
+		 * @param rcl
+		 * @param rcu
+		 */
+		private void computeDirection(double rcl[], double rcu[]) {
+			System.arraycopy(primalResidual, 0, dy, 0, m);
+			for (int j = 0; j < n; j++) {
+				if (fixed[j]) {
+					reduced[j] = 0d;
+					continue;
+				}
+				double r = -dualResidual[j];
+				if (hasLower[j]) {
+					r += rcl[j] / (x[j] - lower[j]);
+				}
+				if (hasUpper[j]) {
+					r -= rcu[j] / (upper[j] - x[j]);
+				}
+				reduced[j] = r;
+				double t = d[j] * r;
+				for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+					dy[columnRow[p]] -= columnValue[p] * t;
+				}
+			}
+
+			// forward and backward substitution in the order of the factor
+			for (int k = 0; k < m; k++) {
+				work[k] = dy[permutation[k]];
+			}
+			for (int k = 0; k < m; k++) {
+				double value = work[k] / factorValue[factorStart[k]];
+				work[k] = value;
+				for (int p = factorStart[k] + 1; p < factorStart[k + 1]; p++) {
+					work[factorRow[p]] -= factorValue[p] * value;
+				}
+			}
+			for (int k = m - 1; k >= 0; k--) {
+				double sum = work[k];
+				for (int p = factorStart[k] + 1; p < factorStart[k + 1]; p++) {
+					sum -= factorValue[p] * work[factorRow[p]];
+				}
+				work[k] = sum / factorValue[factorStart[k]];
+			}
+			for (int k = 0; k < m; k++) {
+				dy[permutation[k]] = work[k];
+			}
+
+			for (int j = 0; j < n; j++) {
+				if (fixed[j]) {
+					dx[j] = dzl[j] = dzu[j] = 0d;
+					continue;
+				}
+				double s = reduced[j];
+				for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+					s += columnValue[p] * dy[columnRow[p]];
+				}
+				dx[j] = d[j] * s;
+				dzl[j] = hasLower[j] ? (rcl[j] - zl[j] * dx[j]) / (x[j] - lower[j]) : 0d;
+				dzu[j] = hasUpper[j] ? (rcu[j] + zu[j] * dx[j]) / (upper[j] - x[j]) : 0d;
+			}
+		}
+
+		/**
+		 *
+		 * @return the objective value of the standard form.
+		 */
+		private double objective() {
+			double value = 0d;
+			for (int j = 0; j < n; j++) {
+				value += (cost[j] + 0.5d * hessian[j] * x[j]) * x[j];
+			}
+			return value;
+		}
+
+	}
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(InteriorPointSolver.class.getName());
+
+	/**
+	 * The default maximal number of iterations per solve.
+	 */
+	public static final int DEFAULT_ITERATION_LIMIT = 500;
+
+	/**
+	 * Bounds whose absolute value is at least this value are infinite.
+	 */
+	private static final double INFINITY = 1E20d;
+
+	/**
+	 * The relative tolerance for feasibility and optimality.
+	 */
+	private static final double TOLERANCE = 1E-8d;
+
+	/**
+	 * The fraction of the step to the boundary that is taken.
+	 */
+	private static final double STEP_FACTOR = 0.995d;
+
+	/**
+	 * Steps shorter than this indicate that the method got stuck.
+	 */
+	private static final double MIN_STEP = 1E-10d;
+
+	/**
+	 * The primal regularization, which keeps the reduced Hessian of free
+	 * variables invertible. It also bounds the scaling of variables far from
+	 * their bounds, whose size would otherwise cancel the small pivots of
+	 * tightly constrained rows in the factorization.
+	 */
+	private static final double REGULARIZATION = 1E-8d;
+
+	/**
+	 * Iterates larger than this indicate an unbounded problem.
+	 */
+	private static final double DIVERGENCE = 1E10d;
+
+	/**
+	 * The smallest multiplier of a bound that is kept for a warm start.
+	 */
+	private static final double MULTIPLIER_FLOOR = 1E-2d;
+
+	/**
+	 * The pivot used for linearly dependent constraints.
+	 */
+	private static final double DEPENDENT_PIVOT = 1E64d;
+
+	/**
+	 *
+	 * @param vector
+	 * @return the maximum norm of the given vector.
+	 */
+	private static double normInf(double vector[]) {
+		double norm = 0d;
+		for (double value : vector) {
+			norm = Math.max(norm, Math.abs(value));
+		}
+		return norm;
+	}
+
+	/**
+	 * The number of variables.
+	 */
+	private int variableCount = 0;
+
+	/**
+	 * The bounds and objective coefficients of the variables; the arrays may
+	 * be longer than the number of variables.
+	 */
+	private double lowerBounds[] = new double[0], upperBounds[] = new double[0],
+			linear[] = new double[0], quadratic[] = new double[0];
+
+	/**
+	 *
+	 */
+	private boolean minimize = true;
+
+	/**
+	 *
+	 */
+	private final List<Constraint> constraints = new ArrayList<Constraint>();
+
+	/**
+	 * The starting point of the next solve or {@code null}.
+	 */
+	private double start[] = null;
+
+	/**
+	 *
+	 */
+	private int iterationLimit = DEFAULT_ITERATION_LIMIT;
+
+	/**
+	 * The solution of the last solve or {@code null}.
+	 */
+	private double solution[] = null;
+
+	/**
+	 *
+	 */
+	private double objectiveValue = Double.NaN;
+
+	/**
+	 * The number of iterations of the last solve.
+	 */
+	private int iterations = 0;
+
+	/**
+	 * Whether variables or constraints have been added or coefficients have
+	 * become zero or non-zero since the constraint matrix of the standard form
+	 * has been created.
+	 */
+	private boolean structureChanged = true;
+
+	/**
+	 * Whether the values of coefficients have changed since the constraint
+	 * matrix of the standard form has been created.
+	 */
+	private boolean coefficientsChanged = false;
+
+	/**
+	 * The last iteration of the last successful solve or {@code null}.
+	 */
+	private Iteration lastIteration = null;
+
+	/**
+	 * The number of constraints and variables (including slack variables) of
+	 * the standard form of the last solve.
+	 */
+	private int m, n;
+
+	/**
+	 * The constraint matrix of the standard form in compressed columns.
+	 */
+	private int columnStart[], columnRow[];
+
+	/**
+	 *
+	 */
+	private double columnValue[];
+
+	/**
+	 * The factor by which each constraint is scaled.
+	 */
+	private double scale[];
+
+	/**
+	 * Constraints without any non-zero coefficient.
+	 */
+	private boolean empty[];
+
+	/**
+	 * Bounds, objective and right-hand side of the standard form.
+	 */
+	private double lower[], upper[], cost[], hessian[], rhs[];
+
+	/**
+	 *
+	 */
+	private boolean hasLower[], hasUpper[], fixed[];
+
+	/**
+	 * The constraint in each row of the factor.
+	 */
+	private int permutation[];
+
+	/**
+	 * The Cholesky factor of the normal equations in compressed columns, the
+	 * diagonal entry first, followed by the rows below in ascending order.
+	 */
+	private int factorStart[], factorRow[];
+
+	/**
+	 *
+	 */
+	private double factorValue[];
+
+	/**
+	 * For each pair of entries of a column of the constraint matrix, the
+	 * position in the factor their product is added to; the pairs of column
+	 * j start at pairStart[j].
+	 */
+	private int pairStart[], pairPosition[];
+
+	/**
+	 * Work space of the factorization and the substitution.
+	 */
+	private double work[];
+
+	/**
+	 * The columns of the factor that update each row, the next column in such
+	 * a list and the position of the entry of that row in each column.
+	 */
+	private int head[], next[], position[];
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#addVariables(double[], double[])
+	 */
+	@Override
+	public int addVariables(double lb[], double ub[]) throws SolverException {
+		if (lb.length != ub.length) {
+			throw new SolverException("The number of lower and upper bounds differs.");
+		}
+		int first = variableCount;
+		int required = variableCount + lb.length;
+		if (lowerBounds.length < required) {
+			int capacity = Math.max(required, 2 * lowerBounds.length);
+			lowerBounds = Arrays.copyOf(lowerBounds, capacity);
+			upperBounds = Arrays.copyOf(upperBounds, capacity);
+			linear = Arrays.copyOf(linear, capacity);
+			quadratic = Arrays.copyOf(quadratic, capacity);
+		}
+		for (int k = 0; k < lb.length; k++) {
+			lowerBounds[first + k] = lb[k];
+			upperBounds[first + k] = ub[k];
+			linear[first + k] = 0d;
+			quadratic[first + k] = 0d;
+		}
+		variableCount = required;
+		structureChanged = true;
+		return first;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getVariableCount()
+	 */
+	@Override
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	/**
+	 *
+	 * @param variable
+	 * @throws SolverException
+	 */
+	private void checkVariable(int variable) throws SolverException {
+		if ((variable < 0) || (variable >= variableCount)) {
+			throw new SolverException("Unknown variable " + variable + '.');
+		}
+	}
+
+	/**
+	 *
+	 * @param constraint
+	 * @throws SolverException
+	 */
+	private void checkConstraint(int constraint) throws SolverException {
+		if ((constraint < 0) || (constraint >= constraints.size())) {
+			throw new SolverException("Unknown constraint " + constraint + '.');
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setBounds(int, double, double)
+	 */
+	@Override
+	public void setBounds(int variable, double lowerBound, double upperBound) throws SolverException {
+		checkVariable(variable);
+		lowerBounds[variable] = lowerBound;
+		upperBounds[variable] = upperBound;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setObjective(double[], double[], boolean)
+	 */
+	@Override
+	public void setObjective(double linear[], double quadratic[], boolean minimize) throws SolverException {
+		if ((linear.length > variableCount) || ((quadratic != null) && (quadratic.length > variableCount))) {
+			throw new SolverException("More objective coefficients than variables.");
+		}
+		Arrays.fill(this.linear, 0, variableCount, 0d);
+		Arrays.fill(this.quadratic, 0, variableCount, 0d);
+		System.arraycopy(linear, 0, this.linear, 0, linear.length);
+		if (quadratic != null) {
+			System.arraycopy(quadratic, 0, this.quadratic, 0, quadratic.length);
+		}
+		this.minimize = minimize;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setObjectiveCoefficient(int, double)
+	 */
+	@Override
+	public void setObjectiveCoefficient(int variable, double coefficient) throws SolverException {
+		checkVariable(variable);
+		linear[variable] = coefficient;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#addConstraint(int[], double[], org.sbml.simulator.fba.solver.Solver.Relation, double)
+	 */
+	@Override
+	public int addConstraint(int variables[], double coefficients[], Relation relation, double rhs) throws SolverException {
+		if (variables.length != coefficients.length) {
+			throw new SolverException("The number of variables and coefficients differs.");
+		}
+		Map<Integer, Double> terms = new LinkedHashMap<Integer, Double>();
+		for (int k = 0; k < variables.length; k++) {
+			checkVariable(variables[k]);
+			Double previous = terms.get(variables[k]);
+			terms.put(variables[k], previous == null ? coefficients[k] : previous + coefficients[k]);
+		}
+		Constraint constraint = new Constraint();
+		constraint.variables = new int[terms.size()];
+		constraint.coefficients = new double[terms.size()];
+		int k = 0;
+		for (Map.Entry<Integer, Double> term : terms.entrySet()) {
+			constraint.variables[k] = term.getKey();
+			constraint.coefficients[k++] = term.getValue();
+		}
+		constraint.relation = relation;
+		constraint.rhs = rhs;
+		constraints.add(constraint);
+		structureChanged = true;
+		return constraints.size() - 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getConstraintCount()
+	 */
+	@Override
+	public int getConstraintCount() {
+		return constraints.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setCoefficient(int, int, double)
+	 */
+	@Override
+	public void setCoefficient(int constraint, int variable, double coefficient) throws SolverException {
+		checkConstraint(constraint);
+		checkVariable(variable);
+		Constraint c = constraints.get(constraint);
+		for (int k = 0; k < c.variables.length; k++) {
+			if (c.variables[k] == variable) {
+				if ((c.coefficients[k] != 0d) && (coefficient != 0d)) {
+					coefficientsChanged = true;
+				} else if (c.coefficients[k] != coefficient) {
+					structureChanged = true;
+				}
+				c.coefficients[k] = coefficient;
+				return;
+			}
+		}
+		c.variables = Arrays.copyOf(c.variables, c.variables.length + 1);
+		c.coefficients = Arrays.copyOf(c.coefficients, c.coefficients.length + 1);
+		c.variables[c.variables.length - 1] = variable;
+		c.coefficients[c.coefficients.length - 1] = coefficient;
+		if (coefficient != 0d) {
+			structureChanged = true;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setRightHandSide(int, double)
+	 */
+	@Override
+	public void setRightHandSide(int constraint, double rhs) throws SolverException {
+		checkConstraint(constraint);
+		constraints.get(constraint).rhs = rhs;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setStartingPoint(double[])
+	 */
+	@Override
+	public void setStartingPoint(double values[]) {
+		start = values != null ? values.clone() : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#setIterationLimit(int)
+	 */
+	@Override
+	public void setIterationLimit(int iterations) {
+		iterationLimit = iterations;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#solve()
+	 */
+	@Override
+	public boolean solve() throws SolverException {
+		solution = null;
+		objectiveValue = Double.NaN;
+		iterations = 0;
+		if (structureChanged) {
+			createMatrix();
+			createFactorPattern();
+			lastIteration = null;
+		} else if (coefficientsChanged) {
+			createMatrix();
+		}
+		structureChanged = coefficientsChanged = false;
+		if (!createStandardForm()) {
+			return false;
+		}
+		double x[] = null;
+		if (start != null) {
+			Iteration iteration = new Iteration(start, lastIteration);
+			x = iteration.run();
+			if (x == null) {
+				logger.fine("The warm-started solve did not converge; solving from scratch.");
+			} else {
+				lastIteration = iteration;
+			}
+		}
+		if (x == null) {
+			Iteration iteration = new Iteration(null, null);
+			x = iteration.run();
+			lastIteration = x != null ? iteration : null;
+		}
+		if (x == null) {
+			return false;
+		}
+		solution = Arrays.copyOf(x, variableCount);
+		objectiveValue = 0d;
+		for (int j = 0; j < variableCount; j++) {
+			objectiveValue += (linear[j] + quadratic[j] * solution[j]) * solution[j];
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the constraint matrix A of the standard form min c * x + x * Q *
+	 * x / 2 subject to A * x = b and l <= x <= u. As long as the same
+	 * coefficients are non-zero, its columns have the same layout.
+	 */
+	private void createMatrix() {
+		m = constraints.size();
+		int slackCount = 0;
+		for (Constraint constraint : constraints) {
+			if (constraint.relation != Relation.EQUAL) {
+				slackCount++;
+			}
+		}
+		n = variableCount + slackCount;
+
+		// each constraint is scaled to a maximal coefficient of one
+		int count[] = new int[n];
+		scale = new double[m];
+		empty = new boolean[m];
+		int slack = variableCount;
+		for (int i = 0; i < m; i++) {
+			Constraint constraint = constraints.get(i);
+			double max = 0d;
+			for (int k = 0; k < constraint.variables.length; k++) {
+				if (constraint.coefficients[k] != 0d) {
+					count[constraint.variables[k]]++;
+					max = Math.max(max, Math.abs(constraint.coefficients[k]));
+				}
+			}
+			if (constraint.relation != Relation.EQUAL) {
+				count[slack++]++;
+			}
+			empty[i] = max == 0d;
+			scale[i] = max > 0d ? 1d / max : 1d;
+		}
+		columnStart = new int[n + 1];
+		for (int j = 0; j < n; j++) {
+			columnStart[j + 1] = columnStart[j] + count[j];
+		}
+		columnRow = new int[columnStart[n]];
+		columnValue = new double[columnStart[n]];
+		int fill[] = Arrays.copyOf(columnStart, n);
+		slack = variableCount;
+		for (int i = 0; i < m; i++) {
+			Constraint constraint = constraints.get(i);
+			for (int k = 0; k < constraint.variables.length; k++) {
+				if (constraint.coefficients[k] != 0d) {
+					int p = fill[constraint.variables[k]]++;
+					columnRow[p] = i;
+					columnValue[p] = scale[i] * constraint.coefficients[k];
+				}
+			}
+			if (constraint.relation != Relation.EQUAL) {
+				int p = fill[slack++]++;
+				columnRow[p] = i;
+				columnValue[p] = constraint.relation == Relation.LESS_EQUAL ? 1d : -1d;
+			}
+		}
+
+		lower = new double[n];
+		upper = new double[n];
+		cost = new double[n];
+		hessian = new double[n];
+		rhs = new double[m];
+		hasLower = new boolean[n];
+		hasUpper = new boolean[n];
+		fixed = new boolean[n];
+	}
+
+	/**
+	 * Orders the constraints by minimum degree and computes the sparsity
+	 * pattern of the Cholesky factor by eliminating them in this order from
+	 * the graph of A * A^T.
+	 */
+	private void createFactorPattern() {
+		BitSet graph[] = new BitSet[m];
+		for (int i = 0; i < m; i++) {
+			graph[i] = new BitSet(m);
+		}
+		for (int j = 0; j < n; j++) {
+			for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+				for (int q = columnStart[j]; q < p; q++) {
+					graph[columnRow[p]].set(columnRow[q]);
+					graph[columnRow[q]].set(columnRow[p]);
+				}
+			}
+		}
+		int degree[] = new int[m];
+		for (int i = 0; i < m; i++) {
+			degree[i] = graph[i].cardinality();
+		}
+
+		permutation = new int[m];
+		int inverse[] = new int[m];
+		int pattern[][] = new int[m][];
+		for (int k = 0; k < m; k++) {
+			int v = -1;
+			for (int i = 0; i < m; i++) {
+				if ((graph[i] != null) && ((v < 0) || (degree[i] < degree[v]))) {
+					v = i;
+				}
+			}
+			permutation[k] = v;
+			inverse[v] = k;
+			BitSet neighbors = graph[v];
+			graph[v] = null;
+			pattern[k] = new int[neighbors.cardinality()];
+			int t = 0;
+			for (int u = neighbors.nextSetBit(0); u >= 0; u = neighbors.nextSetBit(u + 1)) {
+				pattern[k][t++] = u;
+				// the remaining neighbors form a clique
+				graph[u].or(neighbors);
+				graph[u].clear(u);
+				graph[u].clear(v);
+				degree[u] = graph[u].cardinality();
+			}
+		}
+
+		factorStart = new int[m + 1];
+		for (int k = 0; k < m; k++) {
+			factorStart[k + 1] = factorStart[k] + 1 + pattern[k].length;
+		}
+		factorRow = new int[factorStart[m]];
+		for (int k = 0; k < m; k++) {
+			int p = factorStart[k];
+			factorRow[p++] = k;
+			for (int u : pattern[k]) {
+				factorRow[p++] = inverse[u];
+			}
+			Arrays.sort(factorRow, factorStart[k] + 1, p);
+		}
+		factorValue = new double[factorStart[m]];
+
+		pairStart = new int[n + 1];
+		for (int j = 0; j < n; j++) {
+			int c = columnStart[j + 1] - columnStart[j];
+			pairStart[j + 1] = pairStart[j] + c * (c + 1) / 2;
+		}
+		pairPosition = new int[pairStart[n]];
+		for (int j = 0; j < n; j++) {
+			int t = pairStart[j];
+			for (int p = columnStart[j]; p < columnStart[j + 1]; p++) {
+				for (int q = columnStart[j]; q <= p; q++) {
+					int a = inverse[columnRow[p]], b = inverse[columnRow[q]];
+					int column = Math.min(a, b), row = Math.max(a, b);
+					pairPosition[t++] = row == column ? factorStart[column]
+							: Arrays.binarySearch(factorRow, factorStart[column] + 1, factorStart[column + 1], row);
+				}
+			}
+		}
+		work = new double[m];
+		head = new int[m];
+		next = new int[m];
+		position = new int[m];
+	}
+
+	/**
+	 * Sets the bounds, the objective and the right-hand side of the standard
+	 * form of the problem.
+	 *
+	 * @return {@code false} if the problem is obviously infeasible.
+	 * @throws SolverException
+	 *         if the quadratic part of the objective is not convex.
+	 */
+	private boolean createStandardForm() throws SolverException {
+		double sign = minimize ? 1d : -1d;
+		for (int j = 0; j < variableCount; j++) {
+			cost[j] = sign * linear[j];
+			hessian[j] = 2d * sign * quadratic[j];
+			if (hessian[j] < 0d) {
+				throw new SolverException("The quadratic part of the objective function is not convex.");
+			}
+			lower[j] = lowerBounds[j];
+			upper[j] = upperBounds[j];
+		}
+		for (int j = variableCount; j < n; j++) {
+			lower[j] = cost[j] = hessian[j] = 0d;
+			upper[j] = Double.POSITIVE_INFINITY;
+		}
+
+		for (int i = 0; i < m; i++) {
+			Constraint constraint = constraints.get(i);
+			if (empty[i]) {
+				double tolerance = TOLERANCE * Math.max(1d, Math.abs(constraint.rhs));
+				if (((constraint.relation == Relation.EQUAL) && (Math.abs(constraint.rhs) > tolerance))
+						|| ((constraint.relation == Relation.LESS_EQUAL) && (constraint.rhs < -tolerance))
+						|| ((constraint.relation == Relation.GREATER_EQUAL) && (constraint.rhs > tolerance))) {
+					return false;
+				}
+			}
+			rhs[i] = scale[i] * constraint.rhs;
+		}
+
+		for (int j = 0; j < n; j++) {
+			hasLower[j] = lower[j] > -INFINITY;
+			hasUpper[j] = upper[j] < INFINITY;
+			fixed[j] = false;
+			if (hasLower[j] && hasUpper[j]) {
+				double size = Math.max(1d, Math.max(Math.abs(lower[j]), Math.abs(upper[j])));
+				if (upper[j] - lower[j] < -TOLERANCE * size) {
+					return false;
+				}
+				fixed[j] = upper[j] - lower[j] <= 1E-12d * size;
+			}
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getValues()
+	 */
+	@Override
+	public double[] getValues() throws SolverException {
+		if (solution == null) {
+			throw new SolverException("No solution available.");
+		}
+		return solution.clone();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getObjectiveValue()
+	 */
+	@Override
+	public double getObjectiveValue() throws SolverException {
+		if (solution == null) {
+			throw new SolverException("No solution available.");
+		}
+		return objectiveValue;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#getIterationCount()
+	 */
+	@Override
+	public int getIterationCount() {
+		return iterations;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#clear()
+	 */
+	@Override
+	public void clear() {
+		variableCount = 0;
+		constraints.clear();
+		structureChanged = true;
+		lastIteration = null;
+		minimize = true;
+		start = null;
+		solution = null;
+		objectiveValue = Double.NaN;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sbml.simulator.fba.solver.Solver#end()
+	 */
+	@Override
+	public void end() {
+		clear();
+		lowerBounds = upperBounds = linear = quadratic = new double[0];
+		columnStart = columnRow = permutation = factorStart = factorRow = null;
+		pairStart = pairPosition = head = next = position = null;
+		columnValue = scale = lower = upper = cost = hessian = rhs = factorValue = work = null;
+		hasLower = hasUpper = fixed = empty = null;
+	}
+
+}
@@ -0,0 +1,346 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Assembles a linear or convex quadratic program from primitive arrays before
+ * it is passed to a {@link Solver}: the bounds of the variables, the
+ * coefficients of the objective and the constraints as sparse rows in
+ * compressed sparse row (CSR) format. Only non-zero coefficients are stored,
+ * so the time and memory to create a problem are linear in its non-zero
+ * entries. For debugging, the problem can be written into a file in the LP
+ * format of CPLEX instead of being printed.
+ *
+ * @since 2.1
+ */
+public class ProblemBuilder {
+
+	/**
+	 * The bounds of the variables.
+	 */
+	private double[] lowerBounds = new double[16], upperBounds = new double[16];
+
+	/**
+	 * The number of variables.
+	 */
+	private int variableCount = 0;
+
+	/**
+	 * The linear and the quadratic coefficients of the objective or
+	 * {@code null}.
+	 */
+	private double[] linear = null, quadratic = null;
+
+	/**
+	 * Whether the objective is minimized.
+	 */
+	private boolean minimize = true;
+
+	/**
+	 * The non-zero entries of row i are at the positions rowPointers[i] to
+	 * rowPointers[i + 1] - 1 of columnIndices and values.
+	 */
+	private int[] rowPointers = new int[17];
+
+	/**
+	 * The variable of each non-zero entry.
+	 */
+	private int[] columnIndices = new int[64];
+
+	/**
+	 * The coefficient of each non-zero entry.
+	 */
+	private double[] values = new double[64];
+
+	/**
+	 * The relation of each row.
+	 */
+	private Solver.Relation[] relations = new Solver.Relation[16];
+
+	/**
+	 * The right-hand side of each row.
+	 */
+	private double[] rightHandSides = new double[16];
+
+	/**
+	 * The number of rows.
+	 */
+	private int rowCount = 0;
+
+	/**
+	 * Adds variables with the given bounds.
+	 *
+	 * @param lowerBounds
+	 * @param upperBounds
+	 * @return the index of the first new variable
+	 */
+	public int addVariables(double[] lowerBounds, double[] upperBounds) {
+		int first = variableCount;
+		int count = lowerBounds.length;
+		if (first + count > this.lowerBounds.length) {
+			int capacity = Math.max(2 * this.lowerBounds.length, first + count);
+			this.lowerBounds = Arrays.copyOf(this.lowerBounds, capacity);
+			this.upperBounds = Arrays.copyOf(this.upperBounds, capacity);
+		}
+		System.arraycopy(lowerBounds, 0, this.lowerBounds, first, count);
+		System.arraycopy(upperBounds, 0, this.upperBounds, first, count);
+		variableCount += count;
+		return first;
+	}
+
+	/**
+	 * @return the number of variables
+	 */
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * Sets the objective linear^T * x + sum_j quadratic_j * x_j^2.
+	 *
+	 * @param linear
+	 *        one coefficient per variable
+	 * @param quadratic
+	 *        one coefficient per variable or {@code null} for a linear
+	 *        objective
+	 * @param minimize
+	 */
+	public void setObjective(double[] linear, double[] quadratic, boolean minimize) {
+		this.linear = linear.clone();
+		this.quadratic = (quadratic != null) ? quadratic.clone() : null;
+		this.minimize = minimize;
+	}
+
+	/**
+	 * Adds the row sum_k coefficients[k] * x[variables[k]] (relation) rhs.
+	 * Zero coefficients are skipped.
+	 *
+	 * @param variables
+	 * @param coefficients
+	 * @param relation
+	 * @param rhs
+	 * @return the index of the row
+	 */
+	public int addRow(int[] variables, double[] coefficients, Solver.Relation relation, double rhs) {
+		ensureEntryCapacity(variables.length);
+		int position = rowPointers[rowCount];
+		for (int k = 0; k < variables.length; k++) {
+			if (coefficients[k] != 0d) {
+				columnIndices[position] = variables[k];
+				values[position++] = coefficients[k];
+			}
+		}
+		return finishRow(position, relation, rhs);
+	}
+
+	/**
+	 * Adds the row sum_k coefficients[k] * x[offset + k] (relation) rhs of a
+	 * dense array, of which only the non-zero coefficients are stored.
+	 *
+	 * @param coefficients
+	 * @param offset
+	 *        the variable of the first coefficient
+	 * @param relation
+	 * @param rhs
+	 * @return the index of the row
+	 */
+	public int addRow(double[] coefficients, int offset, Solver.Relation relation, double rhs) {
+		ensureEntryCapacity(coefficients.length);
+		int position = rowPointers[rowCount];
+		for (int k = 0; k < coefficients.length; k++) {
+			if (coefficients[k] != 0d) {
+				columnIndices[position] = offset + k;
+				values[position++] = coefficients[k];
+			}
+		}
+		return finishRow(position, relation, rhs);
+	}
+
+	/**
+	 * Makes room for the given number of additional non-zero entries.
+	 *
+	 * @param count
+	 */
+	private void ensureEntryCapacity(int count) {
+		int required = rowPointers[rowCount] + count;
+		if (required > values.length) {
+			int capacity = Math.max(2 * values.length, required);
+			columnIndices = Arrays.copyOf(columnIndices, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * Stores the end of the current row, its relation and its right-hand side.
+	 *
+	 * @param end
+	 * @param relation
+	 * @param rhs
+	 * @return the index of the row
+	 */
+	private int finishRow(int end, Solver.Relation relation, double rhs) {
+		if (rowCount == relations.length) {
+			rowPointers = Arrays.copyOf(rowPointers, 2 * relations.length + 1);
+			relations = Arrays.copyOf(relations, 2 * relations.length);
+			rightHandSides = Arrays.copyOf(rightHandSides, 2 * rightHandSides.length);
+		}
+		relations[rowCount] = relation;
+		rightHandSides[rowCount] = rhs;
+		rowPointers[++rowCount] = end;
+		return rowCount - 1;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of non-zero entries of all rows
+	 */
+	public int getNonZeroCount() {
+		return rowPointers[rowCount];
+	}
+
+	/**
+	 * Adds the variables, the objective and the rows to an empty solver.
+	 *
+	 * @param solver
+	 * @throws SolverException
+	 */
+	public void build(Solver solver) throws SolverException {
+		solver.addVariables(Arrays.copyOf(lowerBounds, variableCount), Arrays.copyOf(upperBounds, variableCount));
+		if (linear != null) {
+			solver.setObjective(linear, quadratic, minimize);
+		}
+		for (int i = 0; i < rowCount; i++) {
+			solver.addConstraint(Arrays.copyOfRange(columnIndices, rowPointers[i], rowPointers[i + 1]),
+				Arrays.copyOfRange(values, rowPointers[i], rowPointers[i + 1]), relations[i], rightHandSides[i]);
+		}
+	}
+
+	/**
+	 * Writes the problem into a file in the LP format of CPLEX. The variables
+	 * are named x0, x1, ... and the rows c0, c1, ...
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void export(File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("\\ " + variableCount + " variables, " + rowCount + " rows, " + getNonZeroCount() + " non-zero entries");
+			writer.newLine();
+			writer.write(minimize ? "Minimize" : "Maximize");
+			writer.newLine();
+			writer.write(" obj:");
+			int terms = 0;
+			if (linear != null) {
+				for (int j = 0; j < linear.length; j++) {
+					if (linear[j] != 0d) {
+						terms = writeTerm(writer, linear[j], "x" + j, terms);
+					}
+				}
+			}
+			if (quadratic != null) {
+				// the LP format halves the quadratic part
+				writer.write(" + [");
+				for (int j = 0; j < quadratic.length; j++) {
+					if (quadratic[j] != 0d) {
+						terms = writeTerm(writer, 2d * quadratic[j], "x" + j + " ^2", terms);
+					}
+				}
+				writer.write(" ] / 2");
+			}
+			writer.newLine();
+			writer.write("Subject To");
+			writer.newLine();
+			for (int i = 0; i < rowCount; i++) {
+				writer.write(" c" + i + ":");
+				terms = 0;
+				for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+					terms = writeTerm(writer, values[k], "x" + columnIndices[k], terms);
+				}
+				if (terms == 0) {
+					writer.write(" 0 x0");
+				}
+				switch (relations[i]) {
+				case LESS_EQUAL:
+					writer.write(" <= ");
+					break;
+				case GREATER_EQUAL:
+					writer.write(" >= ");
+					break;
+				default:
+					writer.write(" = ");
+					break;
+				}
+				writer.write(String.valueOf(rightHandSides[i]));
+				writer.newLine();
+			}
+			writer.write("Bounds");
+			writer.newLine();
+			for (int j = 0; j < variableCount; j++) {
+				writer.write(' ' + toLP(lowerBounds[j]) + " <= x" + j + " <= " + toLP(upperBounds[j]));
+				writer.newLine();
+			}
+			writer.write("End");
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes one term of a sum and breaks long lines.
+	 *
+	 * @param writer
+	 * @param coefficient
+	 * @param variable
+	 * @param terms
+	 *        the number of terms written so far
+	 * @return the number of terms written
+	 * @throws IOException
+	 */
+	private static int writeTerm(BufferedWriter writer, double coefficient, String variable, int terms) throws IOException {
+		if ((terms > 0) && (terms % 8 == 0)) {
+			writer.newLine();
+			writer.write("   ");
+		}
+		writer.write(((coefficient < 0d) ? " - " : " + ") + Math.abs(coefficient) + ' ' + variable);
+		return terms + 1;
+	}
+
+	/**
+	 * @param bound
+	 * @return the bound in the LP format
+	 */
+	private static String toLP(double bound) {
+		if (Double.isInfinite(bound)) {
+			return (bound < 0d) ? "-inf" : "+inf";
+		}
+		return String.valueOf(bound);
+	}
+
+}
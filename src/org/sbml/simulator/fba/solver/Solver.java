@@ -0,0 +1,199 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+/**
+ * A solver for linear and convex quadratic optimization problems of the form
+ * <pre>
+ * minimize (or maximize)  sum_j (c_j * x_j + q_j * x_j^2)
+ * subject to              a_i * x {<=, >=, =} b_i   for each constraint i,
+ *                         l_j <= x_j <= u_j         for each variable j,
+ * </pre>
+ * where the quadratic part must be convex, i.e., all q_j must be
+ * non-negative when minimizing and non-positive when maximizing. Variables
+ * and constraints are addressed by their index in the order in which they
+ * have been added. Bounds, coefficients and right-hand sides can be changed
+ * after a solve, so that a sequence of similar problems does not need to be
+ * built from scratch.
+ *
+ * @since 2.1
+ */
+public interface Solver {
+
+	/**
+	 * The relation between the left-hand side and the right-hand side of a
+	 * constraint.
+	 */
+	public static enum Relation {
+		/**
+		 * a * x = b
+		 */
+		EQUAL,
+		/**
+		 * a * x >= b
+		 */
+		GREATER_EQUAL,
+		/**
+		 * a * x <= b
+		 */
+		LESS_EQUAL;
+	}
+
+	/**
+	 * Adds variables with the given bounds; infinite bounds may be given by
+	 * {@link Double#POSITIVE_INFINITY}, {@link Double#NEGATIVE_INFINITY} or
+	 * any value whose absolute value is at least 1E20.
+	 *
+	 * @param lowerBounds
+	 * @param upperBounds
+	 * @return the index of the first added variable.
+	 * @throws SolverException
+	 */
+	public int addVariables(double lowerBounds[], double upperBounds[]) throws SolverException;
+
+	/**
+	 * @return the number of variables.
+	 */
+	public int getVariableCount();
+
+	/**
+	 *
+	 * @param variable
+	 * @param lowerBound
+	 * @param upperBound
+	 * @throws SolverException
+	 */
+	public void setBounds(int variable, double lowerBound, double upperBound) throws SolverException;
+
+	/**
+	 * Sets the objective function. Previous objective coefficients are
+	 * replaced.
+	 *
+	 * @param linear
+	 *        the coefficients c_j; may be shorter than the number of variables,
+	 *        the missing coefficients are zero.
+	 * @param quadratic
+	 *        the coefficients q_j of the squares or {@code null} for a linear
+	 *        objective.
+	 * @param minimize
+	 * @throws SolverException
+	 */
+	public void setObjective(double linear[], double quadratic[], boolean minimize) throws SolverException;
+
+	/**
+	 * Changes one linear coefficient of the objective function.
+	 *
+	 * @param variable
+	 * @param coefficient
+	 * @throws SolverException
+	 */
+	public void setObjectiveCoefficient(int variable, double coefficient) throws SolverException;
+
+	/**
+	 * Adds the constraint sum_k coefficients[k] * x_variables[k] relation
+	 * rhs. Repeated variables are summed up.
+	 *
+	 * @param variables
+	 * @param coefficients
+	 * @param relation
+	 * @param rhs
+	 * @return the index of the constraint.
+	 * @throws SolverException
+	 */
+	public int addConstraint(int variables[], double coefficients[], Relation relation, double rhs) throws SolverException;
+
+	/**
+	 * @return the number of constraints.
+	 */
+	public int getConstraintCount();
+
+	/**
+	 * Changes the coefficient of a variable in a constraint.
+	 *
+	 * @param constraint
+	 * @param variable
+	 * @param coefficient
+	 * @throws SolverException
+	 */
+	public void setCoefficient(int constraint, int variable, double coefficient) throws SolverException;
+
+	/**
+	 *
+	 * @param constraint
+	 * @param rhs
+	 * @throws SolverException
+	 */
+	public void setRightHandSide(int constraint, double rhs) throws SolverException;
+
+	/**
+	 * Sets a starting point for the next solve, typically the solution of a
+	 * similar problem.
+	 *
+	 * @param values
+	 *        one value per variable or {@code null} to start from scratch.
+	 * @throws SolverException
+	 */
+	public void setStartingPoint(double values[]) throws SolverException;
+
+	/**
+	 *
+	 * @param iterations
+	 *        the maximal number of iterations per solve.
+	 * @throws SolverException
+	 */
+	public void setIterationLimit(int iterations) throws SolverException;
+
+	/**
+	 * Solves the problem.
+	 *
+	 * @return {@code true} if an optimal solution has been found.
+	 * @throws SolverException
+	 */
+	public boolean solve() throws SolverException;
+
+	/**
+	 * @return the values of all variables in the solution of the last solve.
+	 * @throws SolverException
+	 *         if no solution is available.
+	 */
+	public double[] getValues() throws SolverException;
+
+	/**
+	 * @return the value of the objective function in the solution of the last
+	 *         solve.
+	 * @throws SolverException
+	 *         if no solution is available.
+	 */
+	public double getObjectiveValue() throws SolverException;
+
+	/**
+	 * @return the number of iterations of the last solve.
+	 */
+	public int getIterationCount();
+
+	/**
+	 * Removes all variables, constraints and the objective function.
+	 *
+	 * @throws SolverException
+	 */
+	public void clear() throws SolverException;
+
+	/**
+	 * Releases all resources of this solver, which cannot be used afterwards.
+	 */
+	public void end();
+
+}
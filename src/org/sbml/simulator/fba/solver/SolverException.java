@@ -0,0 +1,56 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+/**
+ * Indicates that a {@link Solver} could not be created, could not represent
+ * a problem or does not have a solution.
+ *
+ * @since 2.1
+ */
+public class SolverException extends Exception {
+
+	/**
+	 * Generated serial version identifier.
+	 */
+	private static final long serialVersionUID = -3489137651023964741L;
+
+	/**
+	 *
+	 * @param message
+	 */
+	public SolverException(String message) {
+		super(message);
+	}
+
+	/**
+	 *
+	 * @param cause
+	 */
+	public SolverException(Throwable cause) {
+		super(cause);
+	}
+
+	/**
+	 *
+	 * @param message
+	 * @param cause
+	 */
+	public SolverException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
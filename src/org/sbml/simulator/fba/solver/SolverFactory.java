@@ -0,0 +1,136 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link Solver}s. CPLEX is optional: {@link CplexSolver} is only
+ * loaded by reflection if CPLEX can be found on the class path, otherwise
+ * the bundled {@link InteriorPointSolver} is used.
+ *
+ * @since 2.1
+ */
+public class SolverFactory {
+
+	/**
+	 * The available solvers.
+	 */
+	public static enum SolverType {
+		/**
+		 * CPLEX if it is available, otherwise the interior-point solver.
+		 */
+		AUTOMATIC,
+		/**
+		 * {@link CplexSolver}
+		 */
+		CPLEX,
+		/**
+		 * {@link InteriorPointSolver}
+		 */
+		INTERIOR_POINT;
+
+		/**
+		 * @return the names of all solver types.
+		 */
+		public static String[] getAllNames() {
+			SolverType types[] = values();
+			String names[] = new String[types.length];
+			for (int i = 0; i < types.length; i++) {
+				names[i] = types[i].name();
+			}
+			return names;
+		}
+	}
+
+	/**
+	 * A {@link Logger} for this class.
+	 */
+	private static final transient Logger logger = Logger.getLogger(SolverFactory.class.getName());
+
+	/**
+	 * The class whose presence indicates that CPLEX is available.
+	 */
+	private static final String CPLEX_CLASS = "ilog.cplex.IloCplex";
+
+	/**
+	 * The name of the adapter class, which must not be referenced directly.
+	 */
+	private static final String CPLEX_SOLVER_CLASS = "org.sbml.simulator.fba.solver.CplexSolver";
+
+	/**
+	 * @return {@code true} if CPLEX can be found on the class path.
+	 */
+	public static boolean isCplexAvailable() {
+		try {
+			Class.forName(CPLEX_CLASS);
+			return true;
+		} catch (Throwable exc) {
+			return false;
+		}
+	}
+
+	/**
+	 *
+	 * @param solver
+	 * @return {@code true} if the given solver is a {@link CplexSolver}.
+	 */
+	public static boolean isCplex(Solver solver) {
+		return (solver != null) && solver.getClass().getName().equals(CPLEX_SOLVER_CLASS);
+	}
+
+	/**
+	 * @return CPLEX if it is available, otherwise the interior-point solver.
+	 * @throws SolverException
+	 */
+	public static Solver createSolver() throws SolverException {
+		return createSolver(SolverType.AUTOMATIC);
+	}
+
+	/**
+	 *
+	 * @param type
+	 * @return a new solver of the given type.
+	 * @throws SolverException
+	 *         if CPLEX has been requested explicitly but cannot be created.
+	 */
+	public static Solver createSolver(SolverType type) throws SolverException {
+		if (type == SolverType.INTERIOR_POINT) {
+			return new InteriorPointSolver();
+		}
+		if (isCplexAvailable()) {
+			SolverException failure;
+			try {
+				return (Solver) Class.forName(CPLEX_SOLVER_CLASS).getDeclaredConstructor().newInstance();
+			} catch (InvocationTargetException exc) {
+				// e.g., the license is missing
+				failure = new SolverException("CPLEX cannot be initialized.", exc.getCause());
+			} catch (ReflectiveOperationException | LinkageError exc) {
+				// e.g., the native library is missing
+				failure = new SolverException("CPLEX cannot be initialized.", exc);
+			}
+			if (type == SolverType.CPLEX) {
+				throw failure;
+			}
+			logger.fine(failure.getMessage() + " " + failure.getCause());
+		} else if (type == SolverType.CPLEX) {
+			throw new SolverException("CPLEX is not available on the class path.");
+		}
+		return new InteriorPointSolver();
+	}
+
+}
@@ -0,0 +1,24 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+
+/**
+ * Solvers for the linear and quadratic programs of the flux balance
+ * analysis: a bundled interior-point solver and an optional adapter for
+ * CPLEX, which is only used if it is available on the class path.
+ *
+ * @since 2.1
+ */
+package org.sbml.simulator.fba.solver;
@@ -22,9 +22,11 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.PreferenceChangeEvent;
@@ -39,6 +41,7 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JToolBar;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
@@ -49,6 +52,8 @@ import org.sbml.jsbml.Model;
 import org.sbml.jsbml.Quantity;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLWriter;
+import org.sbml.optimization.LevenbergMarquardt;
+import org.sbml.optimization.SurrogateModel;
 import org.sbml.optimization.problem.EstimationOptions;
 import org.sbml.optimization.problem.EstimationProblem;
 import org.sbml.simulator.QualityMeasurement;
@@ -563,6 +568,75 @@ BaseFrameTab, InterfaceStatisticsListener, PropertyChangeListener, PreferenceCha
   @Override
   public void notifyRunStopped(int runsPerformed, boolean completedLastRun) {
     logger.fine("notifyRunStopped");
+    EstimationProblem problem = getSimulationManager().getEstimationProblem();
+    SBPreferences prefs = SBPreferences.getPreferencesFor(EstimationOptions.class);
+    if ((problem != null) && (problem.getSurrogateModel() != null)) {
+      SurrogateModel surrogate = problem.getSurrogateModel();
+      logger.info(MessageFormat.format(bundle.getString("SURROGATE_STATISTICS"),
+        surrogate.getSimulatedCount(), surrogate.getScreenedCount()));
+    }
+    if (completedLastRun && (problem != null)
+        && (problem.getBestSolutionFound() != null)
+        && prefs.getBoolean(EstimationOptions.EST_LOCAL_REFINEMENT)) {
+      refineBestSolution(problem, prefs);
+    }
+  }
+
+  /**
+   * Improves the best solution of the global optimization procedure by a local
+   * search in the background and displays the result when it is done.
+   * 
+   * @param problem
+   * @param prefs
+   */
+  private void refineBestSolution(final EstimationProblem problem, SBPreferences prefs) {
+    final int maxIterations = prefs.getInt(EstimationOptions.EST_LOCAL_REFINEMENT_MAX_ITERATIONS);
+    final int threads = prefs.getInt(EstimationOptions.EST_NUMBER_OF_THREADS);
+    final double[] quality = new double[1];
+    SwingWorker<double[], Void> refinement = new SwingWorker<double[], Void>() {
+
+      /* (non-Javadoc)
+       * @see javax.swing.SwingWorker#doInBackground()
+       */
+      @Override
+      protected double[] doInBackground() throws Exception {
+        LevenbergMarquardt refinement = new LevenbergMarquardt(problem,
+          maxIterations, threads);
+        double[] quantities = refinement.refine(problem.getBestSolutionFound());
+        problem.setBestSolutionFound(quantities);
+        quality[0] = problem.evaluate(quantities)[0];
+        return quantities;
+      }
+
+      /* (non-Javadoc)
+       * @see javax.swing.SwingWorker#done()
+       */
+      @Override
+      protected void done() {
+        try {
+          double[] quantities = get();
+          double newValue = quality[0];
+          if (problem.getCurrentSimulationData() != null) {
+            setSimulationData(problem.getCurrentSimulationData());
+          }
+          if (getSimulationToolPanel().getQualityMeasure() instanceof PearsonCorrelation) {
+            newValue = Math.abs(newValue);
+          }
+          firePropertyChange("quality", getSimulationToolPanel().getCurrentQuality(),
+            newValue);
+          if (quantities.length == selectedQuantityIds.length) {
+            for (int i = 0; i < selectedQuantityIds.length; i++) {
+              visualizationPanel.updateQuantity(selectedQuantityIds[i], quantities[i]);
+            }
+          }
+        } catch (InterruptedException exc) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException exc) {
+          logger.warning(getMessage(exc.getCause()));
+        }
+      }
+    };
+    refinement.execute();
   }
 
   /* (non-Javadoc)
@@ -30,6 +30,7 @@ import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -62,7 +63,9 @@ import org.sbml.jsbml.Parameter;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.Species;
+import org.sbml.optimization.EstimationCheckpoint;
 import org.sbml.optimization.EvA2GUIStarter;
+import org.sbml.optimization.SurrogateModel;
 import org.sbml.optimization.problem.EstimationOptions;
 import org.sbml.optimization.problem.EstimationProblem;
 import org.sbml.simulator.SBMLsimulator;
@@ -759,6 +762,15 @@ PropertyChangeListener {
         final WindowListener wl = EventHandler.create(WindowListener.class,
           this, "optimizationFinished", "source", "windowClosed");
         final SimulatorUI ui = this;
+        // resuming is a one-shot action that is confirmed for each estimation
+        SBPreferences prefsEst = SBPreferences.getPreferencesFor(EstimationOptions.class);
+        File checkpointFile = new File(prefsEst.get(EstimationOptions.EST_CHECKPOINT_FILE));
+        final boolean resume = prefsEst.getBoolean(EstimationOptions.EST_CHECKPOINTS)
+            && checkpointFile.exists()
+            && (GUITools.showQuestionMessage(this, MessageFormat.format(
+              bundle.getString("RESUME_FROM_CHECKPOINT_QUESTION"), checkpointFile),
+              bundle.getString("EST_RESUME_FROM_CHECKPOINT"),
+              JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION);
         List<MultiTable> references = simPanel.getExperimentalData();
         if (references.get(0).getTimePoints()[0] == 0d) {
           for (int col = 0; col < references.get(0).getColumnCount(); col++) {
@@ -864,6 +876,27 @@ PropertyChangeListener {
                 solver, simPanel.getDistance(), model, experimentalData, prefs
                 .getBoolean(EstimationOptions.EST_MULTI_SHOOT), panel
                 .getSelectedQuantityRanges());
+              estimationProblem.setNumberOfThreads(prefs
+                .getInt(EstimationOptions.EST_NUMBER_OF_THREADS));
+              estimationProblem.setParallelMultishoot(prefs
+                .getBoolean(EstimationOptions.EST_PARALLEL_MULTI_SHOOT));
+              estimationProblem.setDenseOutput(prefs
+                .getBoolean(EstimationOptions.EST_DENSE_OUTPUT));
+              estimationProblem.setMultiExperiment(prefs
+                .getBoolean(EstimationOptions.EST_MULTI_EXPERIMENT));
+              if (prefs.getBoolean(EstimationOptions.EST_CHECKPOINTS)) {
+                File checkpointFile = new File(prefs.get(EstimationOptions.EST_CHECKPOINT_FILE));
+                if (resume) {
+                  estimationProblem.resume(EstimationCheckpoint.load(checkpointFile));
+                }
+                estimationProblem.setCheckpointFile(checkpointFile,
+                  1000L * prefs.getInt(EstimationOptions.EST_CHECKPOINT_INTERVAL));
+              }
+              if (prefs.getBoolean(EstimationOptions.EST_SURROGATE)) {
+                estimationProblem.setSurrogateModel(new SurrogateModel(
+                  estimationProblem.getQuantityRanges(),
+                  prefs.getDouble(EstimationOptions.EST_SURROGATE_QUANTILE)));
+              }
               simPanel.getSimulationManager().setEstimationProblem(
                 estimationProblem);
               EvA2GUIStarter evaStarter = EvA2GUIStarter.init(
@@ -0,0 +1,264 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.simulator.math.EuclideanDistance;
+import org.simulator.math.ManhattanDistance;
+import org.simulator.math.N_Metric;
+import org.simulator.math.QualityMeasure;
+import org.simulator.math.RelativeSquaredError;
+import org.simulator.math.odes.MultiTable;
+import org.simulator.math.odes.MultiTable.Block.Column;
+
+/**
+ * Precomputes how the columns and time points of simulation results with a
+ * certain layout correspond to a table of reference data, so that
+ * {@link QualityMeasure#distance(MultiTable, MultiTable)} does not need to
+ * match identifiers and time points again for every simulation. The plan
+ * reproduces the semantics of the quality measure: only time points that
+ * occur in both tables are compared, columns are matched by their
+ * identifiers, and missing (NaN) values are skipped.
+ * <p>
+ * For the {@link N_Metric}s ({@link EuclideanDistance},
+ * {@link ManhattanDistance}) and the {@link RelativeSquaredError}, the
+ * distance is computed by a loop over the raw data arrays of the simulation.
+ * All other quality measures are delegated to
+ * {@link QualityMeasure#distance(MultiTable, MultiTable)}. A plan must not be
+ * used concurrently by several threads.
+ *
+ * @since 2.1
+ */
+public class AlignmentPlan {
+
+  /**
+   * Returns the given plan if it fits both tables or a new plan otherwise.
+   *
+   * @param plan
+   *        may be {@code null}.
+   * @param solution
+   * @param reference
+   * @return
+   */
+  public static AlignmentPlan update(AlignmentPlan plan, MultiTable solution,
+    MultiTable reference) {
+    if ((plan != null) && plan.isApplicable(solution, reference)) {
+      return plan;
+    }
+    return new AlignmentPlan(solution, reference);
+  }
+
+  /**
+   * The reference data this plan has been computed for.
+   */
+  private final MultiTable reference;
+
+  /**
+   * The time points of the simulation layout or {@code null} if not set.
+   */
+  private final double timePoints[];
+
+  /**
+   * The identifiers of each block of the simulation layout.
+   */
+  private final String identifiers[][];
+
+  /**
+   * The rows of the simulation that are compared.
+   */
+  private final int rows[];
+
+  /**
+   * The block and the column within this block of each compared simulation
+   * column.
+   */
+  private final int blocks[], columns[];
+
+  /**
+   * The reference values of each compared column at each compared row.
+   */
+  private final double referenceValues[][];
+
+  /**
+   * For each compared column the positions in {@link #rows} whose reference
+   * value is not NaN.
+   */
+  private final int valid[][];
+
+  /**
+   * The distance of each compared column, reused by each computation.
+   */
+  private final double columnDistances[];
+
+  /**
+   *
+   * @param solution
+   *        a simulation result that has the layout of all results this plan
+   *        is to be used for.
+   * @param reference
+   */
+  public AlignmentPlan(MultiTable solution, MultiTable reference) {
+    this.reference = reference;
+    timePoints = solution.isSetTimePoints() ? solution.getTimePoints().clone() : null;
+    identifiers = new String[solution.getBlockCount()][];
+    for (int b = 0; b < identifiers.length; b++) {
+      identifiers[b] = solution.getBlock(b).getIdentifiers().clone();
+    }
+
+    // rows in the same way as MultiTable.filter(double[])
+    int referenceRows[];
+    if (solution.isSetTimePoints() && reference.isSetTimePoints()) {
+      int solutionRows[] = filter(solution.getTimePoints(), reference.getTimePoints());
+      referenceRows = filter(reference.getTimePoints(), solution.getTimePoints());
+      rows = Arrays.copyOf(solutionRows, Math.min(solutionRows.length, referenceRows.length));
+    } else {
+      rows = new int[Math.min(solution.getRowCount(), reference.getRowCount())];
+      referenceRows = new int[rows.length];
+      for (int k = 0; k < rows.length; k++) {
+        rows[k] = k;
+        referenceRows[k] = k;
+      }
+    }
+
+    // columns in the same way as QualityMeasure.getColumnDistances
+    List<int[]> matches = new ArrayList<int[]>();
+    List<Column> referenceColumns = new ArrayList<Column>();
+    for (int b = 0; b < identifiers.length; b++) {
+      for (int c = 0; c < identifiers[b].length; c++) {
+        Column column = (identifiers[b][c] != null) ? reference.getColumn(identifiers[b][c]) : null;
+        if (column != null) {
+          matches.add(new int[] {b, c});
+          referenceColumns.add(column);
+        }
+      }
+    }
+    blocks = new int[matches.size()];
+    columns = new int[matches.size()];
+    referenceValues = new double[matches.size()][rows.length];
+    valid = new int[matches.size()][];
+    for (int j = 0; j < blocks.length; j++) {
+      blocks[j] = matches.get(j)[0];
+      columns[j] = matches.get(j)[1];
+      int count = 0, positions[] = new int[rows.length];
+      for (int k = 0; k < rows.length; k++) {
+        referenceValues[j][k] = referenceColumns.get(j).getValue(referenceRows[k]);
+        if (!Double.isNaN(referenceValues[j][k])) {
+          positions[count++] = k;
+        }
+      }
+      valid[j] = Arrays.copyOf(positions, count);
+    }
+    columnDistances = new double[blocks.length];
+  }
+
+  /**
+   *
+   * @param times
+   *        sorted time points of a table.
+   * @param other
+   *        sorted time points of another table.
+   * @return the indices of all time points in {@code times} that also occur
+   *         in {@code other}.
+   */
+  private static int[] filter(double times[], double other[]) {
+    int indices[] = new int[times.length];
+    int count = 0, i = 0;
+    for (double t : other) {
+      while ((i < times.length) && (times[i] <= t)) {
+        if (times[i] == t) {
+          indices[count++] = i;
+        }
+        i++;
+      }
+    }
+    return Arrays.copyOf(indices, count);
+  }
+
+  /**
+   *
+   * @param solution
+   * @param reference
+   * @return {@code true} if this plan has been computed for the given
+   *         reference data and a simulation with the same time points and
+   *         identifiers as the given one.
+   */
+  public boolean isApplicable(MultiTable solution, MultiTable reference) {
+    if ((reference != this.reference) || (solution.getBlockCount() != identifiers.length)) {
+      return false;
+    }
+    if (solution.isSetTimePoints() ? !Arrays.equals(timePoints, solution.getTimePoints()) : (timePoints != null)) {
+      return false;
+    }
+    for (int b = 0; b < identifiers.length; b++) {
+      if (!Arrays.equals(identifiers[b], solution.getBlock(b).getIdentifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes the same value as {@code measure.distance(solution, reference)}.
+   *
+   * @param measure
+   * @param solution
+   *        a simulation result for which this plan is applicable.
+   * @return
+   */
+  public double distance(QualityMeasure measure, MultiTable solution) {
+    Class<?> type = measure.getClass();
+    boolean relative = (type == RelativeSquaredError.class);
+    if (!relative && (type != N_Metric.class) && (type != EuclideanDistance.class)
+        && (type != ManhattanDistance.class)) {
+      return measure.distance(solution, reference);
+    }
+    double root = ((N_Metric) measure).getRoot();
+    double defaultValue = measure.getDefaultValue();
+    for (int j = 0; j < columnDistances.length; j++) {
+      if (root == 0d) {
+        columnDistances[j] = defaultValue;
+        continue;
+      }
+      double data[][] = solution.getBlock(blocks[j]).getData();
+      double y[] = referenceValues[j];
+      int positions[] = valid[j], column = columns[j];
+      double sum = 0d;
+      for (int p = 0; p < positions.length; p++) {
+        int k = positions[p];
+        double x = data[rows[k]][column];
+        if (Double.isNaN(x) || (x == y[k])) {
+          continue;
+        }
+        double d = Math.abs(x - y[k]);
+        if (relative && (y[k] == 0d)) {
+          // the relative error is undefined, hence the absolute error is used
+          sum += d;
+        } else {
+          if (relative) {
+            d /= y[k];
+          }
+          sum += (root == 2d) ? d * d : (root == 1d) ? d : Math.pow(d, root);
+        }
+      }
+      columnDistances[j] = relative ? sum : Math.pow(sum, 1d / root);
+    }
+    return measure.getMeanFunction().computeMean(columnDistances);
+  }
+
+}
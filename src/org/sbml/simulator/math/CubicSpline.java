@@ -0,0 +1,156 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.math;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A natural cubic interpolation spline through a series of points. The
+ * spline is fitted once and stores its coefficients (the second derivatives
+ * at the sampling points), so that it can be evaluated at any number of
+ * points without fitting it again.
+ *
+ * @since 2.1
+ */
+public class CubicSpline implements Serializable {
+
+  /**
+   * Generated serial version identifier.
+   */
+  private static final long serialVersionUID = -3716205566421893415L;
+
+  /**
+   * The sampling points in ascending order.
+   */
+  private final double x[];
+
+  /**
+   * The values at the sampling points.
+   */
+  private final double y[];
+
+  /**
+   * The second derivatives of the spline at the sampling points.
+   */
+  private final double y2[];
+
+  /**
+   * Fits a natural cubic spline, i.e., the second derivatives at both ends
+   * are zero.
+   *
+   * @param x
+   *        the sampling points in ascending order.
+   * @param y
+   *        the values at the sampling points.
+   */
+  public CubicSpline(double x[], double y[]) {
+    if (x.length != y.length) {
+      throw new IllegalArgumentException(x.length + " != " + y.length);
+    }
+    this.x = x.clone();
+    this.y = y.clone();
+    int n = x.length;
+    y2 = new double[n];
+    if (n < 3) {
+      return;
+    }
+    // decomposition of the tridiagonal system
+    double u[] = new double[n];
+    for (int i = 1; i < n - 1; i++) {
+      double sig = (x[i] - x[i - 1]) / (x[i + 1] - x[i - 1]);
+      double p = sig * y2[i - 1] + 2d;
+      y2[i] = (sig - 1d) / p;
+      u[i] = (y[i + 1] - y[i]) / (x[i + 1] - x[i]) - (y[i] - y[i - 1])
+          / (x[i] - x[i - 1]);
+      u[i] = (6d * u[i] / (x[i + 1] - x[i - 1]) - sig * u[i - 1]) / p;
+    }
+    // back substitution
+    for (int k = n - 2; k >= 0; k--) {
+      y2[k] = y2[k] * y2[k + 1] + u[k];
+    }
+  }
+
+  /**
+   *
+   * @param t
+   * @return the value of the spline at the given point. Outside of the
+   *         sampling points, the outermost polynomial is extrapolated.
+   */
+  public double getValue(double t) {
+    if (x.length == 0) {
+      return Double.NaN;
+    } else if (x.length == 1) {
+      return y[0];
+    }
+    int index = Arrays.binarySearch(x, t);
+    if (index >= 0) {
+      return y[index];
+    }
+    int high = Math.min(Math.max(-index - 1, 1), x.length - 1);
+    return getValue(t, high - 1, high);
+  }
+
+  /**
+   * Evaluates the spline at many points at once, which is faster than
+   * calling {@link #getValue(double)} for each point.
+   *
+   * @param t
+   *        points in ascending order.
+   * @return the values of the spline at the given points.
+   */
+  public double[] getValues(double t[]) {
+    double values[] = new double[t.length];
+    if (x.length < 2) {
+      Arrays.fill(values, getValue(0d));
+      return values;
+    }
+    int high = 1;
+    for (int i = 0; i < t.length; i++) {
+      while ((high < x.length - 1) && (x[high] < t[i])) {
+        high++;
+      }
+      values[i] = (t[i] == x[high]) ? y[high] : (t[i] == x[high - 1]) ? y[high - 1]
+          : getValue(t[i], high - 1, high);
+    }
+    return values;
+  }
+
+  /**
+   *
+   * @param t
+   * @param low
+   * @param high
+   * @return the value of the polynomial between the sampling points
+   *         {@code low} and {@code high} at {@code t}.
+   */
+  private double getValue(double t, int low, int high) {
+    double h = x[high] - x[low];
+    double a = (x[high] - t) / h;
+    double b = (t - x[low]) / h;
+    return a * y[low] + b * y[high]
+        + ((a * a * a - a) * y2[low] + (b * b * b - b) * y2[high]) * (h * h) / 6d;
+  }
+
+  /**
+   *
+   * @return the sampling points.
+   */
+  public double[] getSamplingPoints() {
+    return x.clone();
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.math;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.ResourceBundle;
+import java.util.logging.Logger;
+
+import org.simulator.math.odes.MultiTable;
+
+import de.zbit.util.ResourceManager;
+
+/**
+ * Stores the {@link CubicSpline}s fitted to the data of a file in a cache
+ * directory, so that repeated runs on the same data do not need to fit them
+ * again. An entry is only used if the size and the modification time of the
+ * data file as well as the time points and identifiers of the data are
+ * unchanged.
+ *
+ * @since 2.1
+ */
+public class SplineCache {
+
+  /**
+   * The content of one cache file.
+   */
+  private static class Entry implements Serializable {
+
+    /**
+     * Generated serial version identifier.
+     */
+    private static final long serialVersionUID = 5071633470861958452L;
+
+    /**
+     *
+     */
+    private String path;
+
+    /**
+     *
+     */
+    private long length, lastModified;
+
+    /**
+     *
+     */
+    private double timePoints[];
+
+    /**
+     *
+     */
+    private String identifiers[][];
+
+    /**
+     *
+     */
+    private CubicSpline splines[][];
+
+  }
+
+  /**
+   * Localization support.
+   */
+  private static final transient ResourceBundle bundle = ResourceManager.getBundle("org.sbml.simulator.locales.Simulator");
+
+  /**
+   * A {@link Logger} for this class.
+   */
+  private static final transient Logger logger = Logger.getLogger(SplineCache.class.getName());
+
+  /**
+   *
+   */
+  private final File directory;
+
+  /**
+   *
+   * @param directory
+   *        the directory of the cache files, which is created if necessary.
+   */
+  public SplineCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the cached splines of the given data or fits and caches them.
+   *
+   * @param source
+   *        the file the data have been read from.
+   * @param table
+   *        the data.
+   * @param numberOfThreads
+   * @return the splines of each column of each block of the table.
+   */
+  public CubicSpline[][] getSplines(File source, MultiTable table, int numberOfThreads) {
+    File cacheFile = getCacheFile(source);
+    if (cacheFile.canRead()) {
+      try {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+          Entry entry = (Entry) in.readObject();
+          if (isValid(entry, source, table)) {
+            return entry.splines;
+          }
+        } finally {
+          in.close();
+        }
+      } catch (Exception exc) {
+        // an outdated or damaged file is replaced below
+        logger.fine(exc.getLocalizedMessage());
+      }
+    }
+
+    Entry entry = new Entry();
+    entry.path = source.getAbsolutePath();
+    entry.length = source.length();
+    entry.lastModified = source.lastModified();
+    entry.timePoints = table.getTimePoints();
+    entry.identifiers = getIdentifiers(table);
+    entry.splines = SplineCalculation.fitSplines(table, numberOfThreads);
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException(directory.getAbsolutePath());
+      }
+      ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+      try {
+        out.writeObject(entry);
+      } finally {
+        out.close();
+      }
+    } catch (IOException exc) {
+      logger.warning(MessageFormat.format(bundle.getString("SPLINE_CACHE_WRITE_FAILED"),
+        cacheFile, exc.getLocalizedMessage()));
+    }
+    return entry.splines;
+  }
+
+  /**
+   *
+   * @param source
+   * @return the cache file for the given data file.
+   */
+  private File getCacheFile(File source) {
+    String path = source.getAbsolutePath();
+    return new File(directory, source.getName() + '.'
+        + Integer.toHexString(path.hashCode()) + ".splines");
+  }
+
+  /**
+   *
+   * @param entry
+   * @param source
+   * @param table
+   * @return {@code true} if the entry belongs to the current version of the
+   *         given data.
+   */
+  private static boolean isValid(Entry entry, File source, MultiTable table) {
+    return entry.path.equals(source.getAbsolutePath())
+        && (entry.length == source.length())
+        && (entry.lastModified == source.lastModified())
+        && Arrays.equals(entry.timePoints, table.getTimePoints())
+        && Arrays.deepEquals(entry.identifiers, getIdentifiers(table));
+  }
+
+  /**
+   *
+   * @param table
+   * @return the identifiers of each block.
+   */
+  private static String[][] getIdentifiers(MultiTable table) {
+    String identifiers[][] = new String[table.getBlockCount()][];
+    for (int block = 0; block != identifiers.length; block++) {
+      identifiers[block] = table.getBlock(block).getIdentifiers();
+    }
+    return identifiers;
+  }
+
+}
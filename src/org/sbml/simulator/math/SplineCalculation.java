@@ -15,33 +15,118 @@
  */
 package org.sbml.simulator.math;
 
-import org.simulator.math.odes.MultiTable;
-import org.simulator.math.odes.MultiTable.Block.Column;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import eva2.tools.math.interpolation.BasicDataSet;
-import eva2.tools.math.interpolation.InterpolationException;
-import eva2.tools.math.interpolation.SplineInterpolation;
+import org.simulator.math.odes.MultiTable;
+import org.simulator.math.odes.MultiTable.Block;
 
 /**
  * This class provides method to calculate interpolation splines in order to
  * smooth input data and to increase the number of sampling points in between
- * data.
- * 
+ * data. The splines of all columns are fitted in parallel by
+ * {@link #fitSplines(MultiTable, int)} and can then be evaluated at any
+ * number of time points by
+ * {@link #calculateSplineValues(MultiTable, CubicSpline[][], int, boolean)}.
+ *
  * @author Roland Keller
  * @since 1.2
  */
 public class SplineCalculation {
+
+  /**
+   * Fits a {@link CubicSpline} to each column of each block of the given
+   * table.
+   *
+   * @param table
+   * @param numberOfThreads
+   *        the number of threads that fit the splines concurrently.
+   * @return the splines of each column of each block.
+   * @since 2.1
+   */
+  public static CubicSpline[][] fitSplines(final MultiTable table, int numberOfThreads) {
+    final double timePoints[] = table.getTimePoints();
+    CubicSpline splines[][] = new CubicSpline[table.getBlockCount()][];
+    List<Callable<CubicSpline>> tasks = new ArrayList<Callable<CubicSpline>>();
+    for (int block = 0; block != table.getBlockCount(); block++) {
+      final double data[][] = table.getBlock(block).getData();
+      splines[block] = new CubicSpline[table.getBlock(block).getColumnCount()];
+      for (int col = 0; col != splines[block].length; col++) {
+        final int column = col;
+        tasks.add(new Callable<CubicSpline>() {
+
+          /* (non-Javadoc)
+           * @see java.util.concurrent.Callable#call()
+           */
+          @Override
+          public CubicSpline call() {
+            double values[] = new double[timePoints.length];
+            for (int row = 0; row != values.length; row++) {
+              values[row] = data[row][column];
+            }
+            return new CubicSpline(timePoints, values);
+          }
+        });
+      }
+    }
+
+    List<CubicSpline> results = new ArrayList<CubicSpline>(tasks.size());
+    int threads = Math.min(numberOfThreads, tasks.size());
+    if (threads > 1) {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        for (Future<CubicSpline> future : executor.invokeAll(tasks)) {
+          results.add(future.get());
+        }
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        results.clear();
+      } catch (ExecutionException exc) {
+        throw new IllegalStateException(exc.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    // sequentially if only one thread is available or has been interrupted
+    for (int i = results.size(); i < tasks.size(); i++) {
+      try {
+        results.add(tasks.get(i).call());
+      } catch (Exception exc) {
+        throw new IllegalStateException(exc);
+      }
+    }
+
+    int index = 0;
+    for (int block = 0; block != splines.length; block++) {
+      for (int col = 0; col != splines[block].length; col++) {
+        splines[block][col] = results.get(index++);
+      }
+    }
+    return splines;
+  }
+
   /**
-   * 
+   * Evaluates previously fitted splines at the time points of the given table
+   * and at a number of equidistant time points in between.
+   *
    * @param table
+   *        the table the splines have been fitted to.
+   * @param splines
+   *        the result of {@link #fitSplines(MultiTable, int)} for the given
+   *        table.
    * @param inBetweenTimePoints
    * @param negativeValuesPossible
    * @return
+   * @since 2.1
    */
-  public static MultiTable calculateSplineValues(MultiTable table, int inBetweenTimePoints, boolean negativeValuesPossible) {
+  public static MultiTable calculateSplineValues(MultiTable table,
+    CubicSpline splines[][], int inBetweenTimePoints, boolean negativeValuesPossible) {
 
-    SplineInterpolation sp = null;
-    int columnStart = 1;
     double[] timePoints = new double[table.getTimePoints().length + (table.getTimePoints().length-1) * inBetweenTimePoints];
     int index = 0;
     for(int i = 1; i != table.getTimePoints().length; i++) {
@@ -52,60 +137,40 @@ public class SplineCalculation {
     }
     timePoints[timePoints.length-1] = table.getTimePoint(table.getTimePoints().length - 1);
 
-
     MultiTable result = new MultiTable();
     result.setTimePoints(timePoints);
     result.setTimeName(table.getTimeName());
 
     for(int block = 0; block != table.getBlockCount(); block++) {
       result.addBlock(table.getBlock(block).getIdentifiers());
-      try {
-        sp = new SplineInterpolation();
-      } catch (InterpolationException e) {
-        e.printStackTrace();
-      }
-
-      for(int col = columnStart; col != result.getColumnCount(); col++) {
-        Column c = table.getColumn(col);
-        double[] values = new double[table.getRowCount()];
-        for(int row = 0; row!=table.getRowCount(); row++) {
-          values[row] = c.getValue(row);
-        }
-
-        BasicDataSet dataset = new BasicDataSet(table.getTimePoints(),values, "Time", "Y");
-        try {
-          sp.setAbstractDataSet(dataset);
-        } catch (InterpolationException e1) {
-          e1.printStackTrace();
-        }
-        for(int row = 0; row != result.getRowCount(); row++) {
-          try {
-            double value = sp.getY(result.getTimePoint(row));
-            if(negativeValuesPossible) {
-              result.setValueAt(value, row, col);
-            }
-            else {
-              if (Double.isNaN(value)) {
-                result.setValueAt(Double.NaN, row, col);
-              }
-              else {
-                result.setValueAt(Math.max(value,0d), row, col);
-              }
-            }
-
-          } catch (InterpolationException e) {
-            e.printStackTrace();
-          }
+      double data[][] = new double[timePoints.length][splines[block].length];
+      for(int col = 0; col != splines[block].length; col++) {
+        double values[] = splines[block][col].getValues(timePoints);
+        for(int row = 0; row != values.length; row++) {
+          // NaN values remain NaN
+          data[row][col] = negativeValuesPossible ? values[row] : Math.max(values[row], 0d);
         }
       }
-      columnStart+= table.getBlock(0).getColumnCount();
-
+      Block resultBlock = result.getBlock(block);
+      resultBlock.setData(data);
     }
     return result;
   }
 
   /**
-   * 
+   *
+   * @param table
+   * @param inBetweenTimePoints
+   * @param negativeValuesPossible
+   * @return
+   */
+  public static MultiTable calculateSplineValues(MultiTable table, int inBetweenTimePoints, boolean negativeValuesPossible) {
+    CubicSpline splines[][] = fitSplines(table, Runtime.getRuntime().availableProcessors());
+    return calculateSplineValues(table, splines, inBetweenTimePoints, negativeValuesPossible);
+  }
+
+  /**
+   *
    * @param table
    * @param inBetweenTimePoints
    * @return
@@ -66,7 +66,6 @@ public class ConservationRelations {
 		// for each column and as long as there are remaining tableaux to build
 		// and matrixS contains not only zero values
 		int columnDimension = stoichiometric.getColumnDimension();
-		System.out.println(columnDimension);
 		for (j = 0; j < columnDimension && !allZero(tableauLeft, j); j++) {
 //			System.out.println("j: " + j + ".." + tableauLeft.length);
 			// System.out.println("j: " + j + " / " +
@@ -30,7 +30,6 @@ import org.sbml.jsbml.Parameter;
 import org.sbml.jsbml.Reaction;
 import org.sbml.jsbml.SBMLException;
 import org.sbml.jsbml.Species;
-import org.sbml.jsbml.SpeciesReference;
 import org.sbml.jsbml.validator.ModelOverdeterminedException;
 import org.simulator.sbml.SBMLinterpreter;
 
@@ -143,37 +142,19 @@ public class SBMLMatrixParser {
 	 * @return
 	 */
 	public StoichiometricMatrix getStoichiometric() {
-		StoichiometricMatrix matrixN = new StoichiometricMatrix(numSpecies,
-				numReactions, 0);
-
-		ListOf<SpeciesReference> losr;
-		Reaction reac;
-		SpeciesReference speciesRef;
-		for (int n = 0; n < numReactions; n++) {
-			reac = model.getReaction(n);
-			// reactants
-			losr = reac.getListOfReactants();
-
-			for (int m = 0; m < losr.size(); m++) {
-				speciesRef = reac.getReactant(m);
-
-				matrixN.set(hashSpecies.get(speciesRef.getSpecies()),
-						hashReactions.get(reac.getId()), -speciesRef
-								.getStoichiometry());
-			}
-
-			// products
-			losr = model.getReaction(n).getListOfProducts();
-
-			for (int m = 0; m < losr.size(); m++) {
-				speciesRef = reac.getProduct(m);
+		return getSparseStoichiometric().toStoichiometricMatrix();
+	}
 
-				matrixN.set(hashSpecies.get(speciesRef.getSpecies()),
-						hashReactions.get(reac.getId()), speciesRef
-								.getStoichiometry());
-			}
-		}
-		return matrixN;
+	/**
+	 * Builds the stoichiometric matrix for the current model in sparse format,
+	 * with the species and reactions in the same order as in
+	 * {@link #getStoichiometric()}
+	 * 
+	 * @return
+	 * @since 2.1
+	 */
+	public SparseStoichiometricMatrix getSparseStoichiometric() {
+		return new SparseStoichiometricMatrix(model);
 	}
 
 	/**
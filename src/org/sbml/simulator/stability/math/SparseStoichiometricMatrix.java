@@ -0,0 +1,345 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.stability.math;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SpeciesReference;
+
+import eva2.tools.math.Jama.Matrix;
+
+/**
+ * This Class represents a m x n stoichiometric matrix in compressed sparse
+ * column (CSC) format: the rows are the species, the columns are the
+ * reactions. Genome-scale models have only a few species per reaction, so
+ * only the non-zero entries are stored. The compressed sparse row (CSR)
+ * format is derived on demand for row-wise access, as is the dense
+ * {@link StoichiometricMatrix}.
+ *
+ * @since 2.1
+ */
+public class SparseStoichiometricMatrix {
+
+	/**
+	 * The number of rows (species) and columns (reactions)
+	 */
+	private final int m, n;
+
+	/**
+	 * The non-zero entries of column j are at the positions
+	 * columnPointers[j] to columnPointers[j + 1] - 1 of rowIndices and values,
+	 * sorted by their row index.
+	 */
+	private final int[] columnPointers;
+
+	/**
+	 * The row index of each non-zero entry
+	 */
+	private final int[] rowIndices;
+
+	/**
+	 * The value of each non-zero entry
+	 */
+	private final double[] values;
+
+	/**
+	 * The same entries in CSR format, created on demand
+	 */
+	private int[] rowPointers, columnIndices;
+
+	/**
+	 * The values in CSR format, created on demand
+	 */
+	private double[] rowValues;
+
+	/**
+	 * Builds the stoichiometric matrix of the given model in one pass over the
+	 * reactants and products of each reaction. The stoichiometry of reactants
+	 * is negative and the one of products positive. If a species is a reactant
+	 * and a product of the same reaction, its stoichiometry as a product is
+	 * used. References to unknown species are ignored.
+	 *
+	 * @param model
+	 */
+	public SparseStoichiometricMatrix(Model model) {
+		m = model.getSpeciesCount();
+		n = model.getReactionCount();
+		Map<String, Integer> speciesIndices = new HashMap<String, Integer>();
+		for (int i = 0; i < m; i++) {
+			speciesIndices.put(model.getSpecies(i).getId(), Integer.valueOf(i));
+		}
+
+		columnPointers = new int[n + 1];
+		int capacity = 4 * n;
+		int[] rows = new int[capacity];
+		double[] entries = new double[capacity];
+		int nonZeros = 0;
+		Map<Integer, Double> column = new TreeMap<Integer, Double>();
+		for (int j = 0; j < n; j++) {
+			Reaction reac = model.getReaction(j);
+			column.clear();
+			for (SpeciesReference speciesRef : reac.getListOfReactants()) {
+				Integer i = speciesIndices.get(speciesRef.getSpecies());
+				if (i != null) {
+					column.put(i, -speciesRef.getStoichiometry());
+				}
+			}
+			for (SpeciesReference speciesRef : reac.getListOfProducts()) {
+				Integer i = speciesIndices.get(speciesRef.getSpecies());
+				if (i != null) {
+					column.put(i, speciesRef.getStoichiometry());
+				}
+			}
+			for (Map.Entry<Integer, Double> entry : column.entrySet()) {
+				if (entry.getValue().doubleValue() != 0d) {
+					if (nonZeros == capacity) {
+						capacity *= 2;
+						rows = Arrays.copyOf(rows, capacity);
+						entries = Arrays.copyOf(entries, capacity);
+					}
+					rows[nonZeros] = entry.getKey().intValue();
+					entries[nonZeros] = entry.getValue().doubleValue();
+					nonZeros++;
+				}
+			}
+			columnPointers[j + 1] = nonZeros;
+		}
+		rowIndices = Arrays.copyOf(rows, nonZeros);
+		values = Arrays.copyOf(entries, nonZeros);
+	}
+
+	/**
+	 * Creates a sparse copy of the given dense matrix
+	 *
+	 * @param matrix
+	 */
+	public SparseStoichiometricMatrix(Matrix matrix) {
+		m = matrix.getRowDimension();
+		n = matrix.getColumnDimension();
+		columnPointers = new int[n + 1];
+		int nonZeros = 0;
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < m; i++) {
+				if (matrix.get(i, j) != 0d) {
+					nonZeros++;
+				}
+			}
+			columnPointers[j + 1] = nonZeros;
+		}
+		rowIndices = new int[nonZeros];
+		values = new double[nonZeros];
+		int k = 0;
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < m; i++) {
+				double value = matrix.get(i, j);
+				if (value != 0d) {
+					rowIndices[k] = i;
+					values[k++] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows (species)
+	 */
+	public int getRowDimension() {
+		return m;
+	}
+
+	/**
+	 * @return the number of columns (reactions)
+	 */
+	public int getColumnDimension() {
+		return n;
+	}
+
+	/**
+	 * @return the number of non-zero entries
+	 */
+	public int getNonZeroCount() {
+		return values.length;
+	}
+
+	/**
+	 * @param i
+	 *            row index
+	 * @param j
+	 *            column index
+	 * @return the entry N_ij
+	 */
+	public double get(int i, int j) {
+		int k = Arrays.binarySearch(rowIndices, columnPointers[j], columnPointers[j + 1], i);
+		return k >= 0 ? values[k] : 0d;
+	}
+
+	/**
+	 * @return the column pointers of the CSC format (length n + 1); must not
+	 *         be modified
+	 */
+	public int[] getColumnPointers() {
+		return columnPointers;
+	}
+
+	/**
+	 * @return the row indices of the CSC format; must not be modified
+	 */
+	public int[] getRowIndices() {
+		return rowIndices;
+	}
+
+	/**
+	 * @return the values of the CSC format; must not be modified
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the row pointers of the CSR format (length m + 1); must not be
+	 *         modified
+	 */
+	public int[] getRowPointers() {
+		createRowFormat();
+		return rowPointers;
+	}
+
+	/**
+	 * @return the column indices of the CSR format; must not be modified
+	 */
+	public int[] getColumnIndices() {
+		createRowFormat();
+		return columnIndices;
+	}
+
+	/**
+	 * @return the values of the CSR format; must not be modified
+	 */
+	public double[] getRowValues() {
+		createRowFormat();
+		return rowValues;
+	}
+
+	/**
+	 * Transposes the CSC format into the CSR format, if this has not been
+	 * done yet.
+	 */
+	private synchronized void createRowFormat() {
+		if (rowPointers != null) {
+			return;
+		}
+		int[] pointers = new int[m + 1];
+		for (int k = 0; k < rowIndices.length; k++) {
+			pointers[rowIndices[k] + 1]++;
+		}
+		for (int i = 0; i < m; i++) {
+			pointers[i + 1] += pointers[i];
+		}
+		int[] next = Arrays.copyOf(pointers, m);
+		int[] columns = new int[values.length];
+		double[] entries = new double[values.length];
+		for (int j = 0; j < n; j++) {
+			for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+				int position = next[rowIndices[k]]++;
+				columns[position] = j;
+				entries[position] = values[k];
+			}
+		}
+		columnIndices = columns;
+		rowValues = entries;
+		rowPointers = pointers;
+	}
+
+	/**
+	 * @param i
+	 *            row index
+	 * @return a dense copy of row i
+	 */
+	public double[] getRow(int i) {
+		createRowFormat();
+		double[] row = new double[n];
+		for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+			row[columnIndices[k]] = rowValues[k];
+		}
+		return row;
+	}
+
+	/**
+	 * @param j
+	 *            column index
+	 * @return a dense copy of column j
+	 */
+	public double[] getColumn(int j) {
+		double[] column = new double[m];
+		for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+			column[rowIndices[k]] = values[k];
+		}
+		return column;
+	}
+
+	/**
+	 * @param x
+	 *            a vector of length n, e.g., fluxes
+	 * @return N * x
+	 */
+	public double[] times(double[] x) {
+		double[] y = new double[m];
+		for (int j = 0; j < n; j++) {
+			if (x[j] != 0d) {
+				for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+					y[rowIndices[k]] += values[k] * x[j];
+				}
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * @param y
+	 *            a vector of length m, e.g., concentrations
+	 * @return N^T * y
+	 */
+	public double[] transposeTimes(double[] y) {
+		double[] x = new double[n];
+		for (int j = 0; j < n; j++) {
+			double sum = 0d;
+			for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+				sum += values[k] * y[rowIndices[k]];
+			}
+			x[j] = sum;
+		}
+		return x;
+	}
+
+	/**
+	 * @return a dense copy of this matrix
+	 */
+	public StoichiometricMatrix toStoichiometricMatrix() {
+		StoichiometricMatrix matrix = new StoichiometricMatrix(m, n);
+		for (int j = 0; j < n; j++) {
+			for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+				matrix.set(rowIndices[k], j, values[k]);
+			}
+		}
+		return matrix;
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.optimization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eva2.optimization.individuals.ESIndividualDoubleData;
+import eva2.optimization.population.Population;
+
+/**
+ * Checks the combination of the termination criteria of a
+ * {@link ConvergenceTerminator}. The time criterion is left out, because it
+ * would make the tests depend on the speed of the computer.
+ *
+ * @since 2.1
+ */
+public class ConvergenceTerminatorTest {
+
+  /**
+   *
+   * @param fitness
+   *        the fitness of the only individual.
+   * @param evaluations
+   * @return a population as it is after one generation.
+   */
+  private static Population createPopulation(double fitness, int evaluations) {
+    ESIndividualDoubleData individual = new ESIndividualDoubleData();
+    individual.setFitness(new double[] {fitness});
+    Population population = new Population();
+    population.add(individual);
+    population.setFunctionCalls(evaluations);
+    return population;
+  }
+
+  /**
+   * Passes one generation per fitness value to the terminator.
+   *
+   * @param terminator
+   * @param fitness
+   * @return the generation (starting at one) in which the terminator stopped
+   *         or zero if it did not.
+   */
+  private static int run(ConvergenceTerminator terminator, double... fitness) {
+    for (int i = 0; i < fitness.length; i++) {
+      if (terminator.isTerminated(createPopulation(fitness[i], 10 * (i + 1)))) {
+        Assert.assertNotNull(terminator.getMessage());
+        return i + 1;
+      }
+    }
+    Assert.assertNull(terminator.getMessage());
+    return 0;
+  }
+
+  /**
+   * Without criteria, only the budget stops the estimation.
+   */
+  @Test
+  public void budget() {
+    Assert.assertEquals(0, run(new ConvergenceTerminator(1000), 1d, 1d, 1d, 1d));
+    Assert.assertEquals(3, run(new ConvergenceTerminator(30), 1d, 1d, 1d, 1d));
+  }
+
+  /**
+   * The budget stops the estimation even if the other criteria are to be
+   * combined by AND.
+   */
+  @Test
+  public void budgetIgnoresAllCriteria() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(20);
+    terminator.setStagnation(5, 0d);
+    terminator.setTargetFitness(0d);
+    terminator.setAllCriteria(true);
+    Assert.assertEquals(2, run(terminator, 3d, 2d, 1d));
+  }
+
+  /**
+   * The first generation sets the reference fitness, every further generation
+   * without a relative improvement above the tolerance counts as stagnant.
+   */
+  @Test
+  public void stagnation() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(1000);
+    terminator.setStagnation(2, 0.01d);
+    Assert.assertEquals(5, run(terminator, 1d, 0.5d, 0.25d, 0.249d, 0.2485d));
+  }
+
+  /**
+   * With OR, reaching the target suffices although the fitness still
+   * improves.
+   */
+  @Test
+  public void targetOrStagnation() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(1000);
+    terminator.setStagnation(2, 0d);
+    terminator.setTargetFitness(0.5d);
+    Assert.assertEquals(3, run(terminator, 1d, 0.9d, 0.4d, 0.4d, 0.4d));
+  }
+
+  /**
+   * With OR, stagnation suffices although the target has not been reached.
+   */
+  @Test
+  public void stagnationOrTarget() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(1000);
+    terminator.setStagnation(2, 0d);
+    terminator.setTargetFitness(0.5d);
+    Assert.assertEquals(3, run(terminator, 1d, 1d, 1d, 1d));
+  }
+
+  /**
+   * With AND, the estimation continues after reaching the target until it
+   * also stagnates.
+   */
+  @Test
+  public void targetAndStagnation() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(1000);
+    terminator.setStagnation(2, 0d);
+    terminator.setTargetFitness(0.5d);
+    terminator.setAllCriteria(true);
+    Assert.assertEquals(5, run(terminator, 1d, 0.9d, 0.4d, 0.4d, 0.4d));
+  }
+
+  /**
+   * With AND, stagnation above the target does not stop the estimation.
+   */
+  @Test
+  public void stagnationAndTarget() {
+    ConvergenceTerminator terminator = new ConvergenceTerminator(1000);
+    terminator.setStagnation(2, 0d);
+    terminator.setTargetFitness(0.5d);
+    terminator.setAllCriteria(true);
+    Assert.assertEquals(0, run(terminator, 1d, 1d, 1d, 1d, 1d));
+  }
+
+}
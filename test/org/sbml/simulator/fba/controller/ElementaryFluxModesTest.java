@@ -0,0 +1,199 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+/**
+ * Checks the {@link ElementaryFluxModes} of a textbook network, in which the
+ * external substrate A_ext is taken up as A, converted to B or C and both are
+ * converted to the external product P_ext. B and C are connected by a
+ * reversible reaction:
+ *
+ * <pre>
+ * R1: A_ext -> A
+ * R2: A -> B
+ * R3: A -> C
+ * R4: B <-> C
+ * R5: 2 B -> P_ext
+ * R6: C -> P_ext
+ * </pre>
+ *
+ * The network has exactly four elementary flux modes, one along each route
+ * from A to P_ext. The trivial cycle of R4 and its backward reaction is no
+ * mode.
+ *
+ * @since 2.1
+ */
+public class ElementaryFluxModesTest {
+
+  /**
+   *
+   */
+  private static final double EPSILON = 1E-9;
+
+  /**
+   * The modes as net fluxes of R1 to R6, scaled to a maximal absolute value
+   * of 1.
+   */
+  private static final double EXPECTED_MODES[][] = {
+    {1d, 1d, 0d, 0d, 0.5d, 0d},
+    {1d, 0d, 1d, 0d, 0d, 1d},
+    {1d, 1d, 0d, 1d, 0d, 1d},
+    {1d, 0d, 1d, -1d, 0.5d, 0d}
+  };
+
+  /**
+   *
+   * @return the textbook network
+   */
+  private static SBMLDocument createDocument() {
+    SBMLDocument doc = new SBMLDocument(3, 1);
+    Model model = doc.createModel("textbook");
+    model.createCompartment("cell");
+    for (String id : new String[] {"A_ext", "A", "B", "C", "P_ext"}) {
+      Species species = model.createSpecies(id, model.getCompartment(0));
+      species.setBoundaryCondition(id.endsWith("_ext"));
+    }
+    createReaction(model, "R1", false, "A_ext", 1d, "A");
+    createReaction(model, "R2", false, "A", 1d, "B");
+    createReaction(model, "R3", false, "A", 1d, "C");
+    createReaction(model, "R4", true, "B", 1d, "C");
+    createReaction(model, "R5", false, "B", 2d, "P_ext");
+    createReaction(model, "R6", false, "C", 1d, "P_ext");
+    return doc;
+  }
+
+  /**
+   *
+   * @param model
+   * @param id
+   * @param reversible
+   * @param reactant
+   * @param stoichiometry
+   *        the stoichiometry of the reactant
+   * @param product
+   */
+  private static void createReaction(Model model, String id, boolean reversible,
+    String reactant, double stoichiometry, String product) {
+    Reaction reaction = model.createReaction(id);
+    reaction.setReversible(reversible);
+    reaction.setFast(false);
+    addParticipant(reaction.getListOfReactants(), model, reactant, stoichiometry);
+    addParticipant(reaction.getListOfProducts(), model, product, 1d);
+  }
+
+  /**
+   *
+   * @param participants
+   * @param model
+   * @param species
+   * @param stoichiometry
+   */
+  private static void addParticipant(ListOf<SpeciesReference> participants,
+    Model model, String species, double stoichiometry) {
+    SpeciesReference reference = new SpeciesReference(model.getSpecies(species));
+    reference.setStoichiometry(stoichiometry);
+    reference.setConstant(true);
+    participants.add(reference);
+  }
+
+  /**
+   * Asserts that the computed modes are the expected modes in any order.
+   *
+   * @param efm
+   * @throws Exception
+   */
+  private static void assertModes(ElementaryFluxModes efm) throws Exception {
+    Assert.assertEquals(EXPECTED_MODES.length, efm.getModeCount());
+    double modes[][] = efm.getModes();
+    Assert.assertEquals(EXPECTED_MODES.length, modes.length);
+    List<double[]> expected = new ArrayList<double[]>(Arrays.asList(EXPECTED_MODES));
+    for (double mode[] : modes) {
+      boolean found = false;
+      for (int k = 0; (k < expected.size()) && !found; k++) {
+        if (agree(expected.get(k), mode)) {
+          expected.remove(k);
+          found = true;
+        }
+      }
+      Assert.assertTrue(Arrays.toString(mode), found);
+    }
+  }
+
+  /**
+   *
+   * @param expected
+   * @param actual
+   * @return {@code true} if both modes agree within {@link #EPSILON}
+   */
+  private static boolean agree(double expected[], double actual[]) {
+    if (expected.length != actual.length) {
+      return false;
+    }
+    for (int j = 0; j < expected.length; j++) {
+      if (Math.abs(expected[j] - actual[j]) > EPSILON) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Exactly the four routes are found, as net fluxes in the order of the
+   * reactions of the original document.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void textbookNetwork() throws Exception {
+    ElementaryFluxModes efm = new ElementaryFluxModes(createDocument());
+    Assert.assertEquals(-1L, efm.getModeCount());
+    Assert.assertArrayEquals(new String[] {"R1", "R2", "R3", "R4", "R5", "R6"}, efm.getReactionIds());
+    efm.setThreadCount(1);
+    efm.run();
+    assertModes(efm);
+  }
+
+  /**
+   * Several threads and modes that are spilled into temporary files give the
+   * same result.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void spilledModes() throws Exception {
+    ElementaryFluxModes efm = new ElementaryFluxModes(createDocument());
+    efm.setThreadCount(3);
+    efm.setMaxModesInMemory(1);
+    efm.run();
+    assertModes(efm);
+    efm.clear();
+    Assert.assertEquals(-1L, efm.getModeCount());
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.simulator.fba.solver.SolverException;
+import org.sbml.simulator.fba.solver.SolverFactory.SolverType;
+
+/**
+ * Checks the bounds of a {@link FluxVariabilityAnalysis} on a toy network,
+ * in which A is taken up, converted to D along two parallel branches via B
+ * and C, and D is released. B and C are connected by a reversible reaction.
+ *
+ * @since 2.1
+ */
+public class FluxVariabilityAnalysisTest {
+
+  /**
+   * The tolerance of the bounds, which includes the tolerance of the
+   * optimality constraint.
+   */
+  private static final double EPSILON = 1E-4;
+
+  /**
+   * The maximal uptake of A.
+   */
+  private static final double UPTAKE = 10d;
+
+  /**
+   * The system boundaries: A is taken up, D is released.
+   */
+  private static final double SYSTEM_BOUNDARIES[] = {1d, Double.NaN, Double.NaN, -1d};
+
+  /**
+   *
+   * @return the toy network
+   */
+  private static SBMLDocument createDocument() {
+    SBMLDocument doc = new SBMLDocument(3, 1);
+    Model model = doc.createModel("diamond");
+    model.createCompartment("cell");
+    for (String id : new String[] {"A", "B", "C", "D"}) {
+      model.createSpecies(id, model.getCompartment(0));
+    }
+    createReaction(model, "v1", "A", "B", false);
+    createReaction(model, "v2", "A", "C", false);
+    createReaction(model, "v3", "B", "D", false);
+    createReaction(model, "v4", "C", "D", false);
+    createReaction(model, "v5", "B", "C", true);
+    return doc;
+  }
+
+  /**
+   *
+   * @param model
+   * @param id
+   * @param reactant
+   * @param product
+   * @param reversible
+   */
+  private static void createReaction(Model model, String id, String reactant,
+    String product, boolean reversible) {
+    Reaction reaction = model.createReaction(id);
+    reaction.setReversible(reversible);
+    reaction.setFast(false);
+    addParticipant(reaction.getListOfReactants(), model, reactant);
+    addParticipant(reaction.getListOfProducts(), model, product);
+  }
+
+  /**
+   *
+   * @param participants
+   * @param model
+   * @param species
+   */
+  private static void addParticipant(ListOf<SpeciesReference> participants,
+    Model model, String species) {
+    SpeciesReference reference = new SpeciesReference(model.getSpecies(species));
+    reference.setStoichiometry(1d);
+    reference.setConstant(true);
+    participants.add(reference);
+  }
+
+  /**
+   * Runs the analysis with limited uptake.
+   *
+   * @param optimalityFraction
+   *        the optimality fraction of the release of D or NaN for no
+   *        objective.
+   * @param bounds
+   *        the minimal and the maximal value of each flux by its id.
+   * @return the analysis
+   * @throws Exception
+   */
+  private static FluxVariabilityAnalysis run(double optimalityFraction,
+    Map<String, double[]> bounds) throws Exception {
+    Constraints constraints = new Constraints(createDocument(), null, null, SYSTEM_BOUNDARIES);
+    FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(constraints);
+    fva.setSolverType(SolverType.INTERIOR_POINT);
+    String ids[] = fva.getReactionIds();
+    Map<String, Integer> index = new HashMap<String, Integer>();
+    for (int j = 0; j < ids.length; j++) {
+      index.put(ids[j], j);
+    }
+    Assert.assertTrue(fva.setUbOfReactionJ(UPTAKE, index.get("deg_inA")));
+    if (!Double.isNaN(optimalityFraction)) {
+      double objective[] = new double[ids.length];
+      objective[index.get("deg_outD")] = 1d;
+      fva.setObjective(objective, true);
+      fva.setOptimalityFraction(optimalityFraction);
+    }
+    fva.run();
+    for (int j = 0; j < ids.length; j++) {
+      bounds.put(ids[j], new double[] {fva.getMinimum()[j], fva.getMaximum()[j]});
+    }
+    return fva;
+  }
+
+  /**
+   *
+   * @param bounds
+   * @param id
+   * @param min
+   * @param max
+   */
+  private static void assertBounds(Map<String, double[]> bounds, String id,
+    double min, double max) {
+    Assert.assertNotNull(id, bounds.get(id));
+    Assert.assertEquals(id, min, bounds.get(id)[0], EPSILON);
+    Assert.assertEquals(id, max, bounds.get(id)[1], EPSILON);
+  }
+
+  /**
+   * At the optimal release of D, the uptake and the release are fixed, while
+   * the flux can take either branch. The split reversible reaction forms a
+   * cycle that is only limited by the default bound.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void optimalRelease() throws Exception {
+    Map<String, double[]> bounds = new HashMap<String, double[]>();
+    FluxVariabilityAnalysis fva = run(1d, bounds);
+    Assert.assertEquals(8, bounds.size());
+    Assert.assertEquals(UPTAKE, fva.getObjectiveValue(), EPSILON);
+    assertBounds(bounds, "deg_inA", UPTAKE, UPTAKE);
+    assertBounds(bounds, "deg_outD", UPTAKE, UPTAKE);
+    for (String id : new String[] {"v1", "v2", "v3", "v4"}) {
+      assertBounds(bounds, id, 0d, UPTAKE);
+    }
+    double cycle = FluxVariabilityAnalysis.DEFAULT_FLUX_BOUND;
+    assertBounds(bounds, "v5", 0d, cycle);
+    assertBounds(bounds, "v5" + FluxMinimizationUtils.endingForBackwardReaction, 0d, cycle);
+  }
+
+  /**
+   * Half of the optimal release suffices.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void optimalityFraction() throws Exception {
+    Map<String, double[]> bounds = new HashMap<String, double[]>();
+    run(0.5d, bounds);
+    assertBounds(bounds, "deg_inA", UPTAKE / 2d, UPTAKE);
+    assertBounds(bounds, "deg_outD", UPTAKE / 2d, UPTAKE);
+    assertBounds(bounds, "v1", 0d, UPTAKE);
+  }
+
+  /**
+   * Without an objective, all steady states are analyzed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void noObjective() throws Exception {
+    Map<String, double[]> bounds = new HashMap<String, double[]>();
+    FluxVariabilityAnalysis fva = run(Double.NaN, bounds);
+    Assert.assertTrue(Double.isNaN(fva.getObjectiveValue()));
+    assertBounds(bounds, "deg_inA", 0d, UPTAKE);
+    assertBounds(bounds, "deg_outD", 0d, UPTAKE);
+    assertBounds(bounds, "v4", 0d, UPTAKE);
+  }
+
+  /**
+   * An uptake whose lower bound exceeds its upper bound has no steady state.
+   *
+   * @throws Exception
+   */
+  @Test(expected = SolverException.class)
+  public void infeasibleBounds() throws Exception {
+    Constraints constraints = new Constraints(createDocument(), null, null, SYSTEM_BOUNDARIES);
+    FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(constraints);
+    fva.setSolverType(SolverType.INTERIOR_POINT);
+    String ids[] = fva.getReactionIds();
+    double objective[] = new double[ids.length];
+    for (int j = 0; j < ids.length; j++) {
+      if (ids[j].equals("deg_inA")) {
+        fva.setLbOfReactionJ(2d * FluxVariabilityAnalysis.DEFAULT_FLUX_BOUND, j);
+      }
+    }
+    fva.setObjective(objective, true);
+    fva.run();
+  }
+
+}
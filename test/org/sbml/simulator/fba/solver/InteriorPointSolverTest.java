@@ -0,0 +1,191 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.fba.solver;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sbml.simulator.fba.solver.Solver.Relation;
+
+/**
+ * Checks the {@link InteriorPointSolver} on small problems with known
+ * optima, also when a problem is solved again from the previous solution
+ * after changing bounds, right-hand sides, coefficients or the objective.
+ *
+ * @since 2.1
+ */
+public class InteriorPointSolverTest {
+
+  /**
+   * The tolerance for the comparison with the known optima.
+   */
+  private static final double EPSILON = 1E-6;
+
+  /**
+   *
+   */
+  private static final double INF = Double.POSITIVE_INFINITY;
+
+  /**
+   *
+   * @param solver
+   * @param objective
+   * @param values
+   * @throws SolverException
+   */
+  private static void assertOptimum(Solver solver, double objective, double... values) throws SolverException {
+    Assert.assertTrue(solver.solve());
+    Assert.assertEquals(objective, solver.getObjectiveValue(), EPSILON);
+    Assert.assertArrayEquals(values, solver.getValues(), EPSILON);
+  }
+
+  /**
+   * max 3x + 5y subject to x <= 4, 2y <= 12, 3x + 2y <= 18 and x, y >= 0
+   * has its optimum 36 at (2, 6).
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void linearProgram() throws SolverException {
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(new double[] {0d, 0d}, new double[] {INF, INF});
+    solver.addConstraint(new int[] {0}, new double[] {1d}, Relation.LESS_EQUAL, 4d);
+    solver.addConstraint(new int[] {1}, new double[] {2d}, Relation.LESS_EQUAL, 12d);
+    int c = solver.addConstraint(new int[] {0, 1}, new double[] {3d, 2d}, Relation.LESS_EQUAL, 18d);
+    solver.setObjective(new double[] {3d, 5d}, null, false);
+    assertOptimum(solver, 36d, 2d, 6d);
+
+    // the problem is not built again for the following solves
+    solver.setRightHandSide(c, 12d);
+    assertOptimum(solver, 30d, 0d, 6d);
+    solver.setRightHandSide(c, 18d);
+    solver.setBounds(1, 0d, 2d);
+    assertOptimum(solver, 22d, 4d, 2d);
+    solver.setObjective(new double[] {-1d, -1d}, null, true);
+    assertOptimum(solver, -6d, 4d, 2d);
+
+    // warm starts after changing the value of a coefficient and removing it
+    solver.setStartingPoint(solver.getValues());
+    solver.setCoefficient(c, 0, 6d);
+    assertOptimum(solver, -13d / 3d, 7d / 3d, 2d);
+    solver.setStartingPoint(solver.getValues());
+    solver.setCoefficient(c, 0, 0d);
+    assertOptimum(solver, -6d, 4d, 2d);
+  }
+
+  /**
+   * min (x - 1)^2 + (y - 2)^2 subject to x + y = 1 with free variables has
+   * its optimum at (0, 1), where x^2 + y^2 - 2x - 4y is -3.
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void quadraticProgram() throws SolverException {
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(new double[] {-INF, -INF}, new double[] {INF, INF});
+    solver.addConstraint(new int[] {0, 1}, new double[] {1d, 1d}, Relation.EQUAL, 1d);
+    solver.setObjective(new double[] {-2d, -4d}, new double[] {1d, 1d}, true);
+    assertOptimum(solver, -3d, 0d, 1d);
+  }
+
+  /**
+   * min x subject to x - y >= -3 and 0 <= y <= 2 is bounded only by the
+   * constraint because x is free.
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void freeVariable() throws SolverException {
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(new double[] {-INF, 0d}, new double[] {INF, 2d});
+    solver.addConstraint(new int[] {0, 1}, new double[] {1d, -1d}, Relation.GREATER_EQUAL, -3d);
+    solver.setObjective(new double[] {1d, 0d}, null, true);
+    assertOptimum(solver, -3d, -3d, 0d);
+  }
+
+  /**
+   * A linearly dependent equation is skipped by the factorization.
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void dependentConstraints() throws SolverException {
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(new double[] {0d, 0d, 0d}, new double[] {10d, 10d, 10d});
+    solver.addConstraint(new int[] {0, 1}, new double[] {1d, -1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {1, 2}, new double[] {1d, -1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {0, 2}, new double[] {2d, -2d}, Relation.EQUAL, 0d);
+    solver.setObjective(new double[] {0d, 0d, 1d}, null, false);
+    assertOptimum(solver, 10d, 10d, 10d, 10d);
+  }
+
+  /**
+   * A flux variability problem: the release x7 of a network with two
+   * branches x0 -> x2 and x1 -> x3 connected by x4 and x5 must stay within
+   * 1E-6 of its maximum, the uptake x6. The flux through the first branch
+   * can nevertheless be zero, while the cycle x4, x5 stays undetermined.
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void tightConstraint() throws SolverException {
+    double lower[] = new double[8], upper[] = new double[8];
+    Arrays.fill(upper, 1000d);
+    upper[6] = 10d;
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(lower, upper);
+    solver.addConstraint(new int[] {0, 1, 6}, new double[] {-1d, -1d, 1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {0, 2, 4, 5}, new double[] {1d, -1d, -1d, 1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {1, 3, 4, 5}, new double[] {1d, -1d, 1d, -1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {2, 3, 7}, new double[] {1d, 1d, -1d}, Relation.EQUAL, 0d);
+    solver.addConstraint(new int[] {7}, new double[] {1d}, Relation.GREATER_EQUAL,
+      (1d - 1E-6d) * 9.999999999900421d);
+    solver.setObjective(new double[] {1d, 0d, 0d, 0d, 0d, 0d, 0d, 0d}, null, true);
+    Assert.assertTrue(solver.solve());
+    Assert.assertEquals(0d, solver.getObjectiveValue(), EPSILON);
+    Assert.assertEquals(10d, solver.getValues()[7], 1E-4d);
+  }
+
+  /**
+   * x + y <= 1 and x + y >= 2 contradict each other; afterwards, the same
+   * solver finds the optimum of the relaxed problem.
+   *
+   * @throws SolverException
+   */
+  @Test
+  public void infeasibleProblem() throws SolverException {
+    Solver solver = new InteriorPointSolver();
+    solver.addVariables(new double[] {0d, 0d}, new double[] {INF, INF});
+    solver.addConstraint(new int[] {0, 1}, new double[] {1d, 1d}, Relation.LESS_EQUAL, 1d);
+    int c = solver.addConstraint(new int[] {0, 1}, new double[] {1d, 1d}, Relation.GREATER_EQUAL, 2d);
+    solver.setObjective(new double[] {1d, 0d}, null, false);
+    Assert.assertFalse(solver.solve());
+    try {
+      solver.getValues();
+      Assert.fail();
+    } catch (SolverException exc) {
+      // no solution available
+    }
+    solver.setRightHandSide(c, 0.5d);
+    assertOptimum(solver, 1d, 1d, 0d);
+
+    // contradicting bounds
+    solver.setBounds(1, 1d, 0d);
+    Assert.assertFalse(solver.solve());
+  }
+
+}
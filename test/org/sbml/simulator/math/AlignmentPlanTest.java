@@ -0,0 +1,156 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.math;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.simulator.math.EuclideanDistance;
+import org.simulator.math.ManhattanDistance;
+import org.simulator.math.N_Metric;
+import org.simulator.math.QualityMeasure;
+import org.simulator.math.RelativeEuclideanDistance;
+import org.simulator.math.RelativeSquaredError;
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Checks that {@link AlignmentPlan#distance(QualityMeasure, MultiTable)}
+ * computes the same values as
+ * {@link QualityMeasure#distance(MultiTable, MultiTable)}.
+ *
+ * @since 2.1
+ */
+public class AlignmentPlanTest {
+
+  /**
+   * The tolerance for the comparison of both distances.
+   */
+  private static final double EPSILON = 1E-12;
+
+  /**
+   *
+   * @return one instance of every quality measure that has a fast path in
+   *         {@link AlignmentPlan} and one that is delegated.
+   */
+  private static QualityMeasure[] createMeasures() {
+    return new QualityMeasure[] {
+        new EuclideanDistance(),
+        new ManhattanDistance(),
+        new N_Metric(3d),
+        new RelativeSquaredError(),
+        new RelativeEuclideanDistance()};
+  }
+
+  /**
+   * Compares both distances for all quality measures, also when the plan is
+   * reused for a second simulation with the same layout.
+   *
+   * @param solution
+   * @param reference
+   */
+  private static void assertSameDistances(MultiTable solution, MultiTable reference) {
+    AlignmentPlan plan = new AlignmentPlan(solution, reference);
+    Assert.assertTrue(plan.isApplicable(solution, reference));
+    for (QualityMeasure measure : createMeasures()) {
+      String name = measure.getClass().getSimpleName();
+      double expected = measure.distance(solution, reference);
+      Assert.assertEquals(name, expected, plan.distance(measure, solution), EPSILON);
+    }
+    double data[][] = solution.getBlock(0).getData();
+    for (int i = 0; i < data.length; i++) {
+      for (int j = 0; j < data[i].length; j++) {
+        data[i][j] += 0.5d * (i + 1) - 0.25d * j;
+      }
+    }
+    Assert.assertSame(plan, AlignmentPlan.update(plan, solution, reference));
+    for (QualityMeasure measure : createMeasures()) {
+      String name = measure.getClass().getSimpleName();
+      double expected = measure.distance(solution, reference);
+      Assert.assertEquals(name, expected, plan.distance(measure, solution), EPSILON);
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void sharedTimePoints() {
+    MultiTable solution = new MultiTable(new double[] {0d, 1d, 2d, 3d},
+      new double[][] {{1d, 2d}, {1.5d, 2.5d}, {2d, 1d}, {4d, 0.5d}},
+      new String[] {"A", "B"});
+    MultiTable reference = new MultiTable(new double[] {0d, 1d, 2d, 3d},
+      new double[][] {{1.2d, 2d}, {1.1d, 2.9d}, {2.4d, 0.7d}, {3.5d, 0.2d}},
+      new String[] {"A", "B"});
+    assertSameDistances(solution, reference);
+  }
+
+  /**
+   * Only some time points of the reference data also occur in the simulation.
+   */
+  @Test
+  public void disjointTimePoints() {
+    MultiTable solution = new MultiTable(new double[] {0d, 1d, 2d, 3d, 4d},
+      new double[][] {{1d, 2d}, {1.5d, 2.5d}, {2d, 1d}, {4d, 0.5d}, {5d, 0.1d}},
+      new String[] {"A", "B"});
+    MultiTable reference = new MultiTable(new double[] {0.5d, 1d, 2.5d, 4d},
+      new double[][] {{1.2d, 2d}, {1.1d, 2.9d}, {2.4d, 0.7d}, {3.5d, 0.2d}},
+      new String[] {"A", "B"});
+    assertSameDistances(solution, reference);
+  }
+
+  /**
+   * Missing values in the reference data and in the simulation are skipped.
+   */
+  @Test
+  public void missingValues() {
+    MultiTable solution = new MultiTable(new double[] {0d, 1d, 2d, 3d},
+      new double[][] {{1d, 2d}, {Double.NaN, 2.5d}, {2d, 1d}, {4d, 0.5d}},
+      new String[] {"A", "B"});
+    MultiTable reference = new MultiTable(new double[] {0d, 1d, 2d, 3d},
+      new double[][] {{1.2d, Double.NaN}, {1.1d, 2.9d}, {Double.NaN, 0.7d}, {3.5d, 0.2d}},
+      new String[] {"A", "B"});
+    assertSameDistances(solution, reference);
+  }
+
+  /**
+   * The reference data list the columns in a different order and contain a
+   * column that is not simulated, while one simulated column is not measured.
+   */
+  @Test
+  public void reorderedColumns() {
+    MultiTable solution = new MultiTable(new double[] {0d, 1d, 2d},
+      new double[][] {{1d, 2d, 3d}, {1.5d, 2.5d, 2d}, {2d, 1d, 1d}},
+      new String[] {"A", "B", "C"});
+    MultiTable reference = new MultiTable(new double[] {0d, 1d, 2d},
+      new double[][] {{7d, 2.2d, 0.9d}, {7d, 2.1d, 1.4d}, {7d, 1.3d, 2.6d}},
+      new String[] {"D", "B", "A"});
+    assertSameDistances(solution, reference);
+  }
+
+  /**
+   * The relative error is undefined for reference values of zero.
+   */
+  @Test
+  public void zeroReferenceValues() {
+    MultiTable solution = new MultiTable(new double[] {0d, 1d, 2d},
+      new double[][] {{0d, 2d}, {1.5d, 0d}, {2d, 1d}},
+      new String[] {"A", "B"});
+    MultiTable reference = new MultiTable(new double[] {0d, 1d, 2d},
+      new double[][] {{0d, 0d}, {0d, 2.9d}, {2.4d, 0d}},
+      new String[] {"A", "B"});
+    assertSameDistances(solution, reference);
+  }
+
+}
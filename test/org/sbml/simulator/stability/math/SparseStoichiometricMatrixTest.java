@@ -0,0 +1,237 @@
+/*
+ * ---------------------------------------------------------------------
+ * This file is part of SBMLsimulator, a Java-based simulator for models
+ * of biochemical processes encoded in the modeling language SBML.
+ *
+ * Copyright (C) 2007-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package org.sbml.simulator.stability.math;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sbml.jsbml.ListOf;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SpeciesReference;
+
+/**
+ * Compares the {@link SparseStoichiometricMatrix} with the dense matrix that
+ * {@link SBMLMatrixParser} built before by setting the entry of every
+ * reactant and product.
+ *
+ * @since 2.1
+ */
+public class SparseStoichiometricMatrixTest {
+
+  /**
+   *
+   */
+  private static final double EPSILON = 1E-12;
+
+  /**
+   * Creates a model with an uptake and an exhaust reaction, a stoichiometry
+   * of two, a species that is reactant and product of the same reaction and
+   * a product with a stoichiometry of zero.
+   *
+   * @return the model
+   */
+  private static Model createModel() {
+    SBMLDocument doc = new SBMLDocument(3, 1);
+    Model model = doc.createModel("toy");
+    model.createCompartment("cell");
+    for (String id : new String[] {"A", "B", "C", "D", "E"}) {
+      model.createSpecies(id, model.getCompartment(0));
+    }
+    // -> A
+    addParticipant(model.createReaction("uptake").getListOfProducts(), model, "A", 1d);
+    // A -> 2 B
+    Reaction reaction = model.createReaction("split");
+    addParticipant(reaction.getListOfReactants(), model, "A", 1d);
+    addParticipant(reaction.getListOfProducts(), model, "B", 2d);
+    // A + B -> C
+    reaction = model.createReaction("join");
+    addParticipant(reaction.getListOfReactants(), model, "A", 1d);
+    addParticipant(reaction.getListOfReactants(), model, "B", 1d);
+    addParticipant(reaction.getListOfProducts(), model, "C", 1d);
+    // C -> C + D
+    reaction = model.createReaction("catalysis");
+    addParticipant(reaction.getListOfReactants(), model, "C", 1d);
+    addParticipant(reaction.getListOfProducts(), model, "C", 1d);
+    addParticipant(reaction.getListOfProducts(), model, "D", 1d);
+    // D ->
+    addParticipant(model.createReaction("exhaust").getListOfReactants(), model, "D", 1d);
+    // B -> 0 E
+    reaction = model.createReaction("conversion");
+    addParticipant(reaction.getListOfReactants(), model, "B", 1d);
+    addParticipant(reaction.getListOfProducts(), model, "E", 0d);
+    return model;
+  }
+
+  /**
+   *
+   * @param participants
+   * @param model
+   * @param species
+   * @param stoichiometry
+   */
+  private static void addParticipant(ListOf<SpeciesReference> participants, Model model,
+    String species, double stoichiometry) {
+    SpeciesReference reference = new SpeciesReference(model.getSpecies(species));
+    reference.setStoichiometry(stoichiometry);
+    reference.setConstant(true);
+    participants.add(reference);
+  }
+
+  /**
+   * The dense stoichiometric matrix as {@link SBMLMatrixParser} has built it:
+   * first the reactants, then the products of each reaction are set.
+   *
+   * @param model
+   * @return
+   */
+  private static double[][] createDenseMatrix(Model model) {
+    Map<String, Integer> species = new HashMap<String, Integer>();
+    for (int i = 0; i < model.getSpeciesCount(); i++) {
+      species.put(model.getSpecies(i).getId(), i);
+    }
+    double matrix[][] = new double[model.getSpeciesCount()][model.getReactionCount()];
+    for (int j = 0; j < model.getReactionCount(); j++) {
+      Reaction reaction = model.getReaction(j);
+      for (SpeciesReference reference : reaction.getListOfReactants()) {
+        matrix[species.get(reference.getSpecies())][j] = -reference.getStoichiometry();
+      }
+      for (SpeciesReference reference : reaction.getListOfProducts()) {
+        matrix[species.get(reference.getSpecies())][j] = reference.getStoichiometry();
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * All entries, rows and columns of both formats agree with the dense matrix.
+   */
+  @Test
+  public void entries() {
+    Model model = createModel();
+    double dense[][] = createDenseMatrix(model);
+    SparseStoichiometricMatrix N = new SparseStoichiometricMatrix(model);
+    Assert.assertEquals(dense.length, N.getRowDimension());
+    Assert.assertEquals(dense[0].length, N.getColumnDimension());
+
+    int nonZeros = 0;
+    StoichiometricMatrix copy = N.toStoichiometricMatrix();
+    for (int i = 0; i < dense.length; i++) {
+      Assert.assertArrayEquals(dense[i], N.getRow(i), EPSILON);
+      for (int j = 0; j < dense[i].length; j++) {
+        Assert.assertEquals(dense[i][j], N.get(i, j), EPSILON);
+        Assert.assertEquals(dense[i][j], copy.get(i, j), EPSILON);
+        if (dense[i][j] != 0d) {
+          nonZeros++;
+        }
+      }
+    }
+    Assert.assertEquals(nonZeros, N.getNonZeroCount());
+    for (int j = 0; j < dense[0].length; j++) {
+      double column[] = N.getColumn(j);
+      for (int i = 0; i < dense.length; i++) {
+        Assert.assertEquals(dense[i][j], column[i], EPSILON);
+      }
+    }
+
+    // the species of the catalysis only occurs as a product
+    Assert.assertEquals(1d, N.get(2, 3), EPSILON);
+    Assert.assertEquals(2d, N.get(1, 1), EPSILON);
+  }
+
+  /**
+   * Both formats contain only the non-zero entries, sorted by their index.
+   */
+  @Test
+  public void compressedFormats() {
+    Model model = createModel();
+    double dense[][] = createDenseMatrix(model);
+    SparseStoichiometricMatrix N = new SparseStoichiometricMatrix(model);
+    int columnPointers[] = N.getColumnPointers();
+    int rowIndices[] = N.getRowIndices();
+    double values[] = N.getValues();
+    for (int j = 0; j < N.getColumnDimension(); j++) {
+      for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++) {
+        Assert.assertTrue((k == columnPointers[j]) || (rowIndices[k - 1] < rowIndices[k]));
+        Assert.assertEquals(dense[rowIndices[k]][j], values[k], EPSILON);
+        Assert.assertTrue(values[k] != 0d);
+      }
+    }
+    int rowPointers[] = N.getRowPointers();
+    int columnIndices[] = N.getColumnIndices();
+    double rowValues[] = N.getRowValues();
+    Assert.assertEquals(N.getNonZeroCount(), rowPointers[N.getRowDimension()]);
+    for (int i = 0; i < N.getRowDimension(); i++) {
+      for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+        Assert.assertTrue((k == rowPointers[i]) || (columnIndices[k - 1] < columnIndices[k]));
+        Assert.assertEquals(dense[i][columnIndices[k]], rowValues[k], EPSILON);
+      }
+    }
+  }
+
+  /**
+   * The products with a vector agree with the dense products.
+   */
+  @Test
+  public void products() {
+    Model model = createModel();
+    double dense[][] = createDenseMatrix(model);
+    SparseStoichiometricMatrix N = new SparseStoichiometricMatrix(model);
+    double x[] = new double[N.getColumnDimension()];
+    for (int j = 0; j < x.length; j++) {
+      x[j] = j % 3 == 0 ? 0d : 1.5d * j - 2d;
+    }
+    double y[] = new double[N.getRowDimension()];
+    for (int i = 0; i < y.length; i++) {
+      y[i] = 0.5d * i + 1d;
+    }
+    double Nx[] = N.times(x);
+    for (int i = 0; i < dense.length; i++) {
+      double sum = 0d;
+      for (int j = 0; j < x.length; j++) {
+        sum += dense[i][j] * x[j];
+      }
+      Assert.assertEquals(sum, Nx[i], EPSILON);
+    }
+    double NTy[] = N.transposeTimes(y);
+    for (int j = 0; j < x.length; j++) {
+      double sum = 0d;
+      for (int i = 0; i < dense.length; i++) {
+        sum += dense[i][j] * y[i];
+      }
+      Assert.assertEquals(sum, NTy[j], EPSILON);
+    }
+  }
+
+  /**
+   * A sparse copy of the dense matrix equals the matrix built from the model.
+   */
+  @Test
+  public void denseCopy() {
+    Model model = createModel();
+    double dense[][] = createDenseMatrix(model);
+    SparseStoichiometricMatrix N = new SparseStoichiometricMatrix(model);
+    SparseStoichiometricMatrix copy = new SparseStoichiometricMatrix(
+      new StoichiometricMatrix(dense, dense.length, dense[0].length));
+    Assert.assertArrayEquals(N.getColumnPointers(), copy.getColumnPointers());
+    Assert.assertArrayEquals(N.getRowIndices(), copy.getRowIndices());
+    Assert.assertArrayEquals(N.getValues(), copy.getValues(), EPSILON);
+  }
+
+}